@@ -33,6 +33,7 @@ android {
 
 dependencies {
     compileOnly(project(":sdk"))
+    annotationProcessor(project(":sdk-processor"))
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
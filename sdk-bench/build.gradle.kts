@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+plugins {
+    id("java")
+    id("me.champeau.jmh")
+}
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    jmhImplementation(project(":sdk"))
+    jmhImplementation(libs.jmh.core)
+    jmhAnnotationProcessor(libs.jmh.generator.annprocess)
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+val jmhResults = layout.buildDirectory.file("results/jmh/results.json")
+// Scores only compare on the machine and JVM that produced them, so the baseline is kept locally
+// and not committed
+val jmhBaselineFile = layout.projectDirectory.file("baseline/jmh-baseline.json")
+
+// Offline use: ./gradlew :sdk-bench:jmhJar, then java -jar sdk-bench/build/libs/sdk-bench-jmh.jar -prof gc -rf json
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    includes.addAll(providers.gradleProperty("jmhIncludes").map { listOf(it) }.orElse(emptyList()))
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(jmhResults)
+}
+
+// Stores the latest results as the local baseline, e.g. on the commit a change is compared against
+tasks.register<Copy>("jmhBaseline") {
+    from(jmhResults)
+    into(jmhBaselineFile.asFile.parentFile)
+    rename { jmhBaselineFile.asFile.name }
+}
+
+// Prints score and allocation changes against the baseline; -PjmhMaxRegression=10 fails above 10 %
+tasks.register("jmhCompare") {
+    val maxRegression = providers.gradleProperty("jmhMaxRegression").map { it.toDouble() }
+    inputs.files(jmhResults, jmhBaselineFile)
+    doLast {
+        fun load(file: File): Map<String, Map<*, *>> =
+            (groovy.json.JsonSlurper().parse(file) as List<*>).associate {
+                val run = it as Map<*, *>
+                val params = (run["params"] as Map<*, *>?)?.entries?.joinToString(",") { e -> "${e.key}=${e.value}" }
+                "${run["benchmark"]}${if (params == null) "" else " [$params]"}" to run
+            }
+
+        fun score(run: Map<*, *>, metric: String?): Double? {
+            val value = if (metric == null) run["primaryMetric"] else (run["secondaryMetrics"] as Map<*, *>)[metric]
+            return ((value as Map<*, *>?)?.get("score") as Number?)?.toDouble()
+        }
+
+        if (!jmhBaselineFile.asFile.isFile) {
+            throw GradleException("No baseline at ${jmhBaselineFile.asFile}; run jmh and jmhBaseline on the reference commit first")
+        }
+        val baseline = load(jmhBaselineFile.asFile)
+        val current = load(jmhResults.get().asFile)
+        val regressions = mutableListOf<String>()
+        for ((name, run) in current) {
+            val base = baseline[name] ?: continue
+            val now = score(run, null) ?: continue
+            val before = score(base, null) ?: continue
+            // Throughput grows when faster, time based modes shrink
+            val change = if (run["mode"] == "thrpt") (now - before) / before * 100 else (before - now) / before * 100
+            val alloc = score(run, "gc.alloc.rate.norm")
+            val baseAlloc = score(base, "gc.alloc.rate.norm")
+            println(String.format("%-90s %12.3f -> %12.3f %+7.1f%%  alloc %s -> %s B/op", name, before, now, change,
+                baseAlloc?.let { String.format("%.0f", it) } ?: "-", alloc?.let { String.format("%.0f", it) } ?: "-"))
+            if (maxRegression.isPresent && change < -maxRegression.get()) {
+                regressions.add(name)
+            }
+        }
+        if (regressions.isNotEmpty()) {
+            throw GradleException("Benchmarks regressed beyond ${maxRegression.get()} %: $regressions")
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.bench;
+
+import io.github.sanfengandroid.sdexter.sdk.rule.MultiPatternMatcher;
+import io.github.sanfengandroid.sdexter.sdk.rule.PatternSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Matches {@code RemoveFields.namePatterns} against field names and
+ * {@code RemoveMethods.protoPatterns} against dex form method prototypes, comparing a
+ * {@code java.util.regex} loop with {@link MultiPatternMatcher} and {@link PatternSet}, the latter
+ * also on NUL-terminated name bytes as laid out in a string pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MemberPatternBenchmark {
+
+    private static final int INPUTS = 4096;
+
+    @Param({"5", "50"})
+    public int patternCount;
+
+    private String[] fieldNames;
+    private String[] methodProtos;
+    private Pattern[] fieldRegex;
+    private Pattern[] protoRegex;
+    private MultiPatternMatcher fieldMatcher;
+    private MultiPatternMatcher protoMatcher;
+    private PatternSet fieldSet;
+    private PatternSet protoSet;
+    private ByteBuffer namePool;
+    private int[] nameOffsets;
+
+    @Setup
+    public void setup() {
+        String[] fieldPatterns = SyntheticNames.fieldPatterns(patternCount);
+        String[] protoPatterns = SyntheticNames.protoPatterns(patternCount);
+        fieldRegex = compile(fieldPatterns);
+        protoRegex = compile(protoPatterns);
+        fieldMatcher = MultiPatternMatcher.compile(fieldPatterns);
+        protoMatcher = MultiPatternMatcher.compile(protoPatterns);
+        fieldSet = PatternSet.compile(fieldPatterns);
+        protoSet = PatternSet.compile(protoPatterns);
+        fieldNames = SyntheticNames.fieldNames(INPUTS);
+        methodProtos = SyntheticNames.methodProtos(INPUTS);
+        byte[][] encoded = new byte[INPUTS][];
+        int size = 0;
+        for (int i = 0; i < INPUTS; i++) {
+            // Synthetic names are ASCII, whose MUTF-8 form is the same
+            encoded[i] = fieldNames[i].getBytes(StandardCharsets.US_ASCII);
+            size += encoded[i].length + 1;
+        }
+        namePool = ByteBuffer.allocate(size);
+        nameOffsets = new int[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            nameOffsets[i] = namePool.position();
+            namePool.put(encoded[i]).put((byte) 0);
+        }
+    }
+
+    private static Pattern[] compile(String[] sources) {
+        Pattern[] patterns = new Pattern[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            patterns[i] = Pattern.compile(sources[i]);
+        }
+        return patterns;
+    }
+
+    private static int regexMatch(Pattern[] patterns, String input) {
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i].matcher(input).matches()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void fieldNamesRegexLoop(Blackhole bh) {
+        for (String name : fieldNames) {
+            bh.consume(regexMatch(fieldRegex, name));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void fieldNamesMatcher(Blackhole bh) {
+        for (String name : fieldNames) {
+            bh.consume(fieldMatcher.match(name));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void fieldNamesPatternSet(Blackhole bh) {
+        for (String name : fieldNames) {
+            bh.consume(fieldSet.match(name));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void fieldNamesPatternSetBytes(Blackhole bh) {
+        for (int i = 0; i < INPUTS; i++) {
+            int match = fieldSet.match(namePool, nameOffsets[i]);
+            bh.consume(match == PatternSet.NEEDS_TEXT ? fieldSet.match(fieldNames[i]) : match);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void methodProtosRegexLoop(Blackhole bh) {
+        for (String proto : methodProtos) {
+            bh.consume(regexMatch(protoRegex, proto));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void methodProtosMatcher(Blackhole bh) {
+        for (String proto : methodProtos) {
+            bh.consume(protoMatcher.match(proto));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void methodProtosPatternSet(Blackhole bh) {
+        for (String proto : methodProtos) {
+            bh.consume(protoSet.match(proto));
+        }
+    }
+}
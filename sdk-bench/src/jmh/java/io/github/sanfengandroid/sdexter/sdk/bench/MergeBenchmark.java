@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.bench;
+
+import io.github.sanfengandroid.sdexter.sdk.dex.ClassData;
+import io.github.sanfengandroid.sdexter.sdk.dex.DebugInfoFilter;
+import io.github.sanfengandroid.sdexter.sdk.dex.DexFile;
+import io.github.sanfengandroid.sdexter.sdk.dex.DexOutput;
+import io.github.sanfengandroid.sdexter.sdk.dex.PassThroughWriter;
+import io.github.sanfengandroid.sdexter.sdk.dex.ReferenceIndex;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleFlags;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleManifest;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleManifestWriter;
+import io.github.sanfengandroid.sdexter.sdk.merge.ClassPipeline;
+import io.github.sanfengandroid.sdexter.sdk.merge.ClassPlan;
+import io.github.sanfengandroid.sdexter.sdk.merge.Reachability;
+import io.github.sanfengandroid.sdexter.sdk.rule.RemovalRules;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end passes over synthetic applications of 10k, 100k and 500k methods.
+ * <p>
+ * {@code parse} decodes every {@code class_data_item}; {@code pipeline} and
+ * {@code pipelineSequential} apply class rules and build the pools; {@code merge} additionally
+ * copies the code of every kept class into a fresh output through {@link PassThroughWriter}.
+ * Every 50th class carries a mirror rule and one package in a hundred is removed.
+ * </p>
+ * {@code reachability} opts every class into {@code removeUnusedMethods} and starts from the first
+ * class of each file, so the worklist has to follow the whole call chain. {@code referenceIndex}
+ * builds the inverted reference index of every file. {@code debugStrip} strips all debug info and
+ * source files through {@link DebugInfoFilter} and copies the code of every class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MergeBenchmark {
+
+    @Param({"10000", "100000", "500000"})
+    public int methods;
+
+    private byte[][] files;
+    private RuleManifest manifest;
+    private RemovalRules removal;
+    private RuleManifest unusedManifest;
+    private List<String> entryPoints;
+
+    @Setup
+    public void setup() {
+        files = SyntheticDex.generate(methods);
+        int classes = (methods + SyntheticDex.METHODS_PER_CLASS - 1) / SyntheticDex.METHODS_PER_CLASS;
+        RuleManifestWriter writer = new RuleManifestWriter();
+        for (int c = 0; c < classes; c += 50) {
+            writer.classEntry(SyntheticDex.classDescriptor(c))
+                    .setFlags(RuleFlags.CLASS_REMOVE_SOURCE_FILE)
+                    .addRemoveMethods(new String[]{"m00(I)I"}, new String[]{"m1[0-4]\\(I\\)I"});
+        }
+        manifest = RuleManifest.wrap(ByteBuffer.wrap(writer.toByteArray()));
+        int packages = (classes + SyntheticDex.CLASSES_PER_PACKAGE - 1) / SyntheticDex.CLASSES_PER_PACKAGE;
+        String[] removed = new String[(packages + 99) / 100];
+        for (int i = 0; i < removed.length; i++) {
+            removed[i] = String.format("com.bench.p%04d", i * 100 + 1);
+        }
+        removal = RemovalRules.of(new String[0], new String[0], removed, new String[0]);
+
+        RuleManifestWriter unused = new RuleManifestWriter();
+        entryPoints = new ArrayList<>();
+        int perFile = SyntheticDex.MAX_METHODS_PER_FILE / SyntheticDex.METHODS_PER_CLASS;
+        for (int c = 0; c < classes; c++) {
+            if (c % perFile == 0) {
+                entryPoints.add(SyntheticDex.classDescriptor(c));
+            } else {
+                unused.classEntry(SyntheticDex.classDescriptor(c))
+                        .setFlags(RuleFlags.CLASS_REMOVE_UNUSED_FIELDS | RuleFlags.CLASS_REMOVE_UNUSED_METHODS);
+            }
+        }
+        unusedManifest = RuleManifest.wrap(ByteBuffer.wrap(unused.toByteArray()));
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) {
+        for (byte[] file : files) {
+            DexFile dex = DexFile.wrap(ByteBuffer.wrap(file));
+            for (int i = 0; i < dex.classDefCount(); i++) {
+                bh.consume(dex.classData(i));
+            }
+        }
+    }
+
+    @Benchmark
+    public void pipeline(Blackhole bh) {
+        for (byte[] file : files) {
+            bh.consume(new ClassPipeline(DexFile.wrap(ByteBuffer.wrap(file)), manifest, removal).run());
+        }
+    }
+
+    @Benchmark
+    public void pipelineSequential(Blackhole bh) {
+        for (byte[] file : files) {
+            bh.consume(new ClassPipeline(DexFile.wrap(ByteBuffer.wrap(file)), manifest, removal).runSequential());
+        }
+    }
+
+    @Benchmark
+    public void reachability(Blackhole bh) {
+        for (byte[] file : files) {
+            bh.consume(Reachability.analyze(DexFile.wrap(ByteBuffer.wrap(file)), unusedManifest, null, entryPoints));
+        }
+    }
+
+    @Benchmark
+    public void referenceIndex(Blackhole bh) {
+        for (byte[] file : files) {
+            bh.consume(ReferenceIndex.build(DexFile.wrap(ByteBuffer.wrap(file))));
+        }
+    }
+
+    @Benchmark
+    public void debugStrip(Blackhole bh) {
+        for (byte[] file : files) {
+            DexFile dex = DexFile.wrap(ByteBuffer.wrap(file));
+            DebugInfoFilter filter = DebugInfoFilter.select(dex, manifest, true, true);
+            DexOutput out = new DexOutput(file.length);
+            PassThroughWriter writer = new PassThroughWriter(dex, filter.getRemap(), out);
+            for (int i = 0; i < dex.classDefCount(); i++) {
+                ClassData data = dex.classData(i);
+                if (data != null) {
+                    bh.consume(filter.copyClassCode(writer, data));
+                }
+            }
+            bh.consume(out.size());
+        }
+    }
+
+    @Benchmark
+    public void merge(Blackhole bh) {
+        for (byte[] file : files) {
+            DexFile dex = DexFile.wrap(ByteBuffer.wrap(file));
+            ClassPipeline.Result result = new ClassPipeline(dex, manifest, removal).run();
+            DexOutput out = new DexOutput(file.length);
+            PassThroughWriter writer = new PassThroughWriter(dex, result.getRemap(), out);
+            for (int i = 0; i < result.size(); i++) {
+                ClassPlan plan = result.plan(i);
+                if (plan.isRemoved()) {
+                    continue;
+                }
+                ClassData data = dex.classData(i);
+                if (data != null) {
+                    bh.consume(writer.copyClassCode(data));
+                }
+            }
+            bh.consume(out.size());
+        }
+    }
+}
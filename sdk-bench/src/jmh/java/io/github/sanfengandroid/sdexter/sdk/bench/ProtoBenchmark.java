@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.bench;
+
+import io.github.sanfengandroid.sdexter.sdk.dex.DexFile;
+import io.github.sanfengandroid.sdexter.sdk.dex.MethodKeys;
+import io.github.sanfengandroid.sdexter.sdk.rule.MethodProto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds dex form method prototypes, {@code name(params)return}, from {@code method_id_item}s,
+ * the way {@code RemoveMethods} rules see them.
+ * <p>
+ * {@code cachedDexForm} serves the same strings from {@link MethodKeys}, {@code keyLookup} matches
+ * every method against resolved rule prototypes without building strings, and {@code parseProto}
+ * parses readable and dex form rule prototypes.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProtoBenchmark {
+
+    private static final int METHODS = SyntheticDex.MAX_METHODS_PER_FILE;
+
+    private DexFile dex;
+    private String[] readable;
+    private MethodKeys keys;
+    private MethodKeys.Lookup lookup;
+
+    @Setup
+    public void setup() {
+        dex = DexFile.wrap(ByteBuffer.wrap(SyntheticDex.generate(METHODS)[0]));
+        readable = SyntheticNames.methodProtos(4096);
+        keys = dex.methodKeys();
+        String[] rules = new String[64];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = keys.dexForm(i * (METHODS / rules.length));
+        }
+        lookup = keys.lookup(rules);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(METHODS)
+    public void dexMethodProto(Blackhole bh) {
+        for (int i = 0; i < METHODS; i++) {
+            bh.consume(dex.string(dex.methodName(i)) + dex.protoDescriptor(dex.methodProto(i)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(METHODS)
+    public void cachedDexForm(Blackhole bh) {
+        for (int i = 0; i < METHODS; i++) {
+            bh.consume(keys.dexForm(i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(METHODS)
+    public void keyLookup(Blackhole bh) {
+        for (int i = 0; i < METHODS; i++) {
+            bh.consume(lookup.get(keys.key(i)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4096)
+    public void parseProto(Blackhole bh) {
+        for (String proto : readable) {
+            bh.consume(MethodProto.parse(proto));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4096)
+    public void splitParameters(Blackhole bh) {
+        for (String proto : readable) {
+            int open = proto.indexOf('(');
+            int close = proto.indexOf(')', open);
+            int count = 0;
+            for (int i = open + 1; i < close; i++) {
+                char c = proto.charAt(i);
+                while (c == '[') {
+                    c = proto.charAt(++i);
+                }
+                if (c == 'L') {
+                    i = proto.indexOf(';', i);
+                }
+                count++;
+            }
+            bh.consume(count);
+            bh.consume(proto.substring(close + 1));
+        }
+    }
+}
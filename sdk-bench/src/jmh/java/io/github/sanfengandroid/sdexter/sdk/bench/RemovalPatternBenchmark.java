@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.bench;
+
+import io.github.sanfengandroid.sdexter.sdk.rule.RemovalRules;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link RemovalRules} against testing {@code removeClassPatterns} one by one with
+ * {@code java.util.regex}, over a fixed set of class descriptors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RemovalPatternBenchmark {
+
+    private static final int DESCRIPTORS = 4096;
+
+    @Param({"50", "500", "5000"})
+    public int patternCount;
+
+    private String[] descriptors;
+    private Pattern[] patterns;
+    private RemovalRules rules;
+
+    @Setup
+    public void setup() {
+        String[] sources = SyntheticNames.classPatterns(patternCount);
+        patterns = new Pattern[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            patterns[i] = Pattern.compile(sources[i]);
+        }
+        rules = RemovalRules.of(new String[0], sources, new String[0], new String[0]);
+        descriptors = SyntheticNames.descriptors(DESCRIPTORS, patternCount);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DESCRIPTORS)
+    public void regexLoop(Blackhole bh) {
+        for (String descriptor : descriptors) {
+            String name = descriptor.substring(1, descriptor.length() - 1);
+            int match = -1;
+            for (int i = 0; i < patterns.length; i++) {
+                if (patterns[i].matcher(name).matches()) {
+                    match = i;
+                    break;
+                }
+            }
+            bh.consume(match);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DESCRIPTORS)
+    public void removalRules(Blackhole bh) {
+        for (String descriptor : descriptors) {
+            bh.consume(rules.match(descriptor));
+        }
+    }
+}
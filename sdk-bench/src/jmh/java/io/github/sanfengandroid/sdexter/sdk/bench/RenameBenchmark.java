@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.bench;
+
+import io.github.sanfengandroid.sdexter.sdk.rule.PackageRenamer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renames type descriptors and method prototypes with {@link PackageRenamer}, against a loop
+ * testing every {@code renamePackages} pair with {@link String#startsWith(String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RenameBenchmark {
+
+    private static final int INPUTS = 4096;
+
+    @Param({"10", "100", "1000"})
+    public int renameCount;
+
+    private String[] descriptors;
+    private String[] protos;
+    private String[] fromPrefixes;
+    private String[] toPrefixes;
+    private PackageRenamer renamer;
+    private PackageRenamer smallCacheRenamer;
+
+    @Setup
+    public void setup() {
+        String[] pairs = new String[renameCount * 2];
+        fromPrefixes = new String[renameCount];
+        toPrefixes = new String[renameCount];
+        for (int i = 0; i < renameCount; i++) {
+            String from = SyntheticNames.vendorPackage(i);
+            String to = "shadow/v" + i;
+            pairs[i * 2] = from.replace('/', '.');
+            pairs[i * 2 + 1] = to.replace('/', '.');
+            fromPrefixes[i] = "L" + from + "/";
+            toPrefixes[i] = "L" + to + "/";
+        }
+        renamer = PackageRenamer.of(pairs, new String[0]);
+        smallCacheRenamer = PackageRenamer.of(pairs, new String[0], 16);
+        descriptors = SyntheticNames.descriptors(INPUTS, renameCount);
+        protos = SyntheticNames.protos(INPUTS, descriptors);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void prefixLoop(Blackhole bh) {
+        for (String descriptor : descriptors) {
+            String result = descriptor;
+            for (int i = 0; i < fromPrefixes.length; i++) {
+                if (descriptor.startsWith(fromPrefixes[i])) {
+                    result = toPrefixes[i] + descriptor.substring(fromPrefixes[i].length());
+                    break;
+                }
+            }
+            bh.consume(result);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void renameType(Blackhole bh) {
+        for (String descriptor : descriptors) {
+            bh.consume(renamer.renameType(descriptor));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void renameTypeSmallCache(Blackhole bh) {
+        for (String descriptor : descriptors) {
+            bh.consume(smallCacheRenamer.renameType(descriptor));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void renameProto(Blackhole bh) {
+        for (String proto : protos) {
+            bh.consume(renamer.renameProto(proto));
+        }
+    }
+}
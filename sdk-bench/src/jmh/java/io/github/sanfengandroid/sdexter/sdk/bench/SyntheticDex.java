@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.bench;
+
+import io.github.sanfengandroid.sdexter.sdk.dex.DexOutput;
+import io.github.sanfengandroid.sdexter.sdk.dex.Mutf8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.Adler32;
+
+/**
+ * Builds valid DEX files of a requested size without external tools.
+ * <p>
+ * Every class {@code Lcom/bench/pNNNN/CNNNNNN;} holds {@link #METHODS_PER_CLASS} public static
+ * {@code (I)I} methods. Each body loads a per-class string, calls the method with the same name
+ * in the next class and returns its result, so all id sections and index operands are exercised.
+ * </p>
+ * Method references of one DEX file are limited to 64K, so larger sizes are split into several
+ * files of at most {@link #MAX_METHODS_PER_FILE} methods, like a multidex application.
+ */
+final class SyntheticDex {
+
+    static final int METHODS_PER_CLASS = 20;
+    static final int CLASSES_PER_PACKAGE = 100;
+    static final int MAX_METHODS_PER_FILE = 50_000;
+
+    private static final int ACC_PUBLIC = 0x1;
+    private static final int ACC_STATIC = 0x8;
+    private static final int NO_INDEX = -1;
+    private static final int CODE_UNITS = 7;
+
+    private SyntheticDex() {
+    }
+
+    static String classDescriptor(int index) {
+        return String.format("Lcom/bench/p%04d/C%06d;", index / CLASSES_PER_PACKAGE, index);
+    }
+
+    static String methodName(int index) {
+        return String.format("m%02d", index);
+    }
+
+    /**
+     * @param methods the approximate method count, rounded up to whole classes
+     * @return the DEX files
+     */
+    static byte[][] generate(int methods) {
+        int classes = (methods + METHODS_PER_CLASS - 1) / METHODS_PER_CLASS;
+        int perFile = MAX_METHODS_PER_FILE / METHODS_PER_CLASS;
+        byte[][] files = new byte[(classes + perFile - 1) / perFile][];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = generateFile(i * perFile, Math.min(perFile, classes - i * perFile));
+        }
+        return files;
+    }
+
+    private static byte[] generateFile(int firstClass, int classes) {
+        TreeSet<String> stringSet = new TreeSet<>();
+        stringSet.add("I");
+        stringSet.add("II");
+        stringSet.add("Ljava/lang/Object;");
+        for (int m = 0; m < METHODS_PER_CLASS; m++) {
+            stringSet.add(methodName(m));
+        }
+        for (int c = 0; c < classes; c++) {
+            stringSet.add(classDescriptor(firstClass + c));
+            stringSet.add(String.format("s%06d", firstClass + c));
+        }
+        List<String> strings = new ArrayList<>(stringSet);
+        Map<String, Integer> stringIndex = new HashMap<>(strings.size() * 2);
+        for (int i = 0; i < strings.size(); i++) {
+            stringIndex.put(strings.get(i), i);
+        }
+        // Types sort by descriptor string index: I, the classes, then java/lang/Object
+        int typeCount = classes + 2;
+        int objectType = classes + 1;
+        int methodCount = classes * METHODS_PER_CLASS;
+
+        int stringIdsOff = 0x70;
+        int typeIdsOff = stringIdsOff + strings.size() * 4;
+        int protoIdsOff = typeIdsOff + typeCount * 4;
+        int methodIdsOff = protoIdsOff + 12;
+        int classDefsOff = methodIdsOff + methodCount * 8;
+        int dataOff = classDefsOff + classes * 32;
+
+        DexOutput out = new DexOutput(dataOff + methodCount * 48);
+        out.write(new byte[dataOff]);
+        // type_list of (I)I
+        int typeListOff = out.size();
+        out.writeInt(1);
+        out.writeShort(0);
+        out.align(4);
+        int stringDataOff = out.size();
+        int[] stringOffsets = new int[strings.size()];
+        for (int i = 0; i < strings.size(); i++) {
+            String value = strings.get(i);
+            stringOffsets[i] = out.size();
+            out.writeUleb128(value.length());
+            out.write(Mutf8.encode(value));
+            out.writeByte(0);
+        }
+        out.align(4);
+        int codeOff = out.size();
+        int[] codeOffsets = new int[methodCount];
+        for (int c = 0; c < classes; c++) {
+            int constant = stringIndex.get(String.format("s%06d", firstClass + c));
+            for (int m = 0; m < METHODS_PER_CLASS; m++) {
+                int method = c * METHODS_PER_CLASS + m;
+                int callee = ((c + 1) % classes) * METHODS_PER_CLASS + m;
+                codeOffsets[method] = out.size();
+                out.writeShort(2);
+                out.writeShort(1);
+                out.writeShort(1);
+                out.writeShort(0);
+                out.writeInt(0);
+                out.writeInt(CODE_UNITS);
+                // const-string v0, constant
+                out.writeShort(0x001a);
+                out.writeShort(constant);
+                // invoke-static {v1}, callee
+                out.writeShort(0x1071);
+                out.writeShort(callee);
+                out.writeShort(0x0001);
+                // move-result v0; return v0
+                out.writeShort(0x000a);
+                out.writeShort(0x000f);
+                out.align(4);
+            }
+        }
+        int classDataOff = out.size();
+        int[] classDataOffsets = new int[classes];
+        for (int c = 0; c < classes; c++) {
+            classDataOffsets[c] = out.size();
+            out.writeUleb128(0);
+            out.writeUleb128(0);
+            out.writeUleb128(METHODS_PER_CLASS);
+            out.writeUleb128(0);
+            for (int m = 0; m < METHODS_PER_CLASS; m++) {
+                out.writeUleb128(m == 0 ? c * METHODS_PER_CLASS : 1);
+                out.writeUleb128(ACC_PUBLIC | ACC_STATIC);
+                out.writeUleb128(codeOffsets[c * METHODS_PER_CLASS + m]);
+            }
+        }
+        out.align(4);
+        int mapOff = out.size();
+        int[][] map = {
+                {0x0000, 1, 0},
+                {0x0001, strings.size(), stringIdsOff},
+                {0x0002, typeCount, typeIdsOff},
+                {0x0003, 1, protoIdsOff},
+                {0x0005, methodCount, methodIdsOff},
+                {0x0006, classes, classDefsOff},
+                {0x1001, 1, typeListOff},
+                {0x2002, strings.size(), stringDataOff},
+                {0x2001, methodCount, codeOff},
+                {0x2000, classes, classDataOff},
+                {0x1000, 1, mapOff},
+        };
+        out.writeInt(map.length);
+        for (int[] item : map) {
+            out.writeShort(item[0]);
+            out.writeShort(0);
+            out.writeInt(item[1]);
+            out.writeInt(item[2]);
+        }
+        int fileSize = out.size();
+
+        for (int i = 0; i < strings.size(); i++) {
+            out.putInt(stringIdsOff + i * 4, stringOffsets[i]);
+        }
+        out.putInt(typeIdsOff, stringIndex.get("I"));
+        for (int c = 0; c < classes; c++) {
+            out.putInt(typeIdsOff + (c + 1) * 4, stringIndex.get(classDescriptor(firstClass + c)));
+        }
+        out.putInt(typeIdsOff + objectType * 4, stringIndex.get("Ljava/lang/Object;"));
+        out.putInt(protoIdsOff, stringIndex.get("II"));
+        out.putInt(protoIdsOff + 4, 0);
+        out.putInt(protoIdsOff + 8, typeListOff);
+        for (int c = 0; c < classes; c++) {
+            for (int m = 0; m < METHODS_PER_CLASS; m++) {
+                int pos = methodIdsOff + (c * METHODS_PER_CLASS + m) * 8;
+                out.putShort(pos, c + 1);
+                out.putShort(pos + 2, 0);
+                out.putInt(pos + 4, stringIndex.get(methodName(m)));
+            }
+            int pos = classDefsOff + c * 32;
+            out.putInt(pos, c + 1);
+            out.putInt(pos + 4, ACC_PUBLIC);
+            out.putInt(pos + 8, objectType);
+            out.putInt(pos + 12, 0);
+            out.putInt(pos + 16, NO_INDEX);
+            out.putInt(pos + 20, 0);
+            out.putInt(pos + 24, classDataOffsets[c]);
+            out.putInt(pos + 28, 0);
+        }
+        writeHeader(out, fileSize, mapOff, strings.size(), stringIdsOff, typeCount, typeIdsOff, protoIdsOff,
+                methodCount, methodIdsOff, classes, classDefsOff, dataOff);
+        return out.toByteArray();
+    }
+
+    private static void writeHeader(DexOutput out, int fileSize, int mapOff, int strings, int stringIdsOff,
+                                    int types, int typeIdsOff, int protoIdsOff, int methods, int methodIdsOff,
+                                    int classes, int classDefsOff, int dataOff) {
+        byte[] magic = {'d', 'e', 'x', '\n', '0', '3', '5', 0};
+        byte[] data = out.array();
+        System.arraycopy(magic, 0, data, 0, magic.length);
+        out.putInt(32, fileSize);
+        out.putInt(36, 0x70);
+        out.putInt(40, 0x12345678);
+        out.putInt(52, mapOff);
+        out.putInt(56, strings);
+        out.putInt(60, stringIdsOff);
+        out.putInt(64, types);
+        out.putInt(68, typeIdsOff);
+        out.putInt(72, 1);
+        out.putInt(76, protoIdsOff);
+        out.putInt(88, methods);
+        out.putInt(92, methodIdsOff);
+        out.putInt(96, classes);
+        out.putInt(100, classDefsOff);
+        out.putInt(104, fileSize - dataOff);
+        out.putInt(108, dataOff);
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            sha1.update(data, 32, fileSize - 32);
+            System.arraycopy(sha1.digest(), 0, data, 12, 20);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        Adler32 adler = new Adler32();
+        adler.update(data, 12, fileSize - 12);
+        out.putInt(8, (int) adler.getValue());
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.bench;
+
+import java.util.Random;
+
+/**
+ * Deterministic generators for benchmark inputs shaped like real application class names.
+ */
+final class SyntheticNames {
+
+    private static final String[] ROOTS = {"com", "org", "net", "io", "androidx", "kotlin"};
+    private static final String[] WORDS = {
+            "app", "core", "data", "ui", "net", "util", "model", "view", "internal", "impl",
+            "cache", "http", "json", "image", "store", "auth", "media", "widget", "base", "common"
+    };
+    private static final String[] SUFFIXES = {"", "Impl", "Factory", "Helper", "Adapter", "$1", "$Companion", "Kt"};
+
+    private SyntheticNames() {
+    }
+
+    /**
+     * Internal package name of vendor {@code index}, e.g. {@code com/vendor12/data}.
+     */
+    static String vendorPackage(int index) {
+        return ROOTS[index % ROOTS.length] + "/vendor" + index + "/" + WORDS[index % WORDS.length];
+    }
+
+    /**
+     * Removal patterns in the shapes most configurations use: package wildcards, suffix checks
+     * and small alternations.
+     */
+    static String[] classPatterns(int count) {
+        String[] patterns = new String[count];
+        for (int i = 0; i < count; i++) {
+            String pkg = vendorPackage(i);
+            switch (i % 4) {
+                case 0:
+                    patterns[i] = pkg + "/.*";
+                    break;
+                case 1:
+                    patterns[i] = pkg + "/[A-Z][A-Za-z]*Impl";
+                    break;
+                case 2:
+                    patterns[i] = pkg + "/(internal|impl)/.*";
+                    break;
+                default:
+                    patterns[i] = ".*/vendor" + i + "/.*\\$[0-9]+";
+                    break;
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * Class descriptors; about a quarter of them fall into the generated vendor packages.
+     */
+    static String[] descriptors(int count, int vendors) {
+        Random random = new Random(42);
+        String[] descriptors = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder("L");
+            if (random.nextInt(4) == 0) {
+                sb.append(vendorPackage(random.nextInt(vendors)));
+            } else {
+                sb.append(ROOTS[random.nextInt(ROOTS.length)]).append("/example");
+                int depth = 1 + random.nextInt(3);
+                for (int d = 0; d < depth; d++) {
+                    sb.append('/').append(WORDS[random.nextInt(WORDS.length)]);
+                }
+            }
+            if (random.nextInt(3) == 0) {
+                sb.append('/').append(random.nextBoolean() ? "internal" : "impl");
+            }
+            sb.append('/').append(Character.toUpperCase(WORDS[random.nextInt(WORDS.length)].charAt(0)))
+                    .append(WORDS[random.nextInt(WORDS.length)])
+                    .append(SUFFIXES[random.nextInt(SUFFIXES.length)])
+                    .append(';');
+            descriptors[i] = sb.toString();
+        }
+        return descriptors;
+    }
+
+    /**
+     * {@code RemoveFields.namePatterns} in the usual shapes: literals, prefixes, suffixes and
+     * small alternations.
+     */
+    static String[] fieldPatterns(int count) {
+        String[] patterns = new String[count];
+        for (int i = 0; i < count; i++) {
+            String word = WORDS[i % WORDS.length];
+            switch (i % 4) {
+                case 0:
+                    patterns[i] = "m" + capitalize(word) + i;
+                    break;
+                case 1:
+                    patterns[i] = word + i + ".*";
+                    break;
+                case 2:
+                    patterns[i] = ".*" + capitalize(word) + "Cache" + i;
+                    break;
+                default:
+                    patterns[i] = "(s|m)" + capitalize(word) + "[0-9]+_" + i;
+                    break;
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * {@code RemoveMethods.protoPatterns} over dex form prototypes.
+     */
+    static String[] protoPatterns(int count) {
+        String[] patterns = new String[count];
+        for (int i = 0; i < count; i++) {
+            String word = WORDS[i % WORDS.length];
+            switch (i % 4) {
+                case 0:
+                    patterns[i] = "get" + capitalize(word) + i + "\\(\\)V";
+                    break;
+                case 1:
+                    patterns[i] = "on" + capitalize(word) + i + "\\(.*\\)V";
+                    break;
+                case 2:
+                    patterns[i] = ".*\\(L" + vendorPackage(i) + "/[A-Za-z]+;\\)Z";
+                    break;
+                default:
+                    patterns[i] = "access\\$[0-9]+" + i + "\\(.*";
+                    break;
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * Field names, mostly not matching any pattern.
+     */
+    static String[] fieldNames(int count) {
+        Random random = new Random(7);
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            String word = capitalize(WORDS[random.nextInt(WORDS.length)]);
+            names[i] = (random.nextBoolean() ? "m" : "s") + word + random.nextInt(64);
+        }
+        return names;
+    }
+
+    /**
+     * Method prototypes in dex form, e.g. {@code onData3(ILjava/lang/String;)V}.
+     */
+    static String[] methodProtos(int count) {
+        Random random = new Random(11);
+        String[] params = {"", "I", "J", "Z", "Ljava/lang/String;", "Landroid/os/Bundle;", "[B", "ILjava/lang/Object;"};
+        String[] returns = {"V", "Z", "I", "Ljava/lang/String;"};
+        String[] verbs = {"get", "set", "on", "access$", "lambda$"};
+        String[] protos = new String[count];
+        for (int i = 0; i < count; i++) {
+            String name = verbs[random.nextInt(verbs.length)] + capitalize(WORDS[random.nextInt(WORDS.length)])
+                    + random.nextInt(64);
+            protos[i] = name + "(" + params[random.nextInt(params.length)] + ")" + returns[random.nextInt(returns.length)];
+        }
+        return protos;
+    }
+
+    /**
+     * Prototypes taking and returning the given class descriptors.
+     */
+    static String[] protos(int count, String[] descriptors) {
+        Random random = new Random(13);
+        String[] protos = new String[count];
+        for (int i = 0; i < count; i++) {
+            protos[i] = "(I" + descriptors[random.nextInt(descriptors.length)] + "[Ljava/lang/String;)"
+                    + descriptors[random.nextInt(descriptors.length)];
+        }
+        return protos;
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// The annotation processor ships on its own, so that javac does not run it for every project
+// that only has the SDK on its compile classpath
+plugins {
+    id("java-library")
+    id("maven-publish")
+}
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+    withSourcesJar()
+    withJavadocJar()
+}
+
+evaluationDependsOn(":sdk")
+version = project(":sdk").version
+
+dependencies {
+    implementation(project(":sdk"))
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+tasks.withType<Javadoc> {
+    val opts = options as StandardJavadocDocletOptions
+    opts.encoding = "UTF-8"
+    opts.charSet = "UTF-8"
+    opts.docEncoding = "UTF-8"
+    opts.locale = "en_US"
+}
+
+// ============ Maven publish configuration ============
+publishing {
+    publications {
+        create<MavenPublication>("mavenJava") {
+            from(components["java"])
+            groupId = "io.github.sanfengandroid"
+            artifactId = "sdexter-sdk-processor"
+            version = project.version.toString()
+
+            pom {
+                name.set("sdexter-sdk-processor")
+                description.set("Annotation processor compiling sdexter-sdk configurations into a rule manifest")
+                url.set("https://github.com/sanfengandroid/super-dexter-sdk")
+
+                licenses {
+                    license {
+                        name.set("The Apache License, Version 2.0")
+                        url.set("http://www.apache.org/licenses/LICENSE-2.0.txt")
+                    }
+                }
+
+                developers {
+                    developer {
+                        id.set("sanfengandroid")
+                        name.set("sanfengAndroid")
+                        email.set("")
+                    }
+                }
+
+                scm {
+                    connection.set("scm:git:git://github.com/sanfengandroid/super-dexter-sdk.git")
+                    developerConnection.set("scm:git:ssh://github.com:sanfengandroid/super-dexter-sdk.git")
+                    url.set("https://github.com/sanfengandroid/super-dexter-sdk")
+                }
+            }
+        }
+    }
+
+    repositories {
+        // Staged next to the SDK, so the JReleaser deploy of :sdk uploads both artifacts
+        maven {
+            name = "staging"
+            url = uri(project(":sdk").layout.buildDirectory.dir("staging-deploy"))
+        }
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.processor;
+
+import io.github.sanfengandroid.sdexter.sdk.BaseConfig;
+import io.github.sanfengandroid.sdexter.sdk.ClassConfig;
+import io.github.sanfengandroid.sdexter.sdk.FieldConfig;
+import io.github.sanfengandroid.sdexter.sdk.GlobalConfig;
+import io.github.sanfengandroid.sdexter.sdk.MethodConfig;
+import io.github.sanfengandroid.sdexter.sdk.ParamConfig;
+import io.github.sanfengandroid.sdexter.sdk.RemoveFields;
+import io.github.sanfengandroid.sdexter.sdk.RemoveMethods;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleFlags;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleManifest;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleManifestWriter;
+import io.github.sanfengandroid.sdexter.sdk.rule.GlobalRules;
+import io.github.sanfengandroid.sdexter.sdk.rule.MethodProto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor that validates the SDK configuration annotations and compiles them into
+ * a binary rule manifest.
+ * <p>
+ * The manifest is written to {@link RuleManifest#RESOURCE_PATH} in the class output directory.
+ * The merger memory-maps it through {@link RuleManifest} and looks up each class in constant time,
+ * instead of decoding {@link ClassConfig}, {@link FieldConfig}, {@link MethodConfig} and
+ * {@link ParamConfig} annotations from every mirror class again.
+ * </p>
+ * It is published as {@code sdexter-sdk-processor}, separately from the SDK, so that it only runs
+ * where it is put on the annotation processor path of the mirror project:
+ * <pre>
+ * dependencies {
+ *     compileOnly("io.github.sanfengandroid:sdexter-sdk:$version")
+ *     annotationProcessor("io.github.sanfengandroid:sdexter-sdk-processor:$version")
+ * }
+ * </pre>
+ */
+public class ConfigProcessor extends AbstractProcessor {
+
+    private final RuleManifestWriter writer = new RuleManifestWriter();
+    private final Map<String, TypeElement> globalConfigTypes = new LinkedHashMap<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> types = new LinkedHashSet<>();
+        types.add(GlobalConfig.class.getCanonicalName());
+        types.add(ClassConfig.class.getCanonicalName());
+        types.add(FieldConfig.class.getCanonicalName());
+        types.add(MethodConfig.class.getCanonicalName());
+        types.add(ParamConfig.class.getCanonicalName());
+        types.add(RemoveFields.class.getCanonicalName());
+        types.add(RemoveMethods.class.getCanonicalName());
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            checkGlobalConfigs();
+            writeManifest();
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(GlobalConfig.class)) {
+            processGlobalConfig((TypeElement) element);
+        }
+        Set<TypeElement> classes = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(ClassConfig.class)) {
+            classes.add((TypeElement) element);
+        }
+        collectEnclosing(classes, roundEnv.getElementsAnnotatedWith(FieldConfig.class));
+        collectEnclosing(classes, roundEnv.getElementsAnnotatedWith(MethodConfig.class));
+        collectEnclosing(classes, roundEnv.getElementsAnnotatedWith(RemoveFields.class));
+        collectEnclosing(classes, roundEnv.getElementsAnnotatedWith(RemoveMethods.class));
+        for (Element element : roundEnv.getElementsAnnotatedWith(ParamConfig.class)) {
+            collectEnclosing(classes, Set.of(element.getEnclosingElement()));
+        }
+        for (TypeElement type : classes) {
+            processClass(type);
+        }
+        return false;
+    }
+
+    private static void collectEnclosing(Set<TypeElement> classes, Set<? extends Element> members) {
+        for (Element member : members) {
+            Element owner = member.getKind().isClass() || member.getKind().isInterface()
+                    ? member : member.getEnclosingElement();
+            classes.add((TypeElement) owner);
+        }
+    }
+
+    private void processGlobalConfig(TypeElement type) {
+        globalConfigTypes.put(type.getQualifiedName().toString(), type);
+        TypeMirror base = processingEnv.getElementUtils().getTypeElement(BaseConfig.class.getCanonicalName()).asType();
+        if (!processingEnv.getTypeUtils().isSubtype(type.asType(), base)) {
+            error(type, "@GlobalConfig must be applied to a subclass of " + BaseConfig.class.getSimpleName());
+        }
+        GlobalConfig config = type.getAnnotation(GlobalConfig.class);
+        checkPatterns(type, "removeClassPatterns", config.removeClassPatterns());
+        checkPatterns(type, "removePackagePatterns", config.removePackagePatterns());
+        checkPairs(type, "renamePackages", config.renamePackages());
+        checkPairs(type, "renamePackagePatterns", config.renamePackagePatterns());
+        String[] renamePatterns = config.renamePackagePatterns();
+        for (int i = 0; i + 1 < renamePatterns.length; i += 2) {
+            checkPatterns(type, "renamePackagePatterns", new String[]{renamePatterns[i]});
+        }
+    }
+
+    /**
+     * Merges all {@link GlobalConfig} classes the way the merger will and reports their conflicts
+     * on the overridden class.
+     */
+    private void checkGlobalConfigs() {
+        if (globalConfigTypes.size() < 2) {
+            return;
+        }
+        Map<String, GlobalConfig> configs = new LinkedHashMap<>();
+        for (Map.Entry<String, TypeElement> entry : globalConfigTypes.entrySet()) {
+            configs.put(entry.getKey(), entry.getValue().getAnnotation(GlobalConfig.class));
+        }
+        for (GlobalRules.Conflict conflict : GlobalRules.merge(configs).getConflicts()) {
+            TypeElement type = globalConfigTypes.get(conflict.getName());
+            if (conflict.isError()) {
+                error(type, "@GlobalConfig " + conflict.getMessage());
+            } else {
+                warning(type, "@GlobalConfig " + conflict.getMessage());
+            }
+        }
+    }
+
+    private void processClass(TypeElement type) {
+        String descriptor = descriptorOf(type.asType());
+        RuleManifestWriter.ClassEntry entry = writer.classEntry(descriptor);
+        ClassConfig config = type.getAnnotation(ClassConfig.class);
+        if (config != null) {
+            if (config.remove() && config.replace()) {
+                error(type, "@ClassConfig remove and replace are mutually exclusive");
+            }
+            if (config.remove() && !config.rename().isEmpty()) {
+                error(type, "@ClassConfig cannot rename a removed class");
+            }
+            if (config.useMirrorSourceFile() && !config.sourceFile().isEmpty()) {
+                warning(type, "@ClassConfig sourceFile overrides useMirrorSourceFile");
+            }
+            if (config.removeSourceFile() && !config.sourceFile().isEmpty()) {
+                warning(type, "@ClassConfig sourceFile has no effect when removeSourceFile is set");
+            }
+            checkPatterns(type, "removeFields.namePatterns", config.removeFields().namePatterns());
+            checkPatterns(type, "removeMethods.protoPatterns", config.removeMethods().protoPatterns());
+            checkProtos(type, "removeMethods.value", config.removeMethods().value());
+            entry.setFlags(classFlags(config))
+                    .setRename(config.rename())
+                    .setSourceFile(config.sourceFile())
+                    .addRemoveFields(config.removeFields().value(), config.removeFields().namePatterns())
+                    .addRemoveMethods(config.removeMethods().value(), config.removeMethods().protoPatterns());
+        }
+        RemoveFields removeFields = type.getAnnotation(RemoveFields.class);
+        if (removeFields != null) {
+            checkPatterns(type, "namePatterns", removeFields.namePatterns());
+            entry.addRemoveFields(removeFields.value(), removeFields.namePatterns());
+        }
+        RemoveMethods removeMethods = type.getAnnotation(RemoveMethods.class);
+        if (removeMethods != null) {
+            checkPatterns(type, "protoPatterns", removeMethods.protoPatterns());
+            checkProtos(type, "value", removeMethods.value());
+            entry.addRemoveMethods(removeMethods.value(), removeMethods.protoPatterns());
+        }
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.FIELD) {
+                processField(entry, (VariableElement) member);
+            } else if (member.getKind() == ElementKind.METHOD || member.getKind() == ElementKind.CONSTRUCTOR) {
+                processMethod(entry, (ExecutableElement) member);
+            }
+        }
+    }
+
+    private void processField(RuleManifestWriter.ClassEntry entry, VariableElement field) {
+        FieldConfig config = field.getAnnotation(FieldConfig.class);
+        RemoveFields removeFields = field.getAnnotation(RemoveFields.class);
+        if (config == null && removeFields == null) {
+            return;
+        }
+        int flags = 0;
+        String rename = null;
+        if (config != null) {
+            if (config.remove() && !config.rename().isEmpty()) {
+                error(field, "@FieldConfig cannot rename a removed field");
+            }
+            if (config.removeInitialValue() && !field.getModifiers().contains(Modifier.STATIC)) {
+                warning(field, "@FieldConfig removeInitialValue does not apply to instance fields");
+            }
+            flags |= config.remove() ? RuleFlags.FIELD_REMOVE : 0;
+            flags |= config.removeAnnotations() ? RuleFlags.FIELD_REMOVE_ANNOTATIONS : 0;
+            flags |= config.removeInitialValue() ? RuleFlags.FIELD_REMOVE_INITIAL_VALUE : 0;
+            rename = config.rename();
+        }
+        if (removeFields != null) {
+            checkPatterns(field, "namePatterns", removeFields.namePatterns());
+            flags |= RuleFlags.FIELD_REMOVE_MARKED;
+            entry.addRemoveFields(removeFields.value(), removeFields.namePatterns());
+        }
+        entry.addField(field.getSimpleName().toString(), descriptorOf(field.asType()), flags, rename);
+    }
+
+    private void processMethod(RuleManifestWriter.ClassEntry entry, ExecutableElement method) {
+        MethodConfig config = method.getAnnotation(MethodConfig.class);
+        RemoveMethods removeMethods = method.getAnnotation(RemoveMethods.class);
+        boolean hasParams = false;
+        for (VariableElement param : method.getParameters()) {
+            hasParams |= param.getAnnotation(ParamConfig.class) != null;
+        }
+        if (config == null && removeMethods == null && !hasParams) {
+            return;
+        }
+        boolean constructor = method.getKind() == ElementKind.CONSTRUCTOR;
+        int flags = 0;
+        String rename = null;
+        if (config != null) {
+            if (config.remove() && !config.rename().isEmpty()) {
+                error(method, "@MethodConfig cannot rename a removed method");
+            }
+            if (constructor && !config.rename().isEmpty()) {
+                warning(method, "@MethodConfig rename is ignored on constructors");
+            }
+            if (constructor && config.removeCode()) {
+                warning(method, "@MethodConfig removeCode is ignored on constructors");
+            }
+            if (method.getModifiers().contains(Modifier.ABSTRACT) || method.getModifiers().contains(Modifier.NATIVE)) {
+                if (config.removeCode() || config.removeDbgInfo()) {
+                    warning(method, "@MethodConfig removeCode and removeDbgInfo have no effect on methods without code");
+                }
+            }
+            flags |= config.remove() ? RuleFlags.METHOD_REMOVE : 0;
+            flags |= config.removeAnnotations() ? RuleFlags.METHOD_REMOVE_ANNOTATIONS : 0;
+            flags |= config.removeParamAnnotations() ? RuleFlags.METHOD_REMOVE_PARAM_ANNOTATIONS : 0;
+            flags |= config.removeDbgInfo() ? RuleFlags.METHOD_REMOVE_DBG_INFO : 0;
+            flags |= config.removeCode() && !constructor ? RuleFlags.METHOD_REMOVE_CODE : 0;
+            rename = constructor ? null : config.rename();
+        }
+        if (removeMethods != null) {
+            checkPatterns(method, "protoPatterns", removeMethods.protoPatterns());
+            checkProtos(method, "value", removeMethods.value());
+            flags |= RuleFlags.METHOD_REMOVE_MARKED;
+            entry.addRemoveMethods(removeMethods.value(), removeMethods.protoPatterns());
+        }
+        String name = constructor ? "<init>" : method.getSimpleName().toString();
+        RuleManifestWriter.MethodEntry methodEntry = entry.addMethod(name, protoOf(method), flags, rename);
+        List<? extends VariableElement> params = method.getParameters();
+        for (int i = 0; i < params.size(); i++) {
+            ParamConfig paramConfig = params.get(i).getAnnotation(ParamConfig.class);
+            if (paramConfig != null) {
+                methodEntry.addParam(i, paramConfig.removeAnnotations() ? RuleFlags.PARAM_REMOVE_ANNOTATIONS : 0,
+                        paramConfig.rename());
+            }
+        }
+    }
+
+    private static long classFlags(ClassConfig config) {
+        long flags = 0;
+        flags |= config.removeSuperClass() ? RuleFlags.CLASS_REMOVE_SUPER_CLASS : 0;
+        flags |= config.removeInterfaces() ? RuleFlags.CLASS_REMOVE_INTERFACES : 0;
+        flags |= config.removeSourceFile() ? RuleFlags.CLASS_REMOVE_SOURCE_FILE : 0;
+        flags |= config.removeClassAnnotation() ? RuleFlags.CLASS_REMOVE_CLASS_ANNOTATION : 0;
+        flags |= config.removeFieldAnnotation() ? RuleFlags.CLASS_REMOVE_FIELD_ANNOTATION : 0;
+        flags |= config.removeMethodAnnotation() ? RuleFlags.CLASS_REMOVE_METHOD_ANNOTATION : 0;
+        flags |= config.removeParamAnnotation() ? RuleFlags.CLASS_REMOVE_PARAM_ANNOTATION : 0;
+        flags |= config.removeUnusedFields() ? RuleFlags.CLASS_REMOVE_UNUSED_FIELDS : 0;
+        flags |= config.removeUnusedMethods() ? RuleFlags.CLASS_REMOVE_UNUSED_METHODS : 0;
+        flags |= config.removeStaticFields() ? RuleFlags.CLASS_REMOVE_STATIC_FIELDS : 0;
+        flags |= config.removeInstanceFields() ? RuleFlags.CLASS_REMOVE_INSTANCE_FIELDS : 0;
+        flags |= config.removeDirectMethods() ? RuleFlags.CLASS_REMOVE_DIRECT_METHODS : 0;
+        flags |= config.removeVirtualMethods() ? RuleFlags.CLASS_REMOVE_VIRTUAL_METHODS : 0;
+        flags |= config.ignoreMirrorDefaultConstructor() ? RuleFlags.CLASS_IGNORE_MIRROR_DEFAULT_CONSTRUCTOR : 0;
+        flags |= config.removeStaticInit() ? RuleFlags.CLASS_REMOVE_STATIC_INIT : 0;
+        flags |= config.useMirrorSourceFile() ? RuleFlags.CLASS_USE_MIRROR_SOURCE_FILE : 0;
+        flags |= config.remove() ? RuleFlags.CLASS_REMOVE : 0;
+        flags |= config.replace() ? RuleFlags.CLASS_REPLACE : 0;
+        return flags;
+    }
+
+    private void writeManifest() {
+        if (writer.size() == 0) {
+            return;
+        }
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", RuleManifest.RESOURCE_PATH);
+            try (OutputStream out = file.openOutputStream()) {
+                writer.writeTo(out);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write rule manifest: " + e.getMessage());
+        }
+    }
+
+    private String protoOf(ExecutableElement method) {
+        StringBuilder sb = new StringBuilder("(");
+        for (VariableElement param : method.getParameters()) {
+            sb.append(descriptorOf(param.asType()));
+        }
+        return sb.append(')').append(descriptorOf(method.getReturnType())).toString();
+    }
+
+    private String descriptorOf(TypeMirror type) {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        switch (erased.getKind()) {
+            case VOID:
+                return "V";
+            case BOOLEAN:
+                return "Z";
+            case BYTE:
+                return "B";
+            case CHAR:
+                return "C";
+            case SHORT:
+                return "S";
+            case INT:
+                return "I";
+            case LONG:
+                return "J";
+            case FLOAT:
+                return "F";
+            case DOUBLE:
+                return "D";
+            case ARRAY:
+                return "[" + descriptorOf(((ArrayType) erased).getComponentType());
+            case DECLARED:
+                TypeElement element = (TypeElement) processingEnv.getTypeUtils().asElement(erased);
+                return "L" + processingEnv.getElementUtils().getBinaryName(element).toString().replace('.', '/') + ";";
+            default:
+                throw new IllegalArgumentException("Unsupported type " + type);
+        }
+    }
+
+    private void checkPatterns(Element element, String attribute, String[] patterns) {
+        for (String pattern : patterns) {
+            try {
+                Pattern.compile(pattern);
+            } catch (PatternSyntaxException e) {
+                error(element, attribute + " contains an invalid regular expression: " + e.getDescription() + " in \"" + pattern + "\"");
+            }
+        }
+    }
+
+    private void checkProtos(Element element, String attribute, String[] protos) {
+        for (String proto : protos) {
+            try {
+                MethodProto.parse(proto);
+            } catch (IllegalArgumentException e) {
+                error(element, attribute + " contains a malformed method prototype: \"" + proto + "\"");
+            }
+        }
+    }
+
+    private void checkPairs(Element element, String attribute, String[] values) {
+        if (values.length % 2 != 0) {
+            error(element, attribute + " must contain pairs of values, found " + values.length + " entries");
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private void warning(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+    }
+}
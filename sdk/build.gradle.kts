@@ -101,8 +101,15 @@ sourceSets {
     }
 }
 
+dependencies {
+    testImplementation(libs.junit)
+}
+
 tasks.named<JavaCompile>("compileJava") {
     dependsOn("generateBuildConfig")
+}
+
+tasks.withType<JavaCompile>().configureEach {
     options.encoding = "UTF-8"
 }
 
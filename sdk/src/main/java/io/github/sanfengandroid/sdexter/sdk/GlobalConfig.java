@@ -23,7 +23,13 @@ import java.lang.annotation.Target;
 /**
  * Global configuration for class and package deletion and renaming.
  * Must be applied to a subclass of {@link BaseConfig}.
- * Currently, only one implementation class is supported.
+ * <p>
+ * Several classes may be annotated, e.g. one per team. They are merged into one rule set by
+ * {@link io.github.sanfengandroid.sdexter.sdk.rule.GlobalRules}: removal lists are combined, and
+ * where configurations disagree, such as two targets for the same package in
+ * {@link #renamePackages()}, the one with the higher {@link #priority()} wins. Disagreements
+ * between configurations of equal priority are reported as errors.
+ * </p>
  */
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
@@ -128,4 +134,12 @@ public @interface GlobalConfig {
      */
     String version() default "";
 
+    /**
+     * Precedence of this configuration when several classes are annotated.
+     * Higher values win conflicts; equal values are ordered by class name.
+     *
+     * @return the priority
+     */
+    int priority() default 0;
+
 }
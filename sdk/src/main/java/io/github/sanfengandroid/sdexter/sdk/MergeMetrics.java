@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk;
+
+/**
+ * Instrumentation callbacks of a merge.
+ * <p>
+ * Every method has an empty default, so an implementation only overrides what it records.
+ * Callers test {@link #isEnabled()} before measuring anything; with {@link #NONE} no clock is
+ * read and no rule name is built. Callbacks may arrive from several threads at once and the same
+ * phase may be reported more than once, for example once per DEX file; implementations sum them.
+ * </p>
+ * Rules are identified by their {@link Rule kind}, a scope and the source text of the rule. The
+ * scope is {@link #GLOBAL_SCOPE} for {@link GlobalConfig} attributes and the target class
+ * descriptor for class level rules. Rules are declared once before they are counted, so a rule
+ * that never matches still shows up with zero hits.
+ *
+ * @see io.github.sanfengandroid.sdexter.sdk.metrics.JsonMetricsReporter
+ */
+public interface MergeMetrics {
+
+    /**
+     * Discards everything.
+     */
+    MergeMetrics NONE = new MergeMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * Reading and indexing the input DEX files.
+     */
+    String PHASE_PARSE = "parse";
+
+    /**
+     * Evaluating class and member rules and walking the kept code.
+     */
+    String PHASE_CLASSES = "classes";
+
+    /**
+     * Closing the referenced ids and ranking the output pools.
+     */
+    String PHASE_POOLS = "pools";
+
+    /**
+     * Rewriting descriptors for {@code renamePackages} and {@code renamePackagePatterns}.
+     */
+    String PHASE_RENAME = "rename";
+
+    /**
+     * Laying out and writing the output.
+     */
+    String PHASE_WRITE = "write";
+
+    /**
+     * Scope of the rules of {@link GlobalConfig}.
+     */
+    String GLOBAL_SCOPE = "global";
+
+    /**
+     * The configuration attribute a rule comes from.
+     */
+    enum Rule {
+        REMOVE_CLASS, REMOVE_CLASS_PATTERN, REMOVE_PACKAGE, REMOVE_PACKAGE_PATTERN,
+        REMOVE_FIELD, REMOVE_FIELD_PATTERN, REMOVE_METHOD, REMOVE_METHOD_PATTERN,
+        RENAME_PACKAGE, RENAME_PACKAGE_PATTERN
+    }
+
+    /**
+     * @return {@code false} if all callbacks are ignored and measuring can be skipped
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * @param phase     one of the {@code PHASE_*} names, or a custom one
+     * @param wallNanos elapsed wall clock time
+     * @param cpuNanos  CPU time summed over all threads of the phase, {@code 0} if not measured
+     */
+    default void phaseTime(String phase, long wallNanos, long cpuNanos) {
+    }
+
+    default void bytesRead(long bytes) {
+    }
+
+    default void bytesWritten(long bytes) {
+    }
+
+    /**
+     * @param count number of {@code class_def} items examined
+     */
+    default void classesVisited(long count) {
+    }
+
+    /**
+     * @param count number of examined classes whose rules and code walk were skipped, because
+     *              the class is removed or its result came from a cache
+     */
+    default void classesSkipped(long count) {
+    }
+
+    /**
+     * Declares a configured rule.
+     *
+     * @param kind  the attribute
+     * @param scope {@link #GLOBAL_SCOPE} or a class descriptor
+     * @param rule  the rule as written in the configuration
+     */
+    default void ruleDeclared(Rule kind, String scope, String rule) {
+    }
+
+    /**
+     * Adds hits to a rule: removed classes or members, or rewritten descriptors.
+     */
+    default void ruleHit(Rule kind, String scope, String rule, long count) {
+    }
+}
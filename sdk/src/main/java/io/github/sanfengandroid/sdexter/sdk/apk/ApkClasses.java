@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.apk;
+
+import io.github.sanfengandroid.sdexter.sdk.GlobalConfig;
+import io.github.sanfengandroid.sdexter.sdk.dex.DexFile;
+import io.github.sanfengandroid.sdexter.sdk.rule.RemovalRules;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class index over all DEX files of an APK, so every file sees the same verdict for a class.
+ * <p>
+ * Android resolves a class from the first DEX file defining it, in the order {@code classes.dex},
+ * {@code classes2.dex}, ..., so later definitions of the same descriptor are shadowed. The index
+ * records the defining file of every descriptor together with its {@link RemovalRules} verdict
+ * and whether {@link GlobalConfig#skipRClass()}, {@link GlobalConfig#skipClasses()} or
+ * {@link GlobalConfig#skipTypes()} exclude it from merging. A rule about a class defined in
+ * {@code classes3.dex} is then answered the same way while processing references from any other
+ * file.
+ * </p>
+ * Immutable after construction and safe for concurrent use.
+ */
+public final class ApkClasses {
+
+    private final Map<String, Integer> slots;
+    private final int[] dexOf;
+    private final int[] classDefOf;
+    private final int[] ruleOf;
+    private final boolean[] skipped;
+    private final List<String> shadowed;
+
+    /**
+     * @param descriptors class descriptors of each DEX file in loader order, by {@code class_def}
+     * @param rules       removal verdicts of each DEX file, as {@link RemovalRules#match} returned them
+     * @param skip        the skip rules
+     */
+    ApkClasses(String[][] descriptors, int[][] rules, SkipRules skip) {
+        int total = 0;
+        for (String[] file : descriptors) {
+            total += file.length;
+        }
+        this.slots = new HashMap<>(total * 4 / 3 + 1);
+        this.dexOf = new int[total];
+        this.classDefOf = new int[total];
+        this.ruleOf = new int[total];
+        this.skipped = new boolean[total];
+        List<String> shadowed = new ArrayList<>();
+        int n = 0;
+        for (int dex = 0; dex < descriptors.length; dex++) {
+            for (int classDef = 0; classDef < descriptors[dex].length; classDef++) {
+                String descriptor = descriptors[dex][classDef];
+                if (slots.putIfAbsent(descriptor, n) != null) {
+                    shadowed.add(descriptor);
+                    continue;
+                }
+                dexOf[n] = dex;
+                classDefOf[n] = classDef;
+                ruleOf[n] = rules[dex][classDef];
+                skipped[n] = skip.skips(descriptor);
+                n++;
+            }
+        }
+        this.shadowed = shadowed;
+    }
+
+    /**
+     * @return the number of distinct classes
+     */
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * @return the loader order index of the DEX file defining {@code descriptor}, or {@code -1}
+     */
+    public int dexOf(String descriptor) {
+        Integer slot = slots.get(descriptor);
+        return slot == null ? -1 : dexOf[slot];
+    }
+
+    /**
+     * @return the {@code class_def} index of {@code descriptor} in its defining file, or {@code -1}
+     */
+    public int classDefOf(String descriptor) {
+        Integer slot = slots.get(descriptor);
+        return slot == null ? -1 : classDefOf[slot];
+    }
+
+    /**
+     * @return {@code true} if {@code classDef} of file {@code dex} is hidden by an earlier definition
+     */
+    public boolean isShadowed(int dex, String descriptor, int classDef) {
+        Integer slot = slots.get(descriptor);
+        return slot != null && (dexOf[slot] != dex || classDefOf[slot] != classDef);
+    }
+
+    /**
+     * @return the rule removing {@code descriptor}, or {@link RemovalRules#NO_MATCH}; classes defined
+     * outside the APK never match here
+     */
+    public int removalRule(String descriptor) {
+        Integer slot = slots.get(descriptor);
+        return slot == null ? RemovalRules.NO_MATCH : ruleOf[slot];
+    }
+
+    /**
+     * @return {@code true} if the class is defined in the APK and excluded from merging
+     */
+    public boolean isSkipped(String descriptor) {
+        Integer slot = slots.get(descriptor);
+        return slot != null && skipped[slot];
+    }
+
+    /**
+     * @return descriptors defined by more than one DEX file, once per extra definition
+     */
+    public List<String> getShadowed() {
+        return shadowed;
+    }
+
+    /**
+     * Resolved {@code skipRClass}, {@code skipClasses} and {@code skipTypes}.
+     */
+    static final class SkipRules {
+        private final boolean rClass;
+        private final Set<String> descriptors = new HashSet<>();
+
+        SkipRules(GlobalConfig config) {
+            this.rClass = config == null || config.skipRClass();
+            if (config == null) {
+                return;
+            }
+            for (String name : config.skipClasses()) {
+                descriptors.add("L" + name.replace('.', '/') + ";");
+            }
+            for (Class<?> type : config.skipTypes()) {
+                descriptors.add("L" + type.getName().replace('.', '/') + ";");
+            }
+        }
+
+        boolean skips(String descriptor) {
+            return descriptors.contains(descriptor) || rClass && isRClass(descriptor);
+        }
+
+        /**
+         * @return {@code true} for {@code R} and its nested classes such as {@code R$string}
+         */
+        static boolean isRClass(String descriptor) {
+            int start = descriptor.lastIndexOf('/') + 1;
+            if (start == 0) {
+                start = 1;
+            }
+            return descriptor.startsWith("R;", start) || descriptor.startsWith("R$", start);
+        }
+    }
+
+    /**
+     * Reads the descriptors and removal verdicts of one file.
+     */
+    static String[] descriptors(DexFile dex, RemovalRules removal, int[] rules) {
+        String[] descriptors = new String[dex.classDefCount()];
+        for (int i = 0; i < descriptors.length; i++) {
+            descriptors[i] = dex.classDescriptor(i);
+            rules[i] = removal.match(descriptors[i]);
+        }
+        return descriptors;
+    }
+}
@@ -0,0 +1,535 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.apk;
+
+import io.github.sanfengandroid.sdexter.sdk.GlobalConfig;
+import io.github.sanfengandroid.sdexter.sdk.dex.DexFile;
+import io.github.sanfengandroid.sdexter.sdk.rule.PackageRenamer;
+import io.github.sanfengandroid.sdexter.sdk.rule.RemovalRules;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Runs a DEX job over every {@code classesN.dex} of an APK and writes the resulting APK.
+ * <p>
+ * The input is read through its central directory ({@link ZipArchive}). All DEX files are
+ * indexed concurrently into one {@link ApkClasses}, so global removal, rename and skip rules
+ * are compiled once and give the same answer in every file. The job then runs for all files
+ * concurrently on a {@link ForkJoinPool}, and each task compresses its own output.
+ * </p>
+ * <p>
+ * While the jobs run, the calling thread copies every other entry with
+ * {@link FileChannel#transferTo}, using the raw stored or deflated bytes without recompressing
+ * them. Stored entries are aligned like {@code zipalign -p}: 4 bytes, and 4096 for native
+ * libraries. DEX entries follow once their jobs complete, and the central directory lists all
+ * entries in their original order. The runtime loads {@code classes.dex}, {@code classes2.dex} and
+ * so on up to the first missing number, so only that run is processed, and the files kept by the
+ * job are renumbered without gaps. The wall time is thus close to that of the slowest single
+ * file. The APK signing block is not carried over, so the output has to be signed again.
+ * </p>
+ */
+public final class ApkDriver {
+
+    private static final Pattern DEX_NAME = Pattern.compile("classes([1-9]\\d{0,8})?\\.dex");
+    private static final int ALIGNMENT_EXTRA_ID = 0xd935;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+
+    /**
+     * Processes one DEX file of the APK.
+     */
+    public interface DexJob {
+        /**
+         * @param task the file and the shared rules
+         * @return the new content of the file, or {@code null} to drop it from the APK; the files
+         * after it are renumbered
+         * @throws IOException if processing fails
+         */
+        ByteBuffer process(DexTask task) throws IOException;
+    }
+
+    private final GlobalConfig config;
+    private final DexJob job;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param config the global configuration, may be {@code null}
+     * @param job    the per-file job
+     */
+    public ApkDriver(GlobalConfig config, DexJob job) {
+        this(config, job, ForkJoinPool.commonPool());
+    }
+
+    private ApkDriver(GlobalConfig config, DexJob job, ForkJoinPool pool) {
+        this.config = config;
+        this.job = job;
+        this.pool = pool;
+    }
+
+    /**
+     * @return a driver running its tasks on {@code pool}
+     */
+    public ApkDriver withPool(ForkJoinPool pool) {
+        return new ApkDriver(config, job, pool);
+    }
+
+    /**
+     * Processes an APK.
+     *
+     * @param apk    the input APK
+     * @param output the output APK, replaced if it exists
+     * @return a summary
+     * @throws IOException if reading, a job or writing fails
+     */
+    public Result run(Path apk, Path output) throws IOException {
+        String[] none = new String[0];
+        RemovalRules removal = config == null ? RemovalRules.of(none, none, none, none) : RemovalRules.of(config);
+        PackageRenamer renamer = config == null ? PackageRenamer.of(none, none) : PackageRenamer.of(config);
+        try (ZipArchive archive = ZipArchive.open(apk);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<ZipArchive.Entry> dexEntries = new ArrayList<>();
+            for (ZipArchive.Entry entry : archive.entries()) {
+                if (dexNumber(entry.name) > 0) {
+                    dexEntries.add(entry);
+                }
+            }
+            dexEntries.sort(Comparator.comparingInt(e -> dexNumber(e.name)));
+            // Files after a gap are never loaded, they are copied like any other entry
+            int loaded = 0;
+            while (loaded < dexEntries.size() && dexNumber(dexEntries.get(loaded).name) == loaded + 1) {
+                loaded++;
+            }
+            dexEntries = dexEntries.subList(0, loaded);
+            boolean[] isDex = new boolean[archive.entries().size()];
+            for (ZipArchive.Entry entry : dexEntries) {
+                isDex[entry.index] = true;
+            }
+            DexFile[] files = new DexFile[dexEntries.size()];
+            ApkClasses classes = index(archive, dexEntries, files, removal);
+
+            List<Future<Output>> outputs = new ArrayList<>(files.length);
+            for (int i = 0; i < files.length; i++) {
+                DexTask task = new DexTask(i, dexEntries.get(i), files[i], classes, removal, renamer);
+                outputs.add(pool.submit(() -> process(task)));
+            }
+
+            Writer writer = new Writer(out);
+            long[] offsets = new long[archive.entries().size()];
+            Output[] results = new Output[offsets.length];
+            for (ZipArchive.Entry entry : archive.entries()) {
+                if (!isDex[entry.index]) {
+                    offsets[entry.index] = writer.copy(archive, entry);
+                }
+            }
+            int kept = 0;
+            for (int i = 0; i < files.length; i++) {
+                Output result = join(outputs.get(i));
+                ZipArchive.Entry entry = dexEntries.get(i);
+                results[entry.index] = result;
+                if (result == null) {
+                    offsets[entry.index] = -1;
+                    continue;
+                }
+                result.name = dexName(++kept);
+                offsets[entry.index] = writer.write(entry, result);
+            }
+            writer.centralDirectory(archive, offsets, results);
+            return new Result(files.length, archive.entries().size() - files.length, classes,
+                    writer.copiedBytes, out.size());
+        }
+    }
+
+    /**
+     * @return N of {@code classesN.dex} at the root, {@code 1} for {@code classes.dex}, {@code 0}
+     * otherwise, including {@code classes1.dex}, which the runtime does not load
+     */
+    static int dexNumber(String name) {
+        Matcher matcher = DEX_NAME.matcher(name);
+        if (!matcher.matches()) {
+            return 0;
+        }
+        String digits = matcher.group(1);
+        if (digits == null) {
+            return 1;
+        }
+        return digits.equals("1") ? 0 : Integer.parseInt(digits);
+    }
+
+    /**
+     * @return the entry name of the {@code number}-th DEX file, counting from {@code 1}
+     */
+    static String dexName(int number) {
+        return number == 1 ? "classes.dex" : "classes" + number + ".dex";
+    }
+
+    private ApkClasses index(ZipArchive archive, List<ZipArchive.Entry> entries, DexFile[] files,
+                             RemovalRules removal) throws IOException {
+        String[][] descriptors = new String[files.length][];
+        int[][] rules = new int[files.length][];
+        List<Future<?>> tasks = new ArrayList<>(files.length);
+        for (int i = 0; i < files.length; i++) {
+            int index = i;
+            tasks.add(pool.submit(() -> {
+                try {
+                    files[index] = DexFile.wrap(archive.data(entries.get(index)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                rules[index] = new int[files[index].classDefCount()];
+                descriptors[index] = ApkClasses.descriptors(files[index], removal, rules[index]);
+            }));
+        }
+        for (Future<?> task : tasks) {
+            join(task);
+        }
+        return new ApkClasses(descriptors, rules, new ApkClasses.SkipRules(config));
+    }
+
+    private Output process(DexTask task) throws IOException {
+        ByteBuffer content = job.process(task);
+        if (content == null) {
+            return null;
+        }
+        byte[] bytes = new byte[content.remaining()];
+        content.duplicate().get(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if (task.entry.method == ZipArchive.METHOD_STORED) {
+            return new Output(bytes, bytes.length, (int) crc.getValue(), ZipArchive.METHOD_STORED);
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            byte[] compressed = new byte[Math.max(64, bytes.length + bytes.length / 1000 + 64)];
+            int n = 0;
+            while (!deflater.finished()) {
+                if (n == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                n += deflater.deflate(compressed, n, compressed.length - n);
+            }
+            return new Output(Arrays.copyOf(compressed, n), bytes.length, (int) crc.getValue(),
+                    ZipArchive.METHOD_DEFLATED);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static <T> T join(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * One DEX file of the APK together with the rules shared by all files.
+     */
+    public static final class DexTask {
+        private final int index;
+        private final ZipArchive.Entry entry;
+        private final DexFile dex;
+        private final ApkClasses classes;
+        private final RemovalRules removal;
+        private final PackageRenamer renamer;
+
+        DexTask(int index, ZipArchive.Entry entry, DexFile dex, ApkClasses classes, RemovalRules removal,
+                PackageRenamer renamer) {
+            this.index = index;
+            this.entry = entry;
+            this.dex = dex;
+            this.classes = classes;
+            this.removal = removal;
+            this.renamer = renamer;
+        }
+
+        /**
+         * @return the loader order index, {@code 0} for {@code classes.dex}
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the entry name in the input; the output name may differ if an earlier file is dropped
+         */
+        public String getName() {
+            return entry.name;
+        }
+
+        /**
+         * @return the file, a view of the mapped APK when the entry is stored
+         */
+        public DexFile getDex() {
+            return dex;
+        }
+
+        /**
+         * @return the class index over all files of the APK
+         */
+        public ApkClasses getClasses() {
+            return classes;
+        }
+
+        /**
+         * @return the global removal rules, shared by all files
+         */
+        public RemovalRules getRemoval() {
+            return removal;
+        }
+
+        /**
+         * @return the global package renamer, shared by all files
+         */
+        public PackageRenamer getRenamer() {
+            return renamer;
+        }
+    }
+
+    /**
+     * Summary of a run.
+     */
+    public static final class Result {
+        private final int dexCount;
+        private final int copiedEntries;
+        private final ApkClasses classes;
+        private final long copiedBytes;
+        private final long outputSize;
+
+        Result(int dexCount, int copiedEntries, ApkClasses classes, long copiedBytes, long outputSize) {
+            this.dexCount = dexCount;
+            this.copiedEntries = copiedEntries;
+            this.classes = classes;
+            this.copiedBytes = copiedBytes;
+            this.outputSize = outputSize;
+        }
+
+        public int getDexCount() {
+            return dexCount;
+        }
+
+        /**
+         * @return the number of entries copied without recompression
+         */
+        public int getCopiedEntries() {
+            return copiedEntries;
+        }
+
+        public ApkClasses getClasses() {
+            return classes;
+        }
+
+        /**
+         * @return the raw bytes of the copied entries
+         */
+        public long getCopiedBytes() {
+            return copiedBytes;
+        }
+
+        public long getOutputSize() {
+            return outputSize;
+        }
+    }
+
+    private static final class Output {
+        final byte[] data;
+        final long size;
+        final int crc;
+        final int method;
+        /** The entry name in the output, set once the files before it are known. */
+        String name;
+
+        Output(byte[] data, long size, int crc, int method) {
+            this.data = data;
+            this.size = size;
+            this.crc = crc;
+            this.method = method;
+        }
+    }
+
+    /**
+     * Sequential writer of local headers, entry data and the central directory.
+     */
+    private static final class Writer {
+        private final FileChannel out;
+        private long position;
+        private long copiedBytes;
+
+        Writer(FileChannel out) {
+            this.out = out;
+        }
+
+        /**
+         * Copies an entry with its original compressed bytes.
+         *
+         * @return the offset of the local header
+         */
+        long copy(ZipArchive archive, ZipArchive.Entry entry) throws IOException {
+            long offset = header(entry, entry.name, entry.method, entry.crc, entry.compressedSize, entry.size);
+            long from = archive.dataOffset(entry);
+            long remaining = entry.compressedSize;
+            while (remaining > 0) {
+                long n = archive.channel().transferTo(from, remaining, out);
+                if (n <= 0) {
+                    throw new IOException("Short copy of " + entry.name);
+                }
+                from += n;
+                remaining -= n;
+            }
+            position += entry.compressedSize;
+            copiedBytes += entry.compressedSize;
+            return offset;
+        }
+
+        long write(ZipArchive.Entry entry, Output output) throws IOException {
+            long offset = header(entry, output.name, output.method, output.crc, output.data.length, output.size);
+            writeFully(ByteBuffer.wrap(output.data));
+            return offset;
+        }
+
+        private long header(ZipArchive.Entry entry, String entryName, int method, int crc, long compressedSize,
+                            long size) throws IOException {
+            long offset = position;
+            byte[] name = entryName.getBytes(StandardCharsets.UTF_8);
+            int alignment = entryName.endsWith(".so") ? 4096 : 4;
+            int padding = 0;
+            if (method == ZipArchive.METHOD_STORED) {
+                padding = (int) ((alignment - (offset + 30 + name.length) % alignment) % alignment);
+                // The alignment field needs six bytes: id, size and the alignment itself
+                while (padding > 0 && padding < 6) {
+                    padding += alignment;
+                }
+            }
+            ByteBuffer header = ByteBuffer.allocate(30 + name.length + padding).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(ZipArchive.LOCAL_HEADER)
+                    .putShort((short) entry.versionNeeded)
+                    .putShort((short) (entry.flags & ~FLAG_DATA_DESCRIPTOR))
+                    .putShort((short) method)
+                    .putShort((short) entry.time)
+                    .putShort((short) entry.date)
+                    .putInt(crc)
+                    .putInt(checked(compressedSize))
+                    .putInt(checked(size))
+                    .putShort((short) name.length)
+                    .putShort((short) padding)
+                    .put(name);
+            if (padding > 0) {
+                header.putShort((short) ALIGNMENT_EXTRA_ID)
+                        .putShort((short) (padding - 4))
+                        .putShort((short) alignment);
+            }
+            header.position(0);
+            writeFully(header);
+            return offset;
+        }
+
+        void centralDirectory(ZipArchive archive, long[] offsets, Output[] outputs) throws IOException {
+            long start = position;
+            int count = 0;
+            for (ZipArchive.Entry entry : archive.entries()) {
+                if (offsets[entry.index] < 0) {
+                    continue;
+                }
+                Output output = outputs[entry.index];
+                byte[] name = (output == null ? entry.name : output.name).getBytes(StandardCharsets.UTF_8);
+                ByteBuffer header = ByteBuffer.allocate(46 + name.length + entry.centralExtra.length + entry.comment.length)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(ZipArchive.CENTRAL_HEADER)
+                        .putShort((short) entry.versionMadeBy)
+                        .putShort((short) entry.versionNeeded)
+                        .putShort((short) (entry.flags & ~FLAG_DATA_DESCRIPTOR))
+                        .putShort((short) (output == null ? entry.method : output.method))
+                        .putShort((short) entry.time)
+                        .putShort((short) entry.date)
+                        .putInt(output == null ? entry.crc : output.crc)
+                        .putInt(checked(output == null ? entry.compressedSize : output.data.length))
+                        .putInt(checked(output == null ? entry.size : output.size))
+                        .putShort((short) name.length)
+                        .putShort((short) entry.centralExtra.length)
+                        .putShort((short) entry.comment.length)
+                        .putShort((short) 0)
+                        .putShort((short) entry.internalAttributes)
+                        .putInt(entry.externalAttributes)
+                        .putInt(checked(offsets[entry.index]))
+                        .put(name)
+                        .put(entry.centralExtra)
+                        .put(entry.comment);
+                header.position(0);
+                writeFully(header);
+                count++;
+            }
+            ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(ZipArchive.END_OF_CENTRAL_DIRECTORY)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) count)
+                    .putShort((short) count)
+                    .putInt(checked(position - start))
+                    .putInt(checked(start))
+                    .putShort((short) 0);
+            end.position(0);
+            writeFully(end);
+        }
+
+        private void writeFully(ByteBuffer buf) throws IOException {
+            int length = buf.remaining();
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            position += length;
+        }
+
+        private static int checked(long value) throws IOException {
+            if (value > 0xffffffffL) {
+                throw new IOException("Output exceeds the ZIP32 limits");
+            }
+            return (int) value;
+        }
+    }
+}
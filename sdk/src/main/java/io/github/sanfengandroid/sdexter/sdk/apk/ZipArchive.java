@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.apk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read-only view of a ZIP file such as an APK, read from its central directory.
+ * <p>
+ * The file is memory-mapped and entries are located through the central directory only, so
+ * listing an archive does not touch entry data. {@link #rawData(Entry)} exposes the stored or
+ * deflated bytes of an entry as a slice of the mapping, which lets callers copy entries without
+ * recompressing them; {@link #data(Entry)} returns the uncompressed content, itself a slice of
+ * the mapping for stored entries.
+ * </p>
+ * ZIP64 archives and multi-disk archives are rejected. Instances are safe for concurrent reads.
+ */
+public final class ZipArchive implements Closeable {
+
+    static final int LOCAL_HEADER = 0x04034b50;
+    static final int CENTRAL_HEADER = 0x02014b50;
+    static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    private static final int MAX_COMMENT = 0xffff;
+    private static final int END_SIZE = 22;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final List<Entry> entries;
+
+    private ZipArchive(FileChannel channel, MappedByteBuffer map) throws IOException {
+        this.channel = channel;
+        this.map = map;
+        ByteBuffer buf = buffer();
+        int end = findEnd(buf);
+        if ((buf.getShort(end + 4) & 0xffff) != 0 || (buf.getShort(end + 6) & 0xffff) != 0) {
+            throw new IOException("Multi-disk archives are not supported");
+        }
+        int count = buf.getShort(end + 10) & 0xffff;
+        long size = buf.getInt(end + 12) & 0xffffffffL;
+        long offset = buf.getInt(end + 16) & 0xffffffffL;
+        if (count == 0xffff || size == 0xffffffffL || offset == 0xffffffffL) {
+            throw new IOException("ZIP64 archives are not supported");
+        }
+        if (offset + size > end) {
+            throw new IOException("Central directory out of bounds");
+        }
+        List<Entry> list = new ArrayList<>(count);
+        int pos = (int) offset;
+        for (int i = 0; i < count; i++) {
+            if (buf.getInt(pos) != CENTRAL_HEADER) {
+                throw new IOException("Bad central directory header at " + pos);
+            }
+            Entry entry = new Entry(buf, pos, i);
+            list.add(entry);
+            pos += 46 + entry.centralNameLength + entry.centralExtraLength + entry.centralCommentLength;
+        }
+        this.entries = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Opens an archive.
+     *
+     * @param path the ZIP file
+     * @return the archive, to be closed by the caller
+     * @throws IOException if the file cannot be mapped or is not a supported ZIP file
+     */
+    public static ZipArchive open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Archive too large: " + path);
+            }
+            return new ZipArchive(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static int findEnd(ByteBuffer buf) throws IOException {
+        int limit = buf.limit();
+        for (int pos = limit - END_SIZE; pos >= Math.max(0, limit - END_SIZE - MAX_COMMENT); pos--) {
+            if (buf.getInt(pos) == END_OF_CENTRAL_DIRECTORY
+                    && pos + END_SIZE + (buf.getShort(pos + 20) & 0xffff) == limit) {
+                return pos;
+            }
+        }
+        throw new IOException("End of central directory not found");
+    }
+
+    private ByteBuffer buffer() {
+        return map.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the entries in central directory order
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * @return the channel of the archive, for {@link FileChannel#transferTo} copies
+     */
+    FileChannel channel() {
+        return channel;
+    }
+
+    /**
+     * @return the offset of the entry data, after its local header
+     */
+    long dataOffset(Entry entry) throws IOException {
+        ByteBuffer buf = buffer();
+        int local = (int) entry.localHeaderOffset;
+        if (buf.getInt(local) != LOCAL_HEADER) {
+            throw new IOException("Bad local header for " + entry.name);
+        }
+        return local + 30L + (buf.getShort(local + 26) & 0xffff) + (buf.getShort(local + 28) & 0xffff);
+    }
+
+    /**
+     * @return the bytes of the entry as stored in the archive, a slice of the mapping
+     */
+    public ByteBuffer rawData(Entry entry) throws IOException {
+        int start = (int) dataOffset(entry);
+        ByteBuffer buf = map.duplicate();
+        buf.position(start).limit(start + (int) entry.compressedSize);
+        return buf.slice();
+    }
+
+    /**
+     * Returns the uncompressed content of an entry.
+     *
+     * @return a slice of the mapping for stored entries, a new buffer for deflated ones
+     * @throws IOException if the entry uses another method or is corrupt
+     */
+    public ByteBuffer data(Entry entry) throws IOException {
+        ByteBuffer raw = rawData(entry);
+        if (entry.method == METHOD_STORED) {
+            return raw;
+        }
+        if (entry.method != METHOD_DEFLATED) {
+            throw new IOException("Unsupported compression method " + entry.method + " for " + entry.name);
+        }
+        if (entry.size > Integer.MAX_VALUE) {
+            throw new IOException("Entry too large: " + entry.name);
+        }
+        byte[] out = new byte[(int) entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(toArray(raw));
+            int n = 0;
+            while (n < out.length && !inflater.finished()) {
+                int read = inflater.inflate(out, n, out.length - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != out.length) {
+                throw new IOException("Truncated entry " + entry.name);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt entry " + entry.name, e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(out);
+    }
+
+    private static byte[] toArray(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * A central directory record.
+     */
+    public static final class Entry {
+        final int index;
+        final String name;
+        final int versionMadeBy;
+        final int versionNeeded;
+        final int flags;
+        final int method;
+        final int time;
+        final int date;
+        final int crc;
+        final long compressedSize;
+        final long size;
+        final int internalAttributes;
+        final int externalAttributes;
+        final long localHeaderOffset;
+        final byte[] centralExtra;
+        final byte[] comment;
+        private final int centralNameLength;
+        private final int centralExtraLength;
+        private final int centralCommentLength;
+
+        Entry(ByteBuffer buf, int pos, int index) {
+            this.index = index;
+            this.versionMadeBy = buf.getShort(pos + 4) & 0xffff;
+            this.versionNeeded = buf.getShort(pos + 6) & 0xffff;
+            this.flags = buf.getShort(pos + 8) & 0xffff;
+            this.method = buf.getShort(pos + 10) & 0xffff;
+            this.time = buf.getShort(pos + 12) & 0xffff;
+            this.date = buf.getShort(pos + 14) & 0xffff;
+            this.crc = buf.getInt(pos + 16);
+            this.compressedSize = buf.getInt(pos + 20) & 0xffffffffL;
+            this.size = buf.getInt(pos + 24) & 0xffffffffL;
+            this.centralNameLength = buf.getShort(pos + 28) & 0xffff;
+            this.centralExtraLength = buf.getShort(pos + 30) & 0xffff;
+            this.centralCommentLength = buf.getShort(pos + 32) & 0xffff;
+            this.internalAttributes = buf.getShort(pos + 36) & 0xffff;
+            this.externalAttributes = buf.getInt(pos + 38);
+            this.localHeaderOffset = buf.getInt(pos + 42) & 0xffffffffL;
+            byte[] name = new byte[centralNameLength];
+            this.centralExtra = new byte[centralExtraLength];
+            this.comment = new byte[centralCommentLength];
+            ByteBuffer dup = buf.duplicate();
+            dup.position(pos + 46);
+            dup.get(name).get(centralExtra).get(comment);
+            // Bit 11 marks UTF-8 names; APK tools always write ASCII or UTF-8
+            this.name = new String(name, StandardCharsets.UTF_8);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return {@code 0} for stored, {@code 8} for deflated
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Hash-consed annotation items of one output DEX.
+ * <p>
+ * Removing or replacing annotations with mirror ones leaves many classes and members with
+ * identical annotations, so every {@code annotation_item}, {@code annotation_set_item},
+ * {@code annotation_set_ref_list} and {@code annotations_directory_item} is interned by its
+ * encoded bytes: an item is appended to the buffer of its type, hashed and looked up, and
+ * truncated again if an equal item was written before. Each distinct item is therefore written
+ * once and shared. The tables only hold offsets, lengths and hashes, the bytes stay in the buffers.
+ * </p>
+ * <p>
+ * The map list requires every item type to form one contiguous section, so each type has a buffer
+ * of its own and items refer to each other by handles, the offset in that buffer plus one, with
+ * {@code 0} for none. {@link #writeTo(DexOutput)} lays the four sections out one after the other
+ * and turns the handles into file offsets.
+ * </p>
+ * Items may come from several input DEX files, each with its own {@link IndexRemap}; since they
+ * are compared after remapping, equal annotations from the target and from mirror classes are
+ * shared as well. Sets and directories are sorted as the format requires. Instances are not
+ * thread safe.
+ */
+public final class AnnotationPool {
+
+    /**
+     * Returned when an annotation refers to an id that is not in the output.
+     */
+    public static final int MISSING = -1;
+
+    private final Section annotations = new Section();
+    private final Section sets = new Section();
+    private final Section refLists = new Section();
+    private final Section directories = new Section();
+    private int written;
+    private int reused;
+
+    /**
+     * Interns a copy of an {@code annotation_item} with remapped indices.
+     *
+     * @param dex    the input DEX
+     * @param remap  index tables from {@code dex} to the output
+     * @param offset offset of the input item
+     * @return the handle of the item, or {@link #MISSING}; nothing is written in that case
+     */
+    public int annotation(DexFile dex, IndexRemap remap, int offset) {
+        ByteBuffer buf = dex.buffer();
+        DexOutput out = annotations.out;
+        int start = out.size();
+        out.writeByte(buf.get(offset));
+        if (EncodedValues.copyAnnotation(buf, offset + 1, remap, out) < 0) {
+            out.truncate(start);
+            return MISSING;
+        }
+        return intern(annotations, start);
+    }
+
+    /**
+     * Interns a copy of an {@code annotation_set_item} with remapped indices.
+     *
+     * @param dex    the input DEX
+     * @param remap  index tables from {@code dex} to the output
+     * @param offset offset of the input set, {@code 0} for none
+     * @return the handle of the set, {@code 0} for none, or {@link #MISSING} if one of its annotations is
+     */
+    public int annotationSet(DexFile dex, IndexRemap remap, int offset) {
+        if (offset == 0) {
+            return 0;
+        }
+        ByteBuffer buf = dex.buffer();
+        int size = buf.getInt(offset);
+        int[] items = new int[size];
+        for (int i = 0; i < size; i++) {
+            items[i] = annotation(dex, remap, buf.getInt(offset + 4 + i * 4));
+            if (items[i] == MISSING) {
+                return MISSING;
+            }
+        }
+        return annotationSet(items, size);
+    }
+
+    /**
+     * Interns a set of already interned annotations, sorted by type.
+     *
+     * @param items handles of {@code annotation_item}s, at most one per type
+     * @param count the number of items used
+     * @return the handle of the {@code annotation_set_item}
+     */
+    public int annotationSet(int[] items, int count) {
+        long[] sorted = new long[count];
+        byte[] array = annotations.out.array();
+        for (int i = 0; i < count; i++) {
+            // The type follows the visibility byte, which sits at handle - 1
+            sorted[i] = (long) readUleb(array, items[i]) << 32 | items[i];
+        }
+        Arrays.sort(sorted);
+        DexOutput out = sets.out;
+        int start = out.size();
+        out.writeInt(count);
+        for (long item : sorted) {
+            out.writeInt((int) item);
+        }
+        return intern(sets, start);
+    }
+
+    /**
+     * Interns a copy of an {@code annotation_set_ref_list} with remapped indices.
+     *
+     * @param dex    the input DEX
+     * @param remap  index tables from {@code dex} to the output
+     * @param offset offset of the input list, {@code 0} for none
+     * @return the handle of the list, {@code 0} for none, or {@link #MISSING} if one of its annotations is
+     */
+    public int annotationSetRefList(DexFile dex, IndexRemap remap, int offset) {
+        if (offset == 0) {
+            return 0;
+        }
+        ByteBuffer buf = dex.buffer();
+        int size = buf.getInt(offset);
+        int[] lists = new int[size];
+        for (int i = 0; i < size; i++) {
+            lists[i] = annotationSet(dex, remap, buf.getInt(offset + 4 + i * 4));
+            if (lists[i] == MISSING) {
+                return MISSING;
+            }
+        }
+        return annotationSetRefList(lists, size);
+    }
+
+    /**
+     * Interns a list of parameter annotation sets.
+     *
+     * @param sets  handles of {@code annotation_set_item}s in parameter order, {@code 0} for none
+     * @param count the number of parameters
+     * @return the handle of the {@code annotation_set_ref_list}
+     */
+    public int annotationSetRefList(int[] sets, int count) {
+        DexOutput out = refLists.out;
+        int start = out.size();
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(sets[i]);
+        }
+        return intern(refLists, start);
+    }
+
+    /**
+     * Interns an {@code annotations_directory_item}. Member lists are {@code (output index, handle)}
+     * pairs in any order; pairs with handle {@code 0} are left out.
+     *
+     * @param classAnnotations handle of the class annotation set, {@code 0} for none
+     * @param fields           field annotation sets, may be {@code null}
+     * @param methods          method annotation sets, may be {@code null}
+     * @param parameters       parameter annotation lists, may be {@code null}
+     * @return the handle of the directory, or {@code 0} if it would be empty
+     */
+    public int directory(int classAnnotations, int[] fields, int[] methods, int[] parameters) {
+        long[] sortedFields = sortPairs(fields);
+        long[] sortedMethods = sortPairs(methods);
+        long[] sortedParameters = sortPairs(parameters);
+        if (classAnnotations == 0 && sortedFields.length == 0 && sortedMethods.length == 0
+                && sortedParameters.length == 0) {
+            return 0;
+        }
+        DexOutput out = directories.out;
+        int start = out.size();
+        out.writeInt(classAnnotations);
+        out.writeInt(sortedFields.length);
+        out.writeInt(sortedMethods.length);
+        out.writeInt(sortedParameters.length);
+        for (long[] pairs : new long[][]{sortedFields, sortedMethods, sortedParameters}) {
+            for (long pair : pairs) {
+                out.writeInt((int) (pair >>> 32));
+                out.writeInt((int) pair);
+            }
+        }
+        return intern(directories, start);
+    }
+
+    /**
+     * Interns a copy of an {@code annotations_directory_item} with remapped member ids and items.
+     *
+     * @param dex    the input DEX
+     * @param remap  index tables from {@code dex} to the output
+     * @param offset offset of the input directory, {@code 0} for none
+     * @return the handle of the copy, {@code 0} if it is empty, or {@link #MISSING} if one of its
+     * annotations is; members that are not in the output are left out
+     */
+    public int copyDirectory(DexFile dex, IndexRemap remap, int offset) {
+        if (offset == 0) {
+            return 0;
+        }
+        ByteBuffer buf = dex.buffer();
+        int classAnnotations = annotationSet(dex, remap, buf.getInt(offset));
+        if (classAnnotations == MISSING) {
+            return MISSING;
+        }
+        int pos = offset + 16;
+        int[][] members = new int[3][];
+        for (int kind = 0; kind < 3; kind++) {
+            int[] pairs = new int[buf.getInt(offset + 4 + kind * 4) * 2];
+            for (int i = 0; i < pairs.length; i += 2, pos += 8) {
+                int member = buf.getInt(pos);
+                pairs[i] = kind == 0 ? remap.field(member) : remap.method(member);
+                if (pairs[i] == DexFile.NO_INDEX) {
+                    continue;
+                }
+                int items = buf.getInt(pos + 4);
+                pairs[i + 1] = kind == 2 ? annotationSetRefList(dex, remap, items) : annotationSet(dex, remap, items);
+                if (pairs[i + 1] == MISSING) {
+                    return MISSING;
+                }
+            }
+            members[kind] = pairs;
+        }
+        return directory(classAnnotations, members[0], members[1], members[2]);
+    }
+
+    private static long[] sortPairs(int[] pairs) {
+        if (pairs == null) {
+            return new long[0];
+        }
+        long[] sorted = new long[pairs.length / 2];
+        int n = 0;
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (pairs[i + 1] != 0) {
+                sorted[n++] = (long) pairs[i] << 32 | (pairs[i + 1] & 0xffffffffL);
+            }
+        }
+        sorted = Arrays.copyOf(sorted, n);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * @return the number of distinct items written
+     */
+    public int writtenCount() {
+        return written;
+    }
+
+    /**
+     * @return the number of requests served by an existing item
+     */
+    public int reusedCount() {
+        return reused;
+    }
+
+    /**
+     * Appends the {@code annotation_item}, {@code annotation_set_item},
+     * {@code annotation_set_ref_list} and {@code annotations_directory_item} sections in this
+     * order, each contiguous, with every handle replaced by a file offset. Each section only refers
+     * to the ones before it.
+     *
+     * @param out the output file, positioned in the data section
+     * @return the placement of the sections, also to resolve directory handles for {@code class_def}s
+     */
+    public Layout writeTo(DexOutput out) {
+        int annotationsOff = out.size();
+        out.write(annotations.out.array(), 0, annotations.out.size());
+        out.align(4);
+        int setsOff = out.size();
+        // Items of the other three types are made of u32 only, so the buffers hold no padding
+        copyLists(sets.out, out, annotationsOff);
+        int refListsOff = out.size();
+        copyLists(refLists.out, out, setsOff);
+        int directoriesOff = out.size();
+        copyDirectories(directories.out, out, setsOff, refListsOff);
+        return new Layout(new int[]{annotationsOff, setsOff, refListsOff, directoriesOff},
+                new int[]{annotations.count, sets.count, refLists.count, directories.count});
+    }
+
+    /**
+     * Copies a section of sets or set ref lists, {@code (u32 size, u32[size])} items, turning the
+     * handles in them into offsets from {@code target}.
+     */
+    private static void copyLists(DexOutput section, DexOutput out, int target) {
+        int pos = out.size();
+        out.write(section.array(), 0, section.size());
+        int end = out.size();
+        while (pos < end) {
+            int count = out.getInt(pos);
+            pos += 4;
+            for (int i = 0; i < count; i++, pos += 4) {
+                relocate(out, pos, target);
+            }
+        }
+    }
+
+    /**
+     * Copies the directories, turning set handles into offsets from {@code sets} and parameter
+     * list handles into offsets from {@code lists}.
+     */
+    private static void copyDirectories(DexOutput section, DexOutput out, int sets, int lists) {
+        int pos = out.size();
+        out.write(section.array(), 0, section.size());
+        int end = out.size();
+        while (pos < end) {
+            relocate(out, pos, sets);
+            int members = out.getInt(pos + 4) + out.getInt(pos + 8);
+            int parameters = out.getInt(pos + 12);
+            pos += 16;
+            for (int i = 0; i < members; i++, pos += 8) {
+                relocate(out, pos + 4, sets);
+            }
+            for (int i = 0; i < parameters; i++, pos += 8) {
+                relocate(out, pos + 4, lists);
+            }
+        }
+    }
+
+    private static void relocate(DexOutput out, int field, int base) {
+        int handle = out.getInt(field);
+        if (handle != 0) {
+            out.putInt(field, base + handle - 1);
+        }
+    }
+
+    /**
+     * Looks up the item just written at {@code [start, size)} of a section, dropping it again if an
+     * equal item exists.
+     *
+     * @return the handle of the item
+     */
+    private int intern(Section section, int start) {
+        DexOutput out = section.out;
+        int length = out.size() - start;
+        int hash = InternTable.hash(out.array(), start, length);
+        int existing = section.table.find(out.array(), start, length, hash);
+        if (existing >= 0) {
+            out.truncate(start);
+            reused++;
+            return existing + 1;
+        }
+        section.table.add(start, length, hash);
+        section.count++;
+        written++;
+        return start + 1;
+    }
+
+    private static int readUleb(byte[] array, int pos) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = array[pos++] & 0xff;
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * The buffer and intern table of one item type.
+     */
+    private static final class Section {
+        final DexOutput out = new DexOutput(1 << 12);
+        final InternTable table = new InternTable();
+        int count;
+    }
+
+    /**
+     * Where {@link #writeTo(DexOutput)} placed the sections, for the map list.
+     */
+    public static final class Layout {
+        private final int[] offsets;
+        private final int[] counts;
+
+        Layout(int[] offsets, int[] counts) {
+            this.offsets = offsets;
+            this.counts = counts;
+        }
+
+        public int getAnnotationsOffset() {
+            return offsets[0];
+        }
+
+        public int getAnnotationCount() {
+            return counts[0];
+        }
+
+        public int getSetsOffset() {
+            return offsets[1];
+        }
+
+        public int getSetCount() {
+            return counts[1];
+        }
+
+        public int getSetRefListsOffset() {
+            return offsets[2];
+        }
+
+        public int getSetRefListCount() {
+            return counts[2];
+        }
+
+        public int getDirectoriesOffset() {
+            return offsets[3];
+        }
+
+        public int getDirectoryCount() {
+            return counts[3];
+        }
+
+        /**
+         * @param handle a handle returned by {@link #directory} or {@link #copyDirectory}, {@code 0} for none
+         * @return the file offset for {@code class_def_item.annotations_off}, {@code 0} for none
+         */
+        public int directoryOffset(int handle) {
+            return handle == 0 ? 0 : offsets[3] + handle - 1;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decoded {@code class_data_item}.
+ * <p>
+ * Members are kept in flat int arrays with absolute field and method indices, in file order:
+ * fields as {@code (field_idx, access_flags)} pairs and methods as
+ * {@code (method_idx, access_flags, code_off)} triples.
+ * </p>
+ */
+public final class ClassData {
+
+    private final int offset;
+    private final int end;
+    private final int[] staticFields;
+    private final int[] instanceFields;
+    private final int[] directMethods;
+    private final int[] virtualMethods;
+
+    private ClassData(int offset, int end, int[] staticFields, int[] instanceFields,
+                      int[] directMethods, int[] virtualMethods) {
+        this.offset = offset;
+        this.end = end;
+        this.staticFields = staticFields;
+        this.instanceFields = instanceFields;
+        this.directMethods = directMethods;
+        this.virtualMethods = virtualMethods;
+    }
+
+    static ClassData read(ByteBuffer buf, int offset) {
+        int pos = offset;
+        int[] sizes = new int[4];
+        for (int i = 0; i < 4; i++) {
+            long packed = Leb128.readUnsigned(buf, pos);
+            sizes[i] = Leb128.value(packed);
+            pos = Leb128.next(packed);
+        }
+        int[] staticFields = new int[sizes[0] * 2];
+        int[] instanceFields = new int[sizes[1] * 2];
+        int[] directMethods = new int[sizes[2] * 3];
+        int[] virtualMethods = new int[sizes[3] * 3];
+        pos = readMembers(buf, pos, staticFields, 2);
+        pos = readMembers(buf, pos, instanceFields, 2);
+        pos = readMembers(buf, pos, directMethods, 3);
+        pos = readMembers(buf, pos, virtualMethods, 3);
+        return new ClassData(offset, pos, staticFields, instanceFields, directMethods, virtualMethods);
+    }
+
+    private static int readMembers(ByteBuffer buf, int pos, int[] out, int stride) {
+        int index = 0;
+        for (int i = 0; i < out.length; i += stride) {
+            for (int j = 0; j < stride; j++) {
+                long packed = Leb128.readUnsigned(buf, pos);
+                out[i + j] = Leb128.value(packed);
+                pos = Leb128.next(packed);
+            }
+            index += out[i];
+            out[i] = index;
+        }
+        return pos;
+    }
+
+    /**
+     * @return the offset of the encoded item
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the offset just past the encoded item
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return {@code (field_idx, access_flags)} pairs
+     */
+    public int[] getStaticFields() {
+        return staticFields;
+    }
+
+    /**
+     * @return {@code (field_idx, access_flags)} pairs
+     */
+    public int[] getInstanceFields() {
+        return instanceFields;
+    }
+
+    /**
+     * @return {@code (method_idx, access_flags, code_off)} triples
+     */
+    public int[] getDirectMethods() {
+        return directMethods;
+    }
+
+    /**
+     * @return {@code (method_idx, access_flags, code_off)} triples
+     */
+    public int[] getVirtualMethods() {
+        return virtualMethods;
+    }
+
+    public int staticFieldCount() {
+        return staticFields.length / 2;
+    }
+
+    public int instanceFieldCount() {
+        return instanceFields.length / 2;
+    }
+
+    public int directMethodCount() {
+        return directMethods.length / 3;
+    }
+
+    public int virtualMethodCount() {
+        return virtualMethods.length / 3;
+    }
+}
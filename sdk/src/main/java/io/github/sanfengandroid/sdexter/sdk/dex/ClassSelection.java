@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleManifest;
+import io.github.sanfengandroid.sdexter.sdk.rule.RemovalRules;
+
+import java.util.Arrays;
+
+/**
+ * Result of evaluating class level rules against every {@code class_def} of a {@link DexFile}.
+ * <p>
+ * Only class descriptors are read; the {@code class_data_item} of a class is never touched here,
+ * so callers can decode just the classes reported by {@link #isConfigured(int)} and copy the rest.
+ * </p>
+ */
+public final class ClassSelection {
+
+    private final long[] configured;
+    private final int[] removalRule;
+    private final int configuredCount;
+    private final int removedCount;
+
+    private ClassSelection(long[] configured, int[] removalRule, int configuredCount, int removedCount) {
+        this.configured = configured;
+        this.removalRule = removalRule;
+        this.configuredCount = configuredCount;
+        this.removedCount = removedCount;
+    }
+
+    /**
+     * Evaluates the rules for every class of {@code dex}.
+     *
+     * @param dex      the target DEX
+     * @param manifest class rules compiled from the mirror classes, may be {@code null}
+     * @param removal  global removal rules, may be {@code null}
+     * @return the selection
+     */
+    public static ClassSelection select(DexFile dex, RuleManifest manifest, RemovalRules removal) {
+        int count = dex.classDefCount();
+        long[] configured = new long[(count + 63) >>> 6];
+        int[] removalRule = new int[count];
+        Arrays.fill(removalRule, RemovalRules.NO_MATCH);
+        int configuredCount = 0;
+        int removedCount = 0;
+        for (int i = 0; i < count; i++) {
+            String descriptor = dex.classDescriptor(i);
+            if (removal != null) {
+                int rule = removal.match(descriptor);
+                if (rule != RemovalRules.NO_MATCH) {
+                    removalRule[i] = rule;
+                    removedCount++;
+                    continue;
+                }
+            }
+            if (manifest != null && manifest.find(descriptor) != null) {
+                configured[i >>> 6] |= 1L << i;
+                configuredCount++;
+            }
+        }
+        return new ClassSelection(configured, removalRule, configuredCount, removedCount);
+    }
+
+    /**
+     * @return {@code true} if the class has a mirror rule and needs to be decoded
+     */
+    public boolean isConfigured(int classDef) {
+        return (configured[classDef >>> 6] & (1L << classDef)) != 0;
+    }
+
+    /**
+     * @return {@code true} if a global rule removes the class
+     */
+    public boolean isRemoved(int classDef) {
+        return removalRule[classDef] != RemovalRules.NO_MATCH;
+    }
+
+    /**
+     * @return the {@link RemovalRules} rule id removing the class, or {@link RemovalRules#NO_MATCH}
+     */
+    public int removalRule(int classDef) {
+        return removalRule[classDef];
+    }
+
+    public int configuredCount() {
+        return configuredCount;
+    }
+
+    public int removedCount() {
+        return removedCount;
+    }
+}
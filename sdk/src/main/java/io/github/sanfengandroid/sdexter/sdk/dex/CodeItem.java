@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.nio.ByteBuffer;
+
+/**
+ * View over a {@code code_item}. Nothing is decoded until an accessor is called.
+ */
+public final class CodeItem {
+
+    /**
+     * Size of the fixed {@code code_item} header preceding {@code insns}.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    private final ByteBuffer buf;
+    private final int offset;
+
+    CodeItem(ByteBuffer buf, int offset) {
+        this.buf = buf;
+        this.offset = offset;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getRegistersSize() {
+        return buf.getShort(offset) & 0xffff;
+    }
+
+    public int getInsSize() {
+        return buf.getShort(offset + 2) & 0xffff;
+    }
+
+    public int getOutsSize() {
+        return buf.getShort(offset + 4) & 0xffff;
+    }
+
+    public int getTriesSize() {
+        return buf.getShort(offset + 6) & 0xffff;
+    }
+
+    public int getDebugInfoOffset() {
+        return buf.getInt(offset + 8);
+    }
+
+    /**
+     * @return the number of 16-bit code units in {@code insns}
+     */
+    public int getInsnsSize() {
+        return buf.getInt(offset + 12);
+    }
+
+    /**
+     * @return the absolute offset of the first code unit
+     */
+    public int getInsnsOffset() {
+        return offset + HEADER_SIZE;
+    }
+
+    /**
+     * @param index code unit index
+     * @return the unsigned 16-bit code unit
+     */
+    public int codeUnit(int index) {
+        return buf.getShort(offset + HEADER_SIZE + index * 2) & 0xffff;
+    }
+
+    /**
+     * @return the absolute offset of the first {@code try_item}, valid when {@link #getTriesSize()} is not zero
+     */
+    public int getTriesOffset() {
+        int insnsEnd = getInsnsOffset() + getInsnsSize() * 2;
+        return (insnsEnd + 3) & ~3;
+    }
+
+    /**
+     * Computes the offset just past this item, walking the catch handler list if present.
+     *
+     * @return the end offset
+     */
+    public int getEnd() {
+        int tries = getTriesSize();
+        if (tries == 0) {
+            return getInsnsOffset() + getInsnsSize() * 2;
+        }
+        int pos = getTriesOffset() + tries * 8;
+        long packed = Leb128.readUnsigned(buf, pos);
+        int handlers = Leb128.value(packed);
+        pos = Leb128.next(packed);
+        for (int i = 0; i < handlers; i++) {
+            packed = Leb128.readSigned(buf, pos);
+            int size = Leb128.value(packed);
+            pos = Leb128.next(packed);
+            for (int j = Math.abs(size); j > 0; j--) {
+                pos = Leb128.skip(buf, pos);
+                pos = Leb128.skip(buf, pos);
+            }
+            if (size <= 0) {
+                pos = Leb128.skip(buf, pos);
+            }
+        }
+        return pos;
+    }
+}
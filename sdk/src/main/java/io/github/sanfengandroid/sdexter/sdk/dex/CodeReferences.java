@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Enumerates the id references of a {@code code_item} without decoding instructions.
+ * <p>
+ * References come from instruction index operands, catch handler types and, optionally, the
+ * names, types and source files of the {@code debug_info_item}. Duplicates are reported as often
+ * as they occur.
+ * </p>
+ */
+public final class CodeReferences {
+
+    private static final int DBG_END_SEQUENCE = 0x00;
+    private static final int DBG_ADVANCE_PC = 0x01;
+    private static final int DBG_ADVANCE_LINE = 0x02;
+    private static final int DBG_START_LOCAL = 0x03;
+    private static final int DBG_START_LOCAL_EXTENDED = 0x04;
+    private static final int DBG_END_LOCAL = 0x05;
+    private static final int DBG_RESTART_LOCAL = 0x06;
+    private static final int DBG_SET_FILE = 0x09;
+
+    private CodeReferences() {
+    }
+
+    /**
+     * @param dex        the input DEX
+     * @param codeOffset the {@code code_item} offset, {@code 0} for none
+     * @param debugInfo  whether to include the references of the debug info
+     * @param visitor    receives every reference
+     */
+    public static void visit(DexFile dex, int codeOffset, boolean debugInfo, ReferenceVisitor visitor) {
+        if (codeOffset == 0) {
+            return;
+        }
+        ByteBuffer buf = dex.buffer();
+        CodeItem code = dex.codeItem(codeOffset);
+        visitInsns(buf, code.getInsnsOffset(), code.getInsnsSize(), visitor);
+        int tries = code.getTriesSize();
+        if (tries > 0) {
+            visitHandlers(buf, code.getTriesOffset() + tries * 8, visitor);
+        }
+        if (debugInfo) {
+            visitDebugInfo(buf, code.getDebugInfoOffset(), visitor);
+        }
+    }
+
+    /**
+     * Reports the index operands of {@code units} code units starting at {@code offset}.
+     */
+    public static void visitInsns(ByteBuffer buf, int offset, int units, ReferenceVisitor visitor) {
+        int end = offset + units * 2;
+        int pos = offset;
+        while (pos < end) {
+            int opcode = buf.get(pos) & 0xff;
+            int kind = Opcodes.indexKind(opcode);
+            if (kind != Opcodes.INDEX_NONE) {
+                if (opcode == Opcodes.CONST_STRING_JUMBO) {
+                    visitor.visit(kind, buf.getInt(pos + 2));
+                } else if (kind == Opcodes.INDEX_METHOD_AND_PROTO) {
+                    visitor.visit(Opcodes.INDEX_METHOD, buf.getShort(pos + 2) & 0xffff);
+                    visitor.visit(Opcodes.INDEX_PROTO, buf.getShort(pos + 6) & 0xffff);
+                } else {
+                    visitor.visit(kind, buf.getShort(pos + 2) & 0xffff);
+                }
+            }
+            pos += Opcodes.width(buf, pos) * 2;
+        }
+    }
+
+    /**
+     * Reports the types of an {@code encoded_catch_handler_list}.
+     */
+    public static void visitHandlers(ByteBuffer buf, int offset, ReferenceVisitor visitor) {
+        long packed = Leb128.readUnsigned(buf, offset);
+        int count = Leb128.value(packed);
+        int pos = Leb128.next(packed);
+        for (int i = 0; i < count; i++) {
+            packed = Leb128.readSigned(buf, pos);
+            int size = Leb128.value(packed);
+            pos = Leb128.next(packed);
+            for (int j = Math.abs(size); j > 0; j--) {
+                packed = Leb128.readUnsigned(buf, pos);
+                visitor.visit(Opcodes.INDEX_TYPE, Leb128.value(packed));
+                pos = Leb128.skip(buf, Leb128.next(packed));
+            }
+            if (size <= 0) {
+                pos = Leb128.skip(buf, pos);
+            }
+        }
+    }
+
+    /**
+     * Reports the string and type references of a {@code debug_info_item}.
+     *
+     * @param offset the item offset, {@code 0} for none
+     */
+    public static void visitDebugInfo(ByteBuffer buf, int offset, ReferenceVisitor visitor) {
+        if (offset == 0) {
+            return;
+        }
+        int pos = Leb128.skip(buf, offset);
+        long packed = Leb128.readUnsigned(buf, pos);
+        int parameters = Leb128.value(packed);
+        pos = Leb128.next(packed);
+        for (int i = 0; i < parameters; i++) {
+            pos = visitP1(buf, pos, Opcodes.INDEX_STRING, visitor);
+        }
+        while (true) {
+            int opcode = buf.get(pos++) & 0xff;
+            switch (opcode) {
+                case DBG_END_SEQUENCE:
+                    return;
+                case DBG_ADVANCE_PC:
+                case DBG_ADVANCE_LINE:
+                case DBG_END_LOCAL:
+                case DBG_RESTART_LOCAL:
+                    pos = Leb128.skip(buf, pos);
+                    break;
+                case DBG_START_LOCAL:
+                    pos = Leb128.skip(buf, pos);
+                    pos = visitP1(buf, pos, Opcodes.INDEX_STRING, visitor);
+                    pos = visitP1(buf, pos, Opcodes.INDEX_TYPE, visitor);
+                    break;
+                case DBG_START_LOCAL_EXTENDED:
+                    pos = Leb128.skip(buf, pos);
+                    pos = visitP1(buf, pos, Opcodes.INDEX_STRING, visitor);
+                    pos = visitP1(buf, pos, Opcodes.INDEX_TYPE, visitor);
+                    pos = visitP1(buf, pos, Opcodes.INDEX_STRING, visitor);
+                    break;
+                case DBG_SET_FILE:
+                    pos = visitP1(buf, pos, Opcodes.INDEX_STRING, visitor);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static int visitP1(ByteBuffer buf, int pos, int kind, ReferenceVisitor visitor) {
+        long packed = Leb128.readUnsigned(buf, pos);
+        int index = Leb128.value(packed) - 1;
+        if (index != DexFile.NO_INDEX) {
+            visitor.visit(kind, index);
+        }
+        return Leb128.next(packed);
+    }
+}
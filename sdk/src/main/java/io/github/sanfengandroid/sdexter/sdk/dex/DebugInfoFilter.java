@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleFlags;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleManifest;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming stage for {@code removeSourceFile} and {@code removeDbgInfo}, which only discard data.
+ * <p>
+ * No class model is built: the rules are resolved to two bitsets, one over {@code class_def}s
+ * losing their {@code source_file_idx} and one over method ids losing their
+ * {@code debug_info_item}. A single sequential pass then marks the strings still referenced by
+ * anything else, so strings only used by stripped debug info or source files are dropped from
+ * the pool. Every other section is kept as is, which makes {@link #getRemap()} the identity
+ * apart from strings.
+ * </p>
+ * Code is copied through {@link #copyClassCode(PassThroughWriter, ClassData)} with a
+ * {@link PassThroughWriter} created on {@link #getRemap()}; instructions are patched in place and
+ * stripped debug info is simply not written. Memory is a few bits per id.
+ */
+public final class DebugInfoFilter {
+
+    private final DexFile dex;
+    private final long[] strippedSourceFiles;
+    private final long[] strippedDebugInfo;
+    private final IndexRemap remap;
+    private final int removedStrings;
+
+    private DebugInfoFilter(DexFile dex, long[] strippedSourceFiles, long[] strippedDebugInfo) {
+        this.dex = dex;
+        this.strippedSourceFiles = strippedSourceFiles;
+        this.strippedDebugInfo = strippedDebugInfo;
+        ReferenceSet live = liveStrings();
+        this.removedStrings = dex.stringCount() - live.count(Opcodes.INDEX_STRING);
+        this.remap = new IndexRemap(live.denseRemap(Opcodes.INDEX_STRING), null, null, null, null, null, null);
+    }
+
+    /**
+     * Resolves the stripping rules of every class of {@code dex}.
+     *
+     * @param dex              the target DEX
+     * @param manifest         class rules compiled from the mirror classes, may be {@code null}
+     * @param removeSourceFile {@code GlobalConfig.removeSourceFile}, strips the source file of every class
+     * @param removeDebugInfo  strips the debug info of every method
+     * @return the filter
+     */
+    public static DebugInfoFilter select(DexFile dex, RuleManifest manifest, boolean removeSourceFile,
+                                         boolean removeDebugInfo) {
+        int classes = dex.classDefCount();
+        long[] sourceFiles = new long[(classes + 63) >>> 6];
+        long[] debugInfo = new long[(dex.methodCount() + 63) >>> 6];
+        if (removeDebugInfo) {
+            fill(debugInfo, dex.methodCount());
+        }
+        if (removeSourceFile) {
+            fill(sourceFiles, classes);
+        }
+        for (int i = 0; i < classes && manifest != null; i++) {
+            RuleManifest.ClassRule rule = manifest.find(dex.classDescriptor(i));
+            if (rule == null) {
+                continue;
+            }
+            if (rule.hasFlag(RuleFlags.CLASS_REMOVE_SOURCE_FILE)) {
+                sourceFiles[i >>> 6] |= 1L << i;
+            }
+            if (!removeDebugInfo) {
+                markMethods(dex, i, rule, debugInfo);
+            }
+        }
+        return new DebugInfoFilter(dex, sourceFiles, debugInfo);
+    }
+
+    private static void fill(long[] bits, int size) {
+        for (int i = 0; i < size; i++) {
+            bits[i >>> 6] |= 1L << i;
+        }
+    }
+
+    /**
+     * Marks the methods of a class whose rule sets {@code removeDbgInfo}. A removed body takes its
+     * debug info with it, so {@code removeCode} counts as well.
+     */
+    private static void markMethods(DexFile dex, int classDef, RuleManifest.ClassRule rule, long[] debugInfo) {
+        ClassData data = null;
+        for (RuleManifest.MemberRule method : rule.getMethods()) {
+            if ((method.getFlags() & (RuleFlags.METHOD_REMOVE_DBG_INFO | RuleFlags.METHOD_REMOVE_CODE)) == 0) {
+                continue;
+            }
+            if (data == null) {
+                data = dex.classData(classDef);
+                if (data == null) {
+                    return;
+                }
+            }
+            int idx = findMethod(dex, data.getDirectMethods(), method);
+            if (idx < 0) {
+                idx = findMethod(dex, data.getVirtualMethods(), method);
+            }
+            if (idx >= 0) {
+                debugInfo[idx >>> 6] |= 1L << idx;
+            }
+        }
+    }
+
+    private static int findMethod(DexFile dex, int[] methods, RuleManifest.MemberRule rule) {
+        for (int i = 0; i < methods.length; i += 3) {
+            int idx = methods[i];
+            if (dex.compareString(dex.methodName(idx), rule.getName()) == 0
+                    && dex.protoDescriptor(dex.methodProto(idx)).equals(rule.getType())) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Marks every string referenced outside stripped debug info and source files. Ids of all
+     * other sections are kept, so their strings are live without a closure over the sections.
+     */
+    private ReferenceSet liveStrings() {
+        ReferenceSet live = new ReferenceSet(dex);
+        ReferenceVisitor strings = (kind, index) -> {
+            if (kind == Opcodes.INDEX_STRING) {
+                live.add(kind, index);
+            }
+        };
+        ByteBuffer buf = dex.buffer();
+        for (int i = 0; i < dex.typeCount(); i++) {
+            live.add(Opcodes.INDEX_STRING, dex.typeDescriptorIndex(i));
+        }
+        for (int i = 0; i < dex.protoCount(); i++) {
+            live.add(Opcodes.INDEX_STRING, dex.protoShorty(i));
+        }
+        for (int i = 0; i < dex.fieldCount(); i++) {
+            live.add(Opcodes.INDEX_STRING, dex.fieldName(i));
+        }
+        for (int i = 0; i < dex.methodCount(); i++) {
+            live.add(Opcodes.INDEX_STRING, dex.methodName(i));
+        }
+        for (int i = 0; i < dex.callSiteCount(); i++) {
+            EncodedValues.visitArray(buf, dex.callSiteOffset(i), strings);
+        }
+        for (int i = 0; i < dex.classDefCount(); i++) {
+            int sourceFile = dex.classSourceFile(i);
+            if (sourceFile != DexFile.NO_INDEX && !stripsSourceFile(i)) {
+                live.add(Opcodes.INDEX_STRING, sourceFile);
+            }
+            int staticValues = dex.classStaticValuesOffset(i);
+            if (staticValues != 0) {
+                EncodedValues.visitArray(buf, staticValues, strings);
+            }
+            visitAnnotations(buf, dex.classAnnotationsOffset(i), strings);
+            ClassData data = dex.classData(i);
+            if (data == null) {
+                continue;
+            }
+            for (int[] methods : new int[][]{data.getDirectMethods(), data.getVirtualMethods()}) {
+                for (int j = 0; j < methods.length; j += 3) {
+                    CodeReferences.visit(dex, methods[j + 2], !stripsDebugInfo(methods[j]), strings);
+                }
+            }
+        }
+        return live;
+    }
+
+    private static void visitAnnotations(ByteBuffer buf, int directory, ReferenceVisitor strings) {
+        if (directory == 0) {
+            return;
+        }
+        EncodedValues.visitAnnotationSet(buf, buf.getInt(directory), strings);
+        int members = buf.getInt(directory + 4) + buf.getInt(directory + 8);
+        int parameters = buf.getInt(directory + 12);
+        int pos = directory + 16;
+        for (int i = 0; i < members; i++, pos += 8) {
+            EncodedValues.visitAnnotationSet(buf, buf.getInt(pos + 4), strings);
+        }
+        for (int i = 0; i < parameters; i++, pos += 8) {
+            EncodedValues.visitAnnotationSetRefList(buf, buf.getInt(pos + 4), strings);
+        }
+    }
+
+    /**
+     * @return {@code true} if the class loses its {@code source_file_idx}
+     */
+    public boolean stripsSourceFile(int classDef) {
+        return (strippedSourceFiles[classDef >>> 6] & (1L << classDef)) != 0;
+    }
+
+    /**
+     * @return {@code true} if the method loses its {@code debug_info_item}
+     */
+    public boolean stripsDebugInfo(int methodIdx) {
+        return (strippedDebugInfo[methodIdx >>> 6] & (1L << methodIdx)) != 0;
+    }
+
+    /**
+     * @return the output {@code source_file_idx} of a class, {@link DexFile#NO_INDEX} if it has none or loses it
+     */
+    public int sourceFile(int classDef) {
+        int sourceFile = dex.classSourceFile(classDef);
+        return sourceFile == DexFile.NO_INDEX || stripsSourceFile(classDef)
+                ? DexFile.NO_INDEX : remap.string(sourceFile);
+    }
+
+    /**
+     * Copies the code of a class without the stripped debug info.
+     *
+     * @param writer a writer created on {@link #getRemap()}
+     * @param data   the class data
+     * @return the result of {@link PassThroughWriter#copyClassCode}
+     */
+    public int[] copyClassCode(PassThroughWriter writer, ClassData data) {
+        return writer.copyClassCode(data, null, null, this::stripsDebugInfo);
+    }
+
+    /**
+     * @return the index tables of the output, only strings are compacted
+     */
+    public IndexRemap getRemap() {
+        return remap;
+    }
+
+    /**
+     * @return the number of strings dropped from the pool
+     */
+    public int removedStringCount() {
+        return removedStrings;
+    }
+}
@@ -0,0 +1,525 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lazy, memory-mapped view of a DEX file.
+ * <p>
+ * Opening a file only validates the header and builds a {@code type_id -> class_def} table.
+ * Strings are decoded the first time they are requested, and {@code class_data_item} or
+ * {@code code_item} structures are decoded only through {@link #classData(int)} and
+ * {@link #codeItem(int)}. Rule evaluation can therefore look at every class descriptor while
+ * leaving the data of unconfigured classes untouched in the mapping.
+ * </p>
+ * Instances are safe for concurrent reads.
+ */
+public final class DexFile {
+
+    /**
+     * Value of an absent index, {@code 0xffffffff} in the file.
+     */
+    public static final int NO_INDEX = -1;
+
+    public static final int HEADER_SIZE = 0x70;
+    private static final int ENDIAN_CONSTANT = 0x12345678;
+    private static final int TYPE_CALL_SITE_ID_ITEM = 0x0007;
+    private static final int TYPE_METHOD_HANDLE_ITEM = 0x0008;
+
+    private final ByteBuffer buf;
+    private final int version;
+    private final int stringIdsSize;
+    private final int stringIdsOff;
+    private final int typeIdsSize;
+    private final int typeIdsOff;
+    private final int protoIdsSize;
+    private final int protoIdsOff;
+    private final int fieldIdsSize;
+    private final int fieldIdsOff;
+    private final int methodIdsSize;
+    private final int methodIdsOff;
+    private final int classDefsSize;
+    private final int classDefsOff;
+    private final int mapOff;
+    private final int dataSize;
+    private final int dataOff;
+    private final int callSiteIdsSize;
+    private final int callSiteIdsOff;
+    private final int methodHandlesSize;
+    private final int methodHandlesOff;
+    private final int[] typeToClassDef;
+    private final AtomicReferenceArray<String> strings;
+    private volatile MethodKeys methodKeys;
+
+    private DexFile(ByteBuffer buffer) {
+        this.buf = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.limit() < HEADER_SIZE || buf.get(0) != 'd' || buf.get(1) != 'e' || buf.get(2) != 'x' || buf.get(3) != '\n'
+                || buf.get(7) != 0) {
+            throw new IllegalArgumentException("Not a dex file");
+        }
+        this.version = (buf.get(4) - '0') * 100 + (buf.get(5) - '0') * 10 + (buf.get(6) - '0');
+        if (buf.getInt(40) != ENDIAN_CONSTANT) {
+            throw new IllegalArgumentException("Unsupported dex endian tag 0x" + Integer.toHexString(buf.getInt(40)));
+        }
+        if (buf.getInt(32) > buf.limit()) {
+            throw new IllegalArgumentException("Truncated dex file, header declares " + buf.getInt(32) + " bytes");
+        }
+        this.mapOff = buf.getInt(52);
+        this.stringIdsSize = buf.getInt(56);
+        this.stringIdsOff = buf.getInt(60);
+        this.typeIdsSize = buf.getInt(64);
+        this.typeIdsOff = buf.getInt(68);
+        this.protoIdsSize = buf.getInt(72);
+        this.protoIdsOff = buf.getInt(76);
+        this.fieldIdsSize = buf.getInt(80);
+        this.fieldIdsOff = buf.getInt(84);
+        this.methodIdsSize = buf.getInt(88);
+        this.methodIdsOff = buf.getInt(92);
+        this.classDefsSize = buf.getInt(96);
+        this.classDefsOff = buf.getInt(100);
+        this.dataSize = buf.getInt(104);
+        this.dataOff = buf.getInt(108);
+        int callSites = 0;
+        int callSitesOff = 0;
+        int handles = 0;
+        int handlesOff = 0;
+        if (mapOff != 0) {
+            int items = buf.getInt(mapOff);
+            for (int i = 0; i < items; i++) {
+                int item = mapOff + 4 + i * 12;
+                int type = buf.getShort(item) & 0xffff;
+                if (type == TYPE_CALL_SITE_ID_ITEM) {
+                    callSites = buf.getInt(item + 4);
+                    callSitesOff = buf.getInt(item + 8);
+                } else if (type == TYPE_METHOD_HANDLE_ITEM) {
+                    handles = buf.getInt(item + 4);
+                    handlesOff = buf.getInt(item + 8);
+                }
+            }
+        }
+        this.callSiteIdsSize = callSites;
+        this.callSiteIdsOff = callSitesOff;
+        this.methodHandlesSize = handles;
+        this.methodHandlesOff = handlesOff;
+        this.strings = new AtomicReferenceArray<>(stringIdsSize);
+        this.typeToClassDef = new int[typeIdsSize];
+        Arrays.fill(typeToClassDef, NO_INDEX);
+        for (int i = 0; i < classDefsSize; i++) {
+            typeToClassDef[classType(i)] = i;
+        }
+    }
+
+    /**
+     * Memory-maps a DEX file.
+     *
+     * @param path the file to map
+     * @return the lazy view
+     * @throws IOException if the file cannot be mapped
+     */
+    public static DexFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new DexFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Wraps DEX content that is already in memory.
+     *
+     * @param buffer the file content, position and byte order are ignored
+     * @return the lazy view
+     */
+    public static DexFile wrap(ByteBuffer buffer) {
+        return new DexFile(buffer.duplicate());
+    }
+
+    /**
+     * @return a little-endian duplicate of the underlying buffer, covering the whole file
+     */
+    public ByteBuffer buffer() {
+        return buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the format version from the magic, e.g. {@code 35} or {@code 39}
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * @return the declared file size
+     */
+    public int fileSize() {
+        return buf.getInt(32);
+    }
+
+    public int mapOffset() {
+        return mapOff;
+    }
+
+    public int dataOffset() {
+        return dataOff;
+    }
+
+    public int dataSize() {
+        return dataSize;
+    }
+
+    public int stringCount() {
+        return stringIdsSize;
+    }
+
+    public int typeCount() {
+        return typeIdsSize;
+    }
+
+    public int protoCount() {
+        return protoIdsSize;
+    }
+
+    public int fieldCount() {
+        return fieldIdsSize;
+    }
+
+    public int methodCount() {
+        return methodIdsSize;
+    }
+
+    public int classDefCount() {
+        return classDefsSize;
+    }
+
+    /**
+     * @return the number of {@code call_site_id_item}s, {@code 0} before version 038
+     */
+    public int callSiteCount() {
+        return callSiteIdsSize;
+    }
+
+    /**
+     * @return the number of {@code method_handle_item}s, {@code 0} before version 038
+     */
+    public int methodHandleCount() {
+        return methodHandlesSize;
+    }
+
+    // ---------------------------------------------------------------- strings
+
+    /**
+     * @return the offset of the {@code string_data_item} of string {@code index}
+     */
+    public int stringDataOffset(int index) {
+        return buf.getInt(stringIdsOff + index * 4);
+    }
+
+    /**
+     * Returns a string, decoding it on first use.
+     *
+     * @param index the string index
+     * @return the string, or {@code null} for {@link #NO_INDEX}
+     */
+    public String string(int index) {
+        if (index == NO_INDEX) {
+            return null;
+        }
+        String value = strings.get(index);
+        if (value == null) {
+            long packed = Leb128.readUnsigned(buf, stringDataOffset(index));
+            value = Mutf8.decode(buf, Leb128.next(packed), Leb128.value(packed));
+            strings.lazySet(index, value);
+        }
+        return value;
+    }
+
+    /**
+     * Compares string {@code index} with {@code value} without decoding it.
+     *
+     * @return negative, zero or positive as the string sorts before, equal to or after {@code value}
+     */
+    public int compareString(int index, CharSequence value) {
+        long packed = Leb128.readUnsigned(buf, stringDataOffset(index));
+        return Mutf8.compare(buf, Leb128.next(packed), Leb128.value(packed), value);
+    }
+
+    /**
+     * Binary searches the sorted {@code string_ids} section.
+     *
+     * @param value the string to find
+     * @return the string index, or {@link #NO_INDEX}
+     */
+    public int findString(CharSequence value) {
+        int lo = 0;
+        int hi = stringIdsSize - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareString(mid, value);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NO_INDEX;
+    }
+
+    // ---------------------------------------------------------------- types
+
+    /**
+     * @return the string index of the descriptor of type {@code index}
+     */
+    public int typeDescriptorIndex(int index) {
+        return buf.getInt(typeIdsOff + index * 4);
+    }
+
+    /**
+     * @return the descriptor of type {@code index}, or {@code null} for {@link #NO_INDEX}
+     */
+    public String typeDescriptor(int index) {
+        return index == NO_INDEX ? null : string(typeDescriptorIndex(index));
+    }
+
+    /**
+     * Binary searches the sorted {@code type_ids} section.
+     *
+     * @param descriptor the type descriptor
+     * @return the type index, or {@link #NO_INDEX}
+     */
+    public int findType(CharSequence descriptor) {
+        int stringIndex = findString(descriptor);
+        if (stringIndex == NO_INDEX) {
+            return NO_INDEX;
+        }
+        int lo = 0;
+        int hi = typeIdsSize - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int value = typeDescriptorIndex(mid);
+            if (value < stringIndex) {
+                lo = mid + 1;
+            } else if (value > stringIndex) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NO_INDEX;
+    }
+
+    /**
+     * Reads a {@code type_list}.
+     *
+     * @param offset the list offset, {@code 0} for an empty list
+     * @return the type indices
+     */
+    public int[] typeList(int offset) {
+        if (offset == 0) {
+            return new int[0];
+        }
+        int size = buf.getInt(offset);
+        int[] types = new int[size];
+        for (int i = 0; i < size; i++) {
+            types[i] = buf.getShort(offset + 4 + i * 2) & 0xffff;
+        }
+        return types;
+    }
+
+    // ---------------------------------------------------------------- protos, fields, methods
+
+    public int protoShorty(int index) {
+        return buf.getInt(protoIdsOff + index * 12);
+    }
+
+    public int protoReturnType(int index) {
+        return buf.getInt(protoIdsOff + index * 12 + 4);
+    }
+
+    public int protoParametersOffset(int index) {
+        return buf.getInt(protoIdsOff + index * 12 + 8);
+    }
+
+    public int[] protoParameters(int index) {
+        return typeList(protoParametersOffset(index));
+    }
+
+    /**
+     * @return the prototype in dex form, e.g. {@code (ILjava/lang/String;)V}
+     */
+    public String protoDescriptor(int index) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int type : protoParameters(index)) {
+            sb.append(typeDescriptor(type));
+        }
+        return sb.append(')').append(typeDescriptor(protoReturnType(index))).toString();
+    }
+
+    public int fieldClass(int index) {
+        return buf.getShort(fieldIdsOff + index * 8) & 0xffff;
+    }
+
+    public int fieldType(int index) {
+        return buf.getShort(fieldIdsOff + index * 8 + 2) & 0xffff;
+    }
+
+    public int fieldName(int index) {
+        return buf.getInt(fieldIdsOff + index * 8 + 4);
+    }
+
+    public int methodClass(int index) {
+        return buf.getShort(methodIdsOff + index * 8) & 0xffff;
+    }
+
+    public int methodProto(int index) {
+        return buf.getShort(methodIdsOff + index * 8 + 2) & 0xffff;
+    }
+
+    public int methodName(int index) {
+        return buf.getInt(methodIdsOff + index * 8 + 4);
+    }
+
+    /**
+     * @return the offset of the {@code encoded_array_item} describing call site {@code index}
+     */
+    public int callSiteOffset(int index) {
+        return buf.getInt(callSiteIdsOff + index * 4);
+    }
+
+    /**
+     * @return the {@code method_handle_type}; values up to {@code 0x03} are field accessors
+     */
+    public int methodHandleType(int index) {
+        return buf.getShort(methodHandlesOff + index * 8) & 0xffff;
+    }
+
+    /**
+     * @return the field or method index the handle refers to, depending on {@link #methodHandleType(int)}
+     */
+    public int methodHandleMember(int index) {
+        return buf.getShort(methodHandlesOff + index * 8 + 4) & 0xffff;
+    }
+
+    // ---------------------------------------------------------------- class defs
+
+    /**
+     * @return the absolute offset of {@code class_def_item} {@code index}
+     */
+    public int classDefOffset(int index) {
+        return classDefsOff + index * 32;
+    }
+
+    public int classType(int index) {
+        return buf.getInt(classDefOffset(index));
+    }
+
+    public int classAccessFlags(int index) {
+        return buf.getInt(classDefOffset(index) + 4);
+    }
+
+    public int classSuperclass(int index) {
+        return buf.getInt(classDefOffset(index) + 8);
+    }
+
+    public int classInterfacesOffset(int index) {
+        return buf.getInt(classDefOffset(index) + 12);
+    }
+
+    public int classSourceFile(int index) {
+        return buf.getInt(classDefOffset(index) + 16);
+    }
+
+    public int classAnnotationsOffset(int index) {
+        return buf.getInt(classDefOffset(index) + 20);
+    }
+
+    public int classDataOffset(int index) {
+        return buf.getInt(classDefOffset(index) + 24);
+    }
+
+    public int classStaticValuesOffset(int index) {
+        return buf.getInt(classDefOffset(index) + 28);
+    }
+
+    /**
+     * @return the descriptor of the class defined by {@code class_def} {@code index}
+     */
+    public String classDescriptor(int index) {
+        return typeDescriptor(classType(index));
+    }
+
+    /**
+     * @return the method key index of this file, created on first use and shared afterwards
+     */
+    public MethodKeys methodKeys() {
+        MethodKeys keys = methodKeys;
+        if (keys == null) {
+            synchronized (this) {
+                keys = methodKeys;
+                if (keys == null) {
+                    keys = new MethodKeys(this);
+                    methodKeys = keys;
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @param type a type index
+     * @return the {@code class_def} index defining the type, or {@link #NO_INDEX} if it is not defined in this file
+     */
+    public int classDefOfType(int type) {
+        return typeToClassDef[type];
+    }
+
+    /**
+     * @param descriptor a class descriptor such as {@code Lcom/example/Foo;}
+     * @return the {@code class_def} index, or {@link #NO_INDEX} if the class is not defined in this file
+     */
+    public int findClassDef(CharSequence descriptor) {
+        int type = findType(descriptor);
+        return type == NO_INDEX ? NO_INDEX : typeToClassDef[type];
+    }
+
+    /**
+     * Decodes the {@code class_data_item} of a class.
+     *
+     * @param index the {@code class_def} index
+     * @return the class data, or {@code null} for a class without fields and methods
+     */
+    public ClassData classData(int index) {
+        int offset = classDataOffset(index);
+        return offset == 0 ? null : ClassData.read(buf, offset);
+    }
+
+    /**
+     * Returns a view over a {@code code_item}.
+     *
+     * @param offset the code item offset from an encoded method
+     * @return the view, or {@code null} for offset {@code 0}
+     */
+    public CodeItem codeItem(int offset) {
+        return offset == 0 ? null : new CodeItem(buf, offset);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable little-endian byte buffer used to lay out DEX sections.
+ * <p>
+ * Offsets are absolute within the buffer. Previously written values can be patched in place,
+ * which lets section writers emit an item before the offsets it refers to are known.
+ * </p>
+ */
+public final class DexOutput {
+
+    private byte[] data;
+    private int size;
+
+    public DexOutput() {
+        this(1 << 16);
+    }
+
+    public DexOutput(int initialCapacity) {
+        this.data = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * @return the number of bytes written, which is also the offset of the next byte
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the backing array, valid up to {@link #size()}; it changes when the buffer grows
+     */
+    public byte[] array() {
+        return data;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(data, 0, size);
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+        }
+    }
+
+    /**
+     * Pads with zero bytes up to a multiple of {@code alignment}, a power of two.
+     */
+    public void align(int alignment) {
+        int aligned = (size + alignment - 1) & -alignment;
+        ensureCapacity(aligned);
+        Arrays.fill(data, size, aligned, (byte) 0);
+        size = aligned;
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(size + 1);
+        data[size++] = (byte) value;
+    }
+
+    public void writeShort(int value) {
+        ensureCapacity(size + 2);
+        data[size++] = (byte) value;
+        data[size++] = (byte) (value >> 8);
+    }
+
+    public void writeInt(int value) {
+        ensureCapacity(size + 4);
+        data[size++] = (byte) value;
+        data[size++] = (byte) (value >> 8);
+        data[size++] = (byte) (value >> 16);
+        data[size++] = (byte) (value >> 24);
+    }
+
+    public void writeUleb128(int value) {
+        ensureCapacity(size + 5);
+        size = Leb128.writeUnsigned(data, size, value);
+    }
+
+    public void writeUleb128p1(int value) {
+        writeUleb128(value + 1);
+    }
+
+    public void writeSleb128(int value) {
+        ensureCapacity(size + 5);
+        size = Leb128.writeSigned(data, size, value);
+    }
+
+    public void write(byte[] bytes) {
+        write(bytes, 0, bytes.length);
+    }
+
+    public void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(bytes, offset, data, size, length);
+        size += length;
+    }
+
+    /**
+     * Copies {@code length} bytes starting at absolute {@code offset} of {@code src}.
+     * The source position is not modified.
+     */
+    public void write(ByteBuffer src, int offset, int length) {
+        ensureCapacity(size + length);
+        ByteBuffer dup = src.duplicate();
+        dup.position(offset);
+        dup.get(data, size, length);
+        size += length;
+    }
+
+    public int getShort(int offset) {
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8;
+    }
+
+    public int getInt(int offset) {
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8
+                | (data[offset + 2] & 0xff) << 16 | (data[offset + 3] & 0xff) << 24;
+    }
+
+    public void putShort(int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+    }
+
+    public void putInt(int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+        data[offset + 2] = (byte) (value >> 16);
+        data[offset + 3] = (byte) (value >> 24);
+    }
+
+    /**
+     * Discards everything written after {@code newSize}.
+     */
+    public void truncate(int newSize) {
+        if (newSize < 0 || newSize > size) {
+            throw new IndexOutOfBoundsException("size " + newSize + ", current " + size);
+        }
+        size = newSize;
+    }
+}
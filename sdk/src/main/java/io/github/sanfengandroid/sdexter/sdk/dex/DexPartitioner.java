@@ -0,0 +1,674 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Packs the classes of merged DEX files into as few DEX files as the reference limits allow.
+ * <p>
+ * Merging adds the members of mirror classes to their targets, which can push a file over the
+ * 64K method or field id limit, while removal rules can leave other files nearly empty. The
+ * partitioner computes the exact type, proto, field and method ids each class needs: its own
+ * members, every id its code, static values and annotations refer to, and the class types and
+ * prototypes those ids pull in. Ids are interned across all inputs, so a reference shared by two
+ * classes is counted once per output file. Only type descriptors and member names are decoded;
+ * a prototype is interned as its list of type ids, and a field or method as the triple of its
+ * class, name and type or prototype ids.
+ * </p>
+ * <p>
+ * Main DEX classes are placed first into the first file. The other classes follow in input
+ * order, each into the first file whose bitsets still have room for the ids it adds, which keeps
+ * classes of one package together and gives the fewest files in practice. A descriptor defined
+ * by several inputs is kept from the first one only, as the runtime would load it.
+ * </p>
+ * The walk runs per input on a {@link ForkJoinPool}; packing is sequential and deterministic.
+ */
+public final class DexPartitioner {
+
+    /**
+     * The id limit of each section, imposed by 16 bit instruction operands.
+     */
+    public static final int MAX_REFERENCES = 0x10000;
+
+    private static final int METHOD_HANDLE_LAST_FIELD_TYPE = 0x03;
+    private static final int[] KINDS = {Opcodes.INDEX_TYPE, Opcodes.INDEX_PROTO, Opcodes.INDEX_FIELD,
+            Opcodes.INDEX_METHOD};
+    private static final int KIND_COUNT = Opcodes.INDEX_PROTO + 1;
+
+    /**
+     * Writes one output file of a {@link Plan}.
+     */
+    public interface DexWriter {
+        /**
+         * @param plan      the plan
+         * @param partition the output file index, {@code 0} for {@code classes.dex}
+         * @return the file content
+         * @throws IOException if writing fails
+         */
+        ByteBuffer write(Plan plan, int partition) throws IOException;
+    }
+
+    private DexPartitioner() {
+    }
+
+    /**
+     * Plans on the common pool with the default limits.
+     *
+     * @see #plan(List, Collection, int, ForkJoinPool)
+     */
+    public static Plan plan(List<DexFile> inputs, Collection<String> mainDexClasses) {
+        return plan(inputs, mainDexClasses, MAX_REFERENCES, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param inputs         the merged files in loader order
+     * @param mainDexClasses descriptors of the classes that must be in the first file
+     * @param limit          the maximum number of type, proto, field and method ids per file
+     * @param pool           the pool walking the inputs
+     * @return the plan
+     * @throws IllegalArgumentException if the main DEX classes or a single class exceed the limit
+     */
+    public static Plan plan(List<DexFile> inputs, Collection<String> mainDexClasses, int limit, ForkJoinPool pool) {
+        DexFile[] files = inputs.toArray(new DexFile[0]);
+        String[][] types = new String[files.length][];
+        String[][] names = new String[files.length][];
+        invokeAll(pool, files.length, i -> {
+            types[i] = typeDescriptors(files[i]);
+            names[i] = memberNames(files[i]);
+        });
+        Interner interner = new Interner(files.length);
+        for (int i = 0; i < files.length; i++) {
+            interner.intern(i, files[i], types[i], names[i]);
+            types[i] = null;
+            names[i] = null;
+        }
+
+        List<String> shadowed = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int[][] kept = new int[files.length][];
+        int units = 0;
+        for (int i = 0; i < files.length; i++) {
+            int[] classDefs = new int[files[i].classDefCount()];
+            int n = 0;
+            for (int c = 0; c < classDefs.length; c++) {
+                String descriptor = files[i].classDescriptor(c);
+                if (seen.add(descriptor)) {
+                    classDefs[n++] = c;
+                } else {
+                    shadowed.add(descriptor);
+                }
+            }
+            kept[i] = Arrays.copyOf(classDefs, n);
+            units += n;
+        }
+
+        int[][][][] refs = new int[files.length][][][];
+        invokeAll(pool, files.length, i -> refs[i] = new Collector(files[i], interner.global[i]).collect(kept[i]));
+
+        int[] unitFile = new int[units];
+        int[] unitClassDef = new int[units];
+        int[][][] unitRefs = new int[units][][];
+        boolean[] main = new boolean[units];
+        Set<String> mainSet = new HashSet<>(mainDexClasses);
+        int u = 0;
+        for (int i = 0; i < files.length; i++) {
+            for (int j = 0; j < kept[i].length; j++, u++) {
+                unitFile[u] = i;
+                unitClassDef[u] = kept[i][j];
+                unitRefs[u] = refs[i][j];
+                main[u] = mainSet.contains(files[i].classDescriptor(kept[i][j]));
+            }
+        }
+
+        List<Bin> bins = new ArrayList<>();
+        bins.add(new Bin(interner.sizes, units));
+        for (u = 0; u < units; u++) {
+            if (!main[u]) {
+                continue;
+            }
+            if (!bins.get(0).fits(unitRefs[u], limit)) {
+                throw new IllegalArgumentException("Main DEX classes need more than " + limit + " ids, at "
+                        + files[unitFile[u]].classDescriptor(unitClassDef[u]));
+            }
+            bins.get(0).add(u, unitRefs[u]);
+        }
+        for (u = 0; u < units; u++) {
+            if (main[u]) {
+                continue;
+            }
+            Bin target = null;
+            for (Bin bin : bins) {
+                if (bin.fits(unitRefs[u], limit)) {
+                    target = bin;
+                    break;
+                }
+            }
+            if (target == null) {
+                target = new Bin(interner.sizes, units);
+                if (!target.fits(unitRefs[u], limit)) {
+                    throw new IllegalArgumentException(files[unitFile[u]].classDescriptor(unitClassDef[u])
+                            + " alone needs more than " + limit + " ids");
+                }
+                bins.add(target);
+            }
+            target.add(u, unitRefs[u]);
+        }
+        return new Plan(files, unitFile, unitClassDef, bins, shadowed);
+    }
+
+    private static String[] typeDescriptors(DexFile dex) {
+        String[] types = new String[dex.typeCount()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = dex.typeDescriptor(i);
+        }
+        return types;
+    }
+
+    /**
+     * @return the names of fields and methods by string id, {@code null} for other strings
+     */
+    private static String[] memberNames(DexFile dex) {
+        String[] names = new String[dex.stringCount()];
+        for (int i = 0; i < dex.fieldCount(); i++) {
+            int name = dex.fieldName(i);
+            if (names[name] == null) {
+                names[name] = dex.string(name);
+            }
+        }
+        for (int i = 0; i < dex.methodCount(); i++) {
+            int name = dex.methodName(i);
+            if (names[name] == null) {
+                names[name] = dex.string(name);
+            }
+        }
+        return names;
+    }
+
+    private interface IndexTask {
+        void run(int index) throws IOException;
+    }
+
+    private static void invokeAll(ForkJoinPool pool, int count, IndexTask task) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    task.run(index);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+
+    /**
+     * Assigns dense global ids to the ids of each kind, in first seen order.
+     */
+    private static final class Interner {
+        final int[][][] global;
+        final int[] sizes = new int[KIND_COUNT];
+        private final Map<String, Integer> types = new HashMap<>();
+        private final Map<String, Integer> names = new HashMap<>();
+        private final TupleTable protos = new TupleTable();
+        private final TupleTable fields = new TupleTable();
+        private final TupleTable methods = new TupleTable();
+        private int[] tuple = new int[16];
+
+        Interner(int files) {
+            this.global = new int[files][][];
+        }
+
+        void intern(int file, DexFile dex, String[] typeDescriptors, String[] memberNames) {
+            int[] typeIds = new int[typeDescriptors.length];
+            for (int i = 0; i < typeIds.length; i++) {
+                typeIds[i] = id(types, typeDescriptors[i]);
+            }
+            int[] nameIds = new int[memberNames.length];
+            for (int i = 0; i < nameIds.length; i++) {
+                nameIds[i] = memberNames[i] == null ? -1 : id(names, memberNames[i]);
+            }
+            int[] protoIds = new int[dex.protoCount()];
+            for (int i = 0; i < protoIds.length; i++) {
+                int[] parameters = dex.protoParameters(i);
+                if (tuple.length < parameters.length + 1) {
+                    tuple = new int[parameters.length + 1];
+                }
+                tuple[0] = typeIds[dex.protoReturnType(i)];
+                for (int j = 0; j < parameters.length; j++) {
+                    tuple[j + 1] = typeIds[parameters[j]];
+                }
+                protoIds[i] = protos.intern(tuple, parameters.length + 1);
+            }
+            int[] fieldIds = new int[dex.fieldCount()];
+            for (int i = 0; i < fieldIds.length; i++) {
+                tuple[0] = typeIds[dex.fieldClass(i)];
+                tuple[1] = nameIds[dex.fieldName(i)];
+                tuple[2] = typeIds[dex.fieldType(i)];
+                fieldIds[i] = fields.intern(tuple, 3);
+            }
+            int[] methodIds = new int[dex.methodCount()];
+            for (int i = 0; i < methodIds.length; i++) {
+                tuple[0] = typeIds[dex.methodClass(i)];
+                tuple[1] = nameIds[dex.methodName(i)];
+                tuple[2] = protoIds[dex.methodProto(i)];
+                methodIds[i] = methods.intern(tuple, 3);
+            }
+            global[file] = new int[KIND_COUNT][];
+            global[file][Opcodes.INDEX_TYPE] = typeIds;
+            global[file][Opcodes.INDEX_PROTO] = protoIds;
+            global[file][Opcodes.INDEX_FIELD] = fieldIds;
+            global[file][Opcodes.INDEX_METHOD] = methodIds;
+            sizes[Opcodes.INDEX_TYPE] = types.size();
+            sizes[Opcodes.INDEX_PROTO] = protos.size;
+            sizes[Opcodes.INDEX_FIELD] = fields.size;
+            sizes[Opcodes.INDEX_METHOD] = methods.size;
+        }
+
+        private static int id(Map<String, Integer> map, String value) {
+            Integer id = map.putIfAbsent(value, map.size());
+            return id == null ? map.size() - 1 : id;
+        }
+    }
+
+    /**
+     * Open addressing table assigning dense ids to int tuples, in first seen order. Tuples are
+     * copied into one flat array, so interning allocates nothing per tuple.
+     */
+    private static final class TupleTable {
+        private int[] data = new int[1024];
+        /** Tuple {@code id} is {@code data[starts[id], starts[id + 1])}. */
+        private int[] starts = new int[257];
+        /** Tuple id plus one, {@code 0} for a free slot. */
+        private int[] slots = new int[1024];
+        int size;
+
+        int intern(int[] tuple, int length) {
+            int mask = slots.length - 1;
+            int slot = hash(tuple, 0, length) & mask;
+            while (slots[slot] != 0) {
+                int id = slots[slot] - 1;
+                if (Arrays.equals(data, starts[id], starts[id + 1], tuple, 0, length)) {
+                    return id;
+                }
+                slot = (slot + 1) & mask;
+            }
+            int id = size++;
+            int start = starts[id];
+            if (data.length < start + length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, start + length));
+            }
+            System.arraycopy(tuple, 0, data, start, length);
+            if (starts.length == id + 2) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            starts[id + 1] = start + length;
+            slots[slot] = id + 1;
+            if (size * 2 > slots.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int id = 0; id < size; id++) {
+                int slot = hash(data, starts[id], starts[id + 1]) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = id + 1;
+            }
+        }
+
+        private static int hash(int[] values, int from, int to) {
+            int h = to - from;
+            for (int i = from; i < to; i++) {
+                h = h * 0x9e3779b9 + values[i];
+            }
+            return h ^ h >>> 16;
+        }
+    }
+
+    /**
+     * Collects the global ids each class needs, skipping repeats within one class.
+     */
+    private static final class Collector implements ReferenceVisitor {
+        private final DexFile dex;
+        private final ByteBuffer buf;
+        private final int[][] global;
+        /** Last class recorded per local id, {@code -1} if none. */
+        private final int[][] last = new int[KIND_COUNT][];
+        private final int[][] ids = new int[KIND_COUNT][];
+        private final int[] sizes = new int[KIND_COUNT];
+        private int current;
+
+        Collector(DexFile dex, int[][] global) {
+            this.dex = dex;
+            this.buf = dex.buffer();
+            this.global = global;
+            for (int kind : KINDS) {
+                last[kind] = new int[global[kind].length];
+                Arrays.fill(last[kind], -1);
+                ids[kind] = new int[64];
+            }
+        }
+
+        /**
+         * @return per class, the sorted global ids by kind
+         */
+        int[][][] collect(int[] classDefs) {
+            int[][][] result = new int[classDefs.length][][];
+            for (int i = 0; i < classDefs.length; i++) {
+                int c = classDefs[i];
+                current = c;
+                Arrays.fill(sizes, 0);
+                addType(dex.classType(c));
+                int superclass = dex.classSuperclass(c);
+                if (superclass != DexFile.NO_INDEX) {
+                    addType(superclass);
+                }
+                for (int type : dex.typeList(dex.classInterfacesOffset(c))) {
+                    addType(type);
+                }
+                int staticValues = dex.classStaticValuesOffset(c);
+                if (staticValues != 0) {
+                    EncodedValues.visitArray(buf, staticValues, this);
+                }
+                ReferenceIndex.visitAnnotations(buf, dex.classAnnotationsOffset(c), this);
+                ClassData data = dex.classData(c);
+                if (data != null) {
+                    for (int[] fields : new int[][]{data.getStaticFields(), data.getInstanceFields()}) {
+                        for (int j = 0; j < fields.length; j += 2) {
+                            addField(fields[j]);
+                        }
+                    }
+                    for (int[] methods : new int[][]{data.getDirectMethods(), data.getVirtualMethods()}) {
+                        for (int j = 0; j < methods.length; j += 3) {
+                            addMethod(methods[j]);
+                            CodeReferences.visit(dex, methods[j + 2], false, this);
+                        }
+                    }
+                }
+                int[][] refs = new int[KIND_COUNT][];
+                for (int kind : KINDS) {
+                    refs[kind] = Arrays.copyOf(ids[kind], sizes[kind]);
+                    Arrays.sort(refs[kind]);
+                }
+                result[i] = refs;
+            }
+            return result;
+        }
+
+        @Override
+        public void visit(int kind, int index) {
+            switch (kind) {
+                case Opcodes.INDEX_TYPE:
+                    addType(index);
+                    break;
+                case Opcodes.INDEX_FIELD:
+                    addField(index);
+                    break;
+                case Opcodes.INDEX_METHOD:
+                    addMethod(index);
+                    break;
+                case Opcodes.INDEX_PROTO:
+                    addProto(index);
+                    break;
+                case Opcodes.INDEX_CALL_SITE:
+                    EncodedValues.visitArray(buf, dex.callSiteOffset(index), this);
+                    break;
+                case Opcodes.INDEX_METHOD_HANDLE:
+                    if (dex.methodHandleType(index) <= METHOD_HANDLE_LAST_FIELD_TYPE) {
+                        addField(dex.methodHandleMember(index));
+                    } else {
+                        addMethod(dex.methodHandleMember(index));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private boolean add(int kind, int index) {
+            if (last[kind][index] == current) {
+                return false;
+            }
+            last[kind][index] = current;
+            int n = sizes[kind];
+            if (n == ids[kind].length) {
+                ids[kind] = Arrays.copyOf(ids[kind], n * 2);
+            }
+            ids[kind][n] = global[kind][index];
+            sizes[kind] = n + 1;
+            return true;
+        }
+
+        private void addType(int index) {
+            add(Opcodes.INDEX_TYPE, index);
+        }
+
+        private void addField(int index) {
+            if (add(Opcodes.INDEX_FIELD, index)) {
+                addType(dex.fieldClass(index));
+                addType(dex.fieldType(index));
+            }
+        }
+
+        private void addMethod(int index) {
+            if (add(Opcodes.INDEX_METHOD, index)) {
+                addType(dex.methodClass(index));
+                addProto(dex.methodProto(index));
+            }
+        }
+
+        private void addProto(int index) {
+            if (add(Opcodes.INDEX_PROTO, index)) {
+                addType(dex.protoReturnType(index));
+                for (int type : dex.protoParameters(index)) {
+                    addType(type);
+                }
+            }
+        }
+    }
+
+    /**
+     * One output file: the ids it defines so far as bitsets over the global ids.
+     */
+    private static final class Bin {
+        final long[][] bits = new long[KIND_COUNT][];
+        final int[] counts = new int[KIND_COUNT];
+        int[] units;
+        int size;
+
+        Bin(int[] sizes, int units) {
+            for (int kind : KINDS) {
+                bits[kind] = new long[(sizes[kind] + 63) >>> 6];
+            }
+            this.units = new int[Math.min(units, 256)];
+        }
+
+        boolean fits(int[][] refs, int limit) {
+            for (int kind : KINDS) {
+                long[] words = bits[kind];
+                int count = counts[kind];
+                if (count + refs[kind].length <= limit) {
+                    continue;
+                }
+                for (int id : refs[kind]) {
+                    if ((words[id >>> 6] & (1L << id)) == 0 && ++count > limit) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        void add(int unit, int[][] refs) {
+            for (int kind : KINDS) {
+                long[] words = bits[kind];
+                for (int id : refs[kind]) {
+                    long word = words[id >>> 6];
+                    if ((word & (1L << id)) == 0) {
+                        words[id >>> 6] = word | (1L << id);
+                        counts[kind]++;
+                    }
+                }
+            }
+            if (size == units.length) {
+                units = Arrays.copyOf(units, size * 2);
+            }
+            units[size++] = unit;
+        }
+    }
+
+    /**
+     * The classes of each output file and the ids they need.
+     */
+    public static final class Plan {
+        private final DexFile[] inputs;
+        private final int[][] files;
+        private final int[][] classDefs;
+        private final int[][] counts;
+        private final List<String> shadowed;
+
+        Plan(DexFile[] inputs, int[] unitFile, int[] unitClassDef, List<Bin> bins, List<String> shadowed) {
+            this.inputs = inputs;
+            this.files = new int[bins.size()][];
+            this.classDefs = new int[bins.size()][];
+            this.counts = new int[bins.size()][];
+            for (int p = 0; p < bins.size(); p++) {
+                Bin bin = bins.get(p);
+                files[p] = new int[bin.size];
+                classDefs[p] = new int[bin.size];
+                for (int i = 0; i < bin.size; i++) {
+                    files[p][i] = unitFile[bin.units[i]];
+                    classDefs[p][i] = unitClassDef[bin.units[i]];
+                }
+                counts[p] = bin.counts;
+            }
+            this.shadowed = Collections.unmodifiableList(shadowed);
+        }
+
+        /**
+         * @return the number of output files
+         */
+        public int size() {
+            return files.length;
+        }
+
+        /**
+         * @return the input file of each class in {@code partition}, as an index into the inputs
+         */
+        public int[] files(int partition) {
+            return files[partition].clone();
+        }
+
+        /**
+         * @return the {@code class_def} of each class in {@code partition} within its input file
+         */
+        public int[] classDefs(int partition) {
+            return classDefs[partition].clone();
+        }
+
+        public DexFile input(int index) {
+            return inputs[index];
+        }
+
+        public int classCount(int partition) {
+            return files[partition].length;
+        }
+
+        public int typeCount(int partition) {
+            return counts[partition][Opcodes.INDEX_TYPE];
+        }
+
+        public int protoCount(int partition) {
+            return counts[partition][Opcodes.INDEX_PROTO];
+        }
+
+        public int fieldCount(int partition) {
+            return counts[partition][Opcodes.INDEX_FIELD];
+        }
+
+        public int methodCount(int partition) {
+            return counts[partition][Opcodes.INDEX_METHOD];
+        }
+
+        /**
+         * @return descriptors defined by more than one input, once per dropped definition
+         */
+        public List<String> getShadowed() {
+            return shadowed;
+        }
+
+        /**
+         * Writes every output file concurrently on the common pool.
+         *
+         * @see #write(DexWriter, ForkJoinPool)
+         */
+        public ByteBuffer[] write(DexWriter writer) throws IOException {
+            return write(writer, ForkJoinPool.commonPool());
+        }
+
+        /**
+         * @param writer writes one file
+         * @param pool   the pool running the writers
+         * @return the files in loader order
+         * @throws IOException if a writer fails
+         */
+        public ByteBuffer[] write(DexWriter writer, ForkJoinPool pool) throws IOException {
+            ByteBuffer[] out = new ByteBuffer[size()];
+            try {
+                invokeAll(pool, out.length, p -> out[p] = writer.write(this, p));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return out;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int p = 0; p < size(); p++) {
+                sb.append(p == 0 ? "classes.dex" : "classes" + (p + 1) + ".dex")
+                        .append(": classes=").append(classCount(p))
+                        .append(" methods=").append(methodCount(p))
+                        .append(" fields=").append(fieldCount(p))
+                        .append(" types=").append(typeCount(p))
+                        .append(" protos=").append(protoCount(p))
+                        .append('\n');
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Walkers for {@code encoded_value}, {@code encoded_array} and annotation structures.
+ * <p>
+ * Every method works on absolute offsets of a little-endian buffer and returns the offset just
+ * past the walked structure. A {@code null} visitor only skips.
+ * </p>
+ */
+public final class EncodedValues {
+
+    public static final int VALUE_BYTE = 0x00;
+    public static final int VALUE_SHORT = 0x02;
+    public static final int VALUE_CHAR = 0x03;
+    public static final int VALUE_INT = 0x04;
+    public static final int VALUE_LONG = 0x06;
+    public static final int VALUE_FLOAT = 0x10;
+    public static final int VALUE_DOUBLE = 0x11;
+    public static final int VALUE_METHOD_TYPE = 0x15;
+    public static final int VALUE_METHOD_HANDLE = 0x16;
+    public static final int VALUE_STRING = 0x17;
+    public static final int VALUE_TYPE = 0x18;
+    public static final int VALUE_FIELD = 0x19;
+    public static final int VALUE_METHOD = 0x1a;
+    public static final int VALUE_ENUM = 0x1b;
+    public static final int VALUE_ARRAY = 0x1c;
+    public static final int VALUE_ANNOTATION = 0x1d;
+    public static final int VALUE_NULL = 0x1e;
+    public static final int VALUE_BOOLEAN = 0x1f;
+
+    private EncodedValues() {
+    }
+
+    /**
+     * Walks one {@code encoded_value}.
+     */
+    public static int visitValue(ByteBuffer buf, int offset, ReferenceVisitor visitor) {
+        int header = buf.get(offset) & 0xff;
+        int type = header & 0x1f;
+        int arg = header >>> 5;
+        int pos = offset + 1;
+        switch (type) {
+            case VALUE_ARRAY:
+                return visitArray(buf, pos, visitor);
+            case VALUE_ANNOTATION:
+                return visitAnnotation(buf, pos, visitor);
+            case VALUE_NULL:
+            case VALUE_BOOLEAN:
+                return pos;
+            default:
+                int kind = indexKind(type);
+                if (kind != Opcodes.INDEX_NONE && visitor != null) {
+                    visitor.visit(kind, readUnsigned(buf, pos, arg + 1));
+                }
+                return pos + arg + 1;
+        }
+    }
+
+    /**
+     * Walks an {@code encoded_array}, starting at its size.
+     */
+    public static int visitArray(ByteBuffer buf, int offset, ReferenceVisitor visitor) {
+        long packed = Leb128.readUnsigned(buf, offset);
+        int size = Leb128.value(packed);
+        int pos = Leb128.next(packed);
+        for (int i = 0; i < size; i++) {
+            pos = visitValue(buf, pos, visitor);
+        }
+        return pos;
+    }
+
+    /**
+     * Walks an {@code encoded_annotation}, starting at its type index.
+     */
+    public static int visitAnnotation(ByteBuffer buf, int offset, ReferenceVisitor visitor) {
+        long packed = Leb128.readUnsigned(buf, offset);
+        if (visitor != null) {
+            visitor.visit(Opcodes.INDEX_TYPE, Leb128.value(packed));
+        }
+        packed = Leb128.readUnsigned(buf, Leb128.next(packed));
+        int size = Leb128.value(packed);
+        int pos = Leb128.next(packed);
+        for (int i = 0; i < size; i++) {
+            packed = Leb128.readUnsigned(buf, pos);
+            if (visitor != null) {
+                visitor.visit(Opcodes.INDEX_STRING, Leb128.value(packed));
+            }
+            pos = visitValue(buf, Leb128.next(packed), visitor);
+        }
+        return pos;
+    }
+
+    /**
+     * Walks every {@code annotation_item} of an {@code annotation_set_item}.
+     *
+     * @param offset the set offset, {@code 0} for none
+     */
+    public static void visitAnnotationSet(ByteBuffer buf, int offset, ReferenceVisitor visitor) {
+        if (offset == 0) {
+            return;
+        }
+        int size = buf.getInt(offset);
+        for (int i = 0; i < size; i++) {
+            int item = buf.getInt(offset + 4 + i * 4);
+            // Skip the visibility byte
+            visitAnnotation(buf, item + 1, visitor);
+        }
+    }
+
+    /**
+     * Walks every set of an {@code annotation_set_ref_list}.
+     *
+     * @param offset the list offset, {@code 0} for none
+     */
+    public static void visitAnnotationSetRefList(ByteBuffer buf, int offset, ReferenceVisitor visitor) {
+        if (offset == 0) {
+            return;
+        }
+        int size = buf.getInt(offset);
+        for (int i = 0; i < size; i++) {
+            visitAnnotationSet(buf, buf.getInt(offset + 4 + i * 4), visitor);
+        }
+    }
+
+    /**
+     * Copies an {@code encoded_annotation} to {@code out}, starting at its type index.
+     *
+     * @return the input position after it, or {@code -1} if an index is missing
+     */
+    static int copyAnnotation(ByteBuffer buf, int pos, IndexRemap remap, DexOutput out) {
+        long packed = Leb128.readUnsigned(buf, pos);
+        int type = remap.type(Leb128.value(packed));
+        if (type == DexFile.NO_INDEX) {
+            return -1;
+        }
+        out.writeUleb128(type);
+        packed = Leb128.readUnsigned(buf, Leb128.next(packed));
+        int size = Leb128.value(packed);
+        out.writeUleb128(size);
+        pos = Leb128.next(packed);
+        for (int i = 0; i < size && pos >= 0; i++) {
+            packed = Leb128.readUnsigned(buf, pos);
+            int name = remap.string(Leb128.value(packed));
+            if (name == DexFile.NO_INDEX) {
+                return -1;
+            }
+            out.writeUleb128(name);
+            pos = copyValue(buf, Leb128.next(packed), remap, out);
+        }
+        return pos;
+    }
+
+    /**
+     * Copies an {@code encoded_array} to {@code out}, starting at its size.
+     *
+     * @return the input position after it, or {@code -1} if an index is missing
+     */
+    static int copyArray(ByteBuffer buf, int pos, IndexRemap remap, DexOutput out) {
+        long packed = Leb128.readUnsigned(buf, pos);
+        int size = Leb128.value(packed);
+        out.writeUleb128(size);
+        pos = Leb128.next(packed);
+        for (int i = 0; i < size && pos >= 0; i++) {
+            pos = copyValue(buf, pos, remap, out);
+        }
+        return pos;
+    }
+
+    /**
+     * Copies an {@code encoded_value} to {@code out}, re-encoding index values with the fewest bytes.
+     *
+     * @return the input position after it, or {@code -1} if an index is missing
+     */
+    static int copyValue(ByteBuffer buf, int pos, IndexRemap remap, DexOutput out) {
+        int header = buf.get(pos) & 0xff;
+        int type = header & 0x1f;
+        int arg = header >>> 5;
+        pos++;
+        switch (type) {
+            case VALUE_ARRAY:
+                out.writeByte(header);
+                return copyArray(buf, pos, remap, out);
+            case VALUE_ANNOTATION:
+                out.writeByte(header);
+                return copyAnnotation(buf, pos, remap, out);
+            case VALUE_NULL:
+            case VALUE_BOOLEAN:
+                out.writeByte(header);
+                return pos;
+            default:
+                int kind = indexKind(type);
+                if (kind == Opcodes.INDEX_NONE) {
+                    out.writeByte(header);
+                    out.write(buf, pos, arg + 1);
+                    return pos + arg + 1;
+                }
+                int index = remap.map(kind, EncodedValues.readUnsigned(buf, pos, arg + 1));
+                if (index == DexFile.NO_INDEX) {
+                    return -1;
+                }
+                int bytes = Math.max(1, (32 - Integer.numberOfLeadingZeros(index) + 7) >>> 3);
+                out.writeByte((bytes - 1) << 5 | type);
+                for (int i = 0; i < bytes; i++) {
+                    out.writeByte(index >>> (i * 8));
+                }
+                return pos + arg + 1;
+        }
+    }
+
+    /**
+     * @return the {@code Opcodes.INDEX_*} kind referenced by an encoded value type
+     */
+    public static int indexKind(int valueType) {
+        switch (valueType) {
+            case VALUE_METHOD_TYPE:
+                return Opcodes.INDEX_PROTO;
+            case VALUE_METHOD_HANDLE:
+                return Opcodes.INDEX_METHOD_HANDLE;
+            case VALUE_STRING:
+                return Opcodes.INDEX_STRING;
+            case VALUE_TYPE:
+                return Opcodes.INDEX_TYPE;
+            case VALUE_FIELD:
+            case VALUE_ENUM:
+                return Opcodes.INDEX_FIELD;
+            case VALUE_METHOD:
+                return Opcodes.INDEX_METHOD;
+            default:
+                return Opcodes.INDEX_NONE;
+        }
+    }
+
+    /**
+     * Reads a little-endian unsigned value of {@code size} bytes.
+     */
+    public static int readUnsigned(ByteBuffer buf, int offset, int size) {
+        int value = 0;
+        for (int i = 0; i < size; i++) {
+            value |= (buf.get(offset + i) & 0xff) << (i * 8);
+        }
+        return value;
+    }
+}
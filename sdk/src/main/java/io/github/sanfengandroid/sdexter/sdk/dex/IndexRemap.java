@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+/**
+ * Dense {@code old -> new} index tables for every id section of one input DEX.
+ * <p>
+ * A {@code null} table means the section is unchanged and indices map to themselves. A table
+ * entry of {@link DexFile#NO_INDEX} marks an item that does not exist in the output.
+ * </p>
+ */
+public final class IndexRemap {
+
+    /**
+     * Remap that leaves every index unchanged.
+     */
+    public static final IndexRemap IDENTITY = new IndexRemap(null, null, null, null, null, null, null);
+
+    private final int[] strings;
+    private final int[] types;
+    private final int[] protos;
+    private final int[] fields;
+    private final int[] methods;
+    private final int[] callSites;
+    private final int[] methodHandles;
+
+    public IndexRemap(int[] strings, int[] types, int[] protos, int[] fields, int[] methods,
+                      int[] callSites, int[] methodHandles) {
+        this.strings = strings;
+        this.types = types;
+        this.protos = protos;
+        this.fields = fields;
+        this.methods = methods;
+        this.callSites = callSites;
+        this.methodHandles = methodHandles;
+    }
+
+    public int string(int index) {
+        return map(strings, index);
+    }
+
+    public int type(int index) {
+        return map(types, index);
+    }
+
+    public int proto(int index) {
+        return map(protos, index);
+    }
+
+    public int field(int index) {
+        return map(fields, index);
+    }
+
+    public int method(int index) {
+        return map(methods, index);
+    }
+
+    public int callSite(int index) {
+        return map(callSites, index);
+    }
+
+    public int methodHandle(int index) {
+        return map(methodHandles, index);
+    }
+
+    /**
+     * Maps an instruction index operand.
+     *
+     * @param kind  one of the {@code Opcodes.INDEX_*} constants, except {@code INDEX_METHOD_AND_PROTO}
+     * @param index the old index
+     * @return the new index, or {@link DexFile#NO_INDEX}
+     */
+    public int map(int kind, int index) {
+        switch (kind) {
+            case Opcodes.INDEX_STRING:
+                return map(strings, index);
+            case Opcodes.INDEX_TYPE:
+                return map(types, index);
+            case Opcodes.INDEX_FIELD:
+                return map(fields, index);
+            case Opcodes.INDEX_METHOD:
+                return map(methods, index);
+            case Opcodes.INDEX_PROTO:
+                return map(protos, index);
+            case Opcodes.INDEX_CALL_SITE:
+                return map(callSites, index);
+            case Opcodes.INDEX_METHOD_HANDLE:
+                return map(methodHandles, index);
+            default:
+                return index;
+        }
+    }
+
+    /**
+     * @return {@code true} if string indices are unchanged
+     */
+    public boolean isStringIdentity() {
+        return strings == null;
+    }
+
+    /**
+     * @return {@code true} if type indices are unchanged
+     */
+    public boolean isTypeIdentity() {
+        return types == null;
+    }
+
+    private static int map(int[] table, int index) {
+        if (table == null || index == DexFile.NO_INDEX) {
+            return index;
+        }
+        return table[index];
+    }
+}
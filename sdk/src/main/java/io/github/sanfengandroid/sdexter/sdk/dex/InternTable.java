@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing table of items written to a {@link DexOutput}, keyed by their bytes.
+ * <p>
+ * Only offsets, lengths and hashes are kept; the bytes are compared in the output itself. Used
+ * to hash-cons data items such as annotations and static values.
+ * </p>
+ */
+final class InternTable {
+
+    private int[] offsets = new int[64];
+    private int[] lengths = new int[64];
+    private int[] hashes = new int[64];
+    private int size;
+
+    InternTable() {
+        Arrays.fill(offsets, -1);
+    }
+
+    int find(byte[] array, int offset, int length, int hash) {
+        int mask = offsets.length - 1;
+        for (int slot = hash & mask; offsets[slot] >= 0; slot = (slot + 1) & mask) {
+            int candidate = offsets[slot];
+            if (hashes[slot] == hash && lengths[slot] == length
+                    && Arrays.equals(array, candidate, candidate + length, array, offset, offset + length)) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds an item known to be absent.
+     */
+    void add(int offset, int length, int hash) {
+        if ((size + 1) * 2 > offsets.length) {
+            grow();
+        }
+        insert(offset, length, hash);
+        size++;
+    }
+
+    private void insert(int offset, int length, int hash) {
+        int mask = offsets.length - 1;
+        int slot = hash & mask;
+        while (offsets[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        offsets[slot] = offset;
+        lengths[slot] = length;
+        hashes[slot] = hash;
+    }
+
+    private void grow() {
+        int[] oldOffsets = offsets;
+        int[] oldLengths = lengths;
+        int[] oldHashes = hashes;
+        offsets = new int[oldOffsets.length * 2];
+        lengths = new int[offsets.length];
+        hashes = new int[offsets.length];
+        Arrays.fill(offsets, -1);
+        for (int i = 0; i < oldOffsets.length; i++) {
+            if (oldOffsets[i] >= 0) {
+                insert(oldOffsets[i], oldLengths[i], oldHashes[i]);
+            }
+        }
+    }
+
+    static int hash(byte[] array, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + array[i];
+        }
+        // Spread the low bits used for the slot
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 encoding helpers.
+ * <p>
+ * Readers take an absolute offset and return the value together with the next offset packed in
+ * a {@code long}: the value in the low 32 bits and the next offset in the high 32 bits. This
+ * keeps hot decoding loops free of cursor objects. Use {@link #value(long)} and
+ * {@link #next(long)} to unpack.
+ * </p>
+ */
+public final class Leb128 {
+
+    private Leb128() {
+    }
+
+    /**
+     * Reads an unsigned LEB128 value.
+     *
+     * @param buf    the buffer
+     * @param offset absolute offset of the first byte
+     * @return the packed value and next offset
+     */
+    public static long readUnsigned(ByteBuffer buf, int offset) {
+        int result = 0;
+        int shift = 0;
+        int pos = offset;
+        int b;
+        do {
+            b = buf.get(pos++) & 0xff;
+            result |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 35);
+        return pack(result, pos);
+    }
+
+    /**
+     * Reads a signed LEB128 value.
+     *
+     * @param buf    the buffer
+     * @param offset absolute offset of the first byte
+     * @return the packed value and next offset
+     */
+    public static long readSigned(ByteBuffer buf, int offset) {
+        int result = 0;
+        int shift = 0;
+        int pos = offset;
+        int b;
+        do {
+            b = buf.get(pos++) & 0xff;
+            result |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 35);
+        if (shift < 32 && (b & 0x40) != 0) {
+            result |= -1 << shift;
+        }
+        return pack(result, pos);
+    }
+
+    /**
+     * @return the offset after the LEB128 value starting at {@code offset}
+     */
+    public static int skip(ByteBuffer buf, int offset) {
+        int pos = offset;
+        while ((buf.get(pos++) & 0x80) != 0) {
+            // continuation byte
+        }
+        return pos;
+    }
+
+    public static int value(long packed) {
+        return (int) packed;
+    }
+
+    public static int next(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    /**
+     * @return the number of bytes needed to encode {@code value} as unsigned LEB128
+     */
+    public static int unsignedSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of bytes needed to encode {@code value} as signed LEB128
+     */
+    public static int signedSize(int value) {
+        int size = 1;
+        while (true) {
+            int b = value & 0x7f;
+            value >>= 7;
+            if ((value == 0 && (b & 0x40) == 0) || (value == -1 && (b & 0x40) != 0)) {
+                return size;
+            }
+            size++;
+        }
+    }
+
+    /**
+     * Writes an unsigned LEB128 value.
+     *
+     * @return the offset after the last written byte
+     */
+    public static int writeUnsigned(byte[] out, int offset, int value) {
+        int pos = offset;
+        while ((value & ~0x7f) != 0) {
+            out[pos++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    /**
+     * Writes a signed LEB128 value.
+     *
+     * @return the offset after the last written byte
+     */
+    public static int writeSigned(byte[] out, int offset, int value) {
+        int pos = offset;
+        while (true) {
+            int b = value & 0x7f;
+            value >>= 7;
+            if ((value == 0 && (b & 0x40) == 0) || (value == -1 && (b & 0x40) != 0)) {
+                out[pos++] = (byte) b;
+                return pos;
+            }
+            out[pos++] = (byte) (b | 0x80);
+        }
+    }
+
+    private static long pack(int value, int next) {
+        return ((long) next << 32) | (value & 0xffffffffL);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import io.github.sanfengandroid.sdexter.sdk.rule.MethodProto;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Method prototypes of one {@link DexFile} as primitive keys.
+ * <p>
+ * The key of a method is {@code name_idx << 32 | proto_idx}; two methods have the same dex form
+ * prototype exactly when their keys are equal, since strings and protos are unique within a DEX.
+ * A {@link MethodProto} from a rule is resolved once against the string, type and proto sections,
+ * after which matching a method is a lookup in an open addressing table of longs and never builds
+ * a string. Rules naming a type or proto the file does not contain resolve to nothing.
+ * </p>
+ * Pattern rules still need the dex form text. {@link #dexForm(int)} serves it from a bounded,
+ * direct-mapped cache keyed by method key, and proto descriptors are memoized per proto id, so
+ * the many methods sharing a name and prototype share one string. Safe for concurrent use.
+ */
+public final class MethodKeys {
+
+    /**
+     * Key of a prototype that does not occur in the DEX.
+     */
+    public static final long NO_KEY = -1L;
+
+    private static final int FORM_CACHE_SIZE = 1 << 14;
+
+    private final DexFile dex;
+    private final AtomicReferenceArray<String> protoDescriptors;
+    private final AtomicReferenceArray<Form> forms = new AtomicReferenceArray<>(FORM_CACHE_SIZE);
+
+    MethodKeys(DexFile dex) {
+        this.dex = dex;
+        this.protoDescriptors = new AtomicReferenceArray<>(dex.protoCount());
+    }
+
+    public static long key(int nameIdx, int protoIdx) {
+        return (long) nameIdx << 32 | protoIdx;
+    }
+
+    /**
+     * @return the key of method id {@code methodIdx}
+     */
+    public long key(int methodIdx) {
+        return key(dex.methodName(methodIdx), dex.methodProto(methodIdx));
+    }
+
+    /**
+     * Resolves a prototype against this DEX.
+     *
+     * @return the key, or {@link #NO_KEY} if no method of the file can have it
+     */
+    public long resolve(MethodProto proto) {
+        int name = dex.findString(proto.getName());
+        int returnType = dex.findType(proto.getReturnType());
+        if (name == DexFile.NO_INDEX || returnType == DexFile.NO_INDEX) {
+            return NO_KEY;
+        }
+        int[] parameters = new int[proto.getParameterCount()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = dex.findType(proto.getParameter(i));
+            if (parameters[i] == DexFile.NO_INDEX) {
+                return NO_KEY;
+            }
+        }
+        int protoIdx = findProto(returnType, parameters);
+        return protoIdx == DexFile.NO_INDEX ? NO_KEY : key(name, protoIdx);
+    }
+
+    /**
+     * Binary searches {@code proto_ids}, sorted by return type and then by parameter list.
+     */
+    private int findProto(int returnType, int[] parameters) {
+        int lo = 0;
+        int hi = dex.protoCount() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = Integer.compare(dex.protoReturnType(mid), returnType);
+            if (cmp == 0) {
+                cmp = compareTypeList(dex.protoParametersOffset(mid), parameters);
+            }
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return DexFile.NO_INDEX;
+    }
+
+    private int compareTypeList(int offset, int[] types) {
+        int[] list = dex.typeList(offset);
+        for (int i = 0; i < list.length && i < types.length; i++) {
+            if (list[i] != types[i]) {
+                return Integer.compare(list[i], types[i]);
+            }
+        }
+        return Integer.compare(list.length, types.length);
+    }
+
+    /**
+     * @return the dex form prototype of method id {@code methodIdx}, e.g. {@code fun(ILjava/lang/String;)V}
+     */
+    public String dexForm(int methodIdx) {
+        int name = dex.methodName(methodIdx);
+        int proto = dex.methodProto(methodIdx);
+        long key = key(name, proto);
+        int slot = (int) (key ^ key >>> 29) * 0x9e3779b9 >>> 18;
+        Form form = forms.get(slot);
+        if (form != null && form.key == key) {
+            return form.value;
+        }
+        String value = dex.string(name) + protoDescriptor(proto);
+        forms.lazySet(slot, new Form(key, value));
+        return value;
+    }
+
+    /**
+     * @return the memoized {@link DexFile#protoDescriptor(int)}
+     */
+    public String protoDescriptor(int protoIdx) {
+        String descriptor = protoDescriptors.get(protoIdx);
+        if (descriptor == null) {
+            descriptor = dex.protoDescriptor(protoIdx);
+            protoDescriptors.lazySet(protoIdx, descriptor);
+        }
+        return descriptor;
+    }
+
+    /**
+     * Builds an exact-match table over rule prototypes. Malformed entries and prototypes absent
+     * from this DEX never match.
+     *
+     * @param protos prototypes in dex or readable form
+     * @return the table, mapping a method key to the position of its first entry in {@code protos}
+     */
+    public Lookup lookup(String[] protos) {
+        long[] keys = new long[protos.length];
+        for (int i = 0; i < protos.length; i++) {
+            try {
+                keys[i] = resolve(MethodProto.parse(protos[i]));
+            } catch (IllegalArgumentException e) {
+                keys[i] = NO_KEY;
+            }
+        }
+        return new Lookup(keys);
+    }
+
+    /**
+     * Open addressing map from method keys to rule positions. Immutable.
+     */
+    public static final class Lookup {
+        private final long[] keys;
+        private final int[] values;
+        private final int mask;
+        private final int size;
+
+        Lookup(long[] ruleKeys) {
+            int capacity = Integer.highestOneBit(Math.max(4, ruleKeys.length * 2) - 1) << 1;
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(keys, NO_KEY);
+            int count = 0;
+            for (int i = 0; i < ruleKeys.length; i++) {
+                long key = ruleKeys[i];
+                if (key == NO_KEY) {
+                    continue;
+                }
+                int slot = slot(key);
+                while (keys[slot] != NO_KEY && keys[slot] != key) {
+                    slot = (slot + 1) & mask;
+                }
+                if (keys[slot] == NO_KEY) {
+                    keys[slot] = key;
+                    values[slot] = i;
+                    count++;
+                }
+            }
+            this.size = count;
+        }
+
+        /**
+         * @return the position of the rule matching {@code key}, or {@code -1}
+         */
+        public int get(long key) {
+            for (int slot = slot(key); keys[slot] != NO_KEY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the number of distinct prototypes that resolved
+         */
+        public int size() {
+            return size;
+        }
+
+        private int slot(long key) {
+            return (int) (key ^ key >>> 29) * 0x9e3779b9 & mask;
+        }
+    }
+
+    private static final class Form {
+        final long key;
+        final String value;
+
+        Form(long key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Modified UTF-8 helpers for the DEX string data format.
+ * <p>
+ * Unlike standard UTF-8, {@code U+0000} is encoded as two bytes and supplementary characters
+ * are encoded as two separately encoded surrogates, so each UTF-16 code unit maps to one
+ * sequence of one to three bytes. Encoded strings are terminated by a single zero byte.
+ * </p>
+ */
+public final class Mutf8 {
+
+    private Mutf8() {
+    }
+
+    /**
+     * Decodes {@code utf16Length} code units starting at {@code offset}.
+     *
+     * @param buf         the buffer
+     * @param offset      absolute offset of the first encoded byte
+     * @param utf16Length number of UTF-16 code units to decode
+     * @return the decoded string
+     */
+    public static String decode(ByteBuffer buf, int offset, int utf16Length) {
+        char[] out = new char[utf16Length];
+        int pos = offset;
+        for (int i = 0; i < utf16Length; i++) {
+            int a = buf.get(pos++) & 0xff;
+            if (a < 0x80) {
+                out[i] = (char) a;
+            } else if ((a & 0xe0) == 0xc0) {
+                int b = buf.get(pos++) & 0xff;
+                out[i] = (char) (((a & 0x1f) << 6) | (b & 0x3f));
+            } else if ((a & 0xf0) == 0xe0) {
+                int b = buf.get(pos++) & 0xff;
+                int c = buf.get(pos++) & 0xff;
+                out[i] = (char) (((a & 0x0f) << 12) | ((b & 0x3f) << 6) | (c & 0x3f));
+            } else {
+                throw new IllegalArgumentException("Bad MUTF-8 byte 0x" + Integer.toHexString(a) + " at " + (pos - 1));
+            }
+        }
+        return new String(out);
+    }
+
+    /**
+     * Compares encoded string data with a Java string by UTF-16 code unit values, the order
+     * used by the DEX {@code string_ids} section.
+     *
+     * @param buf         the buffer
+     * @param offset      absolute offset of the first encoded byte
+     * @param utf16Length number of encoded UTF-16 code units
+     * @param value       the string to compare with
+     * @return negative, zero or positive as the encoded string is less than, equal to or greater than {@code value}
+     */
+    public static int compare(ByteBuffer buf, int offset, int utf16Length, CharSequence value) {
+        int n = Math.min(utf16Length, value.length());
+        int pos = offset;
+        for (int i = 0; i < n; i++) {
+            int a = buf.get(pos++) & 0xff;
+            char c;
+            if (a < 0x80) {
+                c = (char) a;
+            } else if ((a & 0xe0) == 0xc0) {
+                c = (char) (((a & 0x1f) << 6) | (buf.get(pos++) & 0x3f));
+            } else {
+                int b = buf.get(pos++) & 0x3f;
+                c = (char) (((a & 0x0f) << 12) | (b << 6) | (buf.get(pos++) & 0x3f));
+            }
+            char v = value.charAt(i);
+            if (c != v) {
+                return c - v;
+            }
+        }
+        return utf16Length - value.length();
+    }
+
+    /**
+     * @param value the string to measure
+     * @return the encoded length in bytes, not counting the terminating zero
+     */
+    public static int encodedLength(CharSequence value) {
+        int length = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c != 0 && c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Encodes a string, without the terminating zero.
+     *
+     * @param value the string to encode
+     * @return the encoded bytes
+     */
+    public static byte[] encode(CharSequence value) {
+        byte[] out = new byte[encodedLength(value)];
+        encode(value, out, 0);
+        return out;
+    }
+
+    /**
+     * Encodes a string into {@code out} at {@code offset}, without the terminating zero.
+     *
+     * @return the offset after the last written byte
+     */
+    public static int encode(CharSequence value, byte[] out, int offset) {
+        int pos = offset;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c != 0 && c < 0x80) {
+                out[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xc0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else {
+                out[pos++] = (byte) (0xe0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                out[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return pos;
+    }
+}
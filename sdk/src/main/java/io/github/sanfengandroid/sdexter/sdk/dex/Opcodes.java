@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Dalvik instruction tables: width and index operand kind of every opcode.
+ * <p>
+ * The tables let callers walk and patch {@code insns} arrays without decoding instructions into
+ * objects. Payload pseudo-instructions ({@code packed-switch}, {@code sparse-switch} and
+ * {@code fill-array-data} data) share opcode {@code 0x00} and are sized by {@link #width(ByteBuffer, int)}.
+ * </p>
+ */
+public final class Opcodes {
+
+    public static final int NOP = 0x00;
+    public static final int MOVE_EXCEPTION = 0x0d;
+    public static final int RETURN_VOID = 0x0e;
+    public static final int RETURN = 0x0f;
+    public static final int RETURN_WIDE = 0x10;
+    public static final int RETURN_OBJECT = 0x11;
+    public static final int CONST_4 = 0x12;
+    public static final int CONST_16 = 0x13;
+    public static final int CONST_WIDE_16 = 0x16;
+    public static final int CONST_STRING = 0x1a;
+    public static final int CONST_STRING_JUMBO = 0x1b;
+    public static final int NEW_INSTANCE = 0x22;
+    public static final int THROW = 0x27;
+    public static final int GOTO = 0x28;
+    public static final int INVOKE_VIRTUAL = 0x6e;
+    public static final int INVOKE_SUPER = 0x6f;
+    public static final int INVOKE_DIRECT = 0x70;
+    public static final int INVOKE_STATIC = 0x71;
+    public static final int INVOKE_INTERFACE = 0x72;
+    public static final int INVOKE_VIRTUAL_RANGE = 0x74;
+    public static final int INVOKE_SUPER_RANGE = 0x75;
+    public static final int INVOKE_DIRECT_RANGE = 0x76;
+    public static final int INVOKE_STATIC_RANGE = 0x77;
+    public static final int INVOKE_INTERFACE_RANGE = 0x78;
+    public static final int INVOKE_POLYMORPHIC = 0xfa;
+    public static final int INVOKE_POLYMORPHIC_RANGE = 0xfb;
+
+    public static final int PACKED_SWITCH_PAYLOAD = 0x0100;
+    public static final int SPARSE_SWITCH_PAYLOAD = 0x0200;
+    public static final int FILL_ARRAY_DATA_PAYLOAD = 0x0300;
+
+    /** The instruction has no index operand. */
+    public static final int INDEX_NONE = 0;
+    public static final int INDEX_STRING = 1;
+    public static final int INDEX_TYPE = 2;
+    public static final int INDEX_FIELD = 3;
+    public static final int INDEX_METHOD = 4;
+    public static final int INDEX_PROTO = 5;
+    public static final int INDEX_CALL_SITE = 6;
+    public static final int INDEX_METHOD_HANDLE = 7;
+    /** {@code invoke-polymorphic}: method index in unit 1 and proto index in unit 3. */
+    public static final int INDEX_METHOD_AND_PROTO = 8;
+
+    private static final byte[] WIDTH = new byte[256];
+    private static final byte[] INDEX = new byte[256];
+
+    static {
+        // Formats 10x, 12x, 11n, 11x, 10t are one unit wide
+        Arrays.fill(WIDTH, (byte) 1);
+        set(0x02, 0x02, 2);     // move/from16 22x
+        set(0x03, 0x03, 3);     // move/16 32x
+        set(0x05, 0x05, 2);
+        set(0x06, 0x06, 3);
+        set(0x08, 0x08, 2);
+        set(0x09, 0x09, 3);
+        set(0x13, 0x13, 2);     // const/16 21s
+        set(0x14, 0x14, 3);     // const 31i
+        set(0x15, 0x16, 2);     // const/high16 21h, const-wide/16 21s
+        set(0x17, 0x17, 3);     // const-wide/32 31i
+        set(0x18, 0x18, 5);     // const-wide 51l
+        set(0x19, 0x19, 2);     // const-wide/high16 21h
+        set(0x1a, 0x1a, 2, INDEX_STRING);
+        set(0x1b, 0x1b, 3, INDEX_STRING);
+        set(0x1c, 0x1c, 2, INDEX_TYPE);
+        set(0x1f, 0x20, 2, INDEX_TYPE);  // check-cast, instance-of
+        set(0x22, 0x23, 2, INDEX_TYPE);  // new-instance, new-array
+        set(0x24, 0x25, 3, INDEX_TYPE);  // filled-new-array(/range)
+        set(0x26, 0x26, 3);     // fill-array-data 31t
+        set(0x29, 0x29, 2);     // goto/16
+        set(0x2a, 0x2c, 3);     // goto/32, packed-switch, sparse-switch
+        set(0x2d, 0x31, 2);     // cmpkind 23x
+        set(0x32, 0x3d, 2);     // if-test, if-testz
+        set(0x44, 0x51, 2);     // arrayop 23x
+        set(0x52, 0x6d, 2, INDEX_FIELD);
+        set(0x6e, 0x72, 3, INDEX_METHOD);
+        set(0x74, 0x78, 3, INDEX_METHOD);
+        set(0x90, 0xaf, 2);     // binop 23x
+        set(0xd0, 0xe2, 2);     // binop/lit16, binop/lit8
+        set(0xfa, 0xfb, 4, INDEX_METHOD_AND_PROTO);
+        set(0xfc, 0xfd, 3, INDEX_CALL_SITE);
+        set(0xfe, 0xfe, 2, INDEX_METHOD_HANDLE);
+        set(0xff, 0xff, 2, INDEX_PROTO);
+    }
+
+    private Opcodes() {
+    }
+
+    private static void set(int from, int to, int width) {
+        set(from, to, width, INDEX_NONE);
+    }
+
+    private static void set(int from, int to, int width, int index) {
+        for (int op = from; op <= to; op++) {
+            WIDTH[op] = (byte) width;
+            INDEX[op] = (byte) index;
+        }
+    }
+
+    /**
+     * @param opcode the low byte of the first code unit
+     * @return the width in code units, not valid for payloads
+     */
+    public static int width(int opcode) {
+        return WIDTH[opcode];
+    }
+
+    /**
+     * @param opcode the low byte of the first code unit
+     * @return one of the {@code INDEX_*} constants
+     */
+    public static int indexKind(int opcode) {
+        return INDEX[opcode];
+    }
+
+    /**
+     * Returns the width of the instruction or payload at an absolute offset.
+     *
+     * @param buf    a little-endian buffer
+     * @param offset absolute offset of the first code unit
+     * @return the width in code units
+     */
+    public static int width(ByteBuffer buf, int offset) {
+        int unit = buf.getShort(offset) & 0xffff;
+        if ((unit & 0xff) != NOP || unit == NOP) {
+            return WIDTH[unit & 0xff];
+        }
+        int unit1 = buf.getShort(offset + 2) & 0xffff;
+        return payloadWidth(unit, unit1, unit == FILL_ARRAY_DATA_PAYLOAD ? buf.getInt(offset + 4) : 0);
+    }
+
+    /**
+     * Returns the width of the instruction or payload at an offset of a little-endian byte array.
+     *
+     * @param code   the bytes
+     * @param offset offset of the first code unit
+     * @return the width in code units
+     */
+    public static int width(byte[] code, int offset) {
+        int unit = (code[offset] & 0xff) | (code[offset + 1] & 0xff) << 8;
+        if ((unit & 0xff) != NOP || unit == NOP) {
+            return WIDTH[unit & 0xff];
+        }
+        int unit1 = (code[offset + 2] & 0xff) | (code[offset + 3] & 0xff) << 8;
+        int word = unit != FILL_ARRAY_DATA_PAYLOAD ? 0 : (code[offset + 4] & 0xff) | (code[offset + 5] & 0xff) << 8
+                | (code[offset + 6] & 0xff) << 16 | (code[offset + 7] & 0xff) << 24;
+        return payloadWidth(unit, unit1, word);
+    }
+
+    private static int payloadWidth(int ident, int unit1, int word) {
+        switch (ident) {
+            case PACKED_SWITCH_PAYLOAD:
+                return 4 + unit1 * 2;
+            case SPARSE_SWITCH_PAYLOAD:
+                return 2 + unit1 * 4;
+            case FILL_ARRAY_DATA_PAYLOAD:
+                long bytes = (word & 0xffffffffL) * unit1;
+                return (int) (4 + (bytes + 1) / 2);
+            default:
+                // A nop carrying data in its high byte
+                return 1;
+        }
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Copies {@code code_item} and {@code debug_info_item} structures of unmodified classes from a
+ * mapped input straight into the output buffers.
+ * <p>
+ * Instructions are copied as raw bytes and only their index operands are patched in place
+ * through an {@link IndexRemap}; no instruction is decoded into an object. Catch handler types
+ * and debug info indices are LEB128 encoded, so those lists are streamed and re-encoded, or
+ * copied verbatim when the relevant tables are the identity.
+ * </p>
+ * <p>
+ * The map list requires every item type to form one contiguous section, so code items and debug
+ * info go to separate buffers. The {@code debug_info_off} of a copied code item is relative to the
+ * debug info buffer until {@link #relocateDebugInfo(int)} adds the file offset of that section.
+ * </p>
+ * A code item cannot be patched in place when a remapped index no longer fits its operand, for
+ * example a {@code const-string} whose new string index exceeds {@code 0xffff}, or when it
+ * refers to an item that is not in the output. {@link #copyCodeItem(int, int)} then returns
+ * {@link #NOT_PATCHABLE} and the caller must re-encode that method.
+ */
+public final class PassThroughWriter {
+
+    /**
+     * Returned by {@link #copyCodeItem(int, int)} when the item has to be re-encoded.
+     */
+    public static final int NOT_PATCHABLE = -1;
+
+    /**
+     * Returned by {@link #copyDebugInfo(int)} for a method without debug info.
+     */
+    public static final int NO_DEBUG_INFO = -1;
+
+    private static final int ACC_CONSTRUCTOR = 0x10000;
+    private static final int DBG_END_SEQUENCE = 0x00;
+    private static final int DBG_ADVANCE_PC = 0x01;
+    private static final int DBG_ADVANCE_LINE = 0x02;
+    private static final int DBG_START_LOCAL = 0x03;
+    private static final int DBG_START_LOCAL_EXTENDED = 0x04;
+    private static final int DBG_END_LOCAL = 0x05;
+    private static final int DBG_RESTART_LOCAL = 0x06;
+    private static final int DBG_SET_FILE = 0x09;
+
+    private final DexFile dex;
+    private final ByteBuffer buf;
+    private final IndexRemap remap;
+    private final DexOutput out;
+    private final DexOutput debugInfo;
+    /** Output offsets of the code items whose {@code debug_info_off} is still relative. */
+    private int[] debugInfoUsers = new int[64];
+    private int debugInfoUserCount;
+
+    /**
+     * @param dex       the input DEX
+     * @param remap     index tables from the input to the output
+     * @param out       the code item section, items are appended at its end
+     * @param debugInfo the debug info section, items are appended at its end; must not be {@code out}
+     */
+    public PassThroughWriter(DexFile dex, IndexRemap remap, DexOutput out, DexOutput debugInfo) {
+        if (out == debugInfo) {
+            throw new IllegalArgumentException("Code items and debug info need separate outputs");
+        }
+        this.dex = dex;
+        this.buf = dex.buffer();
+        this.remap = remap;
+        this.out = out;
+        this.debugInfo = debugInfo;
+    }
+
+    /**
+     * Appends a copy of a code item with remapped index operands.
+     *
+     * @param codeOffset   offset of the input {@code code_item}
+     * @param debugInfoOff the result of {@link #copyDebugInfo(int)}, or {@link #NO_DEBUG_INFO}
+     * @return the offset of the copy in the output, or {@link #NOT_PATCHABLE}; nothing is written in that case
+     */
+    public int copyCodeItem(int codeOffset, int debugInfoOff) {
+        CodeItem code = dex.codeItem(codeOffset);
+        int start = (out.size() + 3) & ~3;
+        out.align(4);
+        int insnsSize = code.getInsnsSize();
+        int tries = code.getTriesSize();
+        int insnsEnd = code.getInsnsOffset() + insnsSize * 2;
+        int tail = tries == 0 ? insnsEnd : code.getTriesOffset() + tries * 8;
+        out.write(buf, codeOffset, tail - codeOffset);
+        out.putInt(start + 8, debugInfoOff == NO_DEBUG_INFO ? 0 : debugInfoOff);
+        if (!patchInsns(out.array(), start + CodeItem.HEADER_SIZE, insnsSize, remap)) {
+            out.truncate(start);
+            return NOT_PATCHABLE;
+        }
+        if (tries > 0) {
+            int handlersOff = tail;
+            int end = code.getEnd();
+            if (remap.isTypeIdentity()) {
+                out.write(buf, handlersOff, end - handlersOff);
+            } else if (!copyHandlers(handlersOff, start + (code.getTriesOffset() - codeOffset), tries)) {
+                out.truncate(start);
+                return NOT_PATCHABLE;
+            }
+        }
+        if (debugInfoOff != NO_DEBUG_INFO) {
+            if (debugInfoUserCount == debugInfoUsers.length) {
+                debugInfoUsers = Arrays.copyOf(debugInfoUsers, debugInfoUserCount * 2);
+            }
+            debugInfoUsers[debugInfoUserCount++] = start;
+        }
+        return start;
+    }
+
+    /**
+     * Copies the code of every direct and virtual method of a class, debug info first.
+     *
+     * @param data the class data of an unmodified class
+     * @return the new code offsets in member order, {@code 0} for methods without code, or
+     * {@code null} if a method has to be re-encoded; nothing is written to either output in that case
+     */
+    public int[] copyClassCode(ClassData data) {
+        return copyClassCode(data, null, null);
+    }
+
+    /**
+     * Copies the code of every direct and virtual method of a class, replacing the bodies selected
+     * by {@code removesCode} with shared default return stubs. The debug info of a replaced body is
+     * dropped with it. Constructors always keep their code.
+     *
+     * @param data        the class data of an unmodified class
+     * @param removesCode selects method ids whose body is replaced, may be {@code null}
+     * @param stubs       the shared stubs of the output, may be {@code null} if {@code removesCode} is
+     * @return the new code offsets in member order, {@code 0} for methods without code, or
+     * {@code null} if a method has to be re-encoded; nothing is written in that case, apart from
+     * stubs which stay valid for later use
+     */
+    public int[] copyClassCode(ClassData data, IntPredicate removesCode, StubCodeItems stubs) {
+        return copyClassCode(data, removesCode, stubs, null);
+    }
+
+    /**
+     * Copies the code of every direct and virtual method of a class like
+     * {@link #copyClassCode(ClassData, IntPredicate, StubCodeItems)}, additionally leaving out the
+     * debug info of the methods selected by {@code dropsDebugInfo}.
+     *
+     * @param data           the class data of an unmodified class
+     * @param removesCode    selects method ids whose body is replaced, may be {@code null}
+     * @param stubs          the shared stubs of the output, may be {@code null} if {@code removesCode} is
+     * @param dropsDebugInfo selects method ids whose copy has no debug info, may be {@code null}
+     * @return the new code offsets in member order, {@code 0} for methods without code, or
+     * {@code null} if a method has to be re-encoded; nothing is written in that case, apart from
+     * stubs which stay valid for later use
+     */
+    public int[] copyClassCode(ClassData data, IntPredicate removesCode, StubCodeItems stubs,
+                               IntPredicate dropsDebugInfo) {
+        int[] direct = data.getDirectMethods();
+        int[] virtual = data.getVirtualMethods();
+        int[] offsets = new int[direct.length / 3 + virtual.length / 3];
+        boolean[] stubbed = new boolean[offsets.length];
+        int n = 0;
+        // Stubs first, so a failed copy below can truncate without losing shared items
+        for (int[] methods : new int[][]{direct, virtual}) {
+            for (int i = 0; i < methods.length; i += 3, n++) {
+                int flags = methods[i + 1];
+                if (removesCode != null && methods[i + 2] != 0 && (flags & ACC_CONSTRUCTOR) == 0
+                        && removesCode.test(methods[i])) {
+                    offsets[n] = stubs.stub(dex, methods[i], flags);
+                    stubbed[n] = true;
+                }
+            }
+        }
+        int mark = out.size();
+        int debugInfoMark = debugInfo.size();
+        int usersMark = debugInfoUserCount;
+        n = 0;
+        for (int[] methods : new int[][]{direct, virtual}) {
+            for (int i = 0; i < methods.length; i += 3, n++) {
+                int codeOff = methods[i + 2];
+                if (codeOff == 0 || stubbed[n]) {
+                    continue;
+                }
+                int debug = dropsDebugInfo != null && dropsDebugInfo.test(methods[i])
+                        ? NO_DEBUG_INFO : copyDebugInfo(dex.codeItem(codeOff).getDebugInfoOffset());
+                int copied = copyCodeItem(codeOff, debug);
+                if (copied == NOT_PATCHABLE) {
+                    out.truncate(mark);
+                    debugInfo.truncate(debugInfoMark);
+                    debugInfoUserCount = usersMark;
+                    return null;
+                }
+                offsets[n] = copied;
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Appends a copy of a debug info item with remapped string and type indices to the debug info
+     * output.
+     *
+     * @param debugInfoOffset offset of the input {@code debug_info_item}, may be {@code 0}
+     * @return the offset of the copy in the debug info output, or {@link #NO_DEBUG_INFO} when there
+     * is no debug info
+     */
+    public int copyDebugInfo(int debugInfoOffset) {
+        if (debugInfoOffset == 0) {
+            return NO_DEBUG_INFO;
+        }
+        int start = debugInfo.size();
+        boolean raw = remap.isStringIdentity() && remap.isTypeIdentity();
+        int pos = debugInfoOffset;
+        long packed = Leb128.readUnsigned(buf, pos);
+        int lineStart = Leb128.value(packed);
+        pos = Leb128.next(packed);
+        packed = Leb128.readUnsigned(buf, pos);
+        int parameters = Leb128.value(packed);
+        pos = Leb128.next(packed);
+        if (!raw) {
+            debugInfo.writeUleb128(lineStart);
+            debugInfo.writeUleb128(parameters);
+        }
+        for (int i = 0; i < parameters; i++) {
+            pos = copyStringP1(debugInfo, pos, raw);
+        }
+        while (true) {
+            int opcode = buf.get(pos++) & 0xff;
+            if (!raw) {
+                debugInfo.writeByte(opcode);
+            }
+            switch (opcode) {
+                case DBG_END_SEQUENCE:
+                    if (raw) {
+                        debugInfo.write(buf, debugInfoOffset, pos - debugInfoOffset);
+                    }
+                    return start;
+                case DBG_ADVANCE_PC:
+                case DBG_END_LOCAL:
+                case DBG_RESTART_LOCAL:
+                    pos = copyUleb(debugInfo, pos, raw);
+                    break;
+                case DBG_ADVANCE_LINE:
+                    packed = Leb128.readSigned(buf, pos);
+                    if (!raw) {
+                        debugInfo.writeSleb128(Leb128.value(packed));
+                    }
+                    pos = Leb128.next(packed);
+                    break;
+                case DBG_START_LOCAL:
+                    pos = copyUleb(debugInfo, pos, raw);
+                    pos = copyStringP1(debugInfo, pos, raw);
+                    pos = copyTypeP1(debugInfo, pos, raw);
+                    break;
+                case DBG_START_LOCAL_EXTENDED:
+                    pos = copyUleb(debugInfo, pos, raw);
+                    pos = copyStringP1(debugInfo, pos, raw);
+                    pos = copyTypeP1(debugInfo, pos, raw);
+                    pos = copyStringP1(debugInfo, pos, raw);
+                    break;
+                case DBG_SET_FILE:
+                    pos = copyStringP1(debugInfo, pos, raw);
+                    break;
+                default:
+                    // DBG_SET_PROLOGUE_END, DBG_SET_EPILOGUE_BEGIN and special opcodes have no operands
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Turns the {@code debug_info_off} of every code item copied so far into a file offset, once
+     * the position of the debug info section is known. Call it once, after the last copy.
+     *
+     * @param debugInfoSectionOffset the file offset of the first byte of the debug info output
+     */
+    public void relocateDebugInfo(int debugInfoSectionOffset) {
+        for (int i = 0; i < debugInfoUserCount; i++) {
+            int field = debugInfoUsers[i] + 8;
+            out.putInt(field, out.getInt(field) + debugInfoSectionOffset);
+        }
+        debugInfoUserCount = 0;
+    }
+
+    /**
+     * Patches the index operands of {@code units} code units starting at {@code offset}.
+     *
+     * @return {@code false} if an index was removed or no longer fits its operand
+     */
+    static boolean patchInsns(byte[] code, int offset, int units, IndexRemap remap) {
+        int end = offset + units * 2;
+        int pos = offset;
+        while (pos < end) {
+            int opcode = code[pos] & 0xff;
+            int kind = Opcodes.indexKind(opcode);
+            if (kind != Opcodes.INDEX_NONE) {
+                if (opcode == Opcodes.CONST_STRING_JUMBO) {
+                    int old = readInt(code, pos + 2);
+                    int mapped = remap.string(old);
+                    if (mapped == DexFile.NO_INDEX) {
+                        return false;
+                    }
+                    writeInt(code, pos + 2, mapped);
+                } else if (kind == Opcodes.INDEX_METHOD_AND_PROTO) {
+                    if (!patchShort(code, pos + 2, Opcodes.INDEX_METHOD, remap)
+                            || !patchShort(code, pos + 6, Opcodes.INDEX_PROTO, remap)) {
+                        return false;
+                    }
+                } else if (!patchShort(code, pos + 2, kind, remap)) {
+                    return false;
+                }
+            }
+            pos += Opcodes.width(code, pos) * 2;
+        }
+        return true;
+    }
+
+    private static boolean patchShort(byte[] code, int offset, int kind, IndexRemap remap) {
+        int old = (code[offset] & 0xff) | (code[offset + 1] & 0xff) << 8;
+        int mapped = remap.map(kind, old);
+        if (mapped < 0 || mapped > 0xffff) {
+            return false;
+        }
+        code[offset] = (byte) mapped;
+        code[offset + 1] = (byte) (mapped >> 8);
+        return true;
+    }
+
+    /**
+     * Re-encodes {@code encoded_catch_handler_list} with remapped types and fixes the
+     * {@code handler_off} of each copied {@code try_item}, since LEB128 sizes may change.
+     */
+    private boolean copyHandlers(int handlersOff, int outTriesOff, int tries) {
+        int listStart = out.size();
+        int pos = handlersOff;
+        long packed = Leb128.readUnsigned(buf, pos);
+        int count = Leb128.value(packed);
+        pos = Leb128.next(packed);
+        out.writeUleb128(count);
+        int[] oldOffsets = new int[count];
+        int[] newOffsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            oldOffsets[i] = pos - handlersOff;
+            newOffsets[i] = out.size() - listStart;
+            packed = Leb128.readSigned(buf, pos);
+            int size = Leb128.value(packed);
+            pos = Leb128.next(packed);
+            out.writeSleb128(size);
+            for (int j = Math.abs(size); j > 0; j--) {
+                packed = Leb128.readUnsigned(buf, pos);
+                int type = remap.type(Leb128.value(packed));
+                if (type == DexFile.NO_INDEX) {
+                    return false;
+                }
+                out.writeUleb128(type);
+                pos = Leb128.next(packed);
+                pos = copyUleb(out, pos, false);
+            }
+            if (size <= 0) {
+                pos = copyUleb(out, pos, false);
+            }
+        }
+        for (int i = 0; i < tries; i++) {
+            int field = outTriesOff + i * 8 + 6;
+            int old = out.getShort(field);
+            int index = Arrays.binarySearch(oldOffsets, old);
+            if (index < 0 || newOffsets[index] > 0xffff) {
+                return false;
+            }
+            out.putShort(field, newOffsets[index]);
+        }
+        return true;
+    }
+
+    private int copyUleb(DexOutput out, int pos, boolean raw) {
+        if (raw) {
+            return Leb128.skip(buf, pos);
+        }
+        long packed = Leb128.readUnsigned(buf, pos);
+        out.writeUleb128(Leb128.value(packed));
+        return Leb128.next(packed);
+    }
+
+    private int copyStringP1(DexOutput out, int pos, boolean raw) {
+        if (raw) {
+            return Leb128.skip(buf, pos);
+        }
+        long packed = Leb128.readUnsigned(buf, pos);
+        out.writeUleb128p1(remap.string(Leb128.value(packed) - 1));
+        return Leb128.next(packed);
+    }
+
+    private int copyTypeP1(DexOutput out, int pos, boolean raw) {
+        if (raw) {
+            return Leb128.skip(buf, pos);
+        }
+        long packed = Leb128.readUnsigned(buf, pos);
+        out.writeUleb128p1(remap.type(Leb128.value(packed) - 1));
+        return Leb128.next(packed);
+    }
+
+    private static int readInt(byte[] code, int offset) {
+        return (code[offset] & 0xff) | (code[offset + 1] & 0xff) << 8
+                | (code[offset + 2] & 0xff) << 16 | (code[offset + 3] & 0xff) << 24;
+    }
+
+    private static void writeInt(byte[] code, int offset, int value) {
+        code[offset] = (byte) value;
+        code[offset + 1] = (byte) (value >> 8);
+        code[offset + 2] = (byte) (value >> 16);
+        code[offset + 3] = (byte) (value >> 24);
+    }
+}
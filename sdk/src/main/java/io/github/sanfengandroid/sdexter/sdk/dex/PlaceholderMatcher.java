@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import io.github.sanfengandroid.sdexter.sdk.MethodNotReplacedException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Recognizes mirror method bodies consisting of {@code throw new MethodNotReplacedException()},
+ * which mark the original code as kept.
+ * <p>
+ * The match works on raw code units: a fixed sequence is compared against the instructions,
+ * with nothing decoded into objects and nothing allocated. The accepted bodies, without try
+ * blocks and with any register numbers, are
+ * </p>
+ * <pre>
+ * new-instance vA, MethodNotReplacedException
+ * invoke-direct {vA}, MethodNotReplacedException.&lt;init&gt;()V          (or invoke-direct/range)
+ * throw vA
+ * </pre>
+ * as emitted by D8 for javac and kotlinc output, and the form left after R8 inlines the
+ * constructor:
+ * <pre>
+ * new-instance vA, MethodNotReplacedException
+ * const-string vB, "..."                                              (or const-string/jumbo)
+ * invoke-direct {vA, vB}, RuntimeException.&lt;init&gt;(Ljava/lang/String;)V   (or invoke-direct/range)
+ * throw vA
+ * </pre>
+ * A matcher is bound to one DEX since it compares ids.
+ */
+public final class PlaceholderMatcher {
+
+    /**
+     * Descriptor of {@link MethodNotReplacedException}.
+     */
+    public static final String EXCEPTION_DESCRIPTOR =
+            "L" + MethodNotReplacedException.class.getName().replace('.', '/') + ";";
+
+    private static final String SUPER_DESCRIPTOR = "Ljava/lang/RuntimeException;";
+
+    private static final int ACC_CONSTRUCTOR = 0x10000;
+
+    private static final int OP_NEW_INSTANCE = 0x22;
+    private static final int OP_CONST_STRING = 0x1a;
+    private static final int OP_CONST_STRING_JUMBO = 0x1b;
+    private static final int OP_INVOKE_DIRECT = 0x70;
+    private static final int OP_INVOKE_DIRECT_RANGE = 0x76;
+    private static final int OP_THROW = 0x27;
+
+    private final ByteBuffer buf;
+    private final int exceptionType;
+    private final int init;
+    private final int superInit;
+
+    private PlaceholderMatcher(ByteBuffer buf, int exceptionType, int init, int superInit) {
+        this.buf = buf;
+        this.exceptionType = exceptionType;
+        this.init = init;
+        this.superInit = superInit;
+    }
+
+    /**
+     * Resolves the ids the placeholder bodies of {@code dex} refer to.
+     *
+     * @param dex the DEX holding the mirror classes
+     * @return the matcher; it never matches if {@code dex} does not reference the exception
+     */
+    public static PlaceholderMatcher of(DexFile dex) {
+        int exceptionType = dex.findType(EXCEPTION_DESCRIPTOR);
+        int init = DexFile.NO_INDEX;
+        int superInit = DexFile.NO_INDEX;
+        if (exceptionType != DexFile.NO_INDEX) {
+            int initName = dex.findString("<init>");
+            init = findConstructor(dex, exceptionType, initName, "()V");
+            int superType = dex.findType(SUPER_DESCRIPTOR);
+            if (superType != DexFile.NO_INDEX) {
+                superInit = findConstructor(dex, superType, initName, "(Ljava/lang/String;)V");
+            }
+        }
+        return new PlaceholderMatcher(dex.buffer(), exceptionType, init, superInit);
+    }
+
+    private static int findConstructor(DexFile dex, int type, int name, String proto) {
+        if (name == DexFile.NO_INDEX) {
+            return DexFile.NO_INDEX;
+        }
+        // method_ids are sorted by class, find the first method of the type
+        int lo = 0;
+        int hi = dex.methodCount();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (dex.methodClass(mid) < type) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < dex.methodCount() && dex.methodClass(i) == type; i++) {
+            if (dex.methodName(i) == name && dex.protoDescriptor(dex.methodProto(i)).equals(proto)) {
+                return i;
+            }
+        }
+        return DexFile.NO_INDEX;
+    }
+
+    /**
+     * @param codeOffset offset of a {@code code_item}, {@code 0} for a method without code
+     * @return {@code true} if the body is a placeholder
+     */
+    public boolean matches(int codeOffset) {
+        if (codeOffset == 0 || init == DexFile.NO_INDEX && superInit == DexFile.NO_INDEX) {
+            return false;
+        }
+        if (unit(codeOffset + 6) != 0) {
+            return false;
+        }
+        int units = buf.getInt(codeOffset + 12);
+        int pc = codeOffset + CodeItem.HEADER_SIZE;
+        int end = pc + units * 2;
+        // new-instance vAA, type@BBBB
+        if (units < 6 || (unit(pc) & 0xff) != OP_NEW_INSTANCE || unit(pc + 2) != exceptionType) {
+            return false;
+        }
+        int register = unit(pc) >>> 8;
+        pc += 4;
+        int argument = -1;
+        int op = unit(pc) & 0xff;
+        if (op == OP_CONST_STRING || op == OP_CONST_STRING_JUMBO) {
+            argument = unit(pc) >>> 8;
+            pc += op == OP_CONST_STRING ? 4 : 6;
+        }
+        if (pc + 8 != end) {
+            return false;
+        }
+        int method = argument < 0 ? init : superInit;
+        if (method == DexFile.NO_INDEX || !isInvoke(pc, method, register, argument)) {
+            return false;
+        }
+        // throw vAA
+        return unit(pc + 6) == (OP_THROW | register << 8);
+    }
+
+    /**
+     * Checks whether every method of a mirror class is a placeholder, in which case the class
+     * keeps all of its original code and need not be decoded.
+     *
+     * @param data the class data of a mirror class, may be {@code null}
+     * @return {@code true} if each method with code is a placeholder
+     */
+    public boolean matchesAll(ClassData data) {
+        return data == null || matchesAll(data.getDirectMethods()) && matchesAll(data.getVirtualMethods());
+    }
+
+    private boolean matchesAll(int[] methods) {
+        for (int i = 0; i < methods.length; i += 3) {
+            // <init> and <clinit> of a mirror class are never placeholders, skip constructors
+            if ((methods[i + 1] & ACC_CONSTRUCTOR) == 0 && methods[i + 2] != 0 && !matches(methods[i + 2])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Matches {@code invoke-direct} or {@code invoke-direct/range} on {@code {register}} or
+     * {@code {register, argument}}.
+     */
+    private boolean isInvoke(int pc, int method, int register, int argument) {
+        int first = unit(pc);
+        int count = argument < 0 ? 1 : 2;
+        if (unit(pc + 2) != method) {
+            return false;
+        }
+        int args = unit(pc + 4);
+        if ((first & 0xff) == OP_INVOKE_DIRECT_RANGE) {
+            return first >>> 8 == count && args == register && (argument < 0 || argument == register + 1);
+        }
+        if ((first & 0xff) != OP_INVOKE_DIRECT || first >>> 12 != count) {
+            return false;
+        }
+        // 35c: A|G|op BBBB F|E|D|C
+        return (args & 0xf) == register && (argument < 0 || (args >>> 4 & 0xf) == argument);
+    }
+
+    private int unit(int offset) {
+        return buf.getShort(offset) & 0xffff;
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Inverted index from type, field and method ids to the code and classes referring to them.
+ * <p>
+ * The index is built in one pass over every {@code class_def}: class level references (superclass,
+ * interfaces, static values and annotations) and then the code of each method, including catch
+ * handler types, call sites and method handles. Debug info is not indexed. Each id maps to a
+ * list of referrers in file order without duplicates; a referrer is either a method id or the
+ * complement {@code ~classDef} of a class, see {@link #isMethod(int)} and {@link #classDefOf(int)}.
+ * </p>
+ * <p>
+ * Lists are stored per kind in compressed sparse row form: a {@code start} table of
+ * {@code size + 1} offsets into one flat {@code int[]} of referrers. {@link #write(Path)} stores
+ * the same tables; {@link #read(Path, DexFile)} restores them without walking any code.
+ * </p>
+ * Indices are per file; for {@code classes.dex ... classesN.dex} build one index per file and
+ * translate descriptors with {@link DexFile#findType(CharSequence)}. Instances are immutable.
+ */
+public final class ReferenceIndex {
+
+    private static final int MAGIC = 0x49584453; // "SDXI"
+    private static final int FORMAT = 1;
+    private static final int SIGNATURE_OFFSET = 12;
+    private static final int SIGNATURE_SIZE = 20;
+    private static final int METHOD_HANDLE_LAST_FIELD_TYPE = 0x03;
+    private static final int[] KINDS = {Opcodes.INDEX_TYPE, Opcodes.INDEX_FIELD, Opcodes.INDEX_METHOD};
+
+    private final DexFile dex;
+    private final int[][] starts = new int[Opcodes.INDEX_METHOD + 1][];
+    private final int[][] referrers = new int[Opcodes.INDEX_METHOD + 1][];
+
+    private ReferenceIndex(DexFile dex) {
+        this.dex = dex;
+    }
+
+    /**
+     * Walks every class and method of {@code dex} once.
+     *
+     * @param dex the DEX to index
+     * @return the index
+     */
+    public static ReferenceIndex build(DexFile dex) {
+        Collector collector = new Collector(dex);
+        ByteBuffer buf = dex.buffer();
+        for (int c = 0; c < dex.classDefCount(); c++) {
+            collector.referrer = ~c;
+            int superclass = dex.classSuperclass(c);
+            if (superclass != DexFile.NO_INDEX) {
+                collector.visit(Opcodes.INDEX_TYPE, superclass);
+            }
+            for (int type : dex.typeList(dex.classInterfacesOffset(c))) {
+                collector.visit(Opcodes.INDEX_TYPE, type);
+            }
+            int staticValues = dex.classStaticValuesOffset(c);
+            if (staticValues != 0) {
+                EncodedValues.visitArray(buf, staticValues, collector);
+            }
+            visitAnnotations(buf, dex.classAnnotationsOffset(c), collector);
+            ClassData data = dex.classData(c);
+            if (data == null) {
+                continue;
+            }
+            for (int[] methods : new int[][]{data.getDirectMethods(), data.getVirtualMethods()}) {
+                for (int i = 0; i < methods.length; i += 3) {
+                    if (methods[i + 2] != 0) {
+                        collector.referrer = methods[i];
+                        CodeReferences.visit(dex, methods[i + 2], false, collector);
+                    }
+                }
+            }
+        }
+        ReferenceIndex index = new ReferenceIndex(dex);
+        for (int kind : KINDS) {
+            collector.finish(kind, index);
+        }
+        return index;
+    }
+
+    static void visitAnnotations(ByteBuffer buf, int directory, ReferenceVisitor visitor) {
+        if (directory == 0) {
+            return;
+        }
+        EncodedValues.visitAnnotationSet(buf, buf.getInt(directory), visitor);
+        int fields = buf.getInt(directory + 4);
+        int methods = buf.getInt(directory + 8);
+        int parameters = buf.getInt(directory + 12);
+        int pos = directory + 16;
+        for (int i = 0; i < fields + methods; i++, pos += 8) {
+            EncodedValues.visitAnnotationSet(buf, buf.getInt(pos + 4), visitor);
+        }
+        for (int i = 0; i < parameters; i++, pos += 8) {
+            EncodedValues.visitAnnotationSetRefList(buf, buf.getInt(pos + 4), visitor);
+        }
+    }
+
+    /**
+     * @return {@code true} if {@code referrer} is a method id, {@code false} for a class
+     */
+    public static boolean isMethod(int referrer) {
+        return referrer >= 0;
+    }
+
+    /**
+     * @return the {@code class_def} index of a class referrer
+     */
+    public static int classDefOf(int referrer) {
+        return ~referrer;
+    }
+
+    public DexFile getDex() {
+        return dex;
+    }
+
+    /**
+     * @param kind  {@link Opcodes#INDEX_TYPE}, {@link Opcodes#INDEX_FIELD} or {@link Opcodes#INDEX_METHOD}
+     * @param index an id of that kind
+     * @return the referrers, in file order
+     */
+    public int[] referrers(int kind, int index) {
+        int[] start = starts[kind];
+        return Arrays.copyOfRange(referrers[kind], start[index], start[index + 1]);
+    }
+
+    public int referrerCount(int kind, int index) {
+        int[] start = starts[kind];
+        return start[index + 1] - start[index];
+    }
+
+    /**
+     * @return {@code true} if nothing refers to the id
+     */
+    public boolean isUnreferenced(int kind, int index) {
+        return referrerCount(kind, index) == 0;
+    }
+
+    /**
+     * Collects everything that refers to a class: the type itself and the field and method ids
+     * declared on it. This is the set to rewrite or report when the class is removed.
+     *
+     * @param type a type id
+     * @return the sorted referrers without duplicates
+     */
+    public int[] classReferrers(int type) {
+        int[] result = referrers(Opcodes.INDEX_TYPE, type);
+        int n = result.length;
+        for (int kind : new int[]{Opcodes.INDEX_FIELD, Opcodes.INDEX_METHOD}) {
+            boolean method = kind == Opcodes.INDEX_METHOD;
+            int count = method ? dex.methodCount() : dex.fieldCount();
+            // Member ids are sorted by class first, so the members of a class are one range
+            for (int i = firstMember(type, count, method); i < count; i++) {
+                if ((method ? dex.methodClass(i) : dex.fieldClass(i)) != type) {
+                    break;
+                }
+                int[] start = starts[kind];
+                int length = start[i + 1] - start[i];
+                if (n + length > result.length) {
+                    result = Arrays.copyOf(result, Math.max(result.length * 2, n + length));
+                }
+                System.arraycopy(referrers[kind], start[i], result, n, length);
+                n += length;
+            }
+        }
+        Arrays.sort(result, 0, n);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || result[unique - 1] != result[i]) {
+                result[unique++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, unique);
+    }
+
+    /**
+     * @see #classReferrers(int)
+     * @return the referrers, empty if the type does not occur in this file
+     */
+    public int[] classReferrers(CharSequence descriptor) {
+        int type = dex.findType(descriptor);
+        return type == DexFile.NO_INDEX ? new int[0] : classReferrers(type);
+    }
+
+    private int firstMember(int type, int count, boolean method) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if ((method ? dex.methodClass(mid) : dex.fieldClass(mid)) < type) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Stores the index next to its DEX. The file is replaced atomically.
+     *
+     * @param path the destination
+     * @throws IOException if writing fails
+     */
+    public void write(Path path) throws IOException {
+        int ints = 2 + SIGNATURE_SIZE / 4;
+        for (int kind : KINDS) {
+            ints += 2 + starts[kind].length + referrers[kind].length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(ints * 4).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(FORMAT);
+        ByteBuffer signature = dex.buffer();
+        signature.limit(SIGNATURE_OFFSET + SIGNATURE_SIZE).position(SIGNATURE_OFFSET);
+        out.put(signature);
+        IntBuffer view = out.asIntBuffer();
+        for (int kind : KINDS) {
+            view.put(starts[kind].length).put(referrers[kind].length);
+            view.put(starts[kind]).put(referrers[kind]);
+        }
+        out.clear();
+        Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads an index stored by {@link #write(Path)}.
+     *
+     * @param path the stored index
+     * @param dex  the DEX it was built from
+     * @return the index, or {@code null} if the file has another format, belongs to another DEX or
+     * is truncated
+     * @throws IOException if reading fails
+     */
+    public static ReferenceIndex read(Path path, DexFile dex) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (in.remaining() < 8 + SIGNATURE_SIZE || in.getInt() != MAGIC || in.getInt() != FORMAT) {
+            return null;
+        }
+        ByteBuffer signature = dex.buffer();
+        signature.limit(SIGNATURE_OFFSET + SIGNATURE_SIZE).position(SIGNATURE_OFFSET);
+        ByteBuffer stored = in.duplicate();
+        stored.limit(in.position() + SIGNATURE_SIZE);
+        if (!stored.equals(signature)) {
+            return null;
+        }
+        IntBuffer view = in.position(in.position() + SIGNATURE_SIZE).slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        ReferenceIndex index = new ReferenceIndex(dex);
+        int[] sizes = {dex.typeCount(), dex.fieldCount(), dex.methodCount()};
+        for (int k = 0; k < KINDS.length; k++) {
+            if (view.remaining() < 2) {
+                return null;
+            }
+            int starts = view.get();
+            int referrers = view.get();
+            if (starts != sizes[k] + 1 || referrers < 0 || view.remaining() < (long) starts + referrers) {
+                return null;
+            }
+            index.starts[KINDS[k]] = new int[starts];
+            index.referrers[KINDS[k]] = new int[referrers];
+            view.get(index.starts[KINDS[k]]).get(index.referrers[KINDS[k]]);
+            if (!isRowTable(index.starts[KINDS[k]], referrers)) {
+                return null;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return {@code true} if {@code start} rises from {@code 0} to {@code length}
+     */
+    private static boolean isRowTable(int[] start, int length) {
+        if (start[0] != 0 || start[start.length - 1] != length) {
+            return false;
+        }
+        for (int i = 1; i < start.length; i++) {
+            if (start[i] < start[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gathers {@code (id, referrer)} pairs per kind, skipping repeats within one referrer.
+     */
+    private static final class Collector implements ReferenceVisitor {
+        private final DexFile dex;
+        private final ByteBuffer buf;
+        private final int[][] ids = new int[Opcodes.INDEX_METHOD + 1][];
+        private final int[][] owners = new int[Opcodes.INDEX_METHOD + 1][];
+        private final int[] sizes = new int[Opcodes.INDEX_METHOD + 1];
+        /** Last referrer recorded per id, {@link Integer#MIN_VALUE} if none. */
+        private final int[][] last = new int[Opcodes.INDEX_METHOD + 1][];
+        int referrer;
+
+        Collector(DexFile dex) {
+            this.dex = dex;
+            this.buf = dex.buffer();
+            init(Opcodes.INDEX_TYPE, dex.typeCount());
+            init(Opcodes.INDEX_FIELD, dex.fieldCount());
+            init(Opcodes.INDEX_METHOD, dex.methodCount());
+        }
+
+        private void init(int kind, int size) {
+            ids[kind] = new int[Math.max(16, size * 2)];
+            owners[kind] = new int[ids[kind].length];
+            last[kind] = new int[size];
+            Arrays.fill(last[kind], Integer.MIN_VALUE);
+        }
+
+        @Override
+        public void visit(int kind, int index) {
+            switch (kind) {
+                case Opcodes.INDEX_TYPE:
+                case Opcodes.INDEX_FIELD:
+                case Opcodes.INDEX_METHOD:
+                    add(kind, index);
+                    break;
+                case Opcodes.INDEX_CALL_SITE:
+                    EncodedValues.visitArray(buf, dex.callSiteOffset(index), this);
+                    break;
+                case Opcodes.INDEX_METHOD_HANDLE:
+                    add(dex.methodHandleType(index) <= METHOD_HANDLE_LAST_FIELD_TYPE
+                            ? Opcodes.INDEX_FIELD : Opcodes.INDEX_METHOD, dex.methodHandleMember(index));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void add(int kind, int index) {
+            if (last[kind][index] == referrer) {
+                return;
+            }
+            last[kind][index] = referrer;
+            int n = sizes[kind];
+            if (n == ids[kind].length) {
+                ids[kind] = Arrays.copyOf(ids[kind], n * 2);
+                owners[kind] = Arrays.copyOf(owners[kind], n * 2);
+            }
+            ids[kind][n] = index;
+            owners[kind][n] = referrer;
+            sizes[kind] = n + 1;
+        }
+
+        /**
+         * Counting sort of the pairs of one kind into the index, keeping file order per id.
+         */
+        void finish(int kind, ReferenceIndex index) {
+            int size = last[kind].length;
+            int n = sizes[kind];
+            int[] start = new int[size + 1];
+            for (int i = 0; i < n; i++) {
+                start[ids[kind][i] + 1]++;
+            }
+            for (int i = 0; i < size; i++) {
+                start[i + 1] += start[i];
+            }
+            int[] fill = Arrays.copyOf(start, size);
+            int[] flat = new int[n];
+            for (int i = 0; i < n; i++) {
+                flat[fill[ids[kind][i]]++] = owners[kind][i];
+            }
+            index.starts[kind] = start;
+            index.referrers[kind] = flat;
+            // Release the pairs early, the next kind may need the memory
+            ids[kind] = null;
+            owners[kind] = null;
+        }
+    }
+}
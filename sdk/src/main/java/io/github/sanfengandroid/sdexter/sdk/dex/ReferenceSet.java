@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+/**
+ * One bitset per id section of a {@link DexFile}, recording which items are referenced.
+ * <p>
+ * Sets are not thread safe. Parallel walkers fill one set each and combine them with
+ * {@link #or(ReferenceSet)}, which gives the same result in any order.
+ * </p>
+ */
+public final class ReferenceSet implements ReferenceVisitor {
+
+    private final long[][] bits = new long[Opcodes.INDEX_METHOD_HANDLE + 1][];
+    private final int[] sizes = new int[Opcodes.INDEX_METHOD_HANDLE + 1];
+
+    /**
+     * Creates an empty set sized for the sections of {@code dex}.
+     */
+    public ReferenceSet(DexFile dex) {
+        init(Opcodes.INDEX_STRING, dex.stringCount());
+        init(Opcodes.INDEX_TYPE, dex.typeCount());
+        init(Opcodes.INDEX_PROTO, dex.protoCount());
+        init(Opcodes.INDEX_FIELD, dex.fieldCount());
+        init(Opcodes.INDEX_METHOD, dex.methodCount());
+        init(Opcodes.INDEX_CALL_SITE, dex.callSiteCount());
+        init(Opcodes.INDEX_METHOD_HANDLE, dex.methodHandleCount());
+    }
+
+    private void init(int kind, int size) {
+        sizes[kind] = size;
+        bits[kind] = new long[(size + 63) >>> 6];
+    }
+
+    @Override
+    public void visit(int kind, int index) {
+        add(kind, index);
+    }
+
+    /**
+     * @return {@code true} if the item was not in the set before
+     */
+    public boolean add(int kind, int index) {
+        long[] words = bits[kind];
+        long mask = 1L << index;
+        long word = words[index >>> 6];
+        if ((word & mask) != 0) {
+            return false;
+        }
+        words[index >>> 6] = word | mask;
+        return true;
+    }
+
+    public boolean contains(int kind, int index) {
+        return (bits[kind][index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return the section size, i.e. the exclusive upper bound of indices of {@code kind}
+     */
+    public int size(int kind) {
+        return sizes[kind];
+    }
+
+    /**
+     * @return the number of items of {@code kind} in the set
+     */
+    public int count(int kind) {
+        int count = 0;
+        for (long word : bits[kind]) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * @return the first index of {@code kind} in the set at or after {@code from}, or {@code -1}
+     */
+    public int next(int kind, int from) {
+        long[] words = bits[kind];
+        int w = from >>> 6;
+        if (w >= words.length) {
+            return -1;
+        }
+        long word = words[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    /**
+     * Adds every item of {@code other}, which must be sized for the same DEX.
+     */
+    public void or(ReferenceSet other) {
+        for (int kind = 0; kind < bits.length; kind++) {
+            long[] words = bits[kind];
+            if (words == null) {
+                continue;
+            }
+            long[] add = other.bits[kind];
+            for (int i = 0; i < words.length; i++) {
+                words[i] |= add[i];
+            }
+        }
+    }
+
+    /**
+     * Builds a dense {@code old -> new} table that keeps the relative order of the items in the set.
+     *
+     * @return the table, with {@link DexFile#NO_INDEX} for absent items, or {@code null} if every item is present
+     */
+    public int[] denseRemap(int kind) {
+        int size = sizes[kind];
+        if (count(kind) == size) {
+            return null;
+        }
+        int[] table = new int[size];
+        int next = 0;
+        for (int i = 0; i < size; i++) {
+            table[i] = contains(kind, i) ? next++ : DexFile.NO_INDEX;
+        }
+        return table;
+    }
+
+    /**
+     * @return a remap dropping every item that is not in the set
+     */
+    public IndexRemap toRemap() {
+        return new IndexRemap(denseRemap(Opcodes.INDEX_STRING), denseRemap(Opcodes.INDEX_TYPE),
+                denseRemap(Opcodes.INDEX_PROTO), denseRemap(Opcodes.INDEX_FIELD),
+                denseRemap(Opcodes.INDEX_METHOD), denseRemap(Opcodes.INDEX_CALL_SITE),
+                denseRemap(Opcodes.INDEX_METHOD_HANDLE));
+    }
+}
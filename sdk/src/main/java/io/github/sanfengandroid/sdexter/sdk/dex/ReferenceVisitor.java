@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+/**
+ * Receives the id references found while walking DEX structures.
+ */
+@FunctionalInterface
+public interface ReferenceVisitor {
+
+    /**
+     * @param kind  one of the {@code Opcodes.INDEX_*} constants, never {@code INDEX_NONE} or {@code INDEX_METHOD_AND_PROTO}
+     * @param index the referenced index in the input DEX
+     */
+    void visit(int kind, int index);
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Builds the {@link IndexRemap} of one input DEX once all removal and rename rules are known.
+ * <p>
+ * {@link ReferenceSet#toRemap()} covers removals, where every section keeps its order. Renames
+ * ({@code ClassConfig.rename}, {@code FieldConfig.rename}, {@code MethodConfig.rename} and package
+ * renames) change strings, and the id sections are sorted by those strings, so types, protos,
+ * fields and methods move as well. The builder takes the kept ids and the new names, adds the
+ * ids the kept ones need (types of members, prototypes, names, descriptors and shorties), sorts
+ * every section the way the format requires and assigns dense new indices. Strings go through a
+ * {@link StringPool}; the other sections are sorted as primitive arrays.
+ * </p>
+ * <p>
+ * The result holds one {@code int[]} per section, so patching an instruction operand or an
+ * encoded value stays an array load. It also holds the contents of the new sections. Items that
+ * end up equal, such as a class renamed to an existing name, share one new index. Use
+ * {@link RemapValidator} to find kept code that still refers to a dropped id.
+ * </p>
+ * Not thread safe.
+ */
+public final class RemapBuilder {
+
+    private static final int METHOD_HANDLE_LAST_FIELD_TYPE = 0x03;
+
+    private final DexFile dex;
+    private final ReferenceSet kept;
+    private String[] typeNames;
+    private String[] fieldNames;
+    private String[] methodNames;
+
+    /**
+     * @param dex  the input DEX
+     * @param kept the ids referenced by the kept classes, members and code; it is not modified
+     */
+    public RemapBuilder(DexFile dex, ReferenceSet kept) {
+        this.dex = dex;
+        this.kept = new ReferenceSet(dex);
+        this.kept.or(kept);
+    }
+
+    /**
+     * Renames a type. Array types of a renamed class have to be renamed as well.
+     *
+     * @param type       the type id
+     * @param descriptor the new descriptor
+     */
+    public RemapBuilder renameType(int type, String descriptor) {
+        if (typeNames == null) {
+            typeNames = new String[dex.typeCount()];
+        }
+        typeNames[type] = descriptor;
+        return this;
+    }
+
+    /**
+     * Renames a field id, other fields with the same name keep it.
+     */
+    public RemapBuilder renameField(int field, String name) {
+        if (fieldNames == null) {
+            fieldNames = new String[dex.fieldCount()];
+        }
+        fieldNames[field] = name;
+        return this;
+    }
+
+    /**
+     * Renames a method id, other methods with the same name keep it.
+     */
+    public RemapBuilder renameMethod(int method, String name) {
+        if (methodNames == null) {
+            methodNames = new String[dex.methodCount()];
+        }
+        methodNames[method] = name;
+        return this;
+    }
+
+    /**
+     * Adds the needed ids, sorts every section and builds the tables.
+     *
+     * @return the layout of the output sections
+     */
+    public Layout build() {
+        close();
+        StringPool pool = new StringPool(kept.count(Opcodes.INDEX_STRING) + 16);
+        ByteBuffer buf = dex.buffer();
+        int[] stringIds = new int[dex.stringCount()];
+        Arrays.fill(stringIds, DexFile.NO_INDEX);
+        for (int s = kept.next(Opcodes.INDEX_STRING, 0); s >= 0; s = kept.next(Opcodes.INDEX_STRING, s + 1)) {
+            stringIds[s] = pool.add(dex, buf, s);
+        }
+        int[] typeName = poolIds(pool, buf, Opcodes.INDEX_TYPE, dex.typeCount(), typeNames, stringIds);
+        int[] fieldName = poolIds(pool, buf, Opcodes.INDEX_FIELD, dex.fieldCount(), fieldNames, stringIds);
+        int[] methodName = poolIds(pool, buf, Opcodes.INDEX_METHOD, dex.methodCount(), methodNames, stringIds);
+        StringPool.Sorted strings = pool.sort();
+        int[] stringTable = strings.remap(stringIds);
+
+        // Types: by descriptor string index
+        int[] types = members(Opcodes.INDEX_TYPE);
+        int[] typeKey = new int[dex.typeCount()];
+        for (int t : types) {
+            typeKey[t] = strings.indexOf(typeName[t]);
+        }
+        int[] typeTable = new int[dex.typeCount()];
+        int[] typeDescriptors = assign(types, (a, b) -> Integer.compare(typeKey[a], typeKey[b]), typeTable, 1);
+        for (int i = 0; i < typeDescriptors.length; i++) {
+            typeDescriptors[i] = typeKey[typeDescriptors[i]];
+        }
+
+        // Protos: by return type, then parameter lists
+        int[] protos = members(Opcodes.INDEX_PROTO);
+        int[][] params = new int[dex.protoCount()][];
+        for (int p : protos) {
+            params[p] = dex.protoParameters(p);
+            for (int i = 0; i < params[p].length; i++) {
+                params[p][i] = typeTable[params[p][i]];
+            }
+        }
+        int[] protoTable = new int[dex.protoCount()];
+        int[] newProtos = assign(protos, (a, b) -> {
+            int c = Integer.compare(typeTable[dex.protoReturnType(a)], typeTable[dex.protoReturnType(b)]);
+            return c != 0 ? c : Arrays.compare(params[a], params[b]);
+        }, protoTable, 1);
+        int[] protoShorty = new int[newProtos.length];
+        int[] protoReturn = new int[newProtos.length];
+        int[][] protoParams = new int[newProtos.length][];
+        for (int i = 0; i < newProtos.length; i++) {
+            int p = newProtos[i];
+            protoShorty[i] = stringTable[dex.protoShorty(p)];
+            protoReturn[i] = typeTable[dex.protoReturnType(p)];
+            protoParams[i] = params[p];
+        }
+
+        // Fields: by class, name and type
+        int[] fields = members(Opcodes.INDEX_FIELD);
+        int[] fieldTable = new int[dex.fieldCount()];
+        int[] newFields = assign(fields, (a, b) -> {
+            int c = Integer.compare(typeTable[dex.fieldClass(a)], typeTable[dex.fieldClass(b)]);
+            if (c == 0) {
+                c = Integer.compare(strings.indexOf(fieldName[a]), strings.indexOf(fieldName[b]));
+            }
+            return c != 0 ? c : Integer.compare(typeTable[dex.fieldType(a)], typeTable[dex.fieldType(b)]);
+        }, fieldTable, 3);
+        for (int i = 0; i < newFields.length; i += 3) {
+            int f = newFields[i];
+            newFields[i] = typeTable[dex.fieldClass(f)];
+            newFields[i + 1] = typeTable[dex.fieldType(f)];
+            newFields[i + 2] = strings.indexOf(fieldName[f]);
+        }
+
+        // Methods: by class, name and proto
+        int[] methods = members(Opcodes.INDEX_METHOD);
+        int[] methodTable = new int[dex.methodCount()];
+        int[] newMethods = assign(methods, (a, b) -> {
+            int c = Integer.compare(typeTable[dex.methodClass(a)], typeTable[dex.methodClass(b)]);
+            if (c == 0) {
+                c = Integer.compare(strings.indexOf(methodName[a]), strings.indexOf(methodName[b]));
+            }
+            return c != 0 ? c : Integer.compare(protoTable[dex.methodProto(a)], protoTable[dex.methodProto(b)]);
+        }, methodTable, 3);
+        for (int i = 0; i < newMethods.length; i += 3) {
+            int m = newMethods[i];
+            newMethods[i] = typeTable[dex.methodClass(m)];
+            newMethods[i + 1] = protoTable[dex.methodProto(m)];
+            newMethods[i + 2] = strings.indexOf(methodName[m]);
+        }
+
+        IndexRemap remap = new IndexRemap(stringTable, typeTable, protoTable, fieldTable, methodTable,
+                kept.denseRemap(Opcodes.INDEX_CALL_SITE), kept.denseRemap(Opcodes.INDEX_METHOD_HANDLE));
+        return new Layout(remap, strings, typeDescriptors, protoShorty, protoReturn, protoParams, newFields, newMethods);
+    }
+
+    /**
+     * Adds the ids that kept ids need, from call sites down to strings.
+     */
+    private void close() {
+        ByteBuffer buf = dex.buffer();
+        for (int c = kept.next(Opcodes.INDEX_CALL_SITE, 0); c >= 0; c = kept.next(Opcodes.INDEX_CALL_SITE, c + 1)) {
+            EncodedValues.visitArray(buf, dex.callSiteOffset(c), kept);
+        }
+        for (int h = kept.next(Opcodes.INDEX_METHOD_HANDLE, 0); h >= 0;
+             h = kept.next(Opcodes.INDEX_METHOD_HANDLE, h + 1)) {
+            kept.add(dex.methodHandleType(h) <= METHOD_HANDLE_LAST_FIELD_TYPE ? Opcodes.INDEX_FIELD : Opcodes.INDEX_METHOD,
+                    dex.methodHandleMember(h));
+        }
+        for (int m = kept.next(Opcodes.INDEX_METHOD, 0); m >= 0; m = kept.next(Opcodes.INDEX_METHOD, m + 1)) {
+            kept.add(Opcodes.INDEX_TYPE, dex.methodClass(m));
+            kept.add(Opcodes.INDEX_PROTO, dex.methodProto(m));
+        }
+        for (int f = kept.next(Opcodes.INDEX_FIELD, 0); f >= 0; f = kept.next(Opcodes.INDEX_FIELD, f + 1)) {
+            kept.add(Opcodes.INDEX_TYPE, dex.fieldClass(f));
+            kept.add(Opcodes.INDEX_TYPE, dex.fieldType(f));
+        }
+        for (int p = kept.next(Opcodes.INDEX_PROTO, 0); p >= 0; p = kept.next(Opcodes.INDEX_PROTO, p + 1)) {
+            kept.add(Opcodes.INDEX_STRING, dex.protoShorty(p));
+            kept.add(Opcodes.INDEX_TYPE, dex.protoReturnType(p));
+            for (int type : dex.protoParameters(p)) {
+                kept.add(Opcodes.INDEX_TYPE, type);
+            }
+        }
+    }
+
+    /**
+     * @return the pool id of the name or descriptor of each kept item of {@code kind}
+     */
+    private int[] poolIds(StringPool pool, ByteBuffer buf, int kind, int size, String[] renames, int[] stringIds) {
+        int[] ids = new int[size];
+        for (int i = kept.next(kind, 0); i >= 0; i = kept.next(kind, i + 1)) {
+            if (renames != null && renames[i] != null) {
+                ids[i] = pool.add(renames[i]);
+                continue;
+            }
+            int s = kind == Opcodes.INDEX_TYPE ? dex.typeDescriptorIndex(i)
+                    : kind == Opcodes.INDEX_FIELD ? dex.fieldName(i) : dex.methodName(i);
+            if (stringIds[s] == DexFile.NO_INDEX) {
+                stringIds[s] = pool.add(dex, buf, s);
+            }
+            ids[i] = stringIds[s];
+        }
+        return ids;
+    }
+
+    private int[] members(int kind) {
+        int[] items = new int[kept.count(kind)];
+        int n = 0;
+        for (int i = kept.next(kind, 0); i >= 0; i = kept.next(kind, i + 1)) {
+            items[n++] = i;
+        }
+        return items;
+    }
+
+    /**
+     * Sorts {@code items}, fills {@code table} with the dense new index of each item, giving equal
+     * items one index, and leaves {@link DexFile#NO_INDEX} for the rest.
+     *
+     * @return one representative item per new index, each followed by {@code stride - 1} free slots
+     */
+    private static int[] assign(int[] items, IntBinaryOperator order, int[] table, int stride) {
+        Arrays.fill(table, DexFile.NO_INDEX);
+        mergeSort(items, new int[items.length], 0, items.length, order);
+        int[] firsts = new int[items.length * stride];
+        int next = -1;
+        for (int i = 0; i < items.length; i++) {
+            if (i == 0 || order.applyAsInt(items[i - 1], items[i]) != 0) {
+                firsts[++next * stride] = items[i];
+            }
+            table[items[i]] = next;
+        }
+        return Arrays.copyOf(firsts, (next + 1) * stride);
+    }
+
+    private static void mergeSort(int[] a, int[] tmp, int lo, int hi, IntBinaryOperator order) {
+        if (hi - lo < 16) {
+            for (int i = lo + 1; i < hi; i++) {
+                int v = a[i];
+                int j = i - 1;
+                while (j >= lo && order.applyAsInt(a[j], v) > 0) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        mergeSort(a, tmp, lo, mid, order);
+        mergeSort(a, tmp, mid, hi, order);
+        if (order.applyAsInt(a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, lo, tmp, lo, hi - lo);
+        for (int i = lo, l = lo, r = mid; i < hi; i++) {
+            a[i] = r >= hi || l < mid && order.applyAsInt(tmp[l], tmp[r]) <= 0 ? tmp[l++] : tmp[r++];
+        }
+    }
+
+    /**
+     * The remap of an input and the contents of the output id sections, in output order.
+     */
+    public static final class Layout {
+        private final IndexRemap remap;
+        private final StringPool.Sorted strings;
+        private final int[] typeDescriptors;
+        private final int[] protoShorty;
+        private final int[] protoReturn;
+        private final int[][] protoParams;
+        private final int[] fields;
+        private final int[] methods;
+
+        Layout(IndexRemap remap, StringPool.Sorted strings, int[] typeDescriptors, int[] protoShorty,
+               int[] protoReturn, int[][] protoParams, int[] fields, int[] methods) {
+            this.remap = remap;
+            this.strings = strings;
+            this.typeDescriptors = typeDescriptors;
+            this.protoShorty = protoShorty;
+            this.protoReturn = protoReturn;
+            this.protoParams = protoParams;
+            this.fields = fields;
+            this.methods = methods;
+        }
+
+        public IndexRemap getRemap() {
+            return remap;
+        }
+
+        /**
+         * @return the output strings, also for writing {@code string_data_item}s
+         */
+        public StringPool.Sorted getStrings() {
+            return strings;
+        }
+
+        public int typeCount() {
+            return typeDescriptors.length;
+        }
+
+        /**
+         * @return the output string index of the descriptor of output type {@code type}
+         */
+        public int typeDescriptor(int type) {
+            return typeDescriptors[type];
+        }
+
+        public int protoCount() {
+            return protoShorty.length;
+        }
+
+        public int protoShorty(int proto) {
+            return protoShorty[proto];
+        }
+
+        public int protoReturnType(int proto) {
+            return protoReturn[proto];
+        }
+
+        /**
+         * @return the output parameter types of output proto {@code proto}
+         */
+        public int[] protoParameters(int proto) {
+            return protoParams[proto].clone();
+        }
+
+        public int fieldCount() {
+            return fields.length / 3;
+        }
+
+        public int fieldClass(int field) {
+            return fields[field * 3];
+        }
+
+        public int fieldType(int field) {
+            return fields[field * 3 + 1];
+        }
+
+        public int fieldName(int field) {
+            return fields[field * 3 + 2];
+        }
+
+        public int methodCount() {
+            return methods.length / 3;
+        }
+
+        public int methodClass(int method) {
+            return methods[method * 3];
+        }
+
+        public int methodProto(int method) {
+            return methods[method * 3 + 1];
+        }
+
+        public int methodName(int method) {
+            return methods[method * 3 + 2];
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Finds kept code and classes that refer to types, fields or methods an {@link IndexRemap} drops.
+ * <p>
+ * Removing a class drops its members from the output. A kept class or method still referring to
+ * one of them would fail to verify on the device, so the check runs at merge time instead. The
+ * validator scans each dense table once for {@link DexFile#NO_INDEX} entries and looks up the
+ * referrers of just those ids in a {@link ReferenceIndex}. Its cost follows the number of
+ * dropped ids, not the size of the code.
+ * </p>
+ */
+public final class RemapValidator {
+
+    private static final int[] KINDS = {Opcodes.INDEX_TYPE, Opcodes.INDEX_FIELD, Opcodes.INDEX_METHOD};
+
+    private RemapValidator() {
+    }
+
+    /**
+     * @param index      the reference index of the input
+     * @param remap      the remap of the input
+     * @param keepsClass whether a {@code class_def} is in the output
+     * @return every kept referrer of a dropped id, grouped by kind and id
+     */
+    public static List<Dangling> validate(ReferenceIndex index, IndexRemap remap, IntPredicate keepsClass) {
+        DexFile dex = index.getDex();
+        List<Dangling> dangling = new ArrayList<>();
+        for (int kind : KINDS) {
+            int size = kind == Opcodes.INDEX_TYPE ? dex.typeCount()
+                    : kind == Opcodes.INDEX_FIELD ? dex.fieldCount() : dex.methodCount();
+            for (int id = 0; id < size; id++) {
+                if (remap.map(kind, id) != DexFile.NO_INDEX || index.referrerCount(kind, id) == 0) {
+                    continue;
+                }
+                for (int referrer : index.referrers(kind, id)) {
+                    boolean kept = ReferenceIndex.isMethod(referrer)
+                            ? remap.method(referrer) != DexFile.NO_INDEX
+                            : keepsClass.test(ReferenceIndex.classDefOf(referrer));
+                    if (kept) {
+                        dangling.add(new Dangling(dex, kind, id, referrer));
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableList(dangling);
+    }
+
+    /**
+     * A kept referrer of a dropped id.
+     */
+    public static final class Dangling {
+        private final DexFile dex;
+        private final int kind;
+        private final int index;
+        private final int referrer;
+
+        Dangling(DexFile dex, int kind, int index, int referrer) {
+            this.dex = dex;
+            this.kind = kind;
+            this.index = index;
+            this.referrer = referrer;
+        }
+
+        /**
+         * @return {@code Opcodes.INDEX_TYPE}, {@code INDEX_FIELD} or {@code INDEX_METHOD}
+         */
+        public int getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the dropped input id
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the referrer, see {@link ReferenceIndex#isMethod(int)}
+         */
+        public int getReferrer() {
+            return referrer;
+        }
+
+        @Override
+        public String toString() {
+            String target;
+            switch (kind) {
+                case Opcodes.INDEX_TYPE:
+                    target = dex.typeDescriptor(index);
+                    break;
+                case Opcodes.INDEX_FIELD:
+                    target = dex.typeDescriptor(dex.fieldClass(index)) + "->" + dex.string(dex.fieldName(index))
+                            + ":" + dex.typeDescriptor(dex.fieldType(index));
+                    break;
+                default:
+                    target = dex.typeDescriptor(dex.methodClass(index)) + "->" + dex.methodKeys().dexForm(index);
+                    break;
+            }
+            String from = ReferenceIndex.isMethod(referrer)
+                    ? dex.typeDescriptor(dex.methodClass(referrer)) + "->" + dex.methodKeys().dexForm(referrer)
+                    : dex.classDescriptor(ReferenceIndex.classDefOf(referrer));
+            return from + " refers to removed " + target;
+        }
+    }
+}
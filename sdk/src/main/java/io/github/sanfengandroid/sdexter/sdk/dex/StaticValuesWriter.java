@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntPredicate;
+
+/**
+ * Rewrites the {@code static_values} of classes whose static fields or initial values change.
+ * <p>
+ * Element {@code i} of a class's {@code encoded_array_item} is the initial value of its
+ * {@code i}-th static field, and missing trailing elements mean the type's default. When static
+ * fields are removed ({@code removeStaticFields}, {@code RemoveFields}) or single values are
+ * cleared ({@code FieldConfig.removeInitialValue}), the array has to follow: elements of removed
+ * fields are dropped, cleared ones become defaults, and trailing defaults are trimmed. Values are
+ * walked in place in the input, and no constant is decoded into an object.
+ * </p>
+ * <p>
+ * When the kept values form an unchanged prefix of the input array and none of their indices
+ * moves, the prefix is copied as one block. Otherwise each value is copied with its indices
+ * remapped. Arrays are hash-consed like {@link AnnotationPool} items, so classes with equal
+ * values share one {@code encoded_array_item}. {@code ClassConfig.removeStaticInit} needs no
+ * rewriting, as such a class simply has no static values.
+ * </p>
+ * Instances are not thread safe.
+ */
+public final class StaticValuesWriter {
+
+    /**
+     * Returned when a value refers to an id that is not in the output.
+     */
+    public static final int MISSING = -1;
+
+    private final DexOutput out;
+    private final InternTable arrays = new InternTable();
+    private final Unchanged unchanged = new Unchanged();
+    private int written;
+    private int reused;
+    private int blockCopies;
+
+    /**
+     * @param out the output buffer, arrays are appended at its end
+     */
+    public StaticValuesWriter(DexOutput out) {
+        this.out = out;
+    }
+
+    /**
+     * Interns the static values of a class with every value kept.
+     *
+     * @see #copy(DexFile, IndexRemap, int, int[], IntPredicate)
+     */
+    public int copy(DexFile dex, IndexRemap remap, int classDef) {
+        ClassData data = dex.classData(classDef);
+        return copy(dex, remap, classDef, data == null ? new int[0] : data.getStaticFields(), field -> false);
+    }
+
+    /**
+     * Interns the static values of the static fields a class keeps.
+     *
+     * @param dex         the input DEX
+     * @param remap       index tables from {@code dex} to the output
+     * @param classDef    the class
+     * @param keptFields  the kept static fields as {@code (field_idx, access_flags)} pairs of input ids,
+     *                    in file order, a subset of the class's static fields such as
+     *                    {@code ClassPlan.getStaticFields()}
+     * @param clearsValue whether a kept field loses its initial value
+     * @return the output offset, {@code 0} if no value remains, or {@link #MISSING}; nothing is
+     * written in that case
+     */
+    public int copy(DexFile dex, IndexRemap remap, int classDef, int[] keptFields, IntPredicate clearsValue) {
+        int offset = dex.classStaticValuesOffset(classDef);
+        int n = keptFields.length / 2;
+        if (offset == 0 || n == 0) {
+            return 0;
+        }
+        int[] all = dex.classData(classDef).getStaticFields();
+        ByteBuffer buf = dex.buffer();
+        long packed = Leb128.readUnsigned(buf, offset);
+        int count = Math.min(Leb128.value(packed), all.length / 2);
+        int first = Leb128.next(packed);
+        // Start and end of the input value of each kept field, -1 for the default
+        int[] starts = new int[n];
+        int[] ends = new int[n];
+        int length = 0;
+        // Number of leading kept values that are the leading input values, unchanged
+        int prefix = 0;
+        boolean contiguous = true;
+        int k = 0;
+        int pos = first;
+        for (int i = 0; i < count && k < n; i++) {
+            int start = pos;
+            pos = EncodedValues.visitValue(buf, pos, null);
+            if (all[i * 2] != keptFields[k * 2]) {
+                contiguous = false;
+                continue;
+            }
+            if (clearsValue.test(keptFields[k * 2])) {
+                starts[k] = -1;
+                contiguous = false;
+            } else {
+                starts[k] = start;
+                ends[k] = pos;
+                if (!isDefault(buf, start)) {
+                    length = k + 1;
+                }
+                if (contiguous) {
+                    prefix = k + 1;
+                }
+            }
+            k++;
+        }
+        for (int i = k; i < n; i++) {
+            starts[i] = -1;
+        }
+        if (length == 0) {
+            return 0;
+        }
+        int begin = out.size();
+        out.writeUleb128(length);
+        if (prefix >= length && unchanged.check(buf, first, length, remap)) {
+            out.write(buf, first, ends[length - 1] - first);
+            blockCopies++;
+        } else {
+            for (int i = 0; i < length; i++) {
+                if (starts[i] < 0) {
+                    writeDefault(dex.typeDescriptor(dex.fieldType(keptFields[i * 2])).charAt(0));
+                } else if (EncodedValues.copyValue(buf, starts[i], remap, out) < 0) {
+                    out.truncate(begin);
+                    return MISSING;
+                }
+            }
+        }
+        return intern(begin);
+    }
+
+    /**
+     * @return the number of distinct arrays written
+     */
+    public int writtenCount() {
+        return written;
+    }
+
+    /**
+     * @return the number of requests served by an existing array
+     */
+    public int reusedCount() {
+        return reused;
+    }
+
+    /**
+     * @return the number of arrays copied as one block from the input
+     */
+    public int blockCopyCount() {
+        return blockCopies;
+    }
+
+    private int intern(int start) {
+        int length = out.size() - start;
+        int hash = InternTable.hash(out.array(), start, length);
+        int existing = arrays.find(out.array(), start, length, hash);
+        if (existing >= 0) {
+            out.truncate(start);
+            reused++;
+            return existing;
+        }
+        arrays.add(start, length, hash);
+        written++;
+        return start;
+    }
+
+    /**
+     * @return {@code true} if the value at {@code pos} equals the default of its type
+     */
+    private static boolean isDefault(ByteBuffer buf, int pos) {
+        int header = buf.get(pos) & 0xff;
+        int arg = header >>> 5;
+        switch (header & 0x1f) {
+            case EncodedValues.VALUE_NULL:
+                return true;
+            case EncodedValues.VALUE_BOOLEAN:
+                return arg == 0;
+            case EncodedValues.VALUE_BYTE:
+            case EncodedValues.VALUE_SHORT:
+            case EncodedValues.VALUE_CHAR:
+            case EncodedValues.VALUE_INT:
+            case EncodedValues.VALUE_LONG:
+            case EncodedValues.VALUE_FLOAT:
+            case EncodedValues.VALUE_DOUBLE:
+                // Floats are zero extended to the right, so only +0.0 has no set bit
+                for (int i = 1; i <= arg + 1; i++) {
+                    if (buf.get(pos + i) != 0) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Writes the default value of a field type, given the first character of its descriptor.
+     */
+    private void writeDefault(char type) {
+        switch (type) {
+            case 'Z':
+                out.writeByte(EncodedValues.VALUE_BOOLEAN);
+                return;
+            case 'B':
+                writeZero(EncodedValues.VALUE_BYTE);
+                return;
+            case 'S':
+                writeZero(EncodedValues.VALUE_SHORT);
+                return;
+            case 'C':
+                writeZero(EncodedValues.VALUE_CHAR);
+                return;
+            case 'I':
+                writeZero(EncodedValues.VALUE_INT);
+                return;
+            case 'J':
+                writeZero(EncodedValues.VALUE_LONG);
+                return;
+            case 'F':
+                writeZero(EncodedValues.VALUE_FLOAT);
+                return;
+            case 'D':
+                writeZero(EncodedValues.VALUE_DOUBLE);
+                return;
+            default:
+                out.writeByte(EncodedValues.VALUE_NULL);
+        }
+    }
+
+    private void writeZero(int type) {
+        out.writeByte(type);
+        out.writeByte(0);
+    }
+
+    /**
+     * Checks that a run of values refers only to ids the remap leaves in place.
+     */
+    private static final class Unchanged implements ReferenceVisitor {
+        private IndexRemap remap;
+        private boolean changed;
+
+        boolean check(ByteBuffer buf, int pos, int count, IndexRemap remap) {
+            this.remap = remap;
+            this.changed = false;
+            for (int i = 0; i < count && !changed; i++) {
+                pos = EncodedValues.visitValue(buf, pos, this);
+            }
+            return !changed;
+        }
+
+        @Override
+        public void visit(int kind, int index) {
+            if (remap.map(kind, index) != index) {
+                changed = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Builder of the deduplicated, sorted {@code string_ids} section of an output DEX.
+ * <p>
+ * Strings are kept as {@link Mutf8 MUTF-8} bytes in large {@code byte[]} pages and indexed by an
+ * open addressing table of ids, so a pool of several hundred thousand strings holds a few arrays
+ * instead of one {@link String} and map entry per item. Strings of an input DEX are added from
+ * its string data without decoding them, see {@link #addAll(DexFile)}; renamed classes, members
+ * and packages are added with {@link #add(CharSequence)}. Each distinct string gets an id in
+ * insertion order.
+ * </p>
+ * <p>
+ * {@link #sort()} orders the ids by UTF-16 code unit values, as the DEX format requires, with an
+ * MSD radix sort over the encoded bytes. MUTF-8 keeps that order byte by byte, except for
+ * {@code U+0000}, which is encoded as {@code C0 80} and is ranked below every other byte; the
+ * end of a string ranks below both. The result maps ids to {@code string_ids} indices and turns
+ * the ids of an input into an {@code int[]} remap table.
+ * </p>
+ * Not thread safe.
+ */
+public final class StringPool {
+
+    private static final int PAGE_BITS = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    /** Ranges smaller than this are finished with an insertion sort. */
+    private static final int INSERTION_THRESHOLD = 24;
+
+    private byte[][] pages = new byte[4][];
+    private int pageCount;
+    private int pagePos;
+    private int[] page;
+    private int[] offset;
+    private int[] length;
+    private int[] utf16Length;
+    private int[] hash;
+    private int size;
+    private int[] table;
+    private byte[] scratch = new byte[256];
+
+    public StringPool() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedSize the expected number of distinct strings
+     */
+    public StringPool(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        this.page = new int[capacity];
+        this.offset = new int[capacity];
+        this.length = new int[capacity];
+        this.utf16Length = new int[capacity];
+        this.hash = new int[capacity];
+        this.table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    }
+
+    /**
+     * @return the number of distinct strings
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the encoded bytes held by the pool
+     */
+    public long byteSize() {
+        long bytes = 0;
+        for (int i = 0; i < size; i++) {
+            bytes += length[i];
+        }
+        return bytes;
+    }
+
+    /**
+     * Adds a string.
+     *
+     * @return its id
+     */
+    public int add(CharSequence value) {
+        int n = Mutf8.encodedLength(value);
+        ensureScratch(n);
+        Mutf8.encode(value, scratch, 0);
+        return add(scratch, n, value.length());
+    }
+
+    /**
+     * Adds every string of {@code dex} without decoding them.
+     *
+     * @return the id of each string of {@code dex}, by string index
+     */
+    public int[] addAll(DexFile dex) {
+        ByteBuffer buf = dex.buffer();
+        int[] ids = new int[dex.stringCount()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = add(dex, buf, i);
+        }
+        return ids;
+    }
+
+    /**
+     * Adds string {@code index} of {@code dex} without decoding it.
+     *
+     * @return its id
+     */
+    public int add(DexFile dex, int index) {
+        return add(dex, dex.buffer(), index);
+    }
+
+    /**
+     * Adds string {@code index} of {@code dex} through {@code buf}, a {@link DexFile#buffer()} the
+     * caller takes once for all the strings it adds.
+     *
+     * @return its id
+     */
+    int add(DexFile dex, ByteBuffer buf, int index) {
+        long packed = Leb128.readUnsigned(buf, dex.stringDataOffset(index));
+        int start = Leb128.next(packed);
+        int end = start;
+        while (buf.get(end) != 0) {
+            end++;
+        }
+        int n = end - start;
+        ensureScratch(n);
+        buf.position(start);
+        buf.get(scratch, 0, n);
+        return add(scratch, n, Leb128.value(packed));
+    }
+
+    private void ensureScratch(int n) {
+        if (scratch.length < n) {
+            scratch = new byte[Math.max(n, scratch.length * 2)];
+        }
+    }
+
+    private int add(byte[] bytes, int n, int units) {
+        int h = hash(bytes, n);
+        int mask = table.length - 1;
+        int slot = h & mask;
+        int id;
+        while ((id = table[slot] - 1) >= 0) {
+            if (hash[id] == h && equals(id, bytes, n)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        id = size;
+        if (id == page.length) {
+            grow();
+        }
+        store(id, bytes, n);
+        utf16Length[id] = units;
+        hash[id] = h;
+        size = id + 1;
+        table[slot] = id + 1;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private static int hash(byte[] bytes, int n) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < n; i++) {
+            h = (h ^ bytes[i]) * 0x01000193;
+        }
+        return h ^ h >>> 16;
+    }
+
+    private boolean equals(int id, byte[] bytes, int n) {
+        if (length[id] != n) {
+            return false;
+        }
+        byte[] data = pages[page[id]];
+        int from = offset[id];
+        return Arrays.equals(data, from, from + n, bytes, 0, n);
+    }
+
+    private void store(int id, byte[] bytes, int n) {
+        if (pageCount == 0 || n > PAGE_SIZE - pagePos) {
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pageCount * 2);
+            }
+            // A string longer than a page gets a page of its own size
+            pages[pageCount++] = new byte[Math.max(PAGE_SIZE, n)];
+            pagePos = 0;
+        }
+        System.arraycopy(bytes, 0, pages[pageCount - 1], pagePos, n);
+        page[id] = pageCount - 1;
+        offset[id] = pagePos;
+        length[id] = n;
+        pagePos += n;
+    }
+
+    private void grow() {
+        int capacity = page.length * 2;
+        page = Arrays.copyOf(page, capacity);
+        offset = Arrays.copyOf(offset, capacity);
+        length = Arrays.copyOf(length, capacity);
+        utf16Length = Arrays.copyOf(utf16Length, capacity);
+        hash = Arrays.copyOf(hash, capacity);
+    }
+
+    private void rehash() {
+        int[] next = new int[table.length * 2];
+        int mask = next.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash[id] & mask;
+            while (next[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            next[slot] = id + 1;
+        }
+        table = next;
+    }
+
+    /**
+     * @return the radix digit of string {@code id} at byte {@code depth}: {@code 0} past the end,
+     * {@code 1} for the {@code C0} lead byte of {@code U+0000}, otherwise the byte plus one
+     */
+    private int digit(int id, int depth) {
+        if (depth >= length[id]) {
+            return 0;
+        }
+        int b = pages[page[id]][offset[id] + depth] & 0xff;
+        return b == 0xc0 ? 1 : b + 1;
+    }
+
+    private int compare(int a, int b, int depth) {
+        int n = Math.min(length[a], length[b]);
+        for (int d = depth; d < n; d++) {
+            int x = digit(a, d);
+            int y = digit(b, d);
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return length[a] - length[b];
+    }
+
+    /**
+     * Sorts the current strings into {@code string_ids} order. Strings added afterwards are not
+     * part of the result.
+     *
+     * @return the order
+     */
+    public Sorted sort() {
+        int n = size;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        int[] tmp = new int[n];
+        int[] count = new int[258];
+        // Pending ranges as (lo, hi, depth) triples; a stack keeps long shared prefixes off the call stack
+        int[] stack = new int[96];
+        int top = 0;
+        if (n > 1) {
+            stack[top++] = 0;
+            stack[top++] = n;
+            stack[top++] = 0;
+        }
+        while (top > 0) {
+            int depth = stack[--top];
+            int hi = stack[--top];
+            int lo = stack[--top];
+            if (hi - lo < INSERTION_THRESHOLD) {
+                insertionSort(order, lo, hi, depth);
+                continue;
+            }
+            Arrays.fill(count, 0);
+            for (int i = lo; i < hi; i++) {
+                count[digit(order[i], depth) + 1]++;
+            }
+            int shared = digit(order[lo], depth);
+            if (shared != 0 && count[shared + 1] == hi - lo) {
+                // A common prefix byte, such as in "Lcom/example/", needs no pass over the range
+                stack[top++] = lo;
+                stack[top++] = hi;
+                stack[top++] = depth + 1;
+                continue;
+            }
+            for (int i = 1; i < count.length; i++) {
+                count[i] += count[i - 1];
+            }
+            for (int i = lo; i < hi; i++) {
+                tmp[count[digit(order[i], depth)]++] = order[i];
+            }
+            System.arraycopy(tmp, 0, order, lo, hi - lo);
+            // count[d] is now the end of bucket d; bucket 0 holds at most one ended string
+            int start = lo + count[0];
+            for (int d = 1; d < 257; d++) {
+                int end = lo + count[d];
+                if (end - start > 1) {
+                    if (top + 3 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = start;
+                    stack[top++] = end;
+                    stack[top++] = depth + 1;
+                }
+                start = end;
+            }
+        }
+        return new Sorted(this, order);
+    }
+
+    private void insertionSort(int[] order, int lo, int hi, int depth) {
+        for (int i = lo + 1; i < hi; i++) {
+            int id = order[i];
+            int j = i - 1;
+            while (j >= lo && compare(order[j], id, depth) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = id;
+        }
+    }
+
+    /**
+     * The {@code string_ids} order of a pool.
+     */
+    public static final class Sorted {
+        private final StringPool pool;
+        private final int[] order;
+        private final int[] rank;
+
+        Sorted(StringPool pool, int[] order) {
+            this.pool = pool;
+            this.order = order;
+            this.rank = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                rank[order[i]] = i;
+            }
+        }
+
+        public int size() {
+            return order.length;
+        }
+
+        /**
+         * @return the {@code string_ids} index of pool id {@code id}
+         */
+        public int indexOf(int id) {
+            return rank[id];
+        }
+
+        /**
+         * @return the pool id at {@code string_ids} index {@code index}
+         */
+        public int idAt(int index) {
+            return order[index];
+        }
+
+        /**
+         * Turns the ids returned by {@link StringPool#addAll(DexFile)} into an {@code old -> new}
+         * table for {@link IndexRemap}.
+         *
+         * @param ids pool ids, {@link DexFile#NO_INDEX} entries are kept
+         * @return the {@code string_ids} index of each entry
+         */
+        public int[] remap(int[] ids) {
+            int[] table = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                table[i] = ids[i] == DexFile.NO_INDEX ? DexFile.NO_INDEX : rank[ids[i]];
+            }
+            return table;
+        }
+
+        /**
+         * @return the string at {@code string_ids} index {@code index}, decoded
+         */
+        public String string(int index) {
+            int id = order[index];
+            return Mutf8.decode(ByteBuffer.wrap(pool.pages[pool.page[id]]), pool.offset[id], pool.utf16Length[id]);
+        }
+
+        /**
+         * Writes every {@code string_data_item} in {@code string_ids} order.
+         *
+         * @param out the output, positioned in the data section
+         * @return the offset of each item, to fill in the {@code string_ids} section
+         */
+        public int[] writeData(DexOutput out) {
+            int[] offsets = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                int id = order[i];
+                offsets[i] = out.size();
+                out.writeUleb128(pool.utf16Length[id]);
+                out.write(pool.pages[pool.page[id]], pool.offset[id], pool.length[id]);
+                out.writeByte(0);
+            }
+            return offsets;
+        }
+    }
+}
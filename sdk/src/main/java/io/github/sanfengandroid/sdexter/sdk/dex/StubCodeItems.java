@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import java.util.Arrays;
+
+/**
+ * Default return bodies for {@code MethodConfig.removeCode}, shared between methods.
+ * <p>
+ * A stub only depends on the shape of the return type and on the number of parameter registers,
+ * so one {@code code_item} is written per {@code (shape, ins_size)} pair and every other stubbed
+ * method with the same pair points at it. Stubs have no debug info, no try blocks and no index
+ * operands, so they are valid under any {@link IndexRemap}.
+ * </p>
+ * Bodies:
+ * <pre>
+ * V            return-void
+ * Z B S C I F  const/4 v0, #0; return v0
+ * J D          const-wide/16 v0, #0; return-wide v0
+ * L [          const/4 v0, #0; return-object v0
+ * </pre>
+ */
+public final class StubCodeItems {
+
+    public static final int SHAPE_VOID = 0;
+    public static final int SHAPE_NARROW = 1;
+    public static final int SHAPE_WIDE = 2;
+    public static final int SHAPE_OBJECT = 3;
+
+    private static final int ACC_STATIC = 0x8;
+
+    private static final short[][] INSNS = {
+            {0x000e},
+            {0x0012, 0x000f},
+            {0x0016, 0x0000, 0x0010},
+            {0x0012, 0x0011},
+    };
+    private static final int[] LOCALS = {0, 1, 2, 1};
+
+    private final DexOutput out;
+    /** Written offsets per shape, indexed by {@code ins_size}, {@code 0} if not written yet. */
+    private final int[][] offsets = new int[4][];
+    private int written;
+    private int reused;
+
+    /**
+     * @param out the output buffer, stubs are appended at its end
+     */
+    public StubCodeItems(DexOutput out) {
+        this.out = out;
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = new int[8];
+        }
+    }
+
+    /**
+     * @param returnType the return type descriptor
+     * @return one of the {@code SHAPE_*} constants
+     */
+    public static int shapeOf(String returnType) {
+        switch (returnType.charAt(0)) {
+            case 'V':
+                return SHAPE_VOID;
+            case 'J':
+            case 'D':
+                return SHAPE_WIDE;
+            case 'L':
+            case '[':
+                return SHAPE_OBJECT;
+            default:
+                return SHAPE_NARROW;
+        }
+    }
+
+    /**
+     * @param dex         the DEX defining the method
+     * @param methodIdx   the method id
+     * @param accessFlags the access flags from its {@code encoded_method}
+     * @return the number of parameter registers, including {@code this}
+     */
+    public static int insSize(DexFile dex, int methodIdx, int accessFlags) {
+        int ins = (accessFlags & ACC_STATIC) != 0 ? 0 : 1;
+        for (int type : dex.protoParameters(dex.methodProto(methodIdx))) {
+            char c = dex.string(dex.typeDescriptorIndex(type)).charAt(0);
+            ins += c == 'J' || c == 'D' ? 2 : 1;
+        }
+        return ins;
+    }
+
+    /**
+     * Returns the stub of a method, writing it on first use.
+     *
+     * @param dex         the DEX defining the method
+     * @param methodIdx   the method id
+     * @param accessFlags the access flags from its {@code encoded_method}
+     * @return the output offset of the shared {@code code_item}
+     */
+    public int stub(DexFile dex, int methodIdx, int accessFlags) {
+        String returnType = dex.typeDescriptor(dex.protoReturnType(dex.methodProto(methodIdx)));
+        return stub(shapeOf(returnType), insSize(dex, methodIdx, accessFlags));
+    }
+
+    /**
+     * @param shape   one of the {@code SHAPE_*} constants
+     * @param insSize the number of parameter registers
+     * @return the output offset of the shared {@code code_item}
+     */
+    public int stub(int shape, int insSize) {
+        int[] byIns = offsets[shape];
+        if (insSize >= byIns.length) {
+            byIns = offsets[shape] = Arrays.copyOf(byIns, Math.max(insSize + 1, byIns.length * 2));
+        }
+        if (byIns[insSize] != 0) {
+            reused++;
+            return byIns[insSize];
+        }
+        short[] insns = INSNS[shape];
+        out.align(4);
+        int start = out.size();
+        // Parameters occupy the last registers; the result may reuse them
+        out.writeShort(Math.max(insSize, LOCALS[shape]));
+        out.writeShort(insSize);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeInt(0);
+        out.writeInt(insns.length);
+        for (short unit : insns) {
+            out.writeShort(unit);
+        }
+        byIns[insSize] = start;
+        written++;
+        return start;
+    }
+
+    /**
+     * @return the number of distinct stubs written
+     */
+    public int writtenCount() {
+        return written;
+    }
+
+    /**
+     * @return the number of requests served by an existing stub
+     */
+    public int reusedCount() {
+        return reused;
+    }
+}
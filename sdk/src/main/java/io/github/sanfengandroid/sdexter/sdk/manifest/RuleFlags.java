@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.manifest;
+
+/**
+ * Bit positions used by the rule manifest to encode boolean configuration values.
+ * <p>
+ * Each constant mirrors one boolean attribute of {@link io.github.sanfengandroid.sdexter.sdk.ClassConfig},
+ * {@link io.github.sanfengandroid.sdexter.sdk.FieldConfig}, {@link io.github.sanfengandroid.sdexter.sdk.MethodConfig}
+ * or {@link io.github.sanfengandroid.sdexter.sdk.ParamConfig}. The values are part of the manifest
+ * file format and must never be renumbered.
+ * </p>
+ */
+public final class RuleFlags {
+
+    // ClassConfig
+    public static final long CLASS_REMOVE_SUPER_CLASS = 1L;
+    public static final long CLASS_REMOVE_INTERFACES = 1L << 1;
+    public static final long CLASS_REMOVE_SOURCE_FILE = 1L << 2;
+    public static final long CLASS_REMOVE_CLASS_ANNOTATION = 1L << 3;
+    public static final long CLASS_REMOVE_FIELD_ANNOTATION = 1L << 4;
+    public static final long CLASS_REMOVE_METHOD_ANNOTATION = 1L << 5;
+    public static final long CLASS_REMOVE_PARAM_ANNOTATION = 1L << 6;
+    public static final long CLASS_REMOVE_UNUSED_FIELDS = 1L << 7;
+    public static final long CLASS_REMOVE_UNUSED_METHODS = 1L << 8;
+    public static final long CLASS_REMOVE_STATIC_FIELDS = 1L << 9;
+    public static final long CLASS_REMOVE_INSTANCE_FIELDS = 1L << 10;
+    public static final long CLASS_REMOVE_DIRECT_METHODS = 1L << 11;
+    public static final long CLASS_REMOVE_VIRTUAL_METHODS = 1L << 12;
+    public static final long CLASS_IGNORE_MIRROR_DEFAULT_CONSTRUCTOR = 1L << 13;
+    public static final long CLASS_REMOVE_STATIC_INIT = 1L << 14;
+    public static final long CLASS_USE_MIRROR_SOURCE_FILE = 1L << 15;
+    public static final long CLASS_REMOVE = 1L << 16;
+    public static final long CLASS_REPLACE = 1L << 17;
+
+    // FieldConfig
+    public static final int FIELD_REMOVE = 1;
+    public static final int FIELD_REMOVE_ANNOTATIONS = 1 << 1;
+    public static final int FIELD_REMOVE_INITIAL_VALUE = 1 << 2;
+    /** The field carries a {@link io.github.sanfengandroid.sdexter.sdk.RemoveFields} annotation. */
+    public static final int FIELD_REMOVE_MARKED = 1 << 3;
+
+    // MethodConfig
+    public static final int METHOD_REMOVE = 1;
+    public static final int METHOD_REMOVE_ANNOTATIONS = 1 << 1;
+    public static final int METHOD_REMOVE_PARAM_ANNOTATIONS = 1 << 2;
+    public static final int METHOD_REMOVE_DBG_INFO = 1 << 3;
+    public static final int METHOD_REMOVE_CODE = 1 << 4;
+    /** The method carries a {@link io.github.sanfengandroid.sdexter.sdk.RemoveMethods} annotation. */
+    public static final int METHOD_REMOVE_MARKED = 1 << 5;
+
+    // ParamConfig
+    public static final int PARAM_REMOVE_ANNOTATIONS = 1;
+
+    private RuleFlags() {
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.manifest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only view of a rule manifest produced by the configuration annotation processor.
+ * <p>
+ * The file is memory-mapped and never fully decoded. {@link #find(CharSequence)} hashes the
+ * descriptor, probes the bucket table and returns a {@link ClassRule} view over the matching
+ * record; strings are decoded only when an accessor asks for them.
+ * </p>
+ *
+ * @see RuleManifestWriter
+ */
+public final class RuleManifest {
+
+    /**
+     * Resource path used by the annotation processor in the class output directory.
+     */
+    public static final String RESOURCE_PATH = "META-INF/sdexter/rules.sdxr";
+
+    private final ByteBuffer buf;
+    private final int stringCount;
+    private final int stringIdsOff;
+    private final int classCount;
+    private final int classOffsetsOff;
+    private final int bucketMask;
+    private final int bucketsOff;
+
+    private RuleManifest(ByteBuffer buf) {
+        this.buf = buf.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.limit() < RuleManifestWriter.HEADER_SIZE || buf.getInt(0) != RuleManifestWriter.MAGIC) {
+            throw new IllegalArgumentException("Not a rule manifest");
+        }
+        int version = buf.getInt(4);
+        if (version != RuleManifestWriter.VERSION) {
+            throw new IllegalArgumentException("Unsupported rule manifest version: " + version);
+        }
+        if (buf.getInt(8) != buf.limit()) {
+            throw new IllegalArgumentException("Truncated rule manifest");
+        }
+        this.stringCount = buf.getInt(12);
+        this.stringIdsOff = buf.getInt(16);
+        this.classCount = buf.getInt(20);
+        this.classOffsetsOff = buf.getInt(24);
+        this.bucketMask = buf.getInt(28) - 1;
+        this.bucketsOff = buf.getInt(32);
+    }
+
+    /**
+     * Memory-maps a manifest file.
+     *
+     * @param path the manifest file
+     * @return the manifest view
+     * @throws IOException if the file cannot be mapped
+     */
+    public static RuleManifest open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new RuleManifest(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Wraps an already loaded manifest.
+     *
+     * @param buffer the manifest content, position and byte order are ignored
+     * @return the manifest view
+     */
+    public static RuleManifest wrap(ByteBuffer buffer) {
+        return new RuleManifest(buffer.duplicate());
+    }
+
+    /**
+     * @return the number of classes with rules
+     */
+    public int size() {
+        return classCount;
+    }
+
+    /**
+     * Looks up the rules of one class.
+     *
+     * @param descriptor dex type descriptor, e.g. {@code Lcom/example/Foo;}
+     * @return the class rules, or {@code null} if the class is not configured
+     */
+    public ClassRule find(CharSequence descriptor) {
+        int slot = hash(descriptor) & bucketMask;
+        while (true) {
+            int entry = buf.getInt(bucketsOff + slot * 4);
+            if (entry == 0) {
+                return null;
+            }
+            int record = buf.getInt(classOffsetsOff + (entry - 1) * 4);
+            if (stringEquals(buf.getInt(record), descriptor)) {
+                return new ClassRule(record);
+            }
+            slot = (slot + 1) & bucketMask;
+        }
+    }
+
+    /**
+     * Returns the class rule at the given position, in declaration order.
+     *
+     * @param index zero based class index
+     * @return the class rule
+     */
+    public ClassRule get(int index) {
+        if (index < 0 || index >= classCount) {
+            throw new IndexOutOfBoundsException("class index " + index + ", size " + classCount);
+        }
+        return new ClassRule(buf.getInt(classOffsetsOff + index * 4));
+    }
+
+    /**
+     * FNV-1a hash of the UTF-8 encoding of {@code value}, computed without allocating.
+     *
+     * @param value the string to hash
+     * @return the 32-bit hash
+     */
+    public static int hash(CharSequence value) {
+        int h = 0x811c9dc5;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                h = (h ^ c) * 0x01000193;
+            } else if (c < 0x800) {
+                h = (h ^ (0xc0 | (c >> 6))) * 0x01000193;
+                h = (h ^ (0x80 | (c & 0x3f))) * 0x01000193;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                h = (h ^ (0xf0 | (cp >> 18))) * 0x01000193;
+                h = (h ^ (0x80 | ((cp >> 12) & 0x3f))) * 0x01000193;
+                h = (h ^ (0x80 | ((cp >> 6) & 0x3f))) * 0x01000193;
+                h = (h ^ (0x80 | (cp & 0x3f))) * 0x01000193;
+            } else {
+                h = (h ^ (0xe0 | (c >> 12))) * 0x01000193;
+                h = (h ^ (0x80 | ((c >> 6) & 0x3f))) * 0x01000193;
+                h = (h ^ (0x80 | (c & 0x3f))) * 0x01000193;
+            }
+        }
+        return h;
+    }
+
+    String string(int index) {
+        if (index == RuleManifestWriter.NO_INDEX) {
+            return null;
+        }
+        if (index < 0 || index >= stringCount) {
+            throw new IllegalArgumentException("Bad string index " + index);
+        }
+        int off = buf.getInt(stringIdsOff + index * 4);
+        int len = buf.getInt(off);
+        byte[] bytes = new byte[len];
+        ByteBuffer dup = buf.duplicate();
+        dup.position(off + 4);
+        dup.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean stringEquals(int index, CharSequence value) {
+        int off = buf.getInt(stringIdsOff + index * 4);
+        int len = buf.getInt(off);
+        int n = value.length();
+        if (len == n) {
+            int i = 0;
+            for (; i < n; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80 || buf.get(off + 4 + i) != c) {
+                    break;
+                }
+            }
+            if (i == n) {
+                return true;
+            }
+            if (value.charAt(i) < 0x80) {
+                return false;
+            }
+        } else if (len < n) {
+            return false;
+        }
+        return value.toString().equals(string(index));
+    }
+
+    private String[] stringList(int pos) {
+        int size = buf.getInt(pos);
+        String[] values = new String[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = string(buf.getInt(pos + 4 + i * 4));
+        }
+        return values;
+    }
+
+    private int skipList(int pos) {
+        return pos + 4 + buf.getInt(pos) * 4;
+    }
+
+    /**
+     * View over one class record.
+     * <pre>
+     * u32 descriptor, u64 flags, u32 rename, u32 source_file
+     * u32 size, u32[size] removeFields.value
+     * u32 size, u32[size] removeFields.namePatterns
+     * u32 size, u32[size] removeMethods.value
+     * u32 size, u32[size] removeMethods.protoPatterns
+     * u32 field_count, (u32 name, u32 type, u32 flags, u32 rename)[field_count]
+     * u32 method_count, (u32 name, u32 proto, u32 flags, u32 rename,
+     *                    u32 param_count, (u32 index, u32 flags, u32 rename)[param_count])[method_count]
+     * </pre>
+     * String references are indices into the string table, {@code -1} meaning absent.
+     */
+    public final class ClassRule {
+        private final int offset;
+
+        ClassRule(int offset) {
+            this.offset = offset;
+        }
+
+        public String getDescriptor() {
+            return string(buf.getInt(offset));
+        }
+
+        /**
+         * @return combination of {@code RuleFlags.CLASS_*} bits
+         */
+        public long getFlags() {
+            return buf.getLong(offset + 4);
+        }
+
+        public boolean hasFlag(long flag) {
+            return (getFlags() & flag) != 0;
+        }
+
+        /**
+         * @return the new class name, or {@code null} for no renaming
+         */
+        public String getRename() {
+            return string(buf.getInt(offset + 12));
+        }
+
+        /**
+         * @return the custom source file name, or {@code null}
+         */
+        public String getSourceFile() {
+            return string(buf.getInt(offset + 16));
+        }
+
+        public String[] getRemoveFieldNames() {
+            return stringList(listOffset(0));
+        }
+
+        public String[] getRemoveFieldPatterns() {
+            return stringList(listOffset(1));
+        }
+
+        public String[] getRemoveMethods() {
+            return stringList(listOffset(2));
+        }
+
+        public String[] getRemoveMethodPatterns() {
+            return stringList(listOffset(3));
+        }
+
+        /**
+         * @return the field rules declared in this class
+         */
+        public List<MemberRule> getFields() {
+            int pos = listOffset(4);
+            int count = buf.getInt(pos);
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+            List<MemberRule> fields = new ArrayList<>(count);
+            pos += 4;
+            for (int i = 0; i < count; i++, pos += 16) {
+                fields.add(new MemberRule(string(buf.getInt(pos)), string(buf.getInt(pos + 4)),
+                        buf.getInt(pos + 8), string(buf.getInt(pos + 12)), Collections.emptyList()));
+            }
+            return fields;
+        }
+
+        /**
+         * @return the method rules declared in this class
+         */
+        public List<MemberRule> getMethods() {
+            int pos = listOffset(4);
+            pos += 4 + buf.getInt(pos) * 16;
+            int count = buf.getInt(pos);
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+            List<MemberRule> methods = new ArrayList<>(count);
+            pos += 4;
+            for (int i = 0; i < count; i++) {
+                String name = string(buf.getInt(pos));
+                String proto = string(buf.getInt(pos + 4));
+                int flags = buf.getInt(pos + 8);
+                String rename = string(buf.getInt(pos + 12));
+                int paramCount = buf.getInt(pos + 16);
+                pos += 20;
+                List<ParamRule> params = new ArrayList<>(paramCount);
+                for (int j = 0; j < paramCount; j++, pos += 12) {
+                    params.add(new ParamRule(buf.getInt(pos), buf.getInt(pos + 4), string(buf.getInt(pos + 8))));
+                }
+                methods.add(new MemberRule(name, proto, flags, rename, params));
+            }
+            return methods;
+        }
+
+        private int listOffset(int which) {
+            int pos = offset + 20;
+            for (int i = 0; i < which; i++) {
+                pos = skipList(pos);
+            }
+            return pos;
+        }
+    }
+
+    /**
+     * Decoded field or method rule.
+     */
+    public static final class MemberRule {
+        private final String name;
+        private final String type;
+        private final int flags;
+        private final String rename;
+        private final List<ParamRule> params;
+
+        MemberRule(String name, String type, int flags, String rename, List<ParamRule> params) {
+            this.name = name;
+            this.type = type;
+            this.flags = flags;
+            this.rename = rename;
+            this.params = params;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the field type descriptor, or the method prototype such as {@code (I)V}
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return combination of {@code RuleFlags.FIELD_*} or {@code RuleFlags.METHOD_*} bits
+         */
+        public int getFlags() {
+            return flags;
+        }
+
+        public String getRename() {
+            return rename;
+        }
+
+        public List<ParamRule> getParams() {
+            return params;
+        }
+    }
+
+    /**
+     * Decoded parameter rule.
+     */
+    public static final class ParamRule {
+        private final int index;
+        private final int flags;
+        private final String rename;
+
+        ParamRule(int index, int flags, String rename) {
+            this.index = index;
+            this.flags = flags;
+            this.rename = rename;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public String getRename() {
+            return rename;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.manifest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes class rules into the binary rule manifest read by {@link RuleManifest}.
+ * <p>
+ * The layout is little-endian, like the DEX format itself:
+ * </p>
+ * <pre>
+ * header          magic "SDXR", version, file_size, string_count, string_ids_off,
+ *                 class_count, class_offsets_off, bucket_count, buckets_off
+ * string_ids      u32[string_count] offsets of (u32 utf8_length, utf8 bytes)
+ * class_offsets   u32[class_count] offsets of class records
+ * buckets         u32[bucket_count] open addressing table, class index + 1, 0 when empty
+ * class records   see {@link RuleManifest.ClassRule}
+ * </pre>
+ * The bucket table is keyed by {@link RuleManifest#hash(CharSequence)} of the class descriptor and
+ * uses linear probing, so a lookup touches a single bucket in the common case.
+ */
+public final class RuleManifestWriter {
+
+    static final int MAGIC = 0x52584453; // "SDXR" read as little-endian
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 36;
+    static final int NO_INDEX = -1;
+
+    private final Map<String, ClassEntry> classes = new LinkedHashMap<>();
+
+    /**
+     * Returns the entry for the given class descriptor, creating it on first use.
+     *
+     * @param descriptor dex type descriptor, e.g. {@code Lcom/example/Foo;}
+     * @return the mutable class entry
+     */
+    public ClassEntry classEntry(String descriptor) {
+        return classes.computeIfAbsent(descriptor, ClassEntry::new);
+    }
+
+    /**
+     * @return the number of classes added so far
+     */
+    public int size() {
+        return classes.size();
+    }
+
+    /**
+     * Writes the manifest to the given stream. The stream is not closed.
+     *
+     * @param out the destination stream
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] bytes = toByteArray();
+        out.write(bytes);
+    }
+
+    /**
+     * Encodes the manifest into a new byte array.
+     *
+     * @return the encoded manifest
+     */
+    public byte[] toByteArray() {
+        StringPool pool = new StringPool();
+        List<ClassEntry> entries = new ArrayList<>(classes.values());
+        for (ClassEntry entry : entries) {
+            entry.internStrings(pool);
+        }
+
+        int classCount = entries.size();
+        int bucketCount = Integer.highestOneBit(Math.max(4, classCount * 2) - 1) << 1;
+
+        int stringIdsOff = HEADER_SIZE;
+        int stringDataOff = stringIdsOff + pool.strings.size() * 4;
+        int stringDataSize = 0;
+        for (byte[] s : pool.strings) {
+            stringDataSize += 4 + s.length;
+        }
+        int classOffsetsOff = align4(stringDataOff + stringDataSize);
+        int bucketsOff = classOffsetsOff + classCount * 4;
+        int recordsOff = bucketsOff + bucketCount * 4;
+        int recordsSize = 0;
+        for (ClassEntry entry : entries) {
+            recordsSize += entry.recordSize();
+        }
+        int fileSize = recordsOff + recordsSize;
+
+        ByteBuffer buf = ByteBuffer.allocate(fileSize).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(fileSize)
+                .putInt(pool.strings.size()).putInt(stringIdsOff)
+                .putInt(classCount).putInt(classOffsetsOff)
+                .putInt(bucketCount).putInt(bucketsOff);
+
+        int dataPos = stringDataOff;
+        for (int i = 0; i < pool.strings.size(); i++) {
+            byte[] s = pool.strings.get(i);
+            buf.putInt(stringIdsOff + i * 4, dataPos);
+            buf.putInt(dataPos, s.length);
+            buf.position(dataPos + 4);
+            buf.put(s);
+            dataPos += 4 + s.length;
+        }
+
+        int mask = bucketCount - 1;
+        int recordPos = recordsOff;
+        for (int i = 0; i < classCount; i++) {
+            ClassEntry entry = entries.get(i);
+            buf.putInt(classOffsetsOff + i * 4, recordPos);
+            int slot = RuleManifest.hash(entry.descriptor) & mask;
+            while (buf.getInt(bucketsOff + slot * 4) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            buf.putInt(bucketsOff + slot * 4, i + 1);
+            buf.position(recordPos);
+            entry.writeRecord(buf, pool);
+            recordPos = buf.position();
+        }
+        return buf.array();
+    }
+
+    private static int align4(int value) {
+        return (value + 3) & ~3;
+    }
+
+    private static final class StringPool {
+        final Map<String, Integer> indices = new HashMap<>();
+        final List<byte[]> strings = new ArrayList<>();
+
+        void intern(String value) {
+            if (value != null && !indices.containsKey(value)) {
+                indices.put(value, strings.size());
+                strings.add(value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        int indexOf(String value) {
+            return value == null ? NO_INDEX : indices.get(value);
+        }
+    }
+
+    /**
+     * Rules collected for one class.
+     */
+    public static final class ClassEntry {
+        private final String descriptor;
+        private long flags;
+        private String rename;
+        private String sourceFile;
+        private final List<String> removeFieldNames = new ArrayList<>();
+        private final List<String> removeFieldPatterns = new ArrayList<>();
+        private final List<String> removeMethods = new ArrayList<>();
+        private final List<String> removeMethodPatterns = new ArrayList<>();
+        private final List<FieldEntry> fields = new ArrayList<>();
+        private final List<MethodEntry> methods = new ArrayList<>();
+
+        ClassEntry(String descriptor) {
+            this.descriptor = descriptor;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        /**
+         * @param flags combination of {@code RuleFlags.CLASS_*} bits
+         * @return this entry
+         */
+        public ClassEntry setFlags(long flags) {
+            this.flags = flags;
+            return this;
+        }
+
+        /**
+         * @param rename the new class name, or {@code null} for no renaming
+         * @return this entry
+         */
+        public ClassEntry setRename(String rename) {
+            this.rename = emptyToNull(rename);
+            return this;
+        }
+
+        /**
+         * @param sourceFile the custom source file name, or {@code null} for default
+         * @return this entry
+         */
+        public ClassEntry setSourceFile(String sourceFile) {
+            this.sourceFile = emptyToNull(sourceFile);
+            return this;
+        }
+
+        public ClassEntry addRemoveFields(String[] names, String[] patterns) {
+            addAll(removeFieldNames, names);
+            addAll(removeFieldPatterns, patterns);
+            return this;
+        }
+
+        public ClassEntry addRemoveMethods(String[] protos, String[] patterns) {
+            addAll(removeMethods, protos);
+            addAll(removeMethodPatterns, patterns);
+            return this;
+        }
+
+        /**
+         * Adds a field rule.
+         *
+         * @param name   field name
+         * @param type   field type descriptor
+         * @param flags  combination of {@code RuleFlags.FIELD_*} bits
+         * @param rename the new field name, or {@code null}
+         * @return this entry
+         */
+        public ClassEntry addField(String name, String type, int flags, String rename) {
+            fields.add(new FieldEntry(name, type, flags, emptyToNull(rename)));
+            return this;
+        }
+
+        /**
+         * Adds a method rule.
+         *
+         * @param name   method name
+         * @param proto  method prototype in dex form without the name, e.g. {@code (ILjava/lang/String;)V}
+         * @param flags  combination of {@code RuleFlags.METHOD_*} bits
+         * @param rename the new method name, or {@code null}
+         * @return the method entry, used to add parameter rules
+         */
+        public MethodEntry addMethod(String name, String proto, int flags, String rename) {
+            MethodEntry method = new MethodEntry(name, proto, flags, emptyToNull(rename));
+            methods.add(method);
+            return method;
+        }
+
+        void internStrings(StringPool pool) {
+            pool.intern(descriptor);
+            pool.intern(rename);
+            pool.intern(sourceFile);
+            removeFieldNames.forEach(pool::intern);
+            removeFieldPatterns.forEach(pool::intern);
+            removeMethods.forEach(pool::intern);
+            removeMethodPatterns.forEach(pool::intern);
+            for (FieldEntry field : fields) {
+                pool.intern(field.name);
+                pool.intern(field.type);
+                pool.intern(field.rename);
+            }
+            for (MethodEntry method : methods) {
+                pool.intern(method.name);
+                pool.intern(method.proto);
+                pool.intern(method.rename);
+                for (ParamEntry param : method.params) {
+                    pool.intern(param.rename);
+                }
+            }
+        }
+
+        int recordSize() {
+            int size = 4 + 8 + 4 + 4;
+            size += 4 * (4 + removeFieldNames.size() + removeFieldPatterns.size()
+                    + removeMethods.size() + removeMethodPatterns.size());
+            size += 4 + fields.size() * 16;
+            size += 4;
+            for (MethodEntry method : methods) {
+                size += 20 + method.params.size() * 12;
+            }
+            return size;
+        }
+
+        void writeRecord(ByteBuffer buf, StringPool pool) {
+            buf.putInt(pool.indexOf(descriptor));
+            buf.putLong(flags);
+            buf.putInt(pool.indexOf(rename));
+            buf.putInt(pool.indexOf(sourceFile));
+            writeList(buf, pool, removeFieldNames);
+            writeList(buf, pool, removeFieldPatterns);
+            writeList(buf, pool, removeMethods);
+            writeList(buf, pool, removeMethodPatterns);
+            buf.putInt(fields.size());
+            for (FieldEntry field : fields) {
+                buf.putInt(pool.indexOf(field.name));
+                buf.putInt(pool.indexOf(field.type));
+                buf.putInt(field.flags);
+                buf.putInt(pool.indexOf(field.rename));
+            }
+            buf.putInt(methods.size());
+            for (MethodEntry method : methods) {
+                buf.putInt(pool.indexOf(method.name));
+                buf.putInt(pool.indexOf(method.proto));
+                buf.putInt(method.flags);
+                buf.putInt(pool.indexOf(method.rename));
+                buf.putInt(method.params.size());
+                for (ParamEntry param : method.params) {
+                    buf.putInt(param.index);
+                    buf.putInt(param.flags);
+                    buf.putInt(pool.indexOf(param.rename));
+                }
+            }
+        }
+
+        private static void writeList(ByteBuffer buf, StringPool pool, List<String> values) {
+            buf.putInt(values.size());
+            for (String value : values) {
+                buf.putInt(pool.indexOf(value));
+            }
+        }
+
+        private static void addAll(List<String> list, String[] values) {
+            if (values != null) {
+                for (String value : values) {
+                    list.add(value);
+                }
+            }
+        }
+    }
+
+    private static final class FieldEntry {
+        final String name;
+        final String type;
+        final int flags;
+        final String rename;
+
+        FieldEntry(String name, String type, int flags, String rename) {
+            this.name = name;
+            this.type = type;
+            this.flags = flags;
+            this.rename = rename;
+        }
+    }
+
+    /**
+     * Rules collected for one method.
+     */
+    public static final class MethodEntry {
+        final String name;
+        final String proto;
+        final int flags;
+        final String rename;
+        final List<ParamEntry> params = new ArrayList<>();
+
+        MethodEntry(String name, String proto, int flags, String rename) {
+            this.name = name;
+            this.proto = proto;
+            this.flags = flags;
+            this.rename = rename;
+        }
+
+        /**
+         * Adds a parameter rule.
+         *
+         * @param index  zero based parameter index, not counting {@code this}
+         * @param flags  combination of {@code RuleFlags.PARAM_*} bits
+         * @param rename the new parameter name, or {@code null}
+         * @return this entry
+         */
+        public MethodEntry addParam(int index, int flags, String rename) {
+            params.add(new ParamEntry(index, flags, emptyToNull(rename)));
+            return this;
+        }
+    }
+
+    private static final class ParamEntry {
+        final int index;
+        final int flags;
+        final String rename;
+
+        ParamEntry(int index, int flags, String rename) {
+            this.index = index;
+            this.flags = flags;
+            this.rename = rename;
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.mapping;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only view of a mapping index written by {@link MappingIndexWriter}, resolving output names
+ * back to original names.
+ * <p>
+ * The file is memory-mapped and nothing is decoded up front, so opening the index of a large app
+ * costs the same as opening a small one. Lookups take name ranges of a {@link CharSequence} and
+ * append results to a {@link StringBuilder}, which lets {@link Retracer} work on the lines it reads
+ * without creating a string per name.
+ * </p>
+ * Instances are immutable and may be shared between threads.
+ */
+public final class MappingIndex {
+
+    static final int KIND_CLASS = 0;
+    static final int KIND_FIELD = 1;
+    static final int KIND_METHOD = 2;
+
+    private final ByteBuffer buf;
+    private final int count;
+    private final int bits;
+    private final int directoryOff;
+    private final int entriesOff;
+    private final int stringsOff;
+
+    private MappingIndex(ByteBuffer buf) {
+        this.buf = buf.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.limit() < MappingIndexWriter.HEADER_SIZE || buf.getInt(0) != MappingIndexWriter.MAGIC) {
+            throw new IllegalArgumentException("Not a mapping index");
+        }
+        int version = buf.getInt(4);
+        if (version != MappingIndexWriter.VERSION) {
+            throw new IllegalArgumentException("Unsupported mapping index version: " + version);
+        }
+        if (buf.getInt(8) != buf.limit()) {
+            throw new IllegalArgumentException("Truncated mapping index");
+        }
+        this.count = buf.getInt(12);
+        this.bits = buf.getInt(16);
+        this.directoryOff = buf.getInt(20);
+        this.entriesOff = buf.getInt(24);
+        this.stringsOff = buf.getInt(28);
+    }
+
+    /**
+     * Memory-maps an index file.
+     *
+     * @param path the index file
+     * @return the index view
+     * @throws IOException if the file cannot be mapped
+     */
+    public static MappingIndex open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappingIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Wraps an already loaded index.
+     *
+     * @param buffer the index content, position and byte order are ignored
+     * @return the index view
+     */
+    public static MappingIndex wrap(ByteBuffer buffer) {
+        return new MappingIndex(buffer.duplicate());
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param renamed an output class name, e.g. {@code a.b}
+     * @return its original name, or {@code null} if the class was not renamed
+     */
+    public String originalClass(String renamed) {
+        StringBuilder sb = new StringBuilder();
+        return appendClass(renamed, 0, renamed.length(), sb) ? sb.toString() : null;
+    }
+
+    /**
+     * Appends the original name of the output class {@code name[from, to)}.
+     *
+     * @return {@code false} if the class was not renamed; nothing is appended in that case
+     */
+    public boolean appendClass(CharSequence name, int from, int to, StringBuilder out) {
+        return append(KIND_CLASS, name, from, to, "", 0, 0, out) > 0;
+    }
+
+    /**
+     * Appends the original names of method {@code name[nameFrom, nameTo)} of output class
+     * {@code owner[ownerFrom, ownerTo)}. Several overloads renamed to one name are joined with {@code |}.
+     *
+     * @return the number of names appended, {@code 0} if the method was not renamed
+     */
+    public int appendMethod(CharSequence owner, int ownerFrom, int ownerTo,
+                            CharSequence name, int nameFrom, int nameTo, StringBuilder out) {
+        return append(KIND_METHOD, owner, ownerFrom, ownerTo, name, nameFrom, nameTo, out);
+    }
+
+    /**
+     * Field counterpart of {@link #appendMethod}.
+     */
+    public int appendField(CharSequence owner, int ownerFrom, int ownerTo,
+                           CharSequence name, int nameFrom, int nameTo, StringBuilder out) {
+        return append(KIND_FIELD, owner, ownerFrom, ownerTo, name, nameFrom, nameTo, out);
+    }
+
+    private int append(int kind, CharSequence owner, int ownerFrom, int ownerTo,
+                       CharSequence name, int nameFrom, int nameTo, StringBuilder out) {
+        long hash = hash(kind, owner, ownerFrom, ownerTo, name, nameFrom, nameTo);
+        int p = prefix(hash, bits);
+        int end = buf.getInt(directoryOff + (p + 1) * 4);
+        int appended = 0;
+        for (int i = buf.getInt(directoryOff + p * 4); i < end; i++) {
+            int entry = entriesOff + i * MappingIndexWriter.ENTRY_SIZE;
+            long h = buf.getLong(entry);
+            if (h > hash) {
+                break;
+            }
+            if (h != hash || buf.getInt(entry + 20) != kind
+                    || !stringEquals(buf.getInt(entry + 8), owner, ownerFrom, ownerTo)
+                    || kind != KIND_CLASS && !stringEquals(buf.getInt(entry + 12), name, nameFrom, nameTo)) {
+                continue;
+            }
+            if (appended++ > 0) {
+                out.append('|');
+            }
+            appendString(buf.getInt(entry + 16), out);
+        }
+        return appended;
+    }
+
+    private boolean stringEquals(int offset, CharSequence value, int from, int to) {
+        int pos = stringsOff + offset;
+        if (buf.getInt(pos) != to - from) {
+            return false;
+        }
+        pos += 4;
+        for (int i = from; i < to; i++) {
+            int b = buf.get(pos++) & 0xff;
+            if (b < 0x80) {
+                if (b != value.charAt(i)) {
+                    return false;
+                }
+                continue;
+            }
+            long decoded = decode(b, pos);
+            if ((char) decoded != value.charAt(i)) {
+                return false;
+            }
+            pos = (int) (decoded >>> 16);
+        }
+        return true;
+    }
+
+    private void appendString(int offset, StringBuilder out) {
+        int pos = stringsOff + offset;
+        int n = buf.getInt(pos);
+        pos += 4;
+        for (int i = 0; i < n; i++) {
+            int b = buf.get(pos++) & 0xff;
+            if (b < 0x80) {
+                out.append((char) b);
+            } else {
+                long decoded = decode(b, pos);
+                out.append((char) decoded);
+                pos = (int) (decoded >>> 16);
+            }
+        }
+    }
+
+    /**
+     * Decodes a multi-byte MUTF-8 character whose lead byte {@code b} was read before {@code pos}.
+     *
+     * @return the character in the low 16 bits, the position after it above
+     */
+    private long decode(int b, int pos) {
+        int c;
+        if (b < 0xe0) {
+            c = (b & 0x1f) << 6 | buf.get(pos++) & 0x3f;
+        } else {
+            c = (b & 0x0f) << 12 | (buf.get(pos++) & 0x3f) << 6 | buf.get(pos++) & 0x3f;
+        }
+        return (long) pos << 16 | c;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 units of the owner and member names, finished with the
+     * MurmurHash3 mixer so the top bits can index the directory.
+     *
+     * @return a non-negative hash
+     */
+    static long hash(int kind, CharSequence owner, int ownerFrom, int ownerTo,
+                     CharSequence member, int memberFrom, int memberTo) {
+        long h = 0xcbf29ce484222325L ^ kind;
+        for (int i = ownerFrom; i < ownerTo; i++) {
+            h = (h ^ owner.charAt(i)) * 0x100000001b3L;
+        }
+        // U+FFFF is a noncharacter, it separates "a.b" + "c" from "a.bc"
+        h = (h ^ 0xffff) * 0x100000001b3L;
+        for (int i = memberFrom; i < memberTo; i++) {
+            h = (h ^ member.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h >>> 1;
+    }
+
+    /**
+     * @return the directory slot of {@code hash}
+     */
+    static int prefix(long hash, int bits) {
+        return (int) (hash >>> (63 - bits));
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.mapping;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the reverse lookup index read by {@link MappingIndex} from a ProGuard style mapping file.
+ * <p>
+ * The layout is little-endian, like the DEX format itself:
+ * </p>
+ * <pre>
+ * header      magic "SDXM", version, file_size, entry_count, directory_bits,
+ *             directory_off, entries_off, strings_off
+ * directory   u32[2^directory_bits + 1] index of the first entry whose hash starts with each prefix
+ * entries     entry_count * (i64 hash, u32 class, u32 member, u32 value, u32 kind), sorted by hash
+ * strings     (u32 utf16_length, MUTF-8 bytes), deduplicated
+ * </pre>
+ * <p>
+ * Entries are keyed by the output names seen in a stack trace: the renamed class, plus the
+ * renamed member name for fields and methods. The value is the original class or member name.
+ * Overloads renamed to the same name give one entry each. The directory takes the top bits of
+ * a hash straight to its run of entries, so a lookup is a jump and a short scan.
+ * </p>
+ * Line ranges of R8 style mappings are accepted and ignored, and so are comment lines, indented
+ * or not.
+ */
+public final class MappingIndexWriter {
+
+    static final int MAGIC = 0x4d584453; // "SDXM" read as little-endian
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int ENTRY_SIZE = 24;
+    static final int NO_STRING = -1;
+
+    private final Map<String, Integer> stringOffsets = new HashMap<>();
+    private byte[] strings = new byte[4096];
+    private int stringsSize;
+    private long[] hashes = new long[1024];
+    private int[] fields = new int[1024 * 4];
+    private int size;
+
+    private MappingIndexWriter() {
+    }
+
+    /**
+     * Indexes a mapping file.
+     *
+     * @param mapping the mapping file
+     * @param index   the destination, replaced atomically
+     * @return the number of entries
+     * @throws IOException if reading or writing fails
+     */
+    public static int write(Path mapping, Path index) throws IOException {
+        try (Reader reader = Files.newBufferedReader(mapping)) {
+            return write(reader, index);
+        }
+    }
+
+    /**
+     * Indexes a mapping read from {@code mapping}. The reader is not closed.
+     *
+     * @see #write(Path, Path)
+     */
+    public static int write(Reader mapping, Path index) throws IOException {
+        MappingIndexWriter writer = new MappingIndexWriter();
+        writer.parse(mapping instanceof BufferedReader ? (BufferedReader) mapping : new BufferedReader(mapping));
+        ByteBuffer out = writer.encode();
+        Path tmp = Files.createTempFile(index.toAbsolutePath().getParent(), index.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+            Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+        } finally {
+            deleteQuietly(tmp);
+        }
+        return writer.size;
+    }
+
+    private static void deleteQuietly(Path tmp) {
+        if (tmp != null) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // The write already failed, that is the error to report
+            }
+        }
+    }
+
+    private void parse(BufferedReader reader) throws IOException {
+        String renamedClass = null;
+        String line;
+        int number = 0;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            String content = line.strip();
+            // R8 also writes indented comments, e.g. '    # {"id":"sourceFile",...}', under members
+            if (content.isEmpty() || content.charAt(0) == '#') {
+                continue;
+            }
+            int arrow = line.indexOf(" -> ");
+            if (arrow < 0) {
+                throw new IOException("Line " + number + ": missing ' -> '");
+            }
+            if (!Character.isWhitespace(line.charAt(0))) {
+                if (!line.endsWith(":")) {
+                    throw new IOException("Line " + number + ": class mapping must end with ':'");
+                }
+                String original = line.substring(0, arrow).trim();
+                renamedClass = line.substring(arrow + 4, line.length() - 1).trim();
+                if (!original.equals(renamedClass)) {
+                    add(MappingIndex.KIND_CLASS, renamedClass, null, original);
+                }
+                continue;
+            }
+            if (renamedClass == null) {
+                throw new IOException("Line " + number + ": member mapping outside of a class");
+            }
+            String member = stripLineRange(line.substring(0, arrow).trim());
+            String renamed = line.substring(arrow + 4).trim();
+            int paren = member.indexOf('(');
+            if (paren >= 0) {
+                String name = member.substring(member.lastIndexOf(' ', paren) + 1, paren);
+                add(MappingIndex.KIND_METHOD, renamedClass, renamed, name);
+            } else {
+                add(MappingIndex.KIND_FIELD, renamedClass, renamed, member.substring(member.lastIndexOf(' ') + 1));
+            }
+        }
+    }
+
+    /**
+     * Drops the {@code start:end:} prefix of an R8 member line.
+     */
+    private static String stripLineRange(String member) {
+        if (member.isEmpty() || member.charAt(0) < '0' || member.charAt(0) > '9') {
+            return member;
+        }
+        int first = member.indexOf(':');
+        int second = first < 0 ? -1 : member.indexOf(':', first + 1);
+        return second < 0 ? member : member.substring(second + 1);
+    }
+
+    private void add(int kind, String renamedClass, String renamedMember, String original) {
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            fields = Arrays.copyOf(fields, size * 8);
+        }
+        hashes[size] = renamedMember == null
+                ? MappingIndex.hash(kind, renamedClass, 0, renamedClass.length(), "", 0, 0)
+                : MappingIndex.hash(kind, renamedClass, 0, renamedClass.length(), renamedMember, 0, renamedMember.length());
+        int f = size * 4;
+        fields[f] = intern(renamedClass);
+        fields[f + 1] = renamedMember == null ? NO_STRING : intern(renamedMember);
+        fields[f + 2] = intern(original);
+        fields[f + 3] = kind;
+        size++;
+    }
+
+    private int intern(String value) {
+        Integer existing = stringOffsets.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        int offset = stringsSize;
+        int n = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            n += c != 0 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        if (strings.length < offset + 4 + n) {
+            strings = Arrays.copyOf(strings, Math.max(strings.length * 2, offset + 4 + n));
+        }
+        ByteBuffer.wrap(strings, offset, 4).order(ByteOrder.LITTLE_ENDIAN).putInt(value.length());
+        int pos = offset + 4;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != 0 && c < 0x80) {
+                strings[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                strings[pos++] = (byte) (0xc0 | c >> 6);
+                strings[pos++] = (byte) (0x80 | c & 0x3f);
+            } else {
+                strings[pos++] = (byte) (0xe0 | c >> 12);
+                strings[pos++] = (byte) (0x80 | c >> 6 & 0x3f);
+                strings[pos++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        stringsSize = pos;
+        stringOffsets.put(value, offset);
+        return offset;
+    }
+
+    private ByteBuffer encode() {
+        int[] order = sortByHash();
+        int count = dedupe(order);
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(1, count - 1)));
+        bits = Math.min(bits, 24);
+        int directoryOff = HEADER_SIZE;
+        int entriesOff = (directoryOff + ((1 << bits) + 1) * 4 + 7) & ~7;
+        int stringsOff = entriesOff + count * ENTRY_SIZE;
+        int fileSize = stringsOff + stringsSize;
+
+        ByteBuffer buf = ByteBuffer.allocate(fileSize).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(fileSize).putInt(count).putInt(bits)
+                .putInt(directoryOff).putInt(entriesOff).putInt(stringsOff);
+        int entry = 0;
+        for (int prefix = 0; prefix <= 1 << bits; prefix++) {
+            while (entry < count && MappingIndex.prefix(hashes[order[entry]], bits) < prefix) {
+                entry++;
+            }
+            buf.putInt(directoryOff + prefix * 4, entry);
+        }
+        buf.position(entriesOff);
+        for (int i = 0; i < count; i++) {
+            int f = order[i] * 4;
+            buf.putLong(hashes[order[i]]);
+            // String offsets are relative to strings_off
+            buf.putInt(fields[f]).putInt(fields[f + 1]).putInt(fields[f + 2]).putInt(fields[f + 3]);
+        }
+        buf.put(strings, 0, stringsSize);
+        buf.clear();
+        return buf;
+    }
+
+    /**
+     * LSD radix sort of the entries by hash, eight bits at a time.
+     *
+     * @return entry indices in hash order
+     */
+    private int[] sortByHash() {
+        int[] order = new int[size];
+        int[] tmp = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        int[] count = new int[257];
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(count, 0);
+            for (int i = 0; i < size; i++) {
+                count[(int) (hashes[order[i]] >>> shift & 0xff) + 1]++;
+            }
+            if (size == 0 || count[(int) (hashes[order[0]] >>> shift & 0xff) + 1] == size) {
+                // Every entry has the same byte here, the pass would not move anything
+                continue;
+            }
+            for (int i = 1; i < count.length; i++) {
+                count[i] += count[i - 1];
+            }
+            for (int i = 0; i < size; i++) {
+                tmp[count[(int) (hashes[order[i]] >>> shift & 0xff)]++] = order[i];
+            }
+            int[] swap = order;
+            order = tmp;
+            tmp = swap;
+        }
+        return order;
+    }
+
+    /**
+     * Removes entries repeating an earlier entry, such as overloads renamed to the same name from
+     * the same name. Equal strings share an offset, so equal entries have equal fields.
+     *
+     * @return the number of distinct entries left at the start of {@code order}
+     */
+    private int dedupe(int[] order) {
+        int count = 0;
+        int runStart = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (count > 0 && hashes[order[count - 1]] != hashes[order[i]]) {
+                runStart = count;
+            }
+            boolean duplicate = false;
+            for (int j = runStart; j < count && !duplicate; j++) {
+                duplicate = Arrays.equals(fields, order[j] * 4, order[j] * 4 + 4, fields, order[i] * 4, order[i] * 4 + 4);
+            }
+            if (!duplicate) {
+                order[count++] = order[i];
+            }
+        }
+        return count;
+    }
+}
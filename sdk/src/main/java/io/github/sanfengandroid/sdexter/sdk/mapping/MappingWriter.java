@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.mapping;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streams renames into a ProGuard style mapping file while merging.
+ * <p>
+ * Each renamed class, or class with renamed members, becomes a block of the form
+ * </p>
+ * <pre>
+ * com.example.Original -&gt; com.renamed.Original:
+ *     int count -&gt; size
+ *     void run(java.lang.String,int) -&gt; execute
+ * </pre>
+ * <p>
+ * Input is in DEX form, as the merge sees it: type descriptors such as {@code Lcom/example/Foo;}
+ * and prototypes such as {@code (Ljava/lang/String;I)V}. Lines are written as they come and only
+ * the current class is remembered, so memory does not grow with the number of renames. Renames
+ * by {@code ClassConfig.rename}, {@code FieldConfig.rename}, {@code MethodConfig.rename} and the
+ * package rules of {@code GlobalConfig} all end up as class or member lines. The file is read back
+ * by {@link MappingIndexWriter} and standard retrace tools.
+ * </p>
+ * Not thread safe; members must follow the {@link #classMapping} of their class.
+ */
+public final class MappingWriter implements Closeable, Flushable {
+
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(128);
+    private String currentClass;
+    private long classCount;
+    private long memberCount;
+
+    /**
+     * @param out the destination, closed by {@link #close()}; wrap it in a buffered writer
+     */
+    public MappingWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Starts the block of a class. Classes without renames need no block.
+     *
+     * @param original the original descriptor
+     * @param renamed  the output descriptor, equal to {@code original} if only members are renamed
+     * @throws IOException if writing fails
+     */
+    public void classMapping(String original, String renamed) throws IOException {
+        line.setLength(0);
+        appendType(line, original);
+        line.append(" -> ");
+        appendType(line, renamed);
+        line.append(":\n");
+        out.append(line);
+        currentClass = original;
+        classCount++;
+    }
+
+    /**
+     * Records a field rename in the current class.
+     *
+     * @param type     the field type descriptor
+     * @param original the original name
+     * @param renamed  the output name
+     * @throws IOException if writing fails
+     */
+    public void fieldMapping(String type, String original, String renamed) throws IOException {
+        requireClass();
+        line.setLength(0);
+        line.append("    ");
+        appendType(line, type);
+        line.append(' ').append(original).append(" -> ").append(renamed).append('\n');
+        out.append(line);
+        memberCount++;
+    }
+
+    /**
+     * Records a method rename in the current class.
+     *
+     * @param proto    the prototype in DEX form, e.g. {@code (ILjava/lang/String;)V}
+     * @param original the original name
+     * @param renamed  the output name
+     * @throws IOException if writing fails
+     */
+    public void methodMapping(String proto, String original, String renamed) throws IOException {
+        requireClass();
+        int close = proto.indexOf(')');
+        if (proto.isEmpty() || proto.charAt(0) != '(' || close < 0) {
+            throw new IllegalArgumentException("Bad prototype " + proto);
+        }
+        line.setLength(0);
+        line.append("    ");
+        appendType(line, proto.substring(close + 1));
+        line.append(' ').append(original).append('(');
+        int pos = 1;
+        while (pos < close) {
+            int end = pos;
+            while (proto.charAt(end) == '[') {
+                end++;
+            }
+            end = proto.charAt(end) == 'L' ? proto.indexOf(';', end) + 1 : end + 1;
+            if (pos > 1) {
+                line.append(',');
+            }
+            appendType(line, proto.substring(pos, end));
+            pos = end;
+        }
+        line.append(") -> ").append(renamed).append('\n');
+        out.append(line);
+        memberCount++;
+    }
+
+    private void requireClass() {
+        if (currentClass == null) {
+            throw new IllegalStateException("Member mapping outside of a class");
+        }
+    }
+
+    /**
+     * @return the number of class blocks written
+     */
+    public long classCount() {
+        return classCount;
+    }
+
+    /**
+     * @return the number of member lines written
+     */
+    public long memberCount() {
+        return memberCount;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Appends the Java name of a type descriptor: {@code int}, {@code java.lang.String[]} and so on.
+     */
+    static void appendType(StringBuilder sb, CharSequence descriptor) {
+        int dims = 0;
+        while (descriptor.charAt(dims) == '[') {
+            dims++;
+        }
+        char c = descriptor.charAt(dims);
+        if (c == 'L') {
+            for (int i = dims + 1, n = descriptor.length() - 1; i < n; i++) {
+                char ch = descriptor.charAt(i);
+                sb.append(ch == '/' ? '.' : ch);
+            }
+        } else {
+            sb.append(primitive(c));
+        }
+        for (int i = 0; i < dims; i++) {
+            sb.append("[]");
+        }
+    }
+
+    private static String primitive(char c) {
+        switch (c) {
+            case 'V':
+                return "void";
+            case 'Z':
+                return "boolean";
+            case 'B':
+                return "byte";
+            case 'S':
+                return "short";
+            case 'C':
+                return "char";
+            case 'I':
+                return "int";
+            case 'J':
+                return "long";
+            case 'F':
+                return "float";
+            case 'D':
+                return "double";
+            default:
+                throw new IllegalArgumentException("Bad type descriptor character " + c);
+        }
+    }
+}
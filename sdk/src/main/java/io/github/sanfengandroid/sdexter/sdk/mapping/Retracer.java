@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.mapping;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Rewrites stack traces of a merged app back to original class and method names.
+ * <p>
+ * Frames such as {@code at a.b.c(SourceFile:12)} get the original class and method, and the
+ * exception class of header, {@code Caused by:} and {@code Suppressed:} lines gets its original
+ * name. Everything else on a line is kept as is. When several methods were renamed to the same
+ * name, all candidates are listed, joined with {@code |}.
+ * </p>
+ * <p>
+ * A line is scanned once and names are looked up as ranges of the line in a {@link MappingIndex},
+ * so retracing allocates nothing beyond the growth of the output builder.
+ * </p>
+ * Instances are as thread safe as their index.
+ */
+public final class Retracer {
+
+    private static final String CAUSED_BY = "Caused by: ";
+    private static final String SUPPRESSED = "Suppressed: ";
+    private static final String IN_THREAD = "Exception in thread \"";
+
+    private final MappingIndex index;
+
+    public Retracer(MappingIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Retraces every line of {@code in} into {@code out}. Neither is closed.
+     *
+     * @return the number of lines changed
+     * @throws IOException if reading or writing fails
+     */
+    public long retrace(Reader in, Writer out) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        StringBuilder sb = new StringBuilder(256);
+        long changed = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            sb.setLength(0);
+            if (retrace(line, sb)) {
+                changed++;
+            }
+            sb.append('\n');
+            out.append(sb);
+        }
+        return changed;
+    }
+
+    /**
+     * Appends the retraced form of one line, without a line terminator.
+     *
+     * @return {@code true} if a name was replaced
+     */
+    public boolean retrace(CharSequence line, StringBuilder out) {
+        int n = line.length();
+        int start = 0;
+        while (start < n && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        if (startsWith(line, start, "at ")) {
+            return retraceFrame(line, start + 3, out);
+        }
+        if (startsWith(line, start, CAUSED_BY)) {
+            start += CAUSED_BY.length();
+        } else if (startsWith(line, start, SUPPRESSED)) {
+            start += SUPPRESSED.length();
+        } else if (startsWith(line, start, IN_THREAD)) {
+            int quote = indexOf(line, '"', start + IN_THREAD.length());
+            if (quote < 0) {
+                out.append(line);
+                return false;
+            }
+            start = quote + 1;
+            while (start < n && line.charAt(start) == ' ') {
+                start++;
+            }
+        }
+        int end = nameEnd(line, start);
+        // Only a name that ends the line or is followed by a message is an exception class
+        if (end == start || end < n && line.charAt(end) != ':') {
+            out.append(line);
+            return false;
+        }
+        out.append(line, 0, start);
+        if (!index.appendClass(line, start, end, out)) {
+            out.append(line, start, n);
+            return false;
+        }
+        out.append(line, end, n);
+        return true;
+    }
+
+    /**
+     * Retraces {@code [module/]class.method(source)} starting at {@code start}.
+     */
+    private boolean retraceFrame(CharSequence line, int start, StringBuilder out) {
+        int n = line.length();
+        int paren = indexOf(line, '(', start);
+        if (paren < 0) {
+            out.append(line);
+            return false;
+        }
+        int classStart = start;
+        int dot = -1;
+        for (int i = start; i < paren; i++) {
+            char c = line.charAt(i);
+            if (c == '/') {
+                // Class loader or module name, such as "app//" or "java.base/"
+                classStart = i + 1;
+            } else if (c == '.') {
+                dot = i;
+            }
+        }
+        if (dot < classStart) {
+            out.append(line);
+            return false;
+        }
+        out.append(line, 0, classStart);
+        boolean changed = index.appendClass(line, classStart, dot, out);
+        if (!changed) {
+            out.append(line, classStart, dot);
+        }
+        out.append('.');
+        int methods = index.appendMethod(line, classStart, dot, line, dot + 1, paren, out);
+        if (methods == 0) {
+            out.append(line, dot + 1, paren);
+        }
+        out.append(line, paren, n);
+        return changed || methods > 0;
+    }
+
+    private static int nameEnd(CharSequence line, int start) {
+        int i = start;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (c != '.' && c != '$' && !Character.isJavaIdentifierPart(c)) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean startsWith(CharSequence line, int start, String prefix) {
+        if (line.length() - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence line, char c, int from) {
+        for (int i = from; i < line.length(); i++) {
+            if (line.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
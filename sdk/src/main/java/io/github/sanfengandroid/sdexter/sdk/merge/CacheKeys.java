@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.merge;
+
+import io.github.sanfengandroid.sdexter.sdk.BuildConfig;
+import io.github.sanfengandroid.sdexter.sdk.GlobalConfig;
+import io.github.sanfengandroid.sdexter.sdk.dex.ClassData;
+import io.github.sanfengandroid.sdexter.sdk.dex.DexFile;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleManifest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Content keys for {@link MergeCache} entries.
+ * <p>
+ * A class key covers the original class bytes, the mirror class bytes, the effective class and
+ * global configuration and {@link BuildConfig#VERSION_NAME}; any change to one of them yields a
+ * different key. Cached results use input indices, so the key also includes the signature of the
+ * target DEX. Keys are hex encoded SHA-256 digests.
+ * </p>
+ */
+public final class CacheKeys {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private CacheKeys() {
+    }
+
+    /**
+     * Digests the values of a {@link GlobalConfig}.
+     *
+     * @param config the global configuration, may be {@code null}
+     * @return the fingerprint to pass to {@link #classKey}
+     */
+    public static byte[] globalFingerprint(GlobalConfig config) {
+        MessageDigest digest = sha256();
+        if (config != null) {
+            putBoolean(digest, config.removeSourceFile());
+            putString(digest, config.sourceFile());
+            putStrings(digest, config.removeClasses());
+            putStrings(digest, config.removeClassPatterns());
+            putStrings(digest, config.removePackages());
+            putStrings(digest, config.removePackagePatterns());
+            putStrings(digest, config.renamePackages());
+            putStrings(digest, config.renamePackagePatterns());
+            putBoolean(digest, config.skipRClass());
+            putStrings(digest, config.skipClasses());
+            Class<?>[] skipTypes = config.skipTypes();
+            putInt(digest, skipTypes.length);
+            for (Class<?> type : skipTypes) {
+                putString(digest, type.getName());
+            }
+            putString(digest, config.version());
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Computes the key of one target class.
+     *
+     * @param dex               the target DEX
+     * @param classDef          the {@code class_def} index
+     * @param rule              the mirror rule of the class, or {@code null}
+     * @param mirrorClass       the bytes of the mirror class, or {@code null}
+     * @param globalFingerprint the result of {@link #globalFingerprint(GlobalConfig)}
+     * @return the key
+     */
+    public static String classKey(DexFile dex, int classDef, RuleManifest.ClassRule rule, byte[] mirrorClass,
+                                  byte[] globalFingerprint) {
+        MessageDigest digest = sha256();
+        putString(digest, BuildConfig.VERSION_NAME);
+        digest.update(globalFingerprint);
+        ByteBuffer buf = dex.buffer();
+        // SHA-1 signature of the target file
+        update(digest, buf, 12, 20);
+        putInt(digest, classDef);
+        update(digest, buf, dex.classDefOffset(classDef), 32);
+        ClassData data = dex.classData(classDef);
+        if (data != null) {
+            update(digest, buf, data.getOffset(), data.getEnd() - data.getOffset());
+            for (int[] methods : new int[][]{data.getDirectMethods(), data.getVirtualMethods()}) {
+                for (int i = 2; i < methods.length; i += 3) {
+                    if (methods[i] != 0) {
+                        update(digest, buf, methods[i], dex.codeItem(methods[i]).getEnd() - methods[i]);
+                    }
+                }
+            }
+        }
+        if (mirrorClass == null) {
+            putInt(digest, -1);
+        } else {
+            putInt(digest, mirrorClass.length);
+            digest.update(mirrorClass);
+        }
+        putRule(digest, rule);
+        return toHex(digest.digest());
+    }
+
+    private static void putRule(MessageDigest digest, RuleManifest.ClassRule rule) {
+        if (rule == null) {
+            putInt(digest, -1);
+            return;
+        }
+        putString(digest, rule.getDescriptor());
+        long flags = rule.getFlags();
+        putInt(digest, (int) (flags >>> 32));
+        putInt(digest, (int) flags);
+        putString(digest, rule.getRename());
+        putString(digest, rule.getSourceFile());
+        putStrings(digest, rule.getRemoveFieldNames());
+        putStrings(digest, rule.getRemoveFieldPatterns());
+        putStrings(digest, rule.getRemoveMethods());
+        putStrings(digest, rule.getRemoveMethodPatterns());
+        for (List<RuleManifest.MemberRule> members : Arrays.asList(rule.getFields(), rule.getMethods())) {
+            putInt(digest, members.size());
+            for (RuleManifest.MemberRule member : members) {
+                putString(digest, member.getName());
+                putString(digest, member.getType());
+                putInt(digest, member.getFlags());
+                putString(digest, member.getRename());
+                putInt(digest, member.getParams().size());
+                for (RuleManifest.ParamRule param : member.getParams()) {
+                    putInt(digest, param.getIndex());
+                    putInt(digest, param.getFlags());
+                    putString(digest, param.getRename());
+                }
+            }
+        }
+    }
+
+    private static void update(MessageDigest digest, ByteBuffer buf, int offset, int length) {
+        ByteBuffer slice = buf.duplicate();
+        slice.limit(offset + length).position(offset);
+        digest.update(slice);
+    }
+
+    private static void putStrings(MessageDigest digest, String[] values) {
+        putInt(digest, values.length);
+        for (String value : values) {
+            putString(digest, value);
+        }
+    }
+
+    private static void putString(MessageDigest digest, String value) {
+        if (value == null) {
+            putInt(digest, -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(digest, bytes.length);
+        digest.update(bytes);
+    }
+
+    private static void putBoolean(MessageDigest digest, boolean value) {
+        digest.update((byte) (value ? 1 : 0));
+    }
+
+    private static void putInt(MessageDigest digest, int value) {
+        digest.update((byte) value);
+        digest.update((byte) (value >> 8));
+        digest.update((byte) (value >> 16));
+        digest.update((byte) (value >> 24));
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.merge;
+
+import io.github.sanfengandroid.sdexter.sdk.dex.Opcodes;
+import io.github.sanfengandroid.sdexter.sdk.dex.ReferenceSet;
+import io.github.sanfengandroid.sdexter.sdk.dex.ReferenceVisitor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * {@link MergeCache} payload of one class: its {@link ClassPlan} and the ids it references.
+ */
+final class CachedClass implements ReferenceVisitor {
+
+    private static final int FORMAT = 1;
+
+    private long[] references = new long[64];
+    private int size;
+
+    @Override
+    public void visit(int kind, int index) {
+        if (size == references.length) {
+            references = Arrays.copyOf(references, size * 2);
+        }
+        references[size++] = (long) kind << 32 | (index & 0xffffffffL);
+    }
+
+    /**
+     * Encodes a plan together with the references recorded so far.
+     */
+    byte[] encode(ClassPlan plan) {
+        long[] sorted = Arrays.copyOf(references, size);
+        Arrays.sort(sorted);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + size * 8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT);
+            out.writeInt(plan.getRemovalRule());
+            out.writeLong(plan.getFlags());
+            writeInts(out, plan.getStaticFields());
+            writeInts(out, plan.getInstanceFields());
+            writeInts(out, plan.getDirectMethods());
+            writeInts(out, plan.getVirtualMethods());
+            out.writeInt(plan.getRemovedFieldCount());
+            out.writeInt(plan.getRemovedMethodCount());
+            int[][] rules = plan.memberRules();
+            for (int[] rule : rules) {
+                writeInts(out, rule);
+            }
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[unique++] = sorted[i];
+                }
+            }
+            out.writeInt(unique);
+            for (int i = 0; i < unique; i++) {
+                out.writeLong(sorted[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a payload, adding its references to {@code into}.
+     * <p>
+     * A payload of another format, or one that is truncated or inconsistent, is a miss: nothing
+     * is added to {@code into} and the caller recomputes the entry and overwrites it.
+     * </p>
+     *
+     * @return the plan, or {@code null} if the payload cannot be used
+     */
+    static ClassPlan decode(byte[] data, int classDef, ReferenceSet into) {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+        try (DataInputStream in = new DataInputStream(bytes)) {
+            if (in.readInt() != FORMAT) {
+                return null;
+            }
+            int removalRule = in.readInt();
+            long flags = in.readLong();
+            int[] staticFields = readInts(in);
+            int[] instanceFields = readInts(in);
+            int[] directMethods = readInts(in);
+            int[] virtualMethods = readInts(in);
+            int removedFields = in.readInt();
+            int removedMethods = in.readInt();
+            int[] ruleFields = readInts(in);
+            int[] ruleFieldFlags = readInts(in);
+            int[] ruleMethods = readInts(in);
+            int[] ruleMethodFlags = readInts(in);
+            int count = in.readInt();
+            if (ruleFields.length != ruleFieldFlags.length || ruleMethods.length != ruleMethodFlags.length
+                    || count * 8L != bytes.available()) {
+                return null;
+            }
+            // Read every reference before adding any, so a damaged payload leaves into untouched
+            long[] references = new long[count];
+            for (int i = 0; i < count; i++) {
+                long reference = in.readLong();
+                int kind = (int) (reference >>> 32);
+                int index = (int) reference;
+                if (kind < Opcodes.INDEX_STRING || kind > Opcodes.INDEX_METHOD_HANDLE
+                        || index < 0 || index >= into.size(kind)) {
+                    return null;
+                }
+                references[i] = reference;
+            }
+            for (long reference : references) {
+                into.add((int) (reference >>> 32), (int) reference);
+            }
+            return new ClassPlan(classDef, removalRule, flags, staticFields, instanceFields, directMethods,
+                    virtualMethods, removedFields, removedMethods, ruleFields, ruleFieldFlags, ruleMethods,
+                    ruleMethodFlags);
+        } catch (IOException e) {
+            // Truncated or corrupt, see readInts
+            return null;
+        }
+    }
+
+    /**
+     * Adds the recorded references to {@code into}.
+     */
+    void addTo(ReferenceSet into) {
+        for (int i = 0; i < size; i++) {
+            into.add((int) (references[i] >>> 32), (int) references[i]);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Reads a length-prefixed array, checking the length against the bytes left so a corrupt
+     * length cannot allocate more than the payload holds.
+     */
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available() / 4) {
+            throw new EOFException("Array of " + length + " ints in a truncated payload");
+        }
+        int[] values = new int[length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+}
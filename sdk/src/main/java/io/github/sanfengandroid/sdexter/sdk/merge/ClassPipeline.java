@@ -0,0 +1,467 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.merge;
+
+import io.github.sanfengandroid.sdexter.sdk.MergeMetrics;
+import io.github.sanfengandroid.sdexter.sdk.dex.CodeReferences;
+import io.github.sanfengandroid.sdexter.sdk.dex.DexFile;
+import io.github.sanfengandroid.sdexter.sdk.dex.EncodedValues;
+import io.github.sanfengandroid.sdexter.sdk.dex.IndexRemap;
+import io.github.sanfengandroid.sdexter.sdk.dex.Opcodes;
+import io.github.sanfengandroid.sdexter.sdk.dex.ReferenceSet;
+import io.github.sanfengandroid.sdexter.sdk.dex.ReferenceVisitor;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleFlags;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleManifest;
+import io.github.sanfengandroid.sdexter.sdk.metrics.CpuTime;
+import io.github.sanfengandroid.sdexter.sdk.rule.RemovalRules;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Applies class rules to every {@code class_def} of a target DEX in parallel.
+ * <p>
+ * The class list is split into {@link RecursiveTask}s that run on a work-stealing
+ * {@link ForkJoinPool}. Each task evaluates the rules of its classes through
+ * {@link ClassRuleApplier} and records the ids still referenced by the kept parts in a private
+ * {@link ReferenceSet}; sets are combined while joining. Tasks never touch shared pools.
+ * </p>
+ * The global string, type, proto, field and method pools are built afterwards by a sequential
+ * merge phase that closes the referenced set over the id sections and ranks the survivors in
+ * input order. Since set union is order independent, the result of {@link #run(ForkJoinPool)}
+ * is identical to {@link #runSequential()} whatever the scheduling.
+ * <p>
+ * With a {@link MergeCache}, the plan and references of each class are stored under its
+ * {@link CacheKeys#classKey class key}. On the next run only classes whose key changed go
+ * through the rules and the code walk again; the others are read back from the cache.
+ * </p>
+ * <p>
+ * With a {@link Reachability}, classes enabling {@code removeUnusedFields} or
+ * {@code removeUnusedMethods} drop the members it did not reach. Their plans depend on the whole
+ * file, so they bypass the cache.
+ * </p>
+ * With {@link MergeMetrics}, a run reports the {@link MergeMetrics#PHASE_CLASSES classes} and
+ * {@link MergeMetrics#PHASE_POOLS pools} phases, the size of the input, visited and skipped
+ * classes and the hits of global removal rules and member rules. CPU time of the class phase is
+ * summed over the worker threads. Member rule hits only cover classes not read from the cache.
+ */
+public final class ClassPipeline {
+
+    private static final int MIN_GRAIN = 16;
+    private static final int METHOD_HANDLE_LAST_FIELD_TYPE = 0x03;
+
+    private final DexFile dex;
+    private final RuleManifest manifest;
+    private final RemovalRules removal;
+    private final MergeCache cache;
+    private final byte[] globalFingerprint;
+    private final Function<String, byte[]> mirrors;
+    private final MergeMetrics metrics;
+    private final Reachability reachability;
+    /** Member patterns shared by the classes of every run of this pipeline. */
+    private final ClassRuleApplier.Patterns patterns = new ClassRuleApplier.Patterns();
+
+    /**
+     * @param dex      the target DEX
+     * @param manifest class rules compiled from the mirror classes, may be {@code null}
+     * @param removal  global removal rules, may be {@code null}
+     */
+    public ClassPipeline(DexFile dex, RuleManifest manifest, RemovalRules removal) {
+        this(dex, manifest, removal, null, null, null, MergeMetrics.NONE, null);
+    }
+
+    private ClassPipeline(DexFile dex, RuleManifest manifest, RemovalRules removal, MergeCache cache,
+                          byte[] globalFingerprint, Function<String, byte[]> mirrors, MergeMetrics metrics,
+                          Reachability reachability) {
+        this.dex = dex;
+        this.manifest = manifest;
+        this.removal = removal;
+        this.cache = cache;
+        this.globalFingerprint = globalFingerprint;
+        this.mirrors = mirrors;
+        this.metrics = metrics;
+        this.reachability = reachability;
+    }
+
+    /**
+     * Returns a pipeline that reuses per-class results from {@code cache}.
+     *
+     * @param cache             the cache
+     * @param globalFingerprint the {@link CacheKeys#globalFingerprint global fingerprint} of the configuration
+     * @param mirrors           maps a target class descriptor to the bytes of its mirror class, or {@code null}
+     * @return the new pipeline
+     */
+    public ClassPipeline withCache(MergeCache cache, byte[] globalFingerprint, Function<String, byte[]> mirrors) {
+        return new ClassPipeline(dex, manifest, removal, cache, globalFingerprint, mirrors, metrics, reachability);
+    }
+
+    /**
+     * Returns a pipeline that reports to {@code metrics}.
+     *
+     * @param metrics the destination, {@link MergeMetrics#NONE} to disable
+     * @return the new pipeline
+     */
+    public ClassPipeline withMetrics(MergeMetrics metrics) {
+        return new ClassPipeline(dex, manifest, removal, cache, globalFingerprint, mirrors, metrics, reachability);
+    }
+
+    /**
+     * Returns a pipeline that removes unused members where the class rule asks for it.
+     *
+     * @param reachability the result of {@link Reachability#analyze} for the same DEX
+     * @return the new pipeline
+     */
+    public ClassPipeline withReachability(Reachability reachability) {
+        return new ClassPipeline(dex, manifest, removal, cache, globalFingerprint, mirrors, metrics, reachability);
+    }
+
+    /**
+     * Runs the class phase on the common pool.
+     */
+    public Result run() {
+        return run(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs the class phase on {@code pool}, then merges the pools on the calling thread.
+     */
+    public Result run(ForkJoinPool pool) {
+        int count = dex.classDefCount();
+        ClassPlan[] plans = new ClassPlan[count];
+        int grain = Math.max(MIN_GRAIN, count / (pool.getParallelism() * 8));
+        LongAdder cpu = start();
+        long wall = System.nanoTime();
+        ReferenceSet references = pool.invoke(new ClassTask(plans, 0, count, grain, cpu));
+        if (cpu != null) {
+            metrics.phaseTime(MergeMetrics.PHASE_CLASSES, System.nanoTime() - wall, cpu.sum());
+        }
+        return merge(plans, references);
+    }
+
+    /**
+     * Runs both phases on the calling thread.
+     */
+    public Result runSequential() {
+        int count = dex.classDefCount();
+        ClassPlan[] plans = new ClassPlan[count];
+        LongAdder cpu = start();
+        long wall = System.nanoTime();
+        ReferenceSet references = processRange(plans, 0, count, cpu);
+        if (cpu != null) {
+            metrics.phaseTime(MergeMetrics.PHASE_CLASSES, System.nanoTime() - wall, cpu.sum());
+        }
+        return merge(plans, references);
+    }
+
+    /**
+     * Declares the global removal rules when metrics are enabled.
+     *
+     * @return the CPU time accumulator of the class phase, or {@code null} if metrics are disabled
+     */
+    private LongAdder start() {
+        if (!metrics.isEnabled()) {
+            return null;
+        }
+        metrics.bytesRead(dex.fileSize());
+        if (removal != null) {
+            for (RemovalRules.Kind kind : RemovalRules.Kind.values()) {
+                for (int i = 0; i < removal.size(kind); i++) {
+                    metrics.ruleDeclared(removalKind(kind), MergeMetrics.GLOBAL_SCOPE,
+                            removal.source(RemovalRules.ruleId(kind, i)));
+                }
+            }
+        }
+        return new LongAdder();
+    }
+
+    private ReferenceSet processRange(ClassPlan[] plans, int from, int to, LongAdder cpu) {
+        long cpuStart = cpu == null ? 0 : CpuTime.currentThread();
+        ReferenceSet references = new ReferenceSet(dex);
+        ByteBuffer buf = dex.buffer();
+        int skipped = 0;
+        for (int i = from; i < to; i++) {
+            String descriptor = dex.classDescriptor(i);
+            int removalRule = removal == null ? RemovalRules.NO_MATCH : removal.match(descriptor);
+            if (cpu != null && removalRule != RemovalRules.NO_MATCH) {
+                metrics.ruleHit(removalKind(RemovalRules.kindOf(removalRule)), MergeMetrics.GLOBAL_SCOPE,
+                        removal.source(removalRule), 1);
+            }
+            RuleManifest.ClassRule rule = manifest == null ? null : manifest.find(descriptor);
+            if (cache != null && !dependsOnReachability(rule)) {
+                if (processCached(buf, i, descriptor, rule, removalRule, plans, references)) {
+                    skipped++;
+                }
+                continue;
+            }
+            ClassPlan plan = ClassRuleApplier.apply(dex, i, rule, removalRule, reachability, metrics, patterns);
+            plans[i] = plan;
+            if (plan.isRemoved()) {
+                skipped++;
+            } else {
+                collect(buf, plan, references);
+            }
+        }
+        if (cpu != null) {
+            cpu.add(CpuTime.currentThread() - cpuStart);
+            metrics.classesVisited(to - from);
+            metrics.classesSkipped(skipped);
+        }
+        return references;
+    }
+
+    private boolean dependsOnReachability(RuleManifest.ClassRule rule) {
+        return reachability != null && rule != null && (rule.getFlags()
+                & (RuleFlags.CLASS_REMOVE_UNUSED_FIELDS | RuleFlags.CLASS_REMOVE_UNUSED_METHODS)) != 0;
+    }
+
+    private static MergeMetrics.Rule removalKind(RemovalRules.Kind kind) {
+        switch (kind) {
+            case CLASS:
+                return MergeMetrics.Rule.REMOVE_CLASS;
+            case CLASS_PATTERN:
+                return MergeMetrics.Rule.REMOVE_CLASS_PATTERN;
+            case PACKAGE:
+                return MergeMetrics.Rule.REMOVE_PACKAGE;
+            default:
+                return MergeMetrics.Rule.REMOVE_PACKAGE_PATTERN;
+        }
+    }
+
+    /**
+     * Fills {@code plans[classDef]} from the cache or by applying the rules.
+     *
+     * @return {@code true} if the rules and the code walk were skipped
+     */
+    private boolean processCached(ByteBuffer buf, int classDef, String descriptor, RuleManifest.ClassRule rule,
+                                  int removalRule, ClassPlan[] plans, ReferenceSet references) {
+        // The removal rule is part of the global fingerprint, so it is not keyed separately
+        String key = CacheKeys.classKey(dex, classDef, rule, mirrors == null ? null : mirrors.apply(descriptor),
+                globalFingerprint);
+        byte[] cached = cache.get(key);
+        if (cached != null) {
+            ClassPlan plan = CachedClass.decode(cached, classDef, references);
+            if (plan != null) {
+                plans[classDef] = plan;
+                return true;
+            }
+        }
+        ClassPlan plan = ClassRuleApplier.apply(dex, classDef, rule, removalRule, null, metrics, patterns);
+        plans[classDef] = plan;
+        CachedClass entry = new CachedClass();
+        if (!plan.isRemoved()) {
+            collect(buf, plan, entry);
+        }
+        entry.addTo(references);
+        cache.put(key, entry.encode(plan));
+        return plan.isRemoved();
+    }
+
+    /**
+     * Records the ids referenced by the kept parts of a class.
+     */
+    private void collect(ByteBuffer buf, ClassPlan plan, ReferenceVisitor references) {
+        int classDef = plan.getClassDef();
+        references.visit(Opcodes.INDEX_TYPE, dex.classType(classDef));
+        int superclass = dex.classSuperclass(classDef);
+        if (superclass != DexFile.NO_INDEX && plan.keepsSuperclass()) {
+            references.visit(Opcodes.INDEX_TYPE, superclass);
+        }
+        if (plan.keepsInterfaces()) {
+            for (int type : dex.typeList(dex.classInterfacesOffset(classDef))) {
+                references.visit(Opcodes.INDEX_TYPE, type);
+            }
+        }
+        int sourceFile = dex.classSourceFile(classDef);
+        if (sourceFile != DexFile.NO_INDEX && plan.keepsSourceFile()) {
+            references.visit(Opcodes.INDEX_STRING, sourceFile);
+        }
+        int staticValues = dex.classStaticValuesOffset(classDef);
+        if (staticValues != 0 && plan.keepsStaticValues()) {
+            EncodedValues.visitArray(buf, staticValues, references);
+        }
+        collectAnnotations(buf, plan, dex.classAnnotationsOffset(classDef), references);
+        for (int[] fields : new int[][]{plan.getStaticFields(), plan.getInstanceFields()}) {
+            for (int i = 0; i < fields.length; i += 2) {
+                references.visit(Opcodes.INDEX_FIELD, fields[i]);
+            }
+        }
+        for (int[] methods : new int[][]{plan.getDirectMethods(), plan.getVirtualMethods()}) {
+            for (int i = 0; i < methods.length; i += 3) {
+                int method = methods[i];
+                references.visit(Opcodes.INDEX_METHOD, method);
+                if (plan.keepsCode(method)) {
+                    CodeReferences.visit(dex, methods[i + 2], plan.keepsDebugInfo(method), references);
+                }
+            }
+        }
+    }
+
+    private static void collectAnnotations(ByteBuffer buf, ClassPlan plan, int directory,
+                                           ReferenceVisitor references) {
+        if (directory == 0) {
+            return;
+        }
+        if (plan.keepsClassAnnotations()) {
+            EncodedValues.visitAnnotationSet(buf, buf.getInt(directory), references);
+        }
+        int fields = buf.getInt(directory + 4);
+        int methods = buf.getInt(directory + 8);
+        int parameters = buf.getInt(directory + 12);
+        int pos = directory + 16;
+        for (int i = 0; i < fields; i++, pos += 8) {
+            int field = buf.getInt(pos);
+            if (plan.hasField(field) && plan.keepsFieldAnnotations(field)) {
+                EncodedValues.visitAnnotationSet(buf, buf.getInt(pos + 4), references);
+            }
+        }
+        for (int i = 0; i < methods; i++, pos += 8) {
+            int method = buf.getInt(pos);
+            if (plan.hasMethod(method) && plan.keepsMethodAnnotations(method)) {
+                EncodedValues.visitAnnotationSet(buf, buf.getInt(pos + 4), references);
+            }
+        }
+        for (int i = 0; i < parameters; i++, pos += 8) {
+            int method = buf.getInt(pos);
+            if (plan.hasMethod(method) && plan.keepsParamAnnotations(method)) {
+                EncodedValues.visitAnnotationSetRefList(buf, buf.getInt(pos + 4), references);
+            }
+        }
+    }
+
+    /**
+     * Closes the referenced set over the id sections. Every step only adds items of sections
+     * handled after it, so a single ordered pass reaches the fixed point.
+     */
+    private Result merge(ClassPlan[] plans, ReferenceSet references) {
+        boolean measure = metrics.isEnabled();
+        long wall = measure ? System.nanoTime() : 0;
+        long cpu = measure ? CpuTime.currentThread() : 0;
+        ByteBuffer buf = dex.buffer();
+        for (int i = references.next(Opcodes.INDEX_CALL_SITE, 0); i >= 0;
+             i = references.next(Opcodes.INDEX_CALL_SITE, i + 1)) {
+            EncodedValues.visitArray(buf, dex.callSiteOffset(i), references);
+        }
+        for (int i = references.next(Opcodes.INDEX_METHOD_HANDLE, 0); i >= 0;
+             i = references.next(Opcodes.INDEX_METHOD_HANDLE, i + 1)) {
+            references.visit(dex.methodHandleType(i) <= METHOD_HANDLE_LAST_FIELD_TYPE
+                    ? Opcodes.INDEX_FIELD : Opcodes.INDEX_METHOD, dex.methodHandleMember(i));
+        }
+        for (int i = references.next(Opcodes.INDEX_METHOD, 0); i >= 0;
+             i = references.next(Opcodes.INDEX_METHOD, i + 1)) {
+            references.visit(Opcodes.INDEX_TYPE, dex.methodClass(i));
+            references.visit(Opcodes.INDEX_PROTO, dex.methodProto(i));
+            references.visit(Opcodes.INDEX_STRING, dex.methodName(i));
+        }
+        for (int i = references.next(Opcodes.INDEX_FIELD, 0); i >= 0;
+             i = references.next(Opcodes.INDEX_FIELD, i + 1)) {
+            references.visit(Opcodes.INDEX_TYPE, dex.fieldClass(i));
+            references.visit(Opcodes.INDEX_TYPE, dex.fieldType(i));
+            references.visit(Opcodes.INDEX_STRING, dex.fieldName(i));
+        }
+        for (int i = references.next(Opcodes.INDEX_PROTO, 0); i >= 0;
+             i = references.next(Opcodes.INDEX_PROTO, i + 1)) {
+            references.visit(Opcodes.INDEX_STRING, dex.protoShorty(i));
+            references.visit(Opcodes.INDEX_TYPE, dex.protoReturnType(i));
+            for (int type : dex.protoParameters(i)) {
+                references.visit(Opcodes.INDEX_TYPE, type);
+            }
+        }
+        for (int i = references.next(Opcodes.INDEX_TYPE, 0); i >= 0;
+             i = references.next(Opcodes.INDEX_TYPE, i + 1)) {
+            references.visit(Opcodes.INDEX_STRING, dex.typeDescriptorIndex(i));
+        }
+        IndexRemap remap = references.toRemap();
+        if (measure) {
+            metrics.phaseTime(MergeMetrics.PHASE_POOLS, System.nanoTime() - wall, CpuTime.currentThread() - cpu);
+        }
+        return new Result(plans, references, remap);
+    }
+
+    private final class ClassTask extends RecursiveTask<ReferenceSet> {
+        private static final long serialVersionUID = 1L;
+
+        private final ClassPlan[] plans;
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final LongAdder cpu;
+
+        ClassTask(ClassPlan[] plans, int from, int to, int grain, LongAdder cpu) {
+            this.plans = plans;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.cpu = cpu;
+        }
+
+        @Override
+        protected ReferenceSet compute() {
+            if (to - from <= grain) {
+                return processRange(plans, from, to, cpu);
+            }
+            int mid = (from + to) >>> 1;
+            ClassTask left = new ClassTask(plans, from, mid, grain, cpu);
+            left.fork();
+            ReferenceSet right = new ClassTask(plans, mid, to, grain, cpu).compute();
+            ReferenceSet merged = left.join();
+            merged.or(right);
+            return merged;
+        }
+    }
+
+    /**
+     * Per-class plans together with the pools they need.
+     */
+    public static final class Result {
+        private final ClassPlan[] plans;
+        private final ReferenceSet references;
+        private final IndexRemap remap;
+
+        Result(ClassPlan[] plans, ReferenceSet references, IndexRemap remap) {
+            this.plans = plans;
+            this.references = references;
+            this.remap = remap;
+        }
+
+        /**
+         * @return the plan of {@code class_def} {@code index}
+         */
+        public ClassPlan plan(int index) {
+            return plans[index];
+        }
+
+        public int size() {
+            return plans.length;
+        }
+
+        /**
+         * @return every input id still referenced by the output
+         */
+        public ReferenceSet getReferences() {
+            return references;
+        }
+
+        /**
+         * @return dense tables from input ids to output pool positions, in input order
+         */
+        public IndexRemap getRemap() {
+            return remap;
+        }
+    }
+}
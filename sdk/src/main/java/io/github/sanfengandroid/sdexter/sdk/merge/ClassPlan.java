@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.merge;
+
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleFlags;
+import io.github.sanfengandroid.sdexter.sdk.rule.RemovalRules;
+
+import java.util.Arrays;
+
+/**
+ * Outcome of applying the rules of one target class, computed by {@link ClassRuleApplier}.
+ * <p>
+ * Kept members use the flat layout of {@link io.github.sanfengandroid.sdexter.sdk.dex.ClassData}:
+ * fields as {@code (field_idx, access_flags)} pairs and methods as
+ * {@code (method_idx, access_flags, code_off)} triples, in file order. Member rule flags are
+ * looked up by input index.
+ * </p>
+ */
+public final class ClassPlan {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final int classDef;
+    private final int removalRule;
+    private final long flags;
+    private final int[] staticFields;
+    private final int[] instanceFields;
+    private final int[] directMethods;
+    private final int[] virtualMethods;
+    private final int removedFields;
+    private final int removedMethods;
+    private final int[] ruleFields;
+    private final int[] ruleFieldFlags;
+    private final int[] ruleMethods;
+    private final int[] ruleMethodFlags;
+
+    ClassPlan(int classDef, int removalRule, long flags, int[] staticFields, int[] instanceFields,
+              int[] directMethods, int[] virtualMethods, int removedFields, int removedMethods,
+              int[] ruleFields, int[] ruleFieldFlags, int[] ruleMethods, int[] ruleMethodFlags) {
+        this.classDef = classDef;
+        this.removalRule = removalRule;
+        this.flags = flags;
+        this.staticFields = staticFields;
+        this.instanceFields = instanceFields;
+        this.directMethods = directMethods;
+        this.virtualMethods = virtualMethods;
+        this.removedFields = removedFields;
+        this.removedMethods = removedMethods;
+        this.ruleFields = ruleFields;
+        this.ruleFieldFlags = ruleFieldFlags;
+        this.ruleMethods = ruleMethods;
+        this.ruleMethodFlags = ruleMethodFlags;
+    }
+
+    static ClassPlan removed(int classDef, int removalRule, long flags) {
+        return new ClassPlan(classDef, removalRule, flags, EMPTY, EMPTY, EMPTY, EMPTY, 0, 0,
+                EMPTY, EMPTY, EMPTY, EMPTY);
+    }
+
+    public int getClassDef() {
+        return classDef;
+    }
+
+    /**
+     * @return the {@link RemovalRules} rule id removing the class, or {@link RemovalRules#NO_MATCH}
+     */
+    public int getRemovalRule() {
+        return removalRule;
+    }
+
+    /**
+     * @return the {@code RuleFlags.CLASS_*} bits of the mirror rule, {@code 0} for an unconfigured class
+     */
+    public long getFlags() {
+        return flags;
+    }
+
+    /**
+     * @return {@code true} if the class is dropped from the output, by a global rule,
+     * {@code ClassConfig.remove} or {@code ClassConfig.replace}
+     */
+    public boolean isRemoved() {
+        return removalRule != RemovalRules.NO_MATCH
+                || (flags & (RuleFlags.CLASS_REMOVE | RuleFlags.CLASS_REPLACE)) != 0;
+    }
+
+    public int[] getStaticFields() {
+        return staticFields;
+    }
+
+    public int[] getInstanceFields() {
+        return instanceFields;
+    }
+
+    public int[] getDirectMethods() {
+        return directMethods;
+    }
+
+    public int[] getVirtualMethods() {
+        return virtualMethods;
+    }
+
+    /**
+     * @return the number of input fields dropped by the rules
+     */
+    public int getRemovedFieldCount() {
+        return removedFields;
+    }
+
+    /**
+     * @return the number of input methods dropped by the rules
+     */
+    public int getRemovedMethodCount() {
+        return removedMethods;
+    }
+
+    /**
+     * @return {@code true} if the field is kept
+     */
+    public boolean hasField(int fieldIdx) {
+        return indexOf(staticFields, 2, fieldIdx) >= 0 || indexOf(instanceFields, 2, fieldIdx) >= 0;
+    }
+
+    /**
+     * @return {@code true} if the method is kept
+     */
+    public boolean hasMethod(int methodIdx) {
+        return indexOf(directMethods, 3, methodIdx) >= 0 || indexOf(virtualMethods, 3, methodIdx) >= 0;
+    }
+
+    /**
+     * @return the {@code RuleFlags.FIELD_*} bits of the mirror field rule, {@code 0} if there is none
+     */
+    public int fieldFlags(int fieldIdx) {
+        int i = Arrays.binarySearch(ruleFields, fieldIdx);
+        return i < 0 ? 0 : ruleFieldFlags[i];
+    }
+
+    /**
+     * @return the {@code RuleFlags.METHOD_*} bits of the mirror method rule, {@code 0} if there is none
+     */
+    public int methodFlags(int methodIdx) {
+        int i = Arrays.binarySearch(ruleMethods, methodIdx);
+        return i < 0 ? 0 : ruleMethodFlags[i];
+    }
+
+    /**
+     * @return the resolved member rules: field indices, field flags, method indices and method flags
+     */
+    int[][] memberRules() {
+        return new int[][]{ruleFields, ruleFieldFlags, ruleMethods, ruleMethodFlags};
+    }
+
+    public boolean keepsSuperclass() {
+        return (flags & RuleFlags.CLASS_REMOVE_SUPER_CLASS) == 0;
+    }
+
+    public boolean keepsInterfaces() {
+        return (flags & RuleFlags.CLASS_REMOVE_INTERFACES) == 0;
+    }
+
+    public boolean keepsSourceFile() {
+        return (flags & RuleFlags.CLASS_REMOVE_SOURCE_FILE) == 0;
+    }
+
+    public boolean keepsStaticValues() {
+        return (flags & RuleFlags.CLASS_REMOVE_STATIC_INIT) == 0;
+    }
+
+    public boolean keepsClassAnnotations() {
+        return (flags & RuleFlags.CLASS_REMOVE_CLASS_ANNOTATION) == 0;
+    }
+
+    public boolean keepsFieldAnnotations(int fieldIdx) {
+        return (flags & RuleFlags.CLASS_REMOVE_FIELD_ANNOTATION) == 0
+                && (fieldFlags(fieldIdx) & RuleFlags.FIELD_REMOVE_ANNOTATIONS) == 0;
+    }
+
+    public boolean keepsMethodAnnotations(int methodIdx) {
+        return (flags & RuleFlags.CLASS_REMOVE_METHOD_ANNOTATION) == 0
+                && (methodFlags(methodIdx) & RuleFlags.METHOD_REMOVE_ANNOTATIONS) == 0;
+    }
+
+    /**
+     * Parameter level {@code ParamConfig.removeAnnotations} rules are not reflected here; they only
+     * shrink single entries of the list.
+     */
+    public boolean keepsParamAnnotations(int methodIdx) {
+        return (flags & RuleFlags.CLASS_REMOVE_PARAM_ANNOTATION) == 0
+                && (methodFlags(methodIdx) & RuleFlags.METHOD_REMOVE_PARAM_ANNOTATIONS) == 0;
+    }
+
+    /**
+     * @return {@code false} if the original body is replaced by a default return
+     */
+    public boolean keepsCode(int methodIdx) {
+        return (methodFlags(methodIdx) & RuleFlags.METHOD_REMOVE_CODE) == 0;
+    }
+
+    public boolean keepsDebugInfo(int methodIdx) {
+        return (methodFlags(methodIdx) & (RuleFlags.METHOD_REMOVE_DBG_INFO | RuleFlags.METHOD_REMOVE_CODE)) == 0;
+    }
+
+    private static int indexOf(int[] members, int stride, int idx) {
+        int lo = 0;
+        int hi = members.length / stride - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int value = members[mid * stride];
+            if (value < idx) {
+                lo = mid + 1;
+            } else if (value > idx) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.merge;
+
+import io.github.sanfengandroid.sdexter.sdk.MergeMetrics;
+import io.github.sanfengandroid.sdexter.sdk.dex.ClassData;
+import io.github.sanfengandroid.sdexter.sdk.dex.DexFile;
+import io.github.sanfengandroid.sdexter.sdk.dex.Leb128;
+import io.github.sanfengandroid.sdexter.sdk.dex.MethodKeys;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleFlags;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleManifest;
+import io.github.sanfengandroid.sdexter.sdk.rule.PatternSet;
+import io.github.sanfengandroid.sdexter.sdk.rule.RemovalRules;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies the member level rules of one {@link RuleManifest.ClassRule} to a target class.
+ * <p>
+ * Covers {@code removeStaticFields}, {@code removeInstanceFields}, {@code removeDirectMethods},
+ * {@code removeVirtualMethods}, {@link io.github.sanfengandroid.sdexter.sdk.RemoveFields},
+ * {@link io.github.sanfengandroid.sdexter.sdk.RemoveMethods} and per-member {@code remove} flags.
+ * Given a {@link Reachability}, {@code removeUnusedFields} and {@code removeUnusedMethods} drop
+ * the members it did not reach.
+ * The applier only reads the class it is given, so different classes can be processed concurrently.
+ * </p>
+ * <p>
+ * {@code RemoveMethods.value} prototypes, in dex or readable form, are resolved once to
+ * {@link MethodKeys} of the target DEX and matched by id. Patterns see the dex form, e.g.
+ * {@code fun(ILjava/lang/String;)V}, served from the shared cache of {@link DexFile#methodKeys()}.
+ * </p>
+ * <p>
+ * {@code RemoveFields.value} names are resolved to string ids, and field name patterns are
+ * matched by {@link PatternSet} on the MUTF-8 bytes of the string pool, so a field name is only
+ * decoded when a truly regular pattern has to see it. Each distinct pattern list is compiled once
+ * per {@link Patterns}, which a merge shares across its classes.
+ * </p>
+ * With enabled {@link MergeMetrics}, every field name, method prototype and pattern of the class
+ * rule is declared with the class descriptor as scope and credited with the members it removed.
+ * A member matched by both a literal and a pattern is credited to the literal.
+ */
+public final class ClassRuleApplier {
+
+    private static final int[] EMPTY = new int[0];
+
+    private ClassRuleApplier() {
+    }
+
+    /**
+     * @param dex         the target DEX
+     * @param classDef    the {@code class_def} index
+     * @param rule        the mirror rule of the class, or {@code null}
+     * @param removalRule the global {@link RemovalRules} rule id removing the class, or {@link RemovalRules#NO_MATCH}
+     * @return the plan
+     */
+    public static ClassPlan apply(DexFile dex, int classDef, RuleManifest.ClassRule rule, int removalRule) {
+        return apply(dex, classDef, rule, removalRule, MergeMetrics.NONE);
+    }
+
+    /**
+     * @param dex         the target DEX
+     * @param classDef    the {@code class_def} index
+     * @param rule        the mirror rule of the class, or {@code null}
+     * @param removalRule the global {@link RemovalRules} rule id removing the class, or {@link RemovalRules#NO_MATCH}
+     * @param metrics     receives the member rule hits
+     * @return the plan
+     */
+    public static ClassPlan apply(DexFile dex, int classDef, RuleManifest.ClassRule rule, int removalRule,
+                                  MergeMetrics metrics) {
+        return apply(dex, classDef, rule, removalRule, null, metrics);
+    }
+
+    /**
+     * @param dex          the target DEX
+     * @param classDef     the {@code class_def} index
+     * @param rule         the mirror rule of the class, or {@code null}
+     * @param removalRule  the global {@link RemovalRules} rule id removing the class, or {@link RemovalRules#NO_MATCH}
+     * @param reachability the live members of {@code dex}, or {@code null} to keep unused members
+     * @param metrics      receives the member rule hits
+     * @return the plan
+     */
+    public static ClassPlan apply(DexFile dex, int classDef, RuleManifest.ClassRule rule, int removalRule,
+                                  Reachability reachability, MergeMetrics metrics) {
+        return apply(dex, classDef, rule, removalRule, reachability, metrics, new Patterns());
+    }
+
+    /**
+     * @param dex          the target DEX
+     * @param classDef     the {@code class_def} index
+     * @param rule         the mirror rule of the class, or {@code null}
+     * @param removalRule  the global {@link RemovalRules} rule id removing the class, or {@link RemovalRules#NO_MATCH}
+     * @param reachability the live members of {@code dex}, or {@code null} to keep unused members
+     * @param metrics      receives the member rule hits
+     * @param patterns     the member patterns compiled so far in this merge
+     * @return the plan
+     */
+    public static ClassPlan apply(DexFile dex, int classDef, RuleManifest.ClassRule rule, int removalRule,
+                                  Reachability reachability, MergeMetrics metrics, Patterns patterns) {
+        long flags = rule == null ? 0 : rule.getFlags();
+        if (removalRule != RemovalRules.NO_MATCH
+                || (flags & (RuleFlags.CLASS_REMOVE | RuleFlags.CLASS_REPLACE)) != 0) {
+            return ClassPlan.removed(classDef, removalRule, flags);
+        }
+        ClassData data = dex.classData(classDef);
+        if (data == null) {
+            return new ClassPlan(classDef, removalRule, flags, EMPTY, EMPTY, EMPTY, EMPTY, 0, 0,
+                    EMPTY, EMPTY, EMPTY, EMPTY);
+        }
+        if (rule == null) {
+            return new ClassPlan(classDef, removalRule, flags, data.getStaticFields(), data.getInstanceFields(),
+                    data.getDirectMethods(), data.getVirtualMethods(), 0, 0, EMPTY, EMPTY, EMPTY, EMPTY);
+        }
+        int[][] fieldRules = memberRules(dex, data.getStaticFields(), data.getInstanceFields(), 2,
+                rule.getFields(), false);
+        int[][] methodRules = memberRules(dex, data.getDirectMethods(), data.getVirtualMethods(), 3,
+                rule.getMethods(), true);
+        MergeMetrics recorder = metrics.isEnabled() ? metrics : null;
+        if (recorder != null) {
+            declare(recorder, MergeMetrics.Rule.REMOVE_FIELD, rule, rule.getRemoveFieldNames());
+            declare(recorder, MergeMetrics.Rule.REMOVE_FIELD_PATTERN, rule, rule.getRemoveFieldPatterns());
+            declare(recorder, MergeMetrics.Rule.REMOVE_METHOD, rule, rule.getRemoveMethods());
+            declare(recorder, MergeMetrics.Rule.REMOVE_METHOD_PATTERN, rule, rule.getRemoveMethodPatterns());
+        }
+        FieldFilter fields = new FieldFilter(dex, rule, fieldRules, patterns, recorder,
+                (flags & RuleFlags.CLASS_REMOVE_UNUSED_FIELDS) != 0 ? reachability : null);
+        MethodFilter methods = new MethodFilter(dex, rule, methodRules, patterns, recorder,
+                (flags & RuleFlags.CLASS_REMOVE_UNUSED_METHODS) != 0 ? reachability : null);
+        int[] staticFields = (flags & RuleFlags.CLASS_REMOVE_STATIC_FIELDS) != 0
+                ? EMPTY : filter(data.getStaticFields(), 2, fields);
+        int[] instanceFields = (flags & RuleFlags.CLASS_REMOVE_INSTANCE_FIELDS) != 0
+                ? EMPTY : filter(data.getInstanceFields(), 2, fields);
+        int[] directMethods = (flags & RuleFlags.CLASS_REMOVE_DIRECT_METHODS) != 0
+                ? EMPTY : filter(data.getDirectMethods(), 3, methods);
+        int[] virtualMethods = (flags & RuleFlags.CLASS_REMOVE_VIRTUAL_METHODS) != 0
+                ? EMPTY : filter(data.getVirtualMethods(), 3, methods);
+        int removedFields = data.staticFieldCount() + data.instanceFieldCount()
+                - (staticFields.length + instanceFields.length) / 2;
+        int removedMethods = data.directMethodCount() + data.virtualMethodCount()
+                - (directMethods.length + virtualMethods.length) / 3;
+        return new ClassPlan(classDef, removalRule, flags, staticFields, instanceFields, directMethods,
+                virtualMethods, removedFields, removedMethods, fieldRules[0], fieldRules[1],
+                methodRules[0], methodRules[1]);
+    }
+
+    private static void declare(MergeMetrics metrics, MergeMetrics.Rule kind, RuleManifest.ClassRule rule,
+                                String[] sources) {
+        for (String source : sources) {
+            metrics.ruleDeclared(kind, rule.getDescriptor(), source);
+        }
+    }
+
+    /**
+     * Resolves member rules to input indices.
+     *
+     * @return sorted member indices and their flags
+     */
+    private static int[][] memberRules(DexFile dex, int[] first, int[] second, int stride,
+                                       List<RuleManifest.MemberRule> rules, boolean method) {
+        if (rules.isEmpty()) {
+            return new int[][]{EMPTY, EMPTY};
+        }
+        int[] ids = new int[rules.size()];
+        int[] flags = new int[rules.size()];
+        int n = 0;
+        for (RuleManifest.MemberRule member : rules) {
+            int idx = findMember(dex, first, stride, member, method);
+            if (idx < 0) {
+                idx = findMember(dex, second, stride, member, method);
+            }
+            if (idx >= 0) {
+                ids[n] = idx;
+                flags[n++] = member.getFlags();
+            }
+        }
+        // Sort the pairs by member index, flags of duplicate rules are combined
+        long[] pairs = new long[n];
+        for (int i = 0; i < n; i++) {
+            pairs[i] = (long) ids[i] << 32 | (flags[i] & 0xffffffffL);
+        }
+        Arrays.sort(pairs);
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            int idx = (int) (pairs[i] >>> 32);
+            int flag = (int) pairs[i];
+            if (m > 0 && ids[m - 1] == idx) {
+                flags[m - 1] |= flag;
+            } else {
+                ids[m] = idx;
+                flags[m++] = flag;
+            }
+        }
+        return new int[][]{Arrays.copyOf(ids, m), Arrays.copyOf(flags, m)};
+    }
+
+    private static int findMember(DexFile dex, int[] members, int stride, RuleManifest.MemberRule rule,
+                                  boolean method) {
+        for (int i = 0; i < members.length; i += stride) {
+            int idx = members[i];
+            if (method) {
+                if (dex.compareString(dex.methodName(idx), rule.getName()) == 0
+                        && dex.protoDescriptor(dex.methodProto(idx)).equals(rule.getType())) {
+                    return idx;
+                }
+            } else if (dex.compareString(dex.fieldName(idx), rule.getName()) == 0
+                    && dex.typeDescriptor(dex.fieldType(idx)).equals(rule.getType())) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] filter(int[] members, int stride, MemberFilter filter) {
+        int[] kept = null;
+        int n = 0;
+        for (int i = 0; i < members.length; i += stride) {
+            if (filter.removes(members[i])) {
+                if (kept == null) {
+                    kept = new int[members.length - stride];
+                    System.arraycopy(members, 0, kept, 0, i);
+                    n = i;
+                }
+            } else if (kept != null) {
+                System.arraycopy(members, i, kept, n, stride);
+                n += stride;
+            }
+        }
+        return kept == null ? members : Arrays.copyOf(kept, n);
+    }
+
+    /**
+     * Member patterns compiled during one merge. Class rules listing the same patterns share one
+     * {@link PatternSet}. Safe for concurrent use.
+     */
+    public static final class Patterns {
+        private final ConcurrentHashMap<List<String>, PatternSet> compiled = new ConcurrentHashMap<>();
+
+        /**
+         * @return the compiled patterns, or {@code null} if there are none
+         */
+        PatternSet compile(String[] patterns) {
+            if (patterns.length == 0) {
+                return null;
+            }
+            return compiled.computeIfAbsent(Arrays.asList(patterns), key -> PatternSet.compile(patterns));
+        }
+
+        /**
+         * @return the number of distinct pattern lists compiled
+         */
+        int size() {
+            return compiled.size();
+        }
+    }
+
+    private interface MemberFilter {
+        boolean removes(int idx);
+    }
+
+    private static final class FieldFilter implements MemberFilter {
+        private final DexFile dex;
+        private final ByteBuffer buf;
+        private final int[] ruleIds;
+        private final int[] ruleFlags;
+        /** String ids of the {@code RemoveFields.value} names present in the DEX, ascending. */
+        private final int[] nameIds;
+        private final PatternSet patterns;
+        private final MergeMetrics metrics;
+        private final String scope;
+        private final Reachability reachability;
+
+        FieldFilter(DexFile dex, RuleManifest.ClassRule rule, int[][] memberRules, Patterns compiled,
+                    MergeMetrics metrics, Reachability reachability) {
+            this.dex = dex;
+            this.buf = dex.buffer();
+            this.metrics = metrics;
+            this.reachability = reachability;
+            this.scope = rule.getDescriptor();
+            this.ruleIds = memberRules[0];
+            this.ruleFlags = memberRules[1];
+            this.nameIds = resolveNames(dex, rule.getRemoveFieldNames());
+            this.patterns = compiled.compile(rule.getRemoveFieldPatterns());
+        }
+
+        /**
+         * Strings are unique within a DEX, so a name absent from the string pool matches no field.
+         */
+        private static int[] resolveNames(DexFile dex, String[] names) {
+            int[] ids = new int[names.length];
+            int n = 0;
+            for (String name : names) {
+                int id = dex.findString(name);
+                if (id != DexFile.NO_INDEX) {
+                    ids[n++] = id;
+                }
+            }
+            ids = Arrays.copyOf(ids, n);
+            Arrays.sort(ids);
+            return ids;
+        }
+
+        @Override
+        public boolean removes(int idx) {
+            int i = Arrays.binarySearch(ruleIds, idx);
+            if (i >= 0 && (ruleFlags[i] & (RuleFlags.FIELD_REMOVE | RuleFlags.FIELD_REMOVE_MARKED)) != 0) {
+                return true;
+            }
+            if (reachability != null && !reachability.isFieldLive(idx)) {
+                return true;
+            }
+            int name = dex.fieldName(idx);
+            if (nameIds.length > 0 && Arrays.binarySearch(nameIds, name) >= 0) {
+                if (metrics != null) {
+                    metrics.ruleHit(MergeMetrics.Rule.REMOVE_FIELD, scope, dex.string(name), 1);
+                }
+                return true;
+            }
+            if (patterns == null) {
+                return false;
+            }
+            int pattern = patterns.match(buf, Leb128.skip(buf, dex.stringDataOffset(name)));
+            if (pattern == PatternSet.NEEDS_TEXT) {
+                pattern = patterns.match(dex.string(name));
+            }
+            if (pattern < 0) {
+                return false;
+            }
+            if (metrics != null) {
+                metrics.ruleHit(MergeMetrics.Rule.REMOVE_FIELD_PATTERN, scope, patterns.pattern(pattern), 1);
+            }
+            return true;
+        }
+    }
+
+    private static final class MethodFilter implements MemberFilter {
+        private final int[] ruleIds;
+        private final int[] ruleFlags;
+        private final MethodKeys keys;
+        private final String[] protos;
+        private final MethodKeys.Lookup protoKeys;
+        private final PatternSet patterns;
+        private final MergeMetrics metrics;
+        private final String scope;
+        private final Reachability reachability;
+
+        MethodFilter(DexFile dex, RuleManifest.ClassRule rule, int[][] memberRules, Patterns compiled,
+                     MergeMetrics metrics, Reachability reachability) {
+            this.metrics = metrics;
+            this.reachability = reachability;
+            this.scope = rule.getDescriptor();
+            this.ruleIds = memberRules[0];
+            this.ruleFlags = memberRules[1];
+            String[] protos = rule.getRemoveMethods();
+            this.keys = dex.methodKeys();
+            this.protos = protos;
+            this.protoKeys = protos.length == 0 ? null : keys.lookup(protos);
+            this.patterns = compiled.compile(rule.getRemoveMethodPatterns());
+        }
+
+        @Override
+        public boolean removes(int idx) {
+            int i = Arrays.binarySearch(ruleIds, idx);
+            if (i >= 0 && (ruleFlags[i] & (RuleFlags.METHOD_REMOVE | RuleFlags.METHOD_REMOVE_MARKED)) != 0) {
+                return true;
+            }
+            if (reachability != null && !reachability.isMethodLive(idx)) {
+                return true;
+            }
+            int exact = protoKeys == null ? -1 : protoKeys.get(keys.key(idx));
+            if (exact >= 0) {
+                if (metrics != null) {
+                    metrics.ruleHit(MergeMetrics.Rule.REMOVE_METHOD, scope, protos[exact], 1);
+                }
+                return true;
+            }
+            int pattern = patterns == null ? -1 : patterns.match(keys.dexForm(idx));
+            if (pattern < 0) {
+                return false;
+            }
+            if (metrics != null) {
+                metrics.ruleHit(MergeMetrics.Rule.REMOVE_METHOD_PATTERN, scope, patterns.pattern(pattern), 1);
+            }
+            return true;
+        }
+    }
+}
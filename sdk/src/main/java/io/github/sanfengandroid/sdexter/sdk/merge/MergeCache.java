@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.merge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk cache of per-class merge results, addressed by {@link CacheKeys} content keys.
+ * <p>
+ * Every entry is one file named after its key. Recency is kept in memory in access order and
+ * persisted through file modification times, so a new instance over the same directory resumes
+ * the previous LRU order. When the total size exceeds the cap, least recently used entries are
+ * deleted.
+ * </p>
+ * Instances are thread safe. Several processes may share a directory: writes are atomic file
+ * moves, and an entry deleted by another process simply reads as a miss.
+ */
+public final class MergeCache {
+
+    private static final String SUFFIX = ".bin";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    private MergeCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Opens or creates a cache directory.
+     *
+     * @param directory the cache directory
+     * @param maxBytes  the size cap of all entries together
+     * @return the cache
+     * @throws IOException if the directory cannot be created or listed
+     */
+    public static MergeCache open(Path directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        Files.createDirectories(directory);
+        MergeCache cache = new MergeCache(directory, maxBytes);
+        List<Object[]> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                found.add(new Object[]{name.substring(0, name.length() - SUFFIX.length()),
+                        Files.getLastModifiedTime(file).toMillis(), Files.size(file)});
+            }
+        }
+        found.sort((a, b) -> Long.compare((Long) a[1], (Long) b[1]));
+        for (Object[] entry : found) {
+            cache.entries.put((String) entry[0], (Long) entry[2]);
+            cache.totalBytes += (Long) entry[2];
+        }
+        cache.evict();
+        return cache;
+    }
+
+    /**
+     * @param key a content key
+     * @return the cached bytes, or {@code null} on a miss
+     */
+    public byte[] get(String key) {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                misses++;
+                return null;
+            }
+        }
+        Path file = file(key);
+        try {
+            byte[] data = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            synchronized (this) {
+                hits++;
+            }
+            return data;
+        } catch (NoSuchFileException e) {
+            synchronized (this) {
+                Long size = entries.remove(key);
+                if (size != null) {
+                    totalBytes -= size;
+                }
+                misses++;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stores an entry, evicting older entries if the cap is exceeded. Entries larger than the
+     * cap are not stored.
+     */
+    public void put(String key, byte[] data) {
+        if (data.length > maxBytes) {
+            return;
+        }
+        Path file = file(key);
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(tmp, data);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteQuietly(tmp);
+        }
+        synchronized (this) {
+            Long old = entries.put(key, (long) data.length);
+            totalBytes += data.length - (old == null ? 0 : old);
+            evict();
+        }
+    }
+
+    /**
+     * @return the total size of all entries
+     */
+    public synchronized long size() {
+        return totalBytes;
+    }
+
+    public synchronized int entryCount() {
+        return entries.size();
+    }
+
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            try {
+                Files.deleteIfExists(file(eldest.getKey()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            totalBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private static void deleteQuietly(Path tmp) {
+        if (tmp != null) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // The write already failed, that is the error to report
+            }
+        }
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+}
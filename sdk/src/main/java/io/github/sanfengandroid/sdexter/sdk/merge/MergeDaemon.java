@@ -0,0 +1,501 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.merge;
+
+import io.github.sanfengandroid.sdexter.sdk.GlobalConfig;
+import io.github.sanfengandroid.sdexter.sdk.dex.DexFile;
+import io.github.sanfengandroid.sdexter.sdk.rule.PackageRenamer;
+import io.github.sanfengandroid.sdexter.sdk.rule.RemovalRules;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long running merge process that keeps parsed original DEX files resident between requests.
+ * <p>
+ * Developers iterate on the mirror DEX while the original DEX stays the same, so the daemon maps
+ * and indexes each original once and serves every following request from memory, without JVM
+ * startup or parse cost. A base is identified by its real path and reloaded when its size or
+ * modification time changes. Bases are kept in LRU order; when their estimated footprint exceeds
+ * the heap budget, the least recently used ones are dropped. Rules compiled from a
+ * {@link GlobalConfig} are memoized by {@link CacheKeys#globalFingerprint fingerprint}, so their
+ * automata stay warm as well; the {@value #MAX_RULE_SETS} most recently used configurations are
+ * kept.
+ * </p>
+ * <p>
+ * The merge itself is supplied as a {@link Job}. Requests are one line each, with tab separated
+ * fields, read from stdin with {@link #serve(InputStream, OutputStream)} or from loopback
+ * connections with {@link #serve(int, Path)}:
+ * </p>
+ * <pre>
+ * merge&lt;TAB&gt;base.dex&lt;TAB&gt;mirror.dex&lt;TAB&gt;out.dex   ok&lt;TAB&gt;hit|load&lt;TAB&gt;millis
+ * stats                                      ok&lt;TAB&gt;bases&lt;TAB&gt;bytes&lt;TAB&gt;hits&lt;TAB&gt;loads
+ * evict                                      ok
+ * quit                                       ok, then the stream is closed
+ * </pre>
+ * <p>
+ * A request writes files with the permissions of the daemon, and loopback is open to every local
+ * user, so each connection has to start with a secret token line before any request. The token
+ * is written to a file only the owner can read, next to the port; a connection that sends
+ * anything else is answered {@code error<TAB>unauthorized} and closed.
+ * </p>
+ * Failures answer {@code error<TAB>message} and leave the daemon running. Thread safe; requests
+ * on different connections run concurrently, on at most one thread per processor, and share the
+ * resident bases.
+ */
+public final class MergeDaemon {
+
+    /**
+     * Merges one mirror DEX into a resident base.
+     */
+    public interface Job {
+        /**
+         * @param request the request, its base is parsed and indexed
+         * @throws IOException if the mirror cannot be read or the output cannot be written
+         */
+        void merge(Request request) throws IOException;
+    }
+
+    /** How long a new connection may take to send its token. */
+    private static final int AUTH_TIMEOUT_MILLIS = 10_000;
+    /** How long a connection may wait between requests before it gives its worker back. */
+    private static final int IDLE_TIMEOUT_MILLIS = 60_000;
+    /** Compiled rule sets kept, each holds the automata and memo table of one configuration. */
+    static final int MAX_RULE_SETS = 16;
+
+    private final Job job;
+    private final long heapBudget;
+    private final LinkedHashMap<Path, Base> bases = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<ByteBuffer, Rules> rules = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentBytes;
+    private long hits;
+    private long loads;
+
+    /**
+     * @param job        the merge to run for each request
+     * @param heapBudget the estimated bytes resident bases may take together; the most recent base
+     *                   is always kept
+     */
+    public MergeDaemon(Job job, long heapBudget) {
+        if (heapBudget <= 0) {
+            throw new IllegalArgumentException("Heap budget must be positive: " + heapBudget);
+        }
+        this.job = job;
+        this.heapBudget = heapBudget;
+    }
+
+    /**
+     * Serves requests from one stream until {@code quit} or the end of input.
+     *
+     * @param in  request lines
+     * @param out response lines, flushed after each one
+     * @throws IOException if reading or writing the streams fails
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        serveStream(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), out);
+    }
+
+    /**
+     * @return {@code true} if the stream ended with {@code quit}
+     */
+    private boolean serveStream(BufferedReader reader, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String response = handle(line);
+            writer.write(response);
+            writer.write('\n');
+            writer.flush();
+            if (line.equals("quit")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Accepts connections on the loopback interface. Returns when a connection sends {@code quit}.
+     * <p>
+     * A fresh token is written to {@code tokenFile} as {@code port<TAB>token}, replacing the file
+     * atomically; on POSIX systems the file is readable by the owner only. Clients read it and send
+     * the token as their first line. The file is deleted on return.
+     * </p>
+     *
+     * @param port      the port, {@code 0} for any free one
+     * @param tokenFile where to publish the port and token
+     * @throws IOException if the socket cannot be bound or the token file cannot be written
+     */
+    public void serve(int port, Path tokenFile) throws IOException {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        StringBuilder token = new StringBuilder(64);
+        for (byte b : random) {
+            token.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            // Temp files are created owner-only on POSIX systems, the move keeps those permissions
+            Path tmp = Files.createTempFile(tokenFile.toAbsolutePath().getParent(), tokenFile.getFileName().toString(),
+                    ".tmp");
+            Files.write(tmp, (server.getLocalPort() + "\t" + token + "\n").getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            try {
+                serve(server, token.toString());
+            } finally {
+                Files.deleteIfExists(tokenFile);
+            }
+        }
+    }
+
+    /**
+     * Accepts connections on a bound server socket until a connection sends {@code quit}, then
+     * closes it.
+     * <p>
+     * Connections are served by one worker per processor, further connections wait for a free
+     * worker. A connection that sends no request for {@value #IDLE_TIMEOUT_MILLIS} ms is closed.
+     * </p>
+     *
+     * @param server the socket, bind it to a loopback address to keep the daemon local
+     * @param token  the secret every connection has to send as its first line
+     * @throws IOException if accepting fails for another reason than the shutdown
+     */
+    public void serve(ServerSocket server, String token) throws IOException {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("A token is required");
+        }
+        byte[] expected = token.getBytes(StandardCharsets.UTF_8);
+        AtomicInteger workers = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread thread = new Thread(r, "merge-daemon-" + workers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            while (!server.isClosed()) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (IOException e) {
+                    if (server.isClosed()) {
+                        return;
+                    }
+                    throw e;
+                }
+                executor.execute(() -> connection(server, socket, expected));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void connection(ServerSocket server, Socket socket, byte[] token) {
+        try (Socket s = socket) {
+            if (server.isClosed()) {
+                // Queued behind the connection that sent quit
+                return;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            s.setSoTimeout(AUTH_TIMEOUT_MILLIS);
+            String first = reader.readLine();
+            // Constant time, so the token cannot be guessed byte by byte
+            if (first == null || !MessageDigest.isEqual(first.getBytes(StandardCharsets.UTF_8), token)) {
+                s.getOutputStream().write("error\tunauthorized\n".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            s.setSoTimeout(IDLE_TIMEOUT_MILLIS);
+            if (serveStream(reader, s.getOutputStream())) {
+                server.close();
+            }
+        } catch (SocketTimeoutException ignored) {
+            // No token or request in time
+        } catch (IOException ignored) {
+            // The client went away, other connections are unaffected
+        }
+    }
+
+    /**
+     * Handles one request line.
+     *
+     * @return the response line, without line terminator
+     */
+    public String handle(String line) {
+        String[] fields = line.split("\t", -1);
+        try {
+            switch (fields[0]) {
+                case "merge":
+                    if (fields.length != 4) {
+                        return "error\tmerge expects base, mirror and output paths";
+                    }
+                    return merge(Paths.get(fields[1]), Paths.get(fields[2]), Paths.get(fields[3]));
+                case "stats":
+                    synchronized (this) {
+                        return "ok\t" + bases.size() + "\t" + residentBytes + "\t" + hits + "\t" + loads;
+                    }
+                case "evict":
+                    evictAll();
+                    return "ok";
+                case "quit":
+                    return "ok";
+                default:
+                    return "error\tunknown command " + fields[0];
+            }
+        } catch (IOException | RuntimeException e) {
+            return "error\t" + e.toString().replace('\n', ' ').replace('\t', ' ');
+        }
+    }
+
+    private String merge(Path basePath, Path mirror, Path output) throws IOException {
+        long start = System.nanoTime();
+        boolean[] loaded = new boolean[1];
+        Base base = base(basePath, loaded);
+        job.merge(new Request(this, base.dex, base.path, mirror, output));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        return "ok\t" + (loaded[0] ? "load" : "hit") + "\t" + millis;
+    }
+
+    /**
+     * Returns the resident base for {@code path}, parsing it if it is new or changed on disk.
+     */
+    Base base(Path path, boolean[] loaded) throws IOException {
+        Path key = path.toRealPath();
+        long size = Files.size(key);
+        long modified = Files.getLastModifiedTime(key).toMillis();
+        synchronized (this) {
+            Base base = bases.get(key);
+            if (base != null && base.size == size && base.modified == modified) {
+                hits++;
+                return base;
+            }
+            if (base != null) {
+                remove(key);
+            }
+        }
+        // Parsing runs outside the lock; a concurrent load of the same base keeps the first one
+        Base base = new Base(key, DexFile.open(key), size, modified);
+        synchronized (this) {
+            Base current = bases.get(key);
+            if (current != null && current.size == size && current.modified == modified) {
+                hits++;
+                return current;
+            }
+            if (current != null) {
+                remove(key);
+            }
+            bases.put(key, base);
+            residentBytes += base.footprint;
+            loads++;
+            loaded[0] = true;
+            evict();
+            return base;
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Path, Base>> it = bases.entrySet().iterator();
+        while (residentBytes > heapBudget && bases.size() > 1 && it.hasNext()) {
+            residentBytes -= it.next().getValue().footprint;
+            it.remove();
+        }
+    }
+
+    private void remove(Path key) {
+        Base removed = bases.remove(key);
+        if (removed != null) {
+            residentBytes -= removed.footprint;
+        }
+    }
+
+    /**
+     * Drops every resident base and compiled rule set.
+     */
+    public synchronized void evictAll() {
+        bases.clear();
+        residentBytes = 0;
+        synchronized (rules) {
+            rules.clear();
+        }
+    }
+
+    /**
+     * @return the number of resident bases
+     */
+    public synchronized int baseCount() {
+        return bases.size();
+    }
+
+    /**
+     * @return the estimated bytes taken by resident bases
+     */
+    public synchronized long residentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * One merge request, handed to the {@link Job}.
+     */
+    public static final class Request {
+        private final MergeDaemon daemon;
+        private final DexFile base;
+        private final Path basePath;
+        private final Path mirror;
+        private final Path output;
+
+        Request(MergeDaemon daemon, DexFile base, Path basePath, Path mirror, Path output) {
+            this.daemon = daemon;
+            this.base = base;
+            this.basePath = basePath;
+            this.mirror = mirror;
+            this.output = output;
+        }
+
+        /**
+         * @return the resident original DEX, shared with other requests on the same base
+         */
+        public DexFile getBase() {
+            return base;
+        }
+
+        /**
+         * @return the real path of the original DEX
+         */
+        public Path getBasePath() {
+            return basePath;
+        }
+
+        public Path getMirror() {
+            return mirror;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+
+        /**
+         * @param config the global configuration of the mirror, may be {@code null}
+         * @return the removal rules of {@code config}, compiled once per distinct configuration
+         */
+        public RemovalRules removalRules(GlobalConfig config) {
+            return daemon.rules(config).removal;
+        }
+
+        /**
+         * Returns the renamer of {@code config}, compiled once per distinct configuration. Its memo
+         * table stays warm across requests, and so do its hit counters, which therefore add up
+         * over all requests using the same configuration.
+         *
+         * @param config the global configuration of the mirror, may be {@code null}
+         * @return the renamer
+         */
+        public PackageRenamer packageRenamer(GlobalConfig config) {
+            return daemon.rules(config).renamer;
+        }
+    }
+
+    private Rules rules(GlobalConfig config) {
+        ByteBuffer key = ByteBuffer.wrap(CacheKeys.globalFingerprint(config));
+        synchronized (rules) {
+            Rules cached = rules.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Compiling runs outside the lock; a concurrent compile of the same configuration keeps the first one
+        Rules compiled = new Rules(config);
+        synchronized (rules) {
+            Rules current = rules.putIfAbsent(key, compiled);
+            if (current != null) {
+                return current;
+            }
+            Iterator<ByteBuffer> it = rules.keySet().iterator();
+            while (rules.size() > MAX_RULE_SETS) {
+                it.next();
+                it.remove();
+            }
+            return compiled;
+        }
+    }
+
+    /**
+     * @return the number of compiled rule sets kept
+     */
+    int ruleSetCount() {
+        synchronized (rules) {
+            return rules.size();
+        }
+    }
+
+    private static final class Rules {
+        final RemovalRules removal;
+        final PackageRenamer renamer;
+
+        Rules(GlobalConfig config) {
+            String[] none = new String[0];
+            this.removal = config == null ? RemovalRules.of(none, none, none, none) : RemovalRules.of(config);
+            this.renamer = config == null ? PackageRenamer.of(none, none) : PackageRenamer.of(config);
+        }
+    }
+
+    static final class Base {
+        final Path path;
+        final DexFile dex;
+        final long size;
+        final long modified;
+        final long footprint;
+
+        Base(Path path, DexFile dex, long size, long modified) {
+            this.path = path;
+            this.dex = dex;
+            this.size = size;
+            this.modified = modified;
+            // Build the shared indexes now rather than during the first request
+            dex.methodKeys();
+            this.footprint = footprint(dex, size);
+        }
+
+        /**
+         * Estimates the memory a base may pin: the mapping, the decoded string table, which grows
+         * to about the size of the string data, and the per id indexes.
+         */
+        private static long footprint(DexFile dex, long size) {
+            return size * 2 + 16L * dex.stringCount() + 8L * (dex.protoCount() + dex.methodCount());
+        }
+    }
+}
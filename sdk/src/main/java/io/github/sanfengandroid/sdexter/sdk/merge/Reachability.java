@@ -0,0 +1,792 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.merge;
+
+import io.github.sanfengandroid.sdexter.sdk.dex.ClassData;
+import io.github.sanfengandroid.sdexter.sdk.dex.CodeReferences;
+import io.github.sanfengandroid.sdexter.sdk.dex.DexFile;
+import io.github.sanfengandroid.sdexter.sdk.dex.EncodedValues;
+import io.github.sanfengandroid.sdexter.sdk.dex.Opcodes;
+import io.github.sanfengandroid.sdexter.sdk.dex.ReferenceSet;
+import io.github.sanfengandroid.sdexter.sdk.dex.ReferenceVisitor;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleFlags;
+import io.github.sanfengandroid.sdexter.sdk.manifest.RuleManifest;
+import io.github.sanfengandroid.sdexter.sdk.rule.RemovalRules;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Whole-file reachability of fields and methods, backing {@code ClassConfig.removeUnusedFields}
+ * and {@code ClassConfig.removeUnusedMethods}.
+ * <p>
+ * Only members of classes that enable one of those options are candidates; every member of any
+ * other kept class is a root, as are mirror members that are not removed, every member of the
+ * given entry point classes (typically the components of the Android manifest) and the virtual
+ * methods that may be called back by the platform. Roots are walked in parallel, each worker
+ * recording the ids it meets in a private {@link ReferenceSet}. The union then seeds a sequential
+ * worklist that resolves field and method references against the class hierarchy, dispatches
+ * virtual calls to every override below the receiver type and marks the static initializer,
+ * static values and annotations of each class that becomes live.
+ * </p>
+ * <p>
+ * All state lives in {@code int[]} and {@code long[]} tables indexed by id: at most a dozen bytes
+ * per method, field and type plus one bitset per seeding worker, independent of the shape of the
+ * call graph.
+ * </p>
+ * The analysis is conservative: reflection is not modelled, so members accessed only that way
+ * must be kept by a mirror rule or an entry point. A virtual method is assumed to be called back
+ * if its class has a supertype outside this file other than {@code java.lang.Object}, or if it
+ * overrides one of the {@code Object} methods.
+ */
+public final class Reachability {
+
+    private static final int MIN_GRAIN = 64;
+    private static final int METHOD_HANDLE_LAST_FIELD_TYPE = 0x03;
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String[] OBJECT_METHODS = {
+            "toString()Ljava/lang/String;", "equals(Ljava/lang/Object;)Z", "hashCode()I", "finalize()V",
+            "clone()Ljava/lang/Object;"
+    };
+
+    private final DexFile dex;
+    private final int[] methodClassDef;
+    private final int[] fieldClassDef;
+    private final long[] liveMethods;
+    private final long[] liveFields;
+
+    private Reachability(DexFile dex, int[] methodClassDef, int[] fieldClassDef, long[] liveMethods,
+                         long[] liveFields) {
+        this.dex = dex;
+        this.methodClassDef = methodClassDef;
+        this.fieldClassDef = fieldClassDef;
+        this.liveMethods = liveMethods;
+        this.liveFields = liveFields;
+    }
+
+    /**
+     * Runs the analysis on the common pool.
+     *
+     * @see #analyze(DexFile, RuleManifest, RemovalRules, Collection, ForkJoinPool)
+     */
+    public static Reachability analyze(DexFile dex, RuleManifest manifest, RemovalRules removal,
+                                       Collection<String> entryPoints) {
+        return analyze(dex, manifest, removal, entryPoints, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param dex         the target DEX
+     * @param manifest    class rules compiled from the mirror classes, may be {@code null}
+     * @param removal     global removal rules, may be {@code null}; removed classes are not roots
+     * @param entryPoints descriptors of classes whose members are all roots
+     * @param pool        the pool walking the roots
+     * @return the live members
+     */
+    public static Reachability analyze(DexFile dex, RuleManifest manifest, RemovalRules removal,
+                                       Collection<String> entryPoints, ForkJoinPool pool) {
+        Tracer tracer = new Tracer(dex);
+        int[] roots = tracer.roots(manifest, removal, new HashSet<>(entryPoints));
+        int grain = Math.max(MIN_GRAIN, roots.length / (pool.getParallelism() * 8));
+        ReferenceSet seeds = pool.invoke(new SeedTask(dex, tracer.methodCode, roots, 0, roots.length, grain));
+        tracer.drain(seeds);
+        return new Reachability(dex, tracer.methodClassDef, tracer.fieldClassDef, tracer.liveMethods,
+                tracer.liveFields);
+    }
+
+    public boolean isMethodLive(int methodIdx) {
+        return (liveMethods[methodIdx >>> 6] & (1L << methodIdx)) != 0;
+    }
+
+    public boolean isFieldLive(int fieldIdx) {
+        return (liveFields[fieldIdx >>> 6] & (1L << fieldIdx)) != 0;
+    }
+
+    /**
+     * @return the number of live methods defined in this file
+     */
+    public int liveMethodCount() {
+        return count(liveMethods);
+    }
+
+    /**
+     * @return the number of live fields defined in this file
+     */
+    public int liveFieldCount() {
+        return count(liveFields);
+    }
+
+    /**
+     * @param classDef a {@code class_def} index
+     * @return the fields of the class that are never used, in file order
+     */
+    public int[] unusedFields(int classDef) {
+        ClassData data = dex.classData(classDef);
+        if (data == null) {
+            return new int[0];
+        }
+        return unused(new int[][]{data.getStaticFields(), data.getInstanceFields()}, 2, liveFields);
+    }
+
+    /**
+     * @param classDef a {@code class_def} index
+     * @return the methods of the class that are never called, in file order
+     */
+    public int[] unusedMethods(int classDef) {
+        ClassData data = dex.classData(classDef);
+        if (data == null) {
+            return new int[0];
+        }
+        return unused(new int[][]{data.getDirectMethods(), data.getVirtualMethods()}, 3, liveMethods);
+    }
+
+    /**
+     * @return the {@code class_def} defining a method, or {@link DexFile#NO_INDEX} for a reference to another file
+     */
+    public int methodClassDef(int methodIdx) {
+        return methodClassDef[methodIdx];
+    }
+
+    /**
+     * @return the {@code class_def} defining a field, or {@link DexFile#NO_INDEX} for a reference to another file
+     */
+    public int fieldClassDef(int fieldIdx) {
+        return fieldClassDef[fieldIdx];
+    }
+
+    private static int[] unused(int[][] lists, int stride, long[] live) {
+        int n = 0;
+        for (int[] members : lists) {
+            n += members.length / stride;
+        }
+        int[] result = new int[n];
+        n = 0;
+        for (int[] members : lists) {
+            for (int i = 0; i < members.length; i += stride) {
+                int idx = members[i];
+                if ((live[idx >>> 6] & (1L << idx)) == 0) {
+                    result[n++] = idx;
+                }
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int count(long[] bits) {
+        int n = 0;
+        for (long word : bits) {
+            n += Long.bitCount(word);
+        }
+        return n;
+    }
+
+    private static boolean set(long[] bits, int idx) {
+        long mask = 1L << idx;
+        long word = bits[idx >>> 6];
+        if ((word & mask) != 0) {
+            return false;
+        }
+        bits[idx >>> 6] = word | mask;
+        return true;
+    }
+
+    private static boolean get(long[] bits, int idx) {
+        return (bits[idx >>> 6] & (1L << idx)) != 0;
+    }
+
+    /**
+     * Walks the code of a slice of the root methods into a private set.
+     */
+    private static final class SeedTask extends RecursiveTask<ReferenceSet> {
+        private static final long serialVersionUID = 1L;
+
+        private final DexFile dex;
+        private final int[] methodCode;
+        private final int[] roots;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        SeedTask(DexFile dex, int[] methodCode, int[] roots, int from, int to, int grain) {
+            this.dex = dex;
+            this.methodCode = methodCode;
+            this.roots = roots;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected ReferenceSet compute() {
+            if (to - from <= grain) {
+                ReferenceSet references = new ReferenceSet(dex);
+                for (int i = from; i < to; i++) {
+                    CodeReferences.visit(dex, methodCode[roots[i]], false, references);
+                }
+                return references;
+            }
+            int mid = (from + to) >>> 1;
+            SeedTask left = new SeedTask(dex, methodCode, roots, from, mid, grain);
+            left.fork();
+            ReferenceSet right = new SeedTask(dex, methodCode, roots, mid, to, grain).compute();
+            ReferenceSet merged = left.join();
+            merged.or(right);
+            return merged;
+        }
+    }
+
+    /**
+     * The sequential part: hierarchy tables, root selection and the worklist.
+     */
+    private static final class Tracer implements ReferenceVisitor {
+        final DexFile dex;
+        final ByteBuffer buf;
+        final int[] methodClassDef;
+        final int[] methodCode;
+        final long[] virtualMethods;
+        final int[] fieldClassDef;
+        final long[] liveMethods;
+        final long[] liveFields;
+        final long[] liveTypes;
+        final long[] walked;
+        /** Subtypes per type, as offsets into {@link #subtypes}. */
+        final int[] subtypeStart;
+        final int[] subtypes;
+        /** Visit marks per type for hierarchy walks, compared against {@link #epoch}. */
+        final int[] marks;
+        int epoch;
+        final int clinitName;
+        final ReferenceSet seen;
+        final LongSet dispatched = new LongSet();
+        int[] methodQueue = new int[256];
+        int methodQueueSize;
+        int[] typeQueue = new int[256];
+        int typeQueueSize;
+        int[] stack = new int[64];
+
+        Tracer(DexFile dex) {
+            this.dex = dex;
+            this.buf = dex.buffer();
+            int methods = dex.methodCount();
+            int fields = dex.fieldCount();
+            int types = dex.typeCount();
+            this.methodClassDef = new int[methods];
+            this.methodCode = new int[methods];
+            this.virtualMethods = new long[(methods + 63) >>> 6];
+            this.fieldClassDef = new int[fields];
+            this.liveMethods = new long[(methods + 63) >>> 6];
+            this.liveFields = new long[(fields + 63) >>> 6];
+            this.liveTypes = new long[(types + 63) >>> 6];
+            this.walked = new long[(methods + 63) >>> 6];
+            this.marks = new int[types];
+            this.seen = new ReferenceSet(dex);
+            this.clinitName = dex.findString("<clinit>");
+            Arrays.fill(methodClassDef, DexFile.NO_INDEX);
+            Arrays.fill(fieldClassDef, DexFile.NO_INDEX);
+            int classes = dex.classDefCount();
+            int[] subtypeCount = new int[types + 1];
+            for (int c = 0; c < classes; c++) {
+                ClassData data = dex.classData(c);
+                if (data != null) {
+                    for (int[] list : new int[][]{data.getStaticFields(), data.getInstanceFields()}) {
+                        for (int i = 0; i < list.length; i += 2) {
+                            fieldClassDef[list[i]] = c;
+                        }
+                    }
+                    int[] direct = data.getDirectMethods();
+                    for (int i = 0; i < direct.length; i += 3) {
+                        methodClassDef[direct[i]] = c;
+                        methodCode[direct[i]] = direct[i + 2];
+                    }
+                    int[] virtual = data.getVirtualMethods();
+                    for (int i = 0; i < virtual.length; i += 3) {
+                        methodClassDef[virtual[i]] = c;
+                        methodCode[virtual[i]] = virtual[i + 2];
+                        set(virtualMethods, virtual[i]);
+                    }
+                }
+                int superclass = dex.classSuperclass(c);
+                if (superclass != DexFile.NO_INDEX) {
+                    subtypeCount[superclass]++;
+                }
+                for (int type : dex.typeList(dex.classInterfacesOffset(c))) {
+                    subtypeCount[type]++;
+                }
+            }
+            this.subtypeStart = new int[types + 1];
+            for (int t = 0; t < types; t++) {
+                subtypeStart[t + 1] = subtypeStart[t] + subtypeCount[t];
+            }
+            this.subtypes = new int[subtypeStart[types]];
+            int[] fill = Arrays.copyOf(subtypeStart, types);
+            for (int c = 0; c < classes; c++) {
+                int type = dex.classType(c);
+                int superclass = dex.classSuperclass(c);
+                if (superclass != DexFile.NO_INDEX) {
+                    subtypes[fill[superclass]++] = type;
+                }
+                for (int itf : dex.typeList(dex.classInterfacesOffset(c))) {
+                    subtypes[fill[itf]++] = type;
+                }
+            }
+        }
+
+        /**
+         * Marks the roots live and returns those with code.
+         */
+        int[] roots(RuleManifest manifest, RemovalRules removal, Set<String> entryPoints) {
+            int classes = dex.classDefCount();
+            int objectType = dex.findType(OBJECT);
+            byte[] external = new byte[classes];
+            int[] roots = new int[64];
+            int n = 0;
+            for (int c = 0; c < classes; c++) {
+                String descriptor = dex.classDescriptor(c);
+                if (removal != null && removal.match(descriptor) != RemovalRules.NO_MATCH) {
+                    continue;
+                }
+                RuleManifest.ClassRule rule = manifest == null ? null : manifest.find(descriptor);
+                long flags = rule == null ? 0 : rule.getFlags();
+                if ((flags & RuleFlags.CLASS_REMOVE) != 0) {
+                    continue;
+                }
+                ClassData data = dex.classData(c);
+                markType(dex.classType(c));
+                if (data == null) {
+                    continue;
+                }
+                boolean entry = entryPoints.contains(descriptor);
+                boolean fieldsOptional = !entry && (flags & RuleFlags.CLASS_REMOVE_UNUSED_FIELDS) != 0;
+                boolean methodsOptional = !entry && (flags & RuleFlags.CLASS_REMOVE_UNUSED_METHODS) != 0;
+                Set<String> kept = fieldsOptional || methodsOptional ? keptMembers(rule) : null;
+                for (int[] list : new int[][]{data.getStaticFields(), data.getInstanceFields()}) {
+                    for (int i = 0; i < list.length; i += 2) {
+                        int field = list[i];
+                        if (!fieldsOptional || kept.contains(dex.string(dex.fieldName(field)) + ":"
+                                + dex.typeDescriptor(dex.fieldType(field)))) {
+                            set(liveFields, field);
+                        }
+                    }
+                }
+                boolean callback = methodsOptional && hasExternalSupertype(c, objectType, external);
+                for (int[] list : new int[][]{data.getDirectMethods(), data.getVirtualMethods()}) {
+                    for (int i = 0; i < list.length; i += 3) {
+                        int method = list[i];
+                        if (methodsOptional && !kept.contains(memberKey(method))
+                                && !(get(virtualMethods, method) && (callback || overridesObject(method)))) {
+                            continue;
+                        }
+                        set(liveMethods, method);
+                        if (list[i + 2] != 0) {
+                            set(walked, method);
+                            if (n == roots.length) {
+                                roots = Arrays.copyOf(roots, n * 2);
+                            }
+                            roots[n++] = method;
+                        }
+                    }
+                }
+            }
+            return Arrays.copyOf(roots, n);
+        }
+
+        /**
+         * @return {@code name:type} of fields and {@code name + proto} of methods kept by mirror rules
+         */
+        private static Set<String> keptMembers(RuleManifest.ClassRule rule) {
+            Set<String> kept = new HashSet<>();
+            if (rule == null) {
+                return kept;
+            }
+            for (RuleManifest.MemberRule member : rule.getFields()) {
+                if ((member.getFlags() & (RuleFlags.FIELD_REMOVE | RuleFlags.FIELD_REMOVE_MARKED)) == 0) {
+                    kept.add(member.getName() + ":" + member.getType());
+                }
+            }
+            for (RuleManifest.MemberRule member : rule.getMethods()) {
+                if ((member.getFlags() & (RuleFlags.METHOD_REMOVE | RuleFlags.METHOD_REMOVE_MARKED)) == 0) {
+                    kept.add(member.getName() + member.getType());
+                }
+            }
+            return kept;
+        }
+
+        private String memberKey(int method) {
+            return dex.string(dex.methodName(method)) + dex.protoDescriptor(dex.methodProto(method));
+        }
+
+        private boolean overridesObject(int method) {
+            String key = memberKey(method);
+            for (String candidate : OBJECT_METHODS) {
+                if (candidate.equals(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param state per {@code class_def}: 0 unknown, 1 in progress or internal, 2 external
+         */
+        private boolean hasExternalSupertype(int classDef, int objectType, byte[] state) {
+            if (state[classDef] != 0) {
+                return state[classDef] == 2;
+            }
+            state[classDef] = 1;
+            boolean external = false;
+            int superclass = dex.classSuperclass(classDef);
+            if (superclass != DexFile.NO_INDEX && superclass != objectType) {
+                int def = dex.classDefOfType(superclass);
+                external = def == DexFile.NO_INDEX || hasExternalSupertype(def, objectType, state);
+            }
+            for (int itf : dex.typeList(dex.classInterfacesOffset(classDef))) {
+                if (external) {
+                    break;
+                }
+                int def = dex.classDefOfType(itf);
+                external = def == DexFile.NO_INDEX || hasExternalSupertype(def, objectType, state);
+            }
+            state[classDef] = (byte) (external ? 2 : 1);
+            return external;
+        }
+
+        /**
+         * Feeds the references of the roots to the worklist and runs it to the fixed point.
+         */
+        void drain(ReferenceSet seeds) {
+            for (int kind = Opcodes.INDEX_TYPE; kind <= Opcodes.INDEX_METHOD_HANDLE; kind++) {
+                if (kind == Opcodes.INDEX_PROTO) {
+                    continue;
+                }
+                for (int i = seeds.next(kind, 0); i >= 0; i = seeds.next(kind, i + 1)) {
+                    visit(kind, i);
+                }
+            }
+            while (methodQueueSize > 0 || typeQueueSize > 0) {
+                if (typeQueueSize > 0) {
+                    processClass(typeQueue[--typeQueueSize]);
+                } else {
+                    int method = methodQueue[--methodQueueSize];
+                    CodeReferences.visit(dex, methodCode[method], false, this);
+                }
+            }
+        }
+
+        @Override
+        public void visit(int kind, int index) {
+            switch (kind) {
+                case Opcodes.INDEX_TYPE:
+                    markType(index);
+                    break;
+                case Opcodes.INDEX_FIELD:
+                    if (seen.add(kind, index)) {
+                        markType(dex.fieldClass(index));
+                        int field = resolve(dex.fieldClass(index), index, false);
+                        if (field != DexFile.NO_INDEX && set(liveFields, field)) {
+                            markType(dex.fieldClass(field));
+                        }
+                    }
+                    break;
+                case Opcodes.INDEX_METHOD:
+                    if (seen.add(kind, index)) {
+                        int owner = dex.methodClass(index);
+                        markType(owner);
+                        int method = resolve(owner, index, true);
+                        if (method != DexFile.NO_INDEX) {
+                            markMethod(method);
+                        }
+                        if (method == DexFile.NO_INDEX || get(virtualMethods, method)) {
+                            dispatch(owner, index);
+                        }
+                    }
+                    break;
+                case Opcodes.INDEX_CALL_SITE:
+                    if (seen.add(kind, index)) {
+                        EncodedValues.visitArray(buf, dex.callSiteOffset(index), this);
+                    }
+                    break;
+                case Opcodes.INDEX_METHOD_HANDLE:
+                    if (seen.add(kind, index)) {
+                        visit(dex.methodHandleType(index) <= METHOD_HANDLE_LAST_FIELD_TYPE
+                                ? Opcodes.INDEX_FIELD : Opcodes.INDEX_METHOD, dex.methodHandleMember(index));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void markMethod(int method) {
+            if (set(liveMethods, method)) {
+                markType(dex.methodClass(method));
+            }
+            if (methodCode[method] != 0 && set(walked, method)) {
+                if (methodQueueSize == methodQueue.length) {
+                    methodQueue = Arrays.copyOf(methodQueue, methodQueueSize * 2);
+                }
+                methodQueue[methodQueueSize++] = method;
+            }
+        }
+
+        private void markType(int type) {
+            if (!set(liveTypes, type)) {
+                return;
+            }
+            if (dex.classDefOfType(type) == DexFile.NO_INDEX) {
+                // Array types keep their element class alive
+                String descriptor = dex.typeDescriptor(type);
+                if (descriptor.charAt(0) == '[') {
+                    int element = dex.findType(descriptor.substring(descriptor.lastIndexOf('[') + 1));
+                    if (element != DexFile.NO_INDEX) {
+                        markType(element);
+                    }
+                }
+                return;
+            }
+            if (typeQueueSize == typeQueue.length) {
+                typeQueue = Arrays.copyOf(typeQueue, typeQueueSize * 2);
+            }
+            typeQueue[typeQueueSize++] = type;
+        }
+
+        /**
+         * Marks the supertypes, static initializer, static values and annotations of a live class.
+         */
+        private void processClass(int type) {
+            int classDef = dex.classDefOfType(type);
+            int superclass = dex.classSuperclass(classDef);
+            if (superclass != DexFile.NO_INDEX) {
+                markType(superclass);
+            }
+            for (int itf : dex.typeList(dex.classInterfacesOffset(classDef))) {
+                markType(itf);
+            }
+            int staticValues = dex.classStaticValuesOffset(classDef);
+            if (staticValues != 0) {
+                EncodedValues.visitArray(buf, staticValues, this);
+            }
+            int directory = dex.classAnnotationsOffset(classDef);
+            if (directory != 0) {
+                EncodedValues.visitAnnotationSet(buf, buf.getInt(directory), this);
+                int fields = buf.getInt(directory + 4);
+                int methods = buf.getInt(directory + 8);
+                int parameters = buf.getInt(directory + 12);
+                int pos = directory + 16;
+                for (int i = 0; i < fields; i++, pos += 8) {
+                    EncodedValues.visitAnnotationSet(buf, buf.getInt(pos + 4), this);
+                }
+                for (int i = 0; i < methods; i++, pos += 8) {
+                    EncodedValues.visitAnnotationSet(buf, buf.getInt(pos + 4), this);
+                }
+                for (int i = 0; i < parameters; i++, pos += 8) {
+                    EncodedValues.visitAnnotationSetRefList(buf, buf.getInt(pos + 4), this);
+                }
+            }
+            if (clinitName == DexFile.NO_INDEX) {
+                return;
+            }
+            ClassData data = dex.classData(classDef);
+            if (data != null) {
+                int[] direct = data.getDirectMethods();
+                for (int i = 0; i < direct.length; i += 3) {
+                    if (dex.methodName(direct[i]) == clinitName) {
+                        markMethod(direct[i]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Looks a member reference up in its class and then in the supertypes.
+         *
+         * @return the defining member id, or {@link DexFile#NO_INDEX} if it is defined in another file
+         */
+        private int resolve(int owner, int reference, boolean method) {
+            int[] defining = method ? methodClassDef : fieldClassDef;
+            if (defining[reference] != DexFile.NO_INDEX) {
+                return reference;
+            }
+            int name = method ? dex.methodName(reference) : dex.fieldName(reference);
+            int type = method ? dex.methodProto(reference) : dex.fieldType(reference);
+            int top = 0;
+            push(top++, owner);
+            epoch++;
+            while (top > 0) {
+                int current = stack[--top];
+                // Each type once, shared interfaces and malformed cycles are skipped
+                if (marks[current] == epoch) {
+                    continue;
+                }
+                marks[current] = epoch;
+                int classDef = dex.classDefOfType(current);
+                if (classDef == DexFile.NO_INDEX) {
+                    continue;
+                }
+                int id = find(dex.classType(classDef), name, type, method);
+                if (id != DexFile.NO_INDEX && defining[id] == classDef) {
+                    return id;
+                }
+                for (int itf : dex.typeList(dex.classInterfacesOffset(classDef))) {
+                    push(top++, itf);
+                }
+                int superclass = dex.classSuperclass(classDef);
+                if (superclass != DexFile.NO_INDEX) {
+                    // Pushed last so the superclass chain is searched before interfaces
+                    push(top++, superclass);
+                }
+            }
+            return DexFile.NO_INDEX;
+        }
+
+        /**
+         * Marks every override of a virtual method below the receiver type.
+         */
+        private void dispatch(int owner, int reference) {
+            int name = dex.methodName(reference);
+            int proto = dex.methodProto(reference);
+            if (!dispatched.add((long) name << 32 | (long) owner << 16 | proto)) {
+                return;
+            }
+            int top = 0;
+            push(top++, owner);
+            epoch++;
+            marks[owner] = epoch;
+            while (top > 0) {
+                int type = stack[--top];
+                for (int i = subtypeStart[type]; i < subtypeStart[type + 1]; i++) {
+                    int subtype = subtypes[i];
+                    if (marks[subtype] == epoch) {
+                        continue;
+                    }
+                    marks[subtype] = epoch;
+                    int method = implementation(subtype, name, proto);
+                    if (method != DexFile.NO_INDEX) {
+                        markMethod(method);
+                    }
+                    push(top++, subtype);
+                }
+            }
+        }
+
+        /**
+         * Finds the virtual method a call on {@code type} runs, walking up the superclass chain. An
+         * inherited implementation may sit in a class that is not itself a subtype of the receiver,
+         * as {@code A.m} for {@code class B extends A implements I} called through {@code I.m}.
+         *
+         * @return the method id, or {@link DexFile#NO_INDEX} if it is not defined in this file
+         */
+        private int implementation(int type, int name, int proto) {
+            // Bounded by the number of types, in case of a malformed superclass cycle
+            for (int i = 0; i < marks.length && type != DexFile.NO_INDEX; i++) {
+                int classDef = dex.classDefOfType(type);
+                if (classDef == DexFile.NO_INDEX) {
+                    return DexFile.NO_INDEX;
+                }
+                int method = find(type, name, proto, true);
+                if (method != DexFile.NO_INDEX && methodClassDef[method] != DexFile.NO_INDEX
+                        && get(virtualMethods, method)) {
+                    return method;
+                }
+                type = dex.classSuperclass(classDef);
+            }
+            return DexFile.NO_INDEX;
+        }
+
+        private void push(int top, int type) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top] = type;
+        }
+
+        /**
+         * Binary searches {@code method_ids} or {@code field_ids}, sorted by class, name and
+         * prototype or type.
+         */
+        private int find(int classType, int name, int type, boolean method) {
+            int lo = 0;
+            int hi = (method ? dex.methodCount() : dex.fieldCount()) - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = Integer.compare(method ? dex.methodClass(mid) : dex.fieldClass(mid), classType);
+                if (cmp == 0) {
+                    cmp = Integer.compare(method ? dex.methodName(mid) : dex.fieldName(mid), name);
+                }
+                if (cmp == 0) {
+                    cmp = Integer.compare(method ? dex.methodProto(mid) : dex.fieldType(mid), type);
+                }
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return DexFile.NO_INDEX;
+        }
+    }
+
+    /**
+     * Open addressing set of non-negative longs.
+     */
+    private static final class LongSet {
+        private static final long EMPTY = -1L;
+
+        private long[] keys = newTable(256);
+        private int size;
+
+        boolean add(long key) {
+            if (size * 2 >= keys.length) {
+                long[] old = keys;
+                keys = newTable(old.length * 2);
+                for (long k : old) {
+                    if (k != EMPTY) {
+                        insert(keys, k);
+                    }
+                }
+            }
+            if (insert(keys, key)) {
+                size++;
+                return true;
+            }
+            return false;
+        }
+
+        private static boolean insert(long[] table, long key) {
+            int mask = table.length - 1;
+            int i = (int) (key ^ (key >>> 29) ^ (key >>> 47)) * 0x9e3779b9 & mask;
+            while (table[i] != EMPTY) {
+                if (table[i] == key) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = key;
+            return true;
+        }
+
+        private static long[] newTable(int size) {
+            long[] table = new long[size];
+            Arrays.fill(table, EMPTY);
+            return table;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.metrics;
+
+import io.github.sanfengandroid.sdexter.sdk.MergeMetrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link MergeMetrics} that aggregates in memory and writes a JSON report.
+ * <p>
+ * Each phase keeps its call count, total wall and CPU time and a histogram of wall times in
+ * power of two microsecond buckets. Rules are listed with their hit counts, busiest first, and
+ * summarized in a histogram of power of two hit buckets; the {@code "0"} bucket holds the dead
+ * rules. The reporter is safe for concurrent use.
+ * </p>
+ * Report layout:
+ * <pre>
+ * {
+ *   "phases": {"classes": {"count": 1, "wallNanos": 0, "cpuNanos": 0, "wallMicrosHistogram": {"1024": 1}}},
+ *   "bytesRead": 0, "bytesWritten": 0, "classesVisited": 0, "classesSkipped": 0,
+ *   "rules": [{"kind": "REMOVE_METHOD_PATTERN", "scope": "Lcom/Foo;", "rule": "get.*", "hits": 3}],
+ *   "ruleHitHistogram": {"0": 1, "2-3": 1},
+ *   "deadRules": 1
+ * }
+ * </pre>
+ */
+public final class JsonMetricsReporter implements MergeMetrics {
+
+    private static final int BUCKETS = 64;
+
+    private final Map<String, Phase> phases = new ConcurrentHashMap<>();
+    private final Map<RuleKey, LongAdder> rules = new ConcurrentHashMap<>();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder classesVisited = new LongAdder();
+    private final LongAdder classesSkipped = new LongAdder();
+
+    @Override
+    public void phaseTime(String phase, long wallNanos, long cpuNanos) {
+        phases.computeIfAbsent(phase, key -> new Phase()).add(wallNanos, cpuNanos);
+    }
+
+    @Override
+    public void bytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    @Override
+    public void bytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    @Override
+    public void classesVisited(long count) {
+        classesVisited.add(count);
+    }
+
+    @Override
+    public void classesSkipped(long count) {
+        classesSkipped.add(count);
+    }
+
+    @Override
+    public void ruleDeclared(Rule kind, String scope, String rule) {
+        rules.computeIfAbsent(new RuleKey(kind, scope, rule), key -> new LongAdder());
+    }
+
+    @Override
+    public void ruleHit(Rule kind, String scope, String rule, long count) {
+        rules.computeIfAbsent(new RuleKey(kind, scope, rule), key -> new LongAdder()).add(count);
+    }
+
+    /**
+     * @return the hits recorded for a rule, {@code -1} if it was neither declared nor hit
+     */
+    public long hits(Rule kind, String scope, String rule) {
+        LongAdder hits = rules.get(new RuleKey(kind, scope, rule));
+        return hits == null ? -1 : hits.sum();
+    }
+
+    /**
+     * @return the total wall time of a phase, {@code 0} if it was never reported
+     */
+    public long wallNanos(String phase) {
+        Phase stats = phases.get(phase);
+        return stats == null ? 0 : stats.wall.sum();
+    }
+
+    /**
+     * Writes the report. Callbacks arriving meanwhile may or may not be included.
+     *
+     * @param out the destination, not closed
+     * @throws IOException if writing fails
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write("{\n  \"phases\": {");
+        Map<String, Phase> sortedPhases = new TreeMap<>(phases);
+        String separator = "\n";
+        for (Map.Entry<String, Phase> entry : sortedPhases.entrySet()) {
+            Phase phase = entry.getValue();
+            out.write(separator);
+            out.write("    ");
+            writeString(out, entry.getKey());
+            out.write(": {\"count\": " + phase.count.sum() + ", \"wallNanos\": " + phase.wall.sum()
+                    + ", \"cpuNanos\": " + phase.cpu.sum() + ", \"wallMicrosHistogram\": {");
+            String bucketSeparator = "";
+            for (int i = 0; i < BUCKETS; i++) {
+                long n = phase.histogram.get(i);
+                if (n != 0) {
+                    out.write(bucketSeparator + "\"" + (i == 0 ? 0 : 1L << i) + "\": " + n);
+                    bucketSeparator = ", ";
+                }
+            }
+            out.write("}}");
+            separator = ",\n";
+        }
+        out.write(sortedPhases.isEmpty() ? "},\n" : "\n  },\n");
+        out.write("  \"bytesRead\": " + bytesRead.sum() + ",\n");
+        out.write("  \"bytesWritten\": " + bytesWritten.sum() + ",\n");
+        out.write("  \"classesVisited\": " + classesVisited.sum() + ",\n");
+        out.write("  \"classesSkipped\": " + classesSkipped.sum() + ",\n");
+
+        Map<RuleKey, Long> snapshot = new TreeMap<>(RuleKey.ORDER);
+        for (Map.Entry<RuleKey, LongAdder> entry : rules.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        // Stable sort, rules with equal hits stay in kind, scope and rule order
+        List<Map.Entry<RuleKey, Long>> sorted = new ArrayList<>(snapshot.entrySet());
+        sorted.sort(Map.Entry.<RuleKey, Long>comparingByValue().reversed());
+        out.write("  \"rules\": [");
+        long[] histogram = new long[BUCKETS + 1];
+        long dead = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            RuleKey key = sorted.get(i).getKey();
+            long n = sorted.get(i).getValue();
+            out.write(i == 0 ? "\n    {\"kind\": \"" : ",\n    {\"kind\": \"");
+            out.write(key.kind.name());
+            out.write("\", \"scope\": ");
+            writeString(out, key.scope);
+            out.write(", \"rule\": ");
+            writeString(out, key.rule);
+            out.write(", \"hits\": " + n + "}");
+            if (n == 0) {
+                dead++;
+                histogram[0]++;
+            } else {
+                histogram[64 - Long.numberOfLeadingZeros(n)]++;
+            }
+        }
+        out.write(sorted.isEmpty() ? "],\n" : "\n  ],\n");
+        out.write("  \"ruleHitHistogram\": {");
+        String bucketSeparator = "";
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] == 0) {
+                continue;
+            }
+            String label;
+            if (i <= 1) {
+                label = String.valueOf(i);
+            } else {
+                long low = 1L << (i - 1);
+                label = low + "-" + (i == BUCKETS ? Long.MAX_VALUE : (low << 1) - 1);
+            }
+            out.write(bucketSeparator + "\"" + label + "\": " + histogram[i]);
+            bucketSeparator = ", ";
+        }
+        out.write("},\n");
+        out.write("  \"deadRules\": " + dead + "\n}\n");
+        out.flush();
+    }
+
+    private static void writeString(Writer out, String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+                    break;
+            }
+        }
+        out.write('"');
+    }
+
+    private static final class Phase {
+        final LongAdder count = new LongAdder();
+        final LongAdder wall = new LongAdder();
+        final LongAdder cpu = new LongAdder();
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        void add(long wallNanos, long cpuNanos) {
+            count.increment();
+            wall.add(wallNanos);
+            cpu.add(cpuNanos);
+            long micros = wallNanos / 1000;
+            histogram.incrementAndGet(micros <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(micros));
+        }
+    }
+
+    private static final class RuleKey {
+        static final Comparator<RuleKey> ORDER = Comparator.<RuleKey, Rule>comparing(key -> key.kind)
+                .thenComparing(key -> key.scope)
+                .thenComparing(key -> key.rule);
+
+        final Rule kind;
+        final String scope;
+        final String rule;
+
+        RuleKey(Rule kind, String scope, String rule) {
+            this.kind = kind;
+            this.scope = scope;
+            this.rule = rule;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RuleKey)) {
+                return false;
+            }
+            RuleKey other = (RuleKey) o;
+            return kind == other.kind && scope.equals(other.scope) && rule.equals(other.rule);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, scope, rule);
+        }
+    }
+}
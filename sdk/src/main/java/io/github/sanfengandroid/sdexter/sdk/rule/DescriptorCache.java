@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.rule;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, direct-mapped memo table from a string to its rewritten form and the rules that
+ * produced it.
+ * <p>
+ * Each slot holds one immutable entry selected by the key's hash; a colliding insert simply
+ * replaces the previous entry. A hit costs one array read and one string comparison and
+ * allocates nothing, which suits descriptors that repeat millions of times in protos and field
+ * types. Safe for concurrent use without locking.
+ * </p>
+ */
+final class DescriptorCache {
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+
+    /**
+     * @param capacity maximum number of entries, rounded up to a power of two
+     */
+    DescriptorCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return the cached entry, or {@code null} on a miss
+     */
+    Entry get(String key) {
+        Entry entry = slots.get(spread(key.hashCode()) & mask);
+        if (entry != null && (entry.key == key || entry.key.equals(key))) {
+            return entry;
+        }
+        return null;
+    }
+
+    void put(Entry entry) {
+        slots.lazySet(spread(entry.key.hashCode()) & mask, entry);
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    static final class Entry {
+        final String key;
+        /**
+         * The rewritten form, or {@link #key} itself when unchanged.
+         */
+        final String value;
+        /**
+         * Ids of the rules applied by the rewrite, one per rewritten package name.
+         */
+        final int[] rules;
+
+        Entry(String key, String value, int[] rules) {
+            this.key = key;
+            this.value = value;
+            this.rules = rules;
+        }
+    }
+}
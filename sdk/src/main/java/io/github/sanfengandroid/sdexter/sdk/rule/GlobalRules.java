@@ -0,0 +1,521 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.rule;
+
+import io.github.sanfengandroid.sdexter.sdk.GlobalConfig;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Merges several {@link GlobalConfig} classes into one configuration.
+ * <p>
+ * Configurations are ordered by descending {@link GlobalConfig#priority()}, then by name, and
+ * every list attribute is the concatenation of the lists in that order. Since
+ * {@link RemovalRules} and {@link PackageRenamer} let the first declaration win, the higher
+ * priority configuration wins wherever two of them disagree. The merged view returned by
+ * {@link #getConfig()} is itself a {@link GlobalConfig}, so it is compiled once into one
+ * {@link RemovalRules} and one {@link PackageRenamer} whose patterns are sharded by top-level
+ * package, and evaluation cost stays flat as configurations are added.
+ * </p>
+ * <p>
+ * Disagreements are reported as {@link Conflict}s: an error between configurations of equal
+ * priority, where precedence is only decided by class name, and a warning when a higher priority
+ * overrides a lower one. Scalars merge as follows:
+ * </p>
+ * <ul>
+ *     <li>{@code removeSourceFile} is set if any configuration sets it, {@code skipRClass} is
+ *     cleared if any configuration clears it.</li>
+ *     <li>{@code sourceFile} comes from the first configuration in order that sets one; other
+ *     values conflict.</li>
+ *     <li>{@code version} must be the same in all configurations setting it.</li>
+ * </ul>
+ * Instances are immutable.
+ */
+public final class GlobalRules {
+
+    private final List<String> names;
+    private final Merged merged;
+    private final List<Conflict> conflicts;
+    /** Start of each configuration in the merged removal lists, by {@link RemovalRules.Kind}. */
+    private final int[][] offsets;
+
+    private GlobalRules(List<String> names, List<GlobalConfig> configs) {
+        this.names = Collections.unmodifiableList(names);
+        this.conflicts = new ArrayList<>();
+        this.offsets = new int[RemovalRules.Kind.values().length][configs.size() + 1];
+        this.merged = new Merged(configs);
+        mergeScalars(configs);
+        checkRenames(configs);
+        checkRemovedRenames(configs);
+    }
+
+    /**
+     * Merges global configurations.
+     *
+     * @param configs configurations by name, usually the qualified name of the annotated class
+     * @return the merged rules
+     */
+    public static GlobalRules merge(Map<String, GlobalConfig> configs) {
+        List<Map.Entry<String, GlobalConfig>> entries = new ArrayList<>(configs.entrySet());
+        entries.sort(Comparator.<Map.Entry<String, GlobalConfig>>comparingInt(e -> -e.getValue().priority())
+                .thenComparing(Map.Entry::getKey));
+        List<String> names = new ArrayList<>(entries.size());
+        List<GlobalConfig> ordered = new ArrayList<>(entries.size());
+        for (Map.Entry<String, GlobalConfig> entry : entries) {
+            names.add(entry.getKey());
+            ordered.add(entry.getValue());
+        }
+        return new GlobalRules(names, ordered);
+    }
+
+    /**
+     * @return the merged configuration, {@link GlobalConfig#skipTypes()} is only resolved when called
+     */
+    public GlobalConfig getConfig() {
+        return merged;
+    }
+
+    /**
+     * @return the configuration names in precedence order
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * @return the conflicts found while merging, in precedence order of the overridden configuration
+     */
+    public List<Conflict> getConflicts() {
+        return Collections.unmodifiableList(conflicts);
+    }
+
+    /**
+     * @return {@code true} if a conflict is an error
+     */
+    public boolean hasErrors() {
+        for (Conflict conflict : conflicts) {
+            if (conflict.isError()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param rule a rule id returned by {@link RemovalRules#match(CharSequence)} on rules compiled
+     *             from {@link #getConfig()}
+     * @return the name of the configuration that declared the rule
+     */
+    public String origin(int rule) {
+        int[] starts = offsets[RemovalRules.kindOf(rule).ordinal()];
+        int index = RemovalRules.indexOf(rule);
+        int config = 0;
+        while (config + 1 < names.size() && starts[config + 1] <= index) {
+            config++;
+        }
+        return names.get(config);
+    }
+
+    private void mergeScalars(List<GlobalConfig> configs) {
+        scalar(configs, "sourceFile", GlobalConfig::sourceFile, "");
+        int first = -1;
+        for (int i = 0; i < configs.size(); i++) {
+            String version = configs.get(i).version();
+            if (version.isEmpty()) {
+                continue;
+            }
+            if (first < 0) {
+                first = i;
+            } else if (!version.equals(configs.get(first).version())) {
+                conflict(true, i, "version " + version + " differs from " + configs.get(first).version()
+                        + " in " + names.get(first));
+            }
+        }
+    }
+
+    private void scalar(List<GlobalConfig> configs, String attribute, Function<GlobalConfig, String> getter,
+                        String unset) {
+        int winner = -1;
+        for (int i = 0; i < configs.size(); i++) {
+            String value = getter.apply(configs.get(i));
+            if (value.equals(unset)) {
+                continue;
+            }
+            if (winner < 0) {
+                winner = i;
+            } else if (!value.equals(getter.apply(configs.get(winner)))) {
+                conflictWith(configs, winner, i, attribute + " " + value + " is overridden by "
+                        + getter.apply(configs.get(winner)));
+            }
+        }
+    }
+
+    /**
+     * Reports a literal package renamed to different targets, a pattern with different
+     * replacements, or different packages moved to the same target.
+     */
+    private void checkRenames(List<GlobalConfig> configs) {
+        Map<String, Integer> sources = new HashMap<>();
+        Map<String, String> targets = new HashMap<>();
+        Map<String, Integer> targetOwners = new HashMap<>();
+        Map<String, String> targetSources = new HashMap<>();
+        Map<String, Integer> patterns = new HashMap<>();
+        Map<String, String> replacements = new HashMap<>();
+        for (int i = 0; i < configs.size(); i++) {
+            String[] pairs = configs.get(i).renamePackages();
+            for (int j = 0; j + 1 < pairs.length; j += 2) {
+                String from = pairs[j].replace('.', '/');
+                String to = pairs[j + 1].replace('.', '/');
+                Integer owner = sources.putIfAbsent(from, i);
+                if (owner == null) {
+                    targets.put(from, to);
+                } else if (owner != i && !targets.get(from).equals(to)) {
+                    conflictWith(configs, owner, i, "renamePackages " + pairs[j] + " -> " + pairs[j + 1]
+                            + " is overridden by " + pairs[j] + " -> " + targets.get(from).replace('/', '.'));
+                    continue;
+                }
+                Integer targetOwner = targetOwners.putIfAbsent(to, i);
+                if (targetOwner == null) {
+                    targetSources.put(to, from);
+                } else if (targetOwner != i && !targetSources.get(to).equals(from)) {
+                    conflicts.add(new Conflict(false, names.get(i), "renamePackages moves " + pairs[j]
+                            + " to " + pairs[j + 1] + ", which " + names.get(targetOwner) + " also uses for "
+                            + targetSources.get(to).replace('/', '.')));
+                }
+            }
+            String[] patternPairs = configs.get(i).renamePackagePatterns();
+            for (int j = 0; j + 1 < patternPairs.length; j += 2) {
+                Integer owner = patterns.putIfAbsent(patternPairs[j], i);
+                if (owner == null) {
+                    replacements.put(patternPairs[j], patternPairs[j + 1]);
+                } else if (owner != i && !replacements.get(patternPairs[j]).equals(patternPairs[j + 1])) {
+                    conflictWith(configs, owner, i, "renamePackagePatterns " + patternPairs[j] + " -> "
+                            + patternPairs[j + 1] + " is overridden by " + replacements.get(patternPairs[j]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Warns about packages one configuration removes and another renames; removal wins.
+     */
+    private void checkRemovedRenames(List<GlobalConfig> configs) {
+        Map<String, Integer> removed = new HashMap<>();
+        for (int i = 0; i < configs.size(); i++) {
+            for (String name : configs.get(i).removePackages()) {
+                removed.putIfAbsent(name, i);
+            }
+        }
+        for (int i = 0; i < configs.size(); i++) {
+            String[] pairs = configs.get(i).renamePackages();
+            for (int j = 0; j + 1 < pairs.length; j += 2) {
+                Integer owner = removed.get(pairs[j]);
+                if (owner != null && owner != i) {
+                    conflicts.add(new Conflict(false, names.get(i), "renamePackages " + pairs[j]
+                            + " has no effect, the package is removed by " + names.get(owner)));
+                }
+            }
+        }
+    }
+
+    private void conflictWith(List<GlobalConfig> configs, int winner, int loser, String message) {
+        boolean tie = configs.get(winner).priority() == configs.get(loser).priority();
+        conflict(tie, loser, message + " from " + names.get(winner)
+                + (tie ? ", set a different priority to choose one" : ""));
+    }
+
+    private void conflict(boolean error, int config, String message) {
+        conflicts.add(new Conflict(error, names.get(config), message));
+    }
+
+    /**
+     * A disagreement between two configurations.
+     */
+    public static final class Conflict {
+        private final boolean error;
+        private final String name;
+        private final String message;
+
+        Conflict(boolean error, String name, String message) {
+            this.error = error;
+            this.name = name;
+            this.message = message;
+        }
+
+        /**
+         * @return {@code true} for an error, {@code false} for a warning
+         */
+        public boolean isError() {
+            return error;
+        }
+
+        /**
+         * @return the name of the overridden configuration
+         */
+        public String getName() {
+            return name;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return (error ? "error: " : "warning: ") + name + ": " + message;
+        }
+    }
+
+    /**
+     * The merged values. Not a real annotation instance, but {@link #equals(Object)},
+     * {@link #hashCode()} and {@link #toString()} follow the {@link Annotation} contract, so a
+     * merged view equals any {@link GlobalConfig} with the same attribute values. Those three
+     * resolve {@link #skipTypes()}.
+     */
+    private final class Merged implements GlobalConfig {
+        private final List<GlobalConfig> configs;
+        private final boolean removeSourceFile;
+        private final String sourceFile;
+        private final String[] removeClasses;
+        private final String[] removeClassPatterns;
+        private final String[] removePackages;
+        private final String[] removePackagePatterns;
+        private final String[] renamePackages;
+        private final String[] renamePackagePatterns;
+        private final boolean skipRClass;
+        private final String[] skipClasses;
+        private final String version;
+        private final int priority;
+        private volatile Class<?>[] skipTypes;
+
+        Merged(List<GlobalConfig> configs) {
+            this.configs = configs;
+            boolean removeSourceFile = false;
+            String sourceFile = "";
+            boolean skipRClass = true;
+            String version = "";
+            for (GlobalConfig config : configs) {
+                removeSourceFile |= config.removeSourceFile();
+                sourceFile = sourceFile.isEmpty() ? config.sourceFile() : sourceFile;
+                skipRClass &= config.skipRClass();
+                version = version.isEmpty() ? config.version() : version;
+            }
+            this.removeSourceFile = removeSourceFile;
+            this.sourceFile = sourceFile;
+            this.skipRClass = skipRClass;
+            this.version = version;
+            this.priority = configs.isEmpty() ? 0 : configs.get(0).priority();
+            this.removeClasses = concat(configs, GlobalConfig::removeClasses, RemovalRules.Kind.CLASS);
+            this.removeClassPatterns = concat(configs, GlobalConfig::removeClassPatterns, RemovalRules.Kind.CLASS_PATTERN);
+            this.removePackages = concat(configs, GlobalConfig::removePackages, RemovalRules.Kind.PACKAGE);
+            this.removePackagePatterns = concat(configs, GlobalConfig::removePackagePatterns, RemovalRules.Kind.PACKAGE_PATTERN);
+            this.renamePackages = concat(configs, GlobalConfig::renamePackages, null);
+            this.renamePackagePatterns = concat(configs, GlobalConfig::renamePackagePatterns, null);
+            this.skipClasses = concat(configs, GlobalConfig::skipClasses, null);
+        }
+
+        private String[] concat(List<GlobalConfig> configs, Function<GlobalConfig, String[]> getter,
+                                RemovalRules.Kind kind) {
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < configs.size(); i++) {
+                if (kind != null) {
+                    offsets[kind.ordinal()][i] = values.size();
+                }
+                Collections.addAll(values, getter.apply(configs.get(i)));
+            }
+            if (kind != null) {
+                offsets[kind.ordinal()][configs.size()] = values.size();
+            }
+            return values.toArray(new String[0]);
+        }
+
+        @Override
+        public boolean removeSourceFile() {
+            return removeSourceFile;
+        }
+
+        @Override
+        public String sourceFile() {
+            return sourceFile;
+        }
+
+        @Override
+        public String[] removeClasses() {
+            return removeClasses.clone();
+        }
+
+        @Override
+        public String[] removeClassPatterns() {
+            return removeClassPatterns.clone();
+        }
+
+        @Override
+        public String[] removePackages() {
+            return removePackages.clone();
+        }
+
+        @Override
+        public String[] removePackagePatterns() {
+            return removePackagePatterns.clone();
+        }
+
+        @Override
+        public String[] renamePackages() {
+            return renamePackages.clone();
+        }
+
+        @Override
+        public String[] renamePackagePatterns() {
+            return renamePackagePatterns.clone();
+        }
+
+        @Override
+        public boolean skipRClass() {
+            return skipRClass;
+        }
+
+        @Override
+        public String[] skipClasses() {
+            return skipClasses.clone();
+        }
+
+        @Override
+        public Class<?>[] skipTypes() {
+            Class<?>[] types = skipTypes;
+            if (types == null) {
+                // Resolved lazily: an annotation processor cannot load the classes
+                Set<Class<?>> union = new LinkedHashSet<>();
+                for (GlobalConfig config : configs) {
+                    for (Class<?> type : config.skipTypes()) {
+                        union.add(type);
+                    }
+                }
+                types = union.toArray(new Class<?>[0]);
+                skipTypes = types;
+            }
+            return types.clone();
+        }
+
+        @Override
+        public String version() {
+            return version;
+        }
+
+        @Override
+        public int priority() {
+            return priority;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType() {
+            return GlobalConfig.class;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof GlobalConfig)) {
+                return false;
+            }
+            GlobalConfig other = (GlobalConfig) o;
+            return removeSourceFile == other.removeSourceFile()
+                    && sourceFile.equals(other.sourceFile())
+                    && Arrays.equals(removeClasses, other.removeClasses())
+                    && Arrays.equals(removeClassPatterns, other.removeClassPatterns())
+                    && Arrays.equals(removePackages, other.removePackages())
+                    && Arrays.equals(removePackagePatterns, other.removePackagePatterns())
+                    && Arrays.equals(renamePackages, other.renamePackages())
+                    && Arrays.equals(renamePackagePatterns, other.renamePackagePatterns())
+                    && skipRClass == other.skipRClass()
+                    && Arrays.equals(skipClasses, other.skipClasses())
+                    && Arrays.equals(skipTypes(), other.skipTypes())
+                    && version.equals(other.version())
+                    && priority == other.priority();
+        }
+
+        /**
+         * The sum over attributes of {@code 127 * name.hashCode() ^ valueHash}, as specified by
+         * {@link Annotation#hashCode()}.
+         */
+        @Override
+        public int hashCode() {
+            return member("removeSourceFile", Boolean.hashCode(removeSourceFile))
+                    + member("sourceFile", sourceFile.hashCode())
+                    + member("removeClasses", Arrays.hashCode(removeClasses))
+                    + member("removeClassPatterns", Arrays.hashCode(removeClassPatterns))
+                    + member("removePackages", Arrays.hashCode(removePackages))
+                    + member("removePackagePatterns", Arrays.hashCode(removePackagePatterns))
+                    + member("renamePackages", Arrays.hashCode(renamePackages))
+                    + member("renamePackagePatterns", Arrays.hashCode(renamePackagePatterns))
+                    + member("skipRClass", Boolean.hashCode(skipRClass))
+                    + member("skipClasses", Arrays.hashCode(skipClasses))
+                    + member("skipTypes", Arrays.hashCode(skipTypes()))
+                    + member("version", version.hashCode())
+                    + member("priority", Integer.hashCode(priority));
+        }
+
+        private int member(String name, int valueHash) {
+            return (127 * name.hashCode()) ^ valueHash;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("@").append(GlobalConfig.class.getName())
+                    .append("(removeSourceFile=").append(removeSourceFile)
+                    .append(", sourceFile=").append(quote(sourceFile));
+            appendStrings(builder, "removeClasses", removeClasses);
+            appendStrings(builder, "removeClassPatterns", removeClassPatterns);
+            appendStrings(builder, "removePackages", removePackages);
+            appendStrings(builder, "removePackagePatterns", removePackagePatterns);
+            appendStrings(builder, "renamePackages", renamePackages);
+            appendStrings(builder, "renamePackagePatterns", renamePackagePatterns);
+            builder.append(", skipRClass=").append(skipRClass);
+            appendStrings(builder, "skipClasses", skipClasses);
+            builder.append(", skipTypes={");
+            Class<?>[] types = skipTypes();
+            for (int i = 0; i < types.length; i++) {
+                builder.append(i == 0 ? "" : ", ").append(types[i].getCanonicalName()).append(".class");
+            }
+            return builder.append("}, version=").append(quote(version))
+                    .append(", priority=").append(priority)
+                    .append(')').toString();
+        }
+
+        private void appendStrings(StringBuilder builder, String name, String[] values) {
+            builder.append(", ").append(name).append("={");
+            for (int i = 0; i < values.length; i++) {
+                builder.append(i == 0 ? "" : ", ").append(quote(values[i]));
+            }
+            builder.append('}');
+        }
+
+        private String quote(String value) {
+            return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.rule;
+
+/**
+ * Open addressing map from string keys to int values that can be queried with a region of a
+ * {@link CharSequence} and a precomputed hash, so lookups never build a substring.
+ * <p>
+ * Hashes follow {@link String#hashCode()}, which lets callers extend the hash one character
+ * at a time while walking a descriptor. Immutable after construction.
+ * </p>
+ */
+final class LiteralTable {
+
+    private final String[] keys;
+    private final int[] values;
+    private final int mask;
+    private final int size;
+
+    /**
+     * @param keys   the keys; on duplicates the first occurrence wins
+     * @param values the value of each key
+     */
+    LiteralTable(String[] keys, int[] values) {
+        int capacity = Integer.highestOneBit(Math.max(4, keys.length * 2) - 1) << 1;
+        this.keys = new String[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int slot = keys[i].hashCode() & mask;
+            while (this.keys[slot] != null && !this.keys[slot].equals(keys[i])) {
+                slot = (slot + 1) & mask;
+            }
+            if (this.keys[slot] == null) {
+                this.keys[slot] = keys[i];
+                this.values[slot] = values[i];
+                count++;
+            }
+        }
+        this.size = count;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Looks up the key equal to {@code input[start, end)}.
+     *
+     * @param hash {@link String#hashCode()} of the region
+     * @return the value, or {@code -1} if absent
+     */
+    int get(CharSequence input, int start, int end, int hash) {
+        int slot = hash & mask;
+        String key;
+        int length = end - start;
+        while ((key = keys[slot]) != null) {
+            if (key.hashCode() == hash && key.length() == length && regionEquals(key, input, start)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    int get(CharSequence input, int start, int end) {
+        return get(input, start, end, hash(input, start, end));
+    }
+
+    static int hash(CharSequence input, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + input.charAt(i);
+        }
+        return h;
+    }
+
+    private static boolean regionEquals(String key, CharSequence input, int start) {
+        for (int i = 0, n = key.length(); i < n; i++) {
+            if (key.charAt(i) != input.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.rule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parsed method prototype of a {@code RemoveMethods.value} entry.
+ * <p>
+ * Two spellings are accepted and yield the same prototype:
+ * </p>
+ * <pre>
+ * dex form        fun(ILcom/param/One;[Ljava/lang/String;)V
+ * readable form   void fun(int, com.param.One, java.lang.String[])
+ *                 fun(int, com.param.One, java.lang.String...) void
+ * </pre>
+ * The readable return type may precede the name or follow the parameter list. Descriptors are
+ * canonicalized once, so {@link #toString()} is the dex form used by {@code protoPatterns} and
+ * {@link #hashCode()} is precomputed. Instances are immutable.
+ */
+public final class MethodProto {
+
+    private static final String[][] PRIMITIVES = {
+            {"void", "V"}, {"boolean", "Z"}, {"byte", "B"}, {"short", "S"}, {"char", "C"},
+            {"int", "I"}, {"long", "J"}, {"float", "F"}, {"double", "D"},
+    };
+
+    private final String name;
+    private final String[] parameters;
+    private final String returnType;
+    private final String dexForm;
+    private final int hash;
+
+    private MethodProto(String name, String[] parameters, String returnType) {
+        this.name = name;
+        this.parameters = parameters;
+        this.returnType = returnType;
+        StringBuilder sb = new StringBuilder(name).append('(');
+        for (String parameter : parameters) {
+            sb.append(parameter);
+        }
+        this.dexForm = sb.append(')').append(returnType).toString();
+        this.hash = dexForm.hashCode();
+    }
+
+    /**
+     * Parses a prototype in dex or readable form.
+     *
+     * @param proto the prototype
+     * @return the parsed prototype
+     * @throws IllegalArgumentException if {@code proto} is malformed in both forms
+     */
+    public static MethodProto parse(String proto) {
+        MethodProto parsed = parseDexForm(proto);
+        if (parsed == null) {
+            parsed = parseReadable(proto);
+        }
+        if (parsed == null) {
+            throw new IllegalArgumentException("Malformed method prototype: \"" + proto + "\"");
+        }
+        return parsed;
+    }
+
+    /**
+     * @return {@code proto} in dex form
+     * @throws IllegalArgumentException if {@code proto} is malformed
+     */
+    public static String toDexForm(String proto) {
+        return parse(proto).dexForm;
+    }
+
+    private static MethodProto parseDexForm(String proto) {
+        int open = proto.indexOf('(');
+        int close = proto.indexOf(')', open + 1);
+        if (open <= 0 || close < 0 || !isName(proto, 0, open)) {
+            return null;
+        }
+        List<String> parameters = new ArrayList<>();
+        int pos = open + 1;
+        while (pos < close) {
+            int end = descriptorEnd(proto, pos, close);
+            if (end < 0 || proto.charAt(pos) == 'V') {
+                return null;
+            }
+            parameters.add(proto.substring(pos, end));
+            pos = end;
+        }
+        if (descriptorEnd(proto, close + 1, proto.length()) != proto.length()) {
+            return null;
+        }
+        return new MethodProto(proto.substring(0, open), parameters.toArray(new String[0]),
+                proto.substring(close + 1));
+    }
+
+    /**
+     * @return the end of the descriptor starting at {@code pos}, or {@code -1} if there is none before {@code limit}
+     */
+    private static int descriptorEnd(String s, int pos, int limit) {
+        int start = pos;
+        while (pos < limit && s.charAt(pos) == '[') {
+            pos++;
+        }
+        if (pos >= limit) {
+            return -1;
+        }
+        char c = s.charAt(pos);
+        if (c == 'L') {
+            int semicolon = s.indexOf(';', pos);
+            return semicolon < 0 || semicolon >= limit || semicolon == pos + 1
+                    || !isName(s, pos + 1, semicolon) ? -1 : semicolon + 1;
+        }
+        if ("ZBSCIJFD".indexOf(c) >= 0 || c == 'V' && pos == start) {
+            return pos + 1;
+        }
+        return -1;
+    }
+
+    private static MethodProto parseReadable(String proto) {
+        String s = proto.trim();
+        int open = s.indexOf('(');
+        int close = s.lastIndexOf(')');
+        if (open <= 0 || close < open) {
+            return null;
+        }
+        String head = s.substring(0, open).trim();
+        String tail = s.substring(close + 1).trim();
+        int space = head.lastIndexOf(' ');
+        String name = space < 0 ? head : head.substring(space + 1);
+        String prefix = space < 0 ? "" : head.substring(0, space).trim();
+        if (prefix.isEmpty() == tail.isEmpty() || !isName(name, 0, name.length())) {
+            return null;
+        }
+        String returnType = readableType(prefix.isEmpty() ? tail : prefix, true);
+        if (returnType == null) {
+            return null;
+        }
+        String list = s.substring(open + 1, close).trim();
+        String[] parameters = list.isEmpty() ? new String[0] : list.split(",");
+        for (int i = 0; i < parameters.length; i++) {
+            String type = parameters[i].trim();
+            if (type.endsWith("...") && i == parameters.length - 1) {
+                type = type.substring(0, type.length() - 3) + "[]";
+            }
+            parameters[i] = readableType(type, false);
+            if (parameters[i] == null) {
+                return null;
+            }
+        }
+        return new MethodProto(name, parameters, returnType);
+    }
+
+    /**
+     * Converts a Java type name such as {@code int[]} or {@code java.lang.String} to a descriptor.
+     */
+    private static String readableType(String type, boolean allowVoid) {
+        int dims = 0;
+        String base = type.trim();
+        while (base.endsWith("[]")) {
+            base = base.substring(0, base.length() - 2).trim();
+            dims++;
+        }
+        if (base.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(base.length() + dims + 2);
+        for (int i = 0; i < dims; i++) {
+            sb.append('[');
+        }
+        for (String[] primitive : PRIMITIVES) {
+            if (primitive[0].equals(base)) {
+                if (primitive[1].equals("V") && (dims > 0 || !allowVoid)) {
+                    return null;
+                }
+                return sb.append(primitive[1]).toString();
+            }
+        }
+        String internal = base.replace('.', '/');
+        if (!isName(internal, 0, internal.length()) || internal.startsWith("/") || internal.endsWith("/")) {
+            return null;
+        }
+        return sb.append('L').append(internal).append(';').toString();
+    }
+
+    /**
+     * @return {@code true} if {@code s[start, end)} is a non-empty member or class name without
+     * characters that delimit prototypes
+     */
+    private static boolean isName(String s, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '(' || c == ')' || c == ';' || c == '[' || c == ',' || c == '.' || Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the parameter type descriptors
+     */
+    public String[] getParameters() {
+        return parameters.clone();
+    }
+
+    public int getParameterCount() {
+        return parameters.length;
+    }
+
+    public String getParameter(int index) {
+        return parameters[index];
+    }
+
+    /**
+     * @return the return type descriptor
+     */
+    public String getReturnType() {
+        return returnType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof MethodProto && hash == ((MethodProto) o).hash
+                && dexForm.equals(((MethodProto) o).dexForm);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * @return the dex form, e.g. {@code fun(ILjava/lang/String;)V}
+     */
+    @Override
+    public String toString() {
+        return dexForm;
+    }
+}
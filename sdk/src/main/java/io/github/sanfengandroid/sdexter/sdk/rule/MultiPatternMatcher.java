@@ -0,0 +1,528 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.rule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Matches an input against many regular expressions in a single scan.
+ * <p>
+ * All patterns that are regular in the strict sense are compiled into one Thompson NFA and
+ * evaluated through a lazily built DFA, so the cost of a match is proportional to the input
+ * length and independent of the number of patterns. DFA states are cached and shared by all
+ * threads; the cache is dropped and rebuilt when it grows beyond a fixed number of states.
+ * </p>
+ * <p>
+ * Patterns the automaton cannot express (see {@link RegexParser}) are kept as
+ * {@link Pattern} objects and are only tried when their literal prefix matches the input.
+ * </p>
+ * Every query uses {@link java.util.regex.Matcher#matches()} semantics and returns the lowest
+ * matching pattern index, so results are identical to testing the patterns in order.
+ */
+public final class MultiPatternMatcher {
+
+    private static final int MAX_DFA_STATES = 10_000;
+    /**
+     * Bounded repeats are expanded into copies of their body, so nested bounds such as
+     * {@code ((a{1,64}){1,64}){1,64}} grow geometrically. Past this many states, the pattern that
+     * crossed the limit is matched with {@code java.util.regex} instead.
+     */
+    private static final int MAX_NFA_STATES = 1 << 18;
+
+    private static final int SET = 0;
+    private static final int SPLIT = 1;
+    private static final int MATCH = 2;
+
+    private final String[] patterns;
+
+    // NFA, state i
+    private int[] kind = new int[64];
+    private int[] out1 = new int[64];
+    private int[] out2 = new int[64];
+    private int[][] ranges = new int[64][];
+    private long[] asciiLow = new long[64];
+    private long[] asciiHigh = new long[64];
+    private int stateCount;
+    private final int[] starts;
+
+    private final int[] fallbackIndex;
+    private final String[] fallbackPrefix;
+    private final Pattern[] fallbackPattern;
+    private volatile Pattern[] allCompiled;
+
+    private final Map<StateKey, DState> dfaCache = new ConcurrentHashMap<>();
+    private volatile DState startState;
+
+    private MultiPatternMatcher(String[] patterns) {
+        this.patterns = patterns;
+        List<Integer> nfaStarts = new ArrayList<>();
+        List<Integer> fallbacks = new ArrayList<>();
+        for (int i = 0; i < patterns.length; i++) {
+            RegexParser.Node root;
+            try {
+                root = RegexParser.parse(patterns[i]);
+            } catch (RegexParser.UnsupportedRegexException e) {
+                fallbacks.add(i);
+                continue;
+            }
+            int mark = stateCount;
+            try {
+                int match = newState(MATCH, i, -1, null);
+                nfaStarts.add(compile(root, match));
+            } catch (StateLimitException e) {
+                // Nothing refers to the states of this pattern yet, drop them
+                Arrays.fill(ranges, mark, stateCount, null);
+                stateCount = mark;
+                fallbacks.add(i);
+            }
+        }
+        starts = nfaStarts.stream().mapToInt(Integer::intValue).toArray();
+        fallbackIndex = fallbacks.stream().mapToInt(Integer::intValue).toArray();
+        fallbackPrefix = new String[fallbackIndex.length];
+        fallbackPattern = new Pattern[fallbackIndex.length];
+        for (int i = 0; i < fallbackIndex.length; i++) {
+            String pattern = patterns[fallbackIndex[i]];
+            fallbackPattern[i] = Pattern.compile(pattern);
+            fallbackPrefix[i] = literalPrefix(pattern);
+        }
+    }
+
+    /**
+     * Compiles the given patterns.
+     *
+     * @param patterns regular expressions, in priority order
+     * @return the compiled matcher
+     * @throws java.util.regex.PatternSyntaxException if a pattern is invalid
+     */
+    public static MultiPatternMatcher compile(String... patterns) {
+        for (String pattern : patterns) {
+            // Validate eagerly with the reference implementation so errors match Pattern.compile
+            Pattern.compile(pattern);
+        }
+        return new MultiPatternMatcher(patterns.clone());
+    }
+
+    /**
+     * @return the number of patterns
+     */
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * @param index pattern index
+     * @return the source of the pattern
+     */
+    public String pattern(int index) {
+        return patterns[index];
+    }
+
+    /**
+     * @return the number of patterns that could not be compiled into the automaton
+     */
+    public int fallbackCount() {
+        return fallbackIndex.length;
+    }
+
+    /**
+     * Matches the whole input.
+     *
+     * @param input the text to match
+     * @return the lowest index of a pattern matching the input, or {@code -1}
+     */
+    public int match(CharSequence input) {
+        return match(input, 0, input.length());
+    }
+
+    /**
+     * Matches the region {@code [start, end)} of the input, without copying it.
+     *
+     * @param input the text to match
+     * @param start region start, inclusive
+     * @param end   region end, exclusive
+     * @return the lowest index of a pattern matching the region, or {@code -1}
+     */
+    public int match(CharSequence input, int start, int end) {
+        int best = starts.length == 0 ? -1 : runDfa(input, start, end);
+        if (best == -2) {
+            return matchSlow(input, start, end);
+        }
+        for (int i = 0; i < fallbackIndex.length; i++) {
+            int index = fallbackIndex[i];
+            if (best >= 0 && index > best) {
+                break;
+            }
+            String prefix = fallbackPrefix[i];
+            if (end - start < prefix.length() || !regionStartsWith(input, start, prefix)) {
+                continue;
+            }
+            if (fallbackPattern[i].matcher(new Region(input, start, end)).matches()) {
+                return index;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Runs the DFA, returning the lowest accepted pattern index, {@code -1} for no match or
+     * {@code -2} when the input contains surrogates, which the automaton does not model.
+     */
+    private int runDfa(CharSequence input, int start, int end) {
+        DState state = startState;
+        if (state == null) {
+            state = resetDfa();
+        }
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            DState next;
+            if (c < 128) {
+                next = state.ascii[c];
+                if (next == null) {
+                    next = step(state, c);
+                    state.ascii[c] = next;
+                }
+            } else {
+                if (Character.isSurrogate(c)) {
+                    return -2;
+                }
+                next = state.other.get(c);
+                if (next == null) {
+                    next = step(state, c);
+                    state.other.put(c, next);
+                }
+            }
+            state = next;
+            if (state.states.length == 0) {
+                return -1;
+            }
+        }
+        return state.accept;
+    }
+
+    private int matchSlow(CharSequence input, int start, int end) {
+        Pattern[] compiled = allCompiled;
+        if (compiled == null) {
+            compiled = new Pattern[patterns.length];
+            for (int i = 0; i < patterns.length; i++) {
+                compiled[i] = Pattern.compile(patterns[i]);
+            }
+            allCompiled = compiled;
+        }
+        Region region = new Region(input, start, end);
+        for (int i = 0; i < compiled.length; i++) {
+            if (compiled[i].matcher(region).matches()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private DState resetDfa() {
+        dfaCache.clear();
+        DState state = intern(closure(starts));
+        startState = state;
+        return state;
+    }
+
+    private DState step(DState from, char c) {
+        int[] current = from.states;
+        int[] targets = new int[current.length];
+        int n = 0;
+        for (int s : current) {
+            if (kind[s] == SET && contains(s, c)) {
+                targets[n++] = out1[s];
+            }
+        }
+        DState next = intern(closure(Arrays.copyOf(targets, n)));
+        if (dfaCache.size() > MAX_DFA_STATES) {
+            // Drop the whole graph; in-flight scans keep their references until they finish
+            startState = null;
+        }
+        return next;
+    }
+
+    private DState intern(int[] states) {
+        StateKey key = new StateKey(states);
+        DState state = dfaCache.get(key);
+        if (state == null) {
+            int accept = -1;
+            for (int s : states) {
+                if (kind[s] == MATCH && (accept < 0 || out1[s] < accept)) {
+                    accept = out1[s];
+                }
+            }
+            state = new DState(states, accept);
+            DState existing = dfaCache.putIfAbsent(key, state);
+            if (existing != null) {
+                state = existing;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Epsilon closure keeping only consuming and accepting states, sorted for interning.
+     */
+    private int[] closure(int[] seeds) {
+        boolean[] seen = new boolean[stateCount];
+        int[] stack = new int[stateCount];
+        int[] result = new int[stateCount];
+        int sp = 0;
+        int n = 0;
+        for (int seed : seeds) {
+            if (!seen[seed]) {
+                seen[seed] = true;
+                stack[sp++] = seed;
+            }
+        }
+        while (sp > 0) {
+            int s = stack[--sp];
+            if (kind[s] == SPLIT) {
+                if (!seen[out1[s]]) {
+                    seen[out1[s]] = true;
+                    stack[sp++] = out1[s];
+                }
+                if (out2[s] >= 0 && !seen[out2[s]]) {
+                    seen[out2[s]] = true;
+                    stack[sp++] = out2[s];
+                }
+            } else {
+                result[n++] = s;
+            }
+        }
+        int[] sorted = Arrays.copyOf(result, n);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private boolean contains(int state, char c) {
+        if (c < 64) {
+            return (asciiLow[state] & (1L << c)) != 0;
+        }
+        if (c < 128) {
+            return (asciiHigh[state] & (1L << (c - 64))) != 0;
+        }
+        int[] r = ranges[state];
+        for (int i = 0; i < r.length; i += 2) {
+            if (c < r[i]) {
+                return false;
+            }
+            if (c <= r[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the NFA for {@code node} so that it continues with state {@code next}.
+     *
+     * @return the entry state
+     */
+    private int compile(RegexParser.Node node, int next) {
+        if (node instanceof RegexParser.CharSet) {
+            return newState(SET, next, -1, ((RegexParser.CharSet) node).ranges);
+        }
+        if (node instanceof RegexParser.Concat) {
+            List<RegexParser.Node> items = ((RegexParser.Concat) node).items;
+            for (int i = items.size() - 1; i >= 0; i--) {
+                next = compile(items.get(i), next);
+            }
+            return next;
+        }
+        if (node instanceof RegexParser.Alt) {
+            List<RegexParser.Node> choices = ((RegexParser.Alt) node).choices;
+            int entry = compile(choices.get(choices.size() - 1), next);
+            for (int i = choices.size() - 2; i >= 0; i--) {
+                entry = newState(SPLIT, compile(choices.get(i), next), entry, null);
+            }
+            return entry;
+        }
+        if (node instanceof RegexParser.Repeat) {
+            RegexParser.Repeat repeat = (RegexParser.Repeat) node;
+            int tail;
+            if (repeat.max < 0) {
+                int loop = newState(SPLIT, -1, next, null);
+                // compile() may grow out1, so the array must be read after it returns
+                int body = compile(repeat.node, loop);
+                out1[loop] = body;
+                tail = loop;
+            } else {
+                tail = next;
+                for (int i = repeat.min; i < repeat.max; i++) {
+                    tail = newState(SPLIT, compile(repeat.node, tail), next, null);
+                }
+            }
+            for (int i = 0; i < repeat.min; i++) {
+                tail = compile(repeat.node, tail);
+            }
+            return tail;
+        }
+        // Empty
+        return next;
+    }
+
+    private int newState(int type, int o1, int o2, int[] set) {
+        if (stateCount == MAX_NFA_STATES) {
+            throw new StateLimitException();
+        }
+        if (stateCount == kind.length) {
+            int size = Math.min(stateCount * 2, MAX_NFA_STATES);
+            kind = Arrays.copyOf(kind, size);
+            out1 = Arrays.copyOf(out1, size);
+            out2 = Arrays.copyOf(out2, size);
+            ranges = Arrays.copyOf(ranges, size);
+            asciiLow = Arrays.copyOf(asciiLow, size);
+            asciiHigh = Arrays.copyOf(asciiHigh, size);
+        }
+        int s = stateCount++;
+        kind[s] = type;
+        out1[s] = o1;
+        out2[s] = o2;
+        ranges[s] = set;
+        if (set != null) {
+            long low = 0;
+            long high = 0;
+            for (int i = 0; i < set.length; i += 2) {
+                for (int c = set[i]; c <= Math.min(set[i + 1], 127); c++) {
+                    if (c < 64) {
+                        low |= 1L << c;
+                    } else {
+                        high |= 1L << (c - 64);
+                    }
+                }
+            }
+            asciiLow[s] = low;
+            asciiHigh[s] = high;
+        }
+        return s;
+    }
+
+    /**
+     * Returns the literal text every match of {@code pattern} must start with.
+     * Conservative: any construct that could change the prefix ends it.
+     */
+    static String literalPrefix(String pattern) {
+        if (pattern.indexOf('|') >= 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        int i = pattern.startsWith("^") ? 1 : 0;
+        for (; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if ("\\[](){}.*+?^$|".indexOf(c) >= 0) {
+                if ((c == '*' || c == '?' || c == '{') && sb.length() > 0) {
+                    sb.setLength(sb.length() - 1);
+                }
+                break;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static boolean regionStartsWith(CharSequence input, int start, String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            if (input.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Thrown by {@link #newState} when the automaton would exceed {@link #MAX_NFA_STATES}.
+     */
+    private static final class StateLimitException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        StateLimitException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class DState {
+        final int[] states;
+        final int accept;
+        final DState[] ascii = new DState[128];
+        final Map<Character, DState> other = new ConcurrentHashMap<>();
+
+        DState(int[] states, int accept) {
+            this.states = states;
+            this.accept = accept;
+        }
+    }
+
+    private static final class StateKey {
+        final int[] states;
+        final int hash;
+
+        StateKey(int[] states) {
+            this.states = states;
+            this.hash = Arrays.hashCode(states);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StateKey && Arrays.equals(states, ((StateKey) o).states);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Read-only window over part of a {@link CharSequence}.
+     */
+    static final class Region implements CharSequence {
+        private final CharSequence source;
+        private final int start;
+        private final int end;
+
+        Region(CharSequence source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return source.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new Region(source, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return source.subSequence(start, end).toString();
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.rule;
+
+import io.github.sanfengandroid.sdexter.sdk.GlobalConfig;
+import io.github.sanfengandroid.sdexter.sdk.MergeMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies {@link GlobalConfig#renamePackages()} and {@link GlobalConfig#renamePackagePatterns()}
+ * to type descriptors, method prototypes and field types.
+ * <p>
+ * Literal pairs are stored in a trie over {@code /}-separated package segments and the longest
+ * matching prefix wins, so renaming {@code com.old} also moves {@code com/old/sub}. Pattern pairs
+ * are consulted only when no literal pair matches; they are matched against the whole internal
+ * package name, the first matching pattern wins and its replacement may use group references.
+ * Patterns are sharded by their literal top-level package, so a package name only runs the
+ * patterns that can match its root.
+ * </p>
+ * <p>
+ * Rewritten descriptors and prototypes are memoized in a bounded table. Unchanged inputs are
+ * returned as the same instance, so callers can test {@code result == input} to skip work.
+ * </p>
+ * <p>
+ * Every rule counts the package names it rewrote, see {@link #reportHits(MergeMetrics)}. The memo
+ * table keeps the rules applied with each result and counts them again on a hit, so the counts do
+ * not depend on the table size.
+ * </p>
+ * Instances are immutable apart from the cache and the counters and safe for concurrent use.
+ */
+public final class PackageRenamer {
+
+    private static final int DEFAULT_CACHE_SIZE = 1 << 14;
+    private static final int[] NO_RULES = new int[0];
+
+    private final Node root;
+    private final boolean hasLiterals;
+    private final ShardedMatcher patternMatcher;
+    private final Pattern[] patterns;
+    private final String[] replacements;
+    private final DescriptorCache cache;
+    private final String[] literalRules;
+    private final String[] patternRules;
+    private final AtomicLongArray literalHits;
+    private final AtomicLongArray patternHits;
+
+    private PackageRenamer(String[] renamePackages, String[] renamePackagePatterns, int cacheSize) {
+        if (renamePackages.length % 2 != 0) {
+            throw new IllegalArgumentException("renamePackages must contain pairs, found " + renamePackages.length + " entries");
+        }
+        if (renamePackagePatterns.length % 2 != 0) {
+            throw new IllegalArgumentException("renamePackagePatterns must contain pairs, found " + renamePackagePatterns.length + " entries");
+        }
+        Builder builder = new Builder();
+        for (int i = 0; i < renamePackages.length; i += 2) {
+            builder.add(renamePackages[i].replace('.', '/'), renamePackages[i + 1].replace('.', '/'), i / 2);
+        }
+        this.root = builder.root.freeze();
+        this.hasLiterals = renamePackages.length > 0;
+        int count = renamePackagePatterns.length / 2;
+        String[] sources = new String[count];
+        this.patterns = new Pattern[count];
+        this.replacements = new String[count];
+        for (int i = 0; i < count; i++) {
+            sources[i] = renamePackagePatterns[i * 2];
+            patterns[i] = Pattern.compile(sources[i]);
+            replacements[i] = renamePackagePatterns[i * 2 + 1];
+        }
+        this.patternMatcher = ShardedMatcher.compile(sources);
+        this.cache = new DescriptorCache(cacheSize);
+        this.literalRules = describe(renamePackages);
+        this.patternRules = describe(renamePackagePatterns);
+        this.literalHits = new AtomicLongArray(literalRules.length);
+        this.patternHits = new AtomicLongArray(patternRules.length);
+    }
+
+    /**
+     * Creates a renamer for the package rules of a global configuration.
+     *
+     * @param config the global configuration
+     * @return the renamer
+     */
+    public static PackageRenamer of(GlobalConfig config) {
+        return of(config.renamePackages(), config.renamePackagePatterns());
+    }
+
+    /**
+     * Creates a renamer from raw attribute values.
+     *
+     * @param renamePackages        dotted original/new package name pairs
+     * @param renamePackagePatterns regex/replacement pairs over internal package names
+     * @return the renamer
+     */
+    public static PackageRenamer of(String[] renamePackages, String[] renamePackagePatterns) {
+        return new PackageRenamer(renamePackages, renamePackagePatterns, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a renamer with a custom memo table size.
+     *
+     * @param cacheSize maximum number of memoized descriptors
+     * @return the renamer
+     */
+    public static PackageRenamer of(String[] renamePackages, String[] renamePackagePatterns, int cacheSize) {
+        return new PackageRenamer(renamePackages, renamePackagePatterns, cacheSize);
+    }
+
+    /**
+     * @return {@code true} if no rename rule is configured
+     */
+    public boolean isEmpty() {
+        return !hasLiterals && patterns.length == 0;
+    }
+
+    /**
+     * Renames an internal package name such as {@code com/old/sub}.
+     *
+     * @param packageName the internal package name
+     * @return the new name, or {@code packageName} itself when unchanged
+     */
+    public String renamePackage(String packageName) {
+        int[] rule = new int[1];
+        String renamed = renamePackage(packageName, 0, packageName.length(), rule);
+        if (renamed == null) {
+            return packageName;
+        }
+        countHit(rule[0]);
+        return renamed;
+    }
+
+    /**
+     * Renames a type descriptor such as {@code Lcom/old/Foo;} or {@code [[Lcom/old/Foo;}.
+     * Primitive descriptors are returned unchanged.
+     *
+     * @param descriptor the type descriptor
+     * @return the new descriptor, or {@code descriptor} itself when unchanged
+     */
+    public String renameType(String descriptor) {
+        if (isEmpty() || descriptor.indexOf('L') < 0) {
+            return descriptor;
+        }
+        DescriptorCache.Entry entry = cache.get(descriptor);
+        if (entry == null) {
+            entry = rewrite(descriptor);
+            cache.put(entry);
+        }
+        for (int rule : entry.rules) {
+            countHit(rule);
+        }
+        // The stored key is an equal string but not necessarily the caller's instance
+        return entry.value == entry.key ? descriptor : entry.value;
+    }
+
+    /**
+     * Renames every class type inside a method prototype such as {@code (ILcom/old/A;)Lcom/old/B;}.
+     * The method name may precede the prototype, as in {@code fun(I)V}.
+     *
+     * @param proto the prototype
+     * @return the new prototype, or {@code proto} itself when unchanged
+     */
+    public String renameProto(String proto) {
+        return renameType(proto);
+    }
+
+    /**
+     * Renames an internal class name such as {@code com/old/Foo$Inner}.
+     *
+     * @param className the internal class name
+     * @return the new name, or {@code className} itself when unchanged
+     */
+    public String renameClassName(String className) {
+        int slash = className.lastIndexOf('/');
+        if (slash < 0 || isEmpty()) {
+            return className;
+        }
+        int[] rule = new int[1];
+        String renamed = renamePackage(className, 0, slash, rule);
+        if (renamed == null) {
+            return className;
+        }
+        countHit(rule[0]);
+        return renamed + className.substring(slash);
+    }
+
+    /**
+     * Declares every rename pair to {@code metrics} together with the number of package names it
+     * rewrote so far. Pairs shadowed by an earlier declaration of the same package report zero.
+     *
+     * @param metrics the destination
+     */
+    public void reportHits(MergeMetrics metrics) {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        report(metrics, MergeMetrics.Rule.RENAME_PACKAGE, literalRules, literalHits);
+        report(metrics, MergeMetrics.Rule.RENAME_PACKAGE_PATTERN, patternRules, patternHits);
+    }
+
+    private static void report(MergeMetrics metrics, MergeMetrics.Rule kind, String[] rules, AtomicLongArray hits) {
+        for (int i = 0; i < rules.length; i++) {
+            metrics.ruleDeclared(kind, MergeMetrics.GLOBAL_SCOPE, rules[i]);
+            long count = hits.get(i);
+            if (count != 0) {
+                metrics.ruleHit(kind, MergeMetrics.GLOBAL_SCOPE, rules[i], count);
+            }
+        }
+    }
+
+    private static String[] describe(String[] pairs) {
+        String[] rules = new String[pairs.length / 2];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = pairs[i * 2] + " -> " + pairs[i * 2 + 1];
+        }
+        return rules;
+    }
+
+    /**
+     * Literal pairs take ids {@code [0, literalRules.length)}, pattern pairs follow.
+     */
+    private void countHit(int rule) {
+        if (rule < literalRules.length) {
+            literalHits.incrementAndGet(rule);
+        } else {
+            patternHits.incrementAndGet(rule - literalRules.length);
+        }
+    }
+
+    /**
+     * Rewrites every {@code L...;} class reference in a descriptor sequence, without counting.
+     */
+    private DescriptorCache.Entry rewrite(String descriptors) {
+        StringBuilder sb = null;
+        int[] rule = new int[1];
+        int[] rules = NO_RULES;
+        int ruleCount = 0;
+        int copied = 0;
+        int open = descriptors.indexOf('(');
+        int i = open < 0 ? 0 : open;
+        int n = descriptors.length();
+        while (i < n) {
+            char c = descriptors.charAt(i);
+            if (c != 'L') {
+                i++;
+                continue;
+            }
+            int end = descriptors.indexOf(';', i);
+            if (end < 0) {
+                break;
+            }
+            int slash = descriptors.lastIndexOf('/', end);
+            if (slash > i) {
+                String renamed = renamePackage(descriptors, i + 1, slash, rule);
+                if (renamed != null) {
+                    if (ruleCount == rules.length) {
+                        rules = Arrays.copyOf(rules, Math.max(4, ruleCount * 2));
+                    }
+                    rules[ruleCount++] = rule[0];
+                    if (sb == null) {
+                        sb = new StringBuilder(n + 16);
+                    }
+                    sb.append(descriptors, copied, i + 1).append(renamed);
+                    copied = slash;
+                }
+            }
+            i = end + 1;
+        }
+        if (sb == null) {
+            return new DescriptorCache.Entry(descriptors, descriptors, NO_RULES);
+        }
+        return new DescriptorCache.Entry(descriptors, sb.append(descriptors, copied, n).toString(),
+                Arrays.copyOf(rules, ruleCount));
+    }
+
+    /**
+     * Renames the package in {@code [start, end)}, storing the id of the applied rule in
+     * {@code rule[0]}. The hit is not counted.
+     *
+     * @return the new package name, or {@code null} when no rule applies or the name is unchanged
+     */
+    private String renamePackage(String input, int start, int end, int[] rule) {
+        if (hasLiterals) {
+            Node node = root;
+            Node best = null;
+            int bestEnd = start;
+            int segStart = start;
+            while (segStart <= end) {
+                int segEnd = segStart;
+                while (segEnd < end && input.charAt(segEnd) != '/') {
+                    segEnd++;
+                }
+                int child = node.children.get(input, segStart, segEnd);
+                if (child < 0) {
+                    break;
+                }
+                node = node.nodes[child];
+                if (node.target != null) {
+                    best = node;
+                    bestEnd = segEnd;
+                }
+                segStart = segEnd + 1;
+            }
+            if (best != null) {
+                String renamed = bestEnd == end ? best.target : best.target + input.substring(bestEnd, end);
+                if (input.regionMatches(start, renamed, 0, renamed.length()) && renamed.length() == end - start) {
+                    return null;
+                }
+                rule[0] = best.rule;
+                return renamed;
+            }
+        }
+        if (patterns.length > 0) {
+            int index = patternMatcher.match(input, start, end);
+            if (index >= 0) {
+                String packageName = input.substring(start, end);
+                Matcher matcher = patterns[index].matcher(packageName);
+                if (matcher.matches()) {
+                    StringBuilder sb = new StringBuilder();
+                    matcher.appendReplacement(sb, replacements[index]);
+                    String renamed = sb.toString();
+                    if (renamed.equals(packageName)) {
+                        return null;
+                    }
+                    rule[0] = literalRules.length + index;
+                    return renamed;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static final class Node {
+        final String target;
+        final int rule;
+        final LiteralTable children;
+        final Node[] nodes;
+
+        Node(String target, int rule, LiteralTable children, Node[] nodes) {
+            this.target = target;
+            this.rule = rule;
+            this.children = children;
+            this.nodes = nodes;
+        }
+    }
+
+    private static final class Builder {
+        final MutableNode root = new MutableNode();
+
+        void add(String from, String to, int rule) {
+            MutableNode node = root;
+            for (String segment : from.split("/", -1)) {
+                node = node.children.computeIfAbsent(segment, key -> new MutableNode());
+            }
+            if (node.target == null) {
+                // The first declaration of a package wins
+                node.target = to;
+                node.rule = rule;
+            }
+        }
+    }
+
+    private static final class MutableNode {
+        String target;
+        int rule = -1;
+        final Map<String, MutableNode> children = new LinkedHashMap<>();
+
+        Node freeze() {
+            List<String> keys = new ArrayList<>(children.keySet());
+            int[] values = new int[keys.size()];
+            Node[] nodes = new Node[keys.size()];
+            for (int i = 0; i < keys.size(); i++) {
+                values[i] = i;
+                nodes[i] = children.get(keys.get(i)).freeze();
+            }
+            return new Node(target, rule, new LiteralTable(keys.toArray(new String[0]), values), nodes);
+        }
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.rule;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Member name and prototype patterns with a fast path for the common shapes.
+ * <p>
+ * Most {@code RemoveFields.namePatterns} and {@code RemoveMethods.protoPatterns} entries are
+ * plain literals, {@code prefix.*} or {@code .*suffix}. Those are classified when compiling and
+ * tested directly: literals through a hash table, prefixes and suffixes through buckets keyed by
+ * their first and last byte. Only the remaining, truly regular patterns go to a
+ * {@link MultiPatternMatcher}, and only when one of them could win over a fast match. If the
+ * automaton supports every pattern, text queries run it alone, since it tests all of its
+ * patterns in a single pass.
+ * </p>
+ * <p>
+ * {@link #match(ByteBuffer, int)} tests the MUTF-8 bytes of a {@code string_data_item} without
+ * decoding them. MUTF-8 encodes each char on its own with self-synchronizing sequences, so
+ * equality, prefix and suffix tests on the encoded bytes agree with the same tests on chars.
+ * </p>
+ * Queries use {@link java.util.regex.Matcher#matches()} semantics and return the lowest matching
+ * pattern index, like {@link MultiPatternMatcher}. A {@code .*} does not match line terminators,
+ * which the fast path honours. Immutable and safe for concurrent use.
+ */
+public final class PatternSet {
+
+    /**
+     * Returned by {@link #match(ByteBuffer, int)} when a regular pattern has to see the decoded text.
+     */
+    public static final int NEEDS_TEXT = -2;
+
+    private static final int LITERAL = 0;
+    private static final int PREFIX = 1;
+    private static final int SUFFIX = 2;
+
+    private final String[] patterns;
+    /** Literal part of each fast pattern, {@code null} for regular ones. */
+    private final String[] texts;
+    private final byte[][] bytes;
+
+    private final LiteralTable literals;
+    private final ByteTable literalBytes;
+    /** Prefix pattern indices by the first byte of their MUTF-8 form, ascending. */
+    private final int[][] prefixBuckets;
+    /** Lowest index of a {@code .*} pattern, or {@code -1}. */
+    private final int anything;
+    /** Suffix pattern indices by the last byte of their MUTF-8 form, ascending. */
+    private final int[][] suffixBuckets;
+
+    private final MultiPatternMatcher regular;
+    private final int[] regularIndex;
+    /** Automaton over every pattern, used for text once a regular pattern has to run anyway. */
+    private final MultiPatternMatcher whole;
+
+    private PatternSet(String[] patterns) {
+        this.patterns = patterns;
+        this.texts = new String[patterns.length];
+        this.bytes = new byte[patterns.length][];
+        List<String> literalKeys = new ArrayList<>();
+        List<Integer> literalValues = new ArrayList<>();
+        List<List<Integer>> prefixes = new ArrayList<>();
+        List<List<Integer>> suffixes = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            prefixes.add(new ArrayList<>());
+            suffixes.add(new ArrayList<>());
+        }
+        List<String> regularList = new ArrayList<>();
+        List<Integer> regularIndices = new ArrayList<>();
+        int any = -1;
+        for (int i = 0; i < patterns.length; i++) {
+            String pattern = patterns[i];
+            int shape = LITERAL;
+            String body = pattern;
+            // A trailing .* inside an unterminated \Q quote is literal, leave those to unescape
+            if (pattern.endsWith(".*") && !isEscaped(pattern, pattern.length() - 2) && !pattern.contains("\\Q")) {
+                shape = PREFIX;
+                body = pattern.substring(0, pattern.length() - 2);
+            } else if (pattern.startsWith(".*")) {
+                shape = SUFFIX;
+                body = pattern.substring(2);
+            }
+            String text = unescape(body);
+            if (text == null) {
+                regularList.add(pattern);
+                regularIndices.add(i);
+                continue;
+            }
+            texts[i] = text;
+            bytes[i] = encode(text);
+            switch (shape) {
+                case LITERAL:
+                    literalKeys.add(text);
+                    literalValues.add(i);
+                    break;
+                case PREFIX:
+                    if (text.isEmpty()) {
+                        any = any < 0 ? i : any;
+                    } else {
+                        prefixes.get(bytes[i][0] & 0xff).add(i);
+                    }
+                    break;
+                default:
+                    if (text.isEmpty()) {
+                        any = any < 0 ? i : any;
+                    } else {
+                        suffixes.get(bytes[i][bytes[i].length - 1] & 0xff).add(i);
+                    }
+                    break;
+            }
+        }
+        int[] values = literalValues.stream().mapToInt(Integer::intValue).toArray();
+        this.literals = new LiteralTable(literalKeys.toArray(new String[0]), values);
+        byte[][] keyBytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            keyBytes[i] = bytes[values[i]];
+        }
+        this.literalBytes = new ByteTable(keyBytes, values);
+        this.prefixBuckets = new int[256][];
+        this.suffixBuckets = new int[256][];
+        for (int i = 0; i < 256; i++) {
+            prefixBuckets[i] = prefixes.get(i).stream().mapToInt(Integer::intValue).toArray();
+            suffixBuckets[i] = suffixes.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        this.anything = any;
+        this.regular = regularList.isEmpty() ? null
+                : MultiPatternMatcher.compile(regularList.toArray(new String[0]));
+        this.regularIndex = regularIndices.stream().mapToInt(Integer::intValue).toArray();
+        MultiPatternMatcher whole = null;
+        if (regular != null && regular.fallbackCount() == 0) {
+            // The lazy DFA tests all of its patterns in one pass, so adding the fast ones is free
+            whole = MultiPatternMatcher.compile(patterns);
+            whole = whole.fallbackCount() == 0 ? whole : null;
+        }
+        this.whole = whole;
+    }
+
+    /**
+     * Compiles the given patterns.
+     *
+     * @param patterns regular expressions, in priority order
+     * @return the compiled set
+     * @throws java.util.regex.PatternSyntaxException if a pattern is invalid
+     */
+    public static PatternSet compile(String... patterns) {
+        for (String pattern : patterns) {
+            // Validate eagerly with the reference implementation so errors match Pattern.compile
+            Pattern.compile(pattern);
+        }
+        return new PatternSet(patterns.clone());
+    }
+
+    /**
+     * @return the number of patterns
+     */
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * @param index pattern index
+     * @return the source of the pattern
+     */
+    public String pattern(int index) {
+        return patterns[index];
+    }
+
+    /**
+     * @return the number of patterns that need a regular expression engine
+     */
+    public int regularCount() {
+        return regularIndex.length;
+    }
+
+    /**
+     * Matches the whole input.
+     *
+     * @param input the text to match
+     * @return the lowest index of a pattern matching the input, or {@code -1}
+     */
+    public int match(CharSequence input) {
+        if (whole != null) {
+            return whole.match(input);
+        }
+        int length = input.length();
+        int best = literals.get(input, 0, length);
+        if (length > 0) {
+            best = lower(best, matchPrefix(input, leadByte(input.charAt(0)), best));
+            best = lower(best, matchSuffix(input, trailByte(input.charAt(length - 1)), best));
+        }
+        if (anything >= 0 && (best < 0 || anything < best) && !hasLineTerminator(input, 0, length)) {
+            best = anything;
+        }
+        return lower(best, matchRegular(input, best));
+    }
+
+    /**
+     * Matches MUTF-8 text, e.g. the data of a {@code string_data_item} after its length.
+     *
+     * @param buf    the buffer holding the text
+     * @param offset the first byte of the text, which ends at a {@code 0} byte
+     * @return the lowest index of a pattern matching the text, {@code -1}, or {@link #NEEDS_TEXT}
+     * if a regular pattern with a lower index than any fast match has to be tried on the decoded text
+     */
+    public int match(ByteBuffer buf, int offset) {
+        int end = offset;
+        int hash = 1;
+        byte b;
+        while ((b = buf.get(end)) != 0) {
+            hash = 31 * hash + b;
+            end++;
+        }
+        int best = literalBytes.get(buf, offset, end, hash);
+        if (end > offset) {
+            best = lower(best, matchPrefix(buf, offset, end, best));
+            best = lower(best, matchSuffix(buf, offset, end, best));
+        }
+        if (anything >= 0 && (best < 0 || anything < best) && !hasLineTerminator(buf, offset, end)) {
+            best = anything;
+        }
+        if (regular != null && (best < 0 || regularIndex[0] < best)) {
+            return NEEDS_TEXT;
+        }
+        return best;
+    }
+
+    private int matchPrefix(CharSequence input, int lead, int best) {
+        int length = input.length();
+        for (int index : prefixBuckets[lead]) {
+            if (best >= 0 && index > best) {
+                break;
+            }
+            String text = texts[index];
+            if (length >= text.length() && regionStartsWith(input, 0, text)
+                    && !hasLineTerminator(input, text.length(), length)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int matchPrefix(ByteBuffer buf, int offset, int end, int best) {
+        for (int index : prefixBuckets[buf.get(offset) & 0xff]) {
+            if (best >= 0 && index > best) {
+                break;
+            }
+            byte[] text = bytes[index];
+            if (end - offset >= text.length && regionEquals(buf, offset, text)
+                    && !hasLineTerminator(buf, offset + text.length, end)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int matchSuffix(CharSequence input, int trail, int best) {
+        for (int index : suffixBuckets[trail]) {
+            if (best >= 0 && index > best) {
+                break;
+            }
+            String text = texts[index];
+            int start = input.length() - text.length();
+            if (start >= 0 && regionStartsWith(input, start, text) && !hasLineTerminator(input, 0, start)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int matchSuffix(ByteBuffer buf, int offset, int end, int best) {
+        for (int index : suffixBuckets[buf.get(end - 1) & 0xff]) {
+            if (best >= 0 && index > best) {
+                break;
+            }
+            byte[] text = bytes[index];
+            int start = end - text.length;
+            if (start >= offset && regionEquals(buf, start, text) && !hasLineTerminator(buf, offset, start)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int matchRegular(CharSequence input, int best) {
+        if (regular == null || best >= 0 && regularIndex[0] > best) {
+            return -1;
+        }
+        int match = regular.match(input);
+        return match < 0 ? -1 : regularIndex[match];
+    }
+
+    private static int lower(int a, int b) {
+        return a < 0 ? b : b < 0 ? a : Math.min(a, b);
+    }
+
+    /**
+     * @return the first byte of the MUTF-8 encoding of {@code c}
+     */
+    private static int leadByte(char c) {
+        if (c != 0 && c < 0x80) {
+            return c;
+        }
+        return c < 0x800 ? 0xc0 | c >>> 6 : 0xe0 | c >>> 12;
+    }
+
+    /**
+     * @return the last byte of the MUTF-8 encoding of {@code c}
+     */
+    private static int trailByte(char c) {
+        return c != 0 && c < 0x80 ? c : 0x80 | c & 0x3f;
+    }
+
+    private static boolean hasLineTerminator(CharSequence input, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the MUTF-8 forms of the line terminators: {@code \n}, {@code \r}, {@code C2 85} and
+     * {@code E2 80 A8}/{@code E2 80 A9}. Lead bytes never occur as continuation bytes, so a match
+     * on the lead byte is a match on the char.
+     */
+    private static boolean hasLineTerminator(ByteBuffer buf, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = buf.get(i);
+            if (b == '\n' || b == '\r'
+                    || b == (byte) 0xc2 && i + 1 < end && buf.get(i + 1) == (byte) 0x85
+                    || b == (byte) 0xe2 && i + 2 < end && buf.get(i + 1) == (byte) 0x80
+                    && (buf.get(i + 2) == (byte) 0xa8 || buf.get(i + 2) == (byte) 0xa9)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionStartsWith(CharSequence input, int start, String text) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            if (input.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionEquals(ByteBuffer buf, int offset, byte[] text) {
+        for (int i = 0; i < text.length; i++) {
+            if (buf.get(offset + i) != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEscaped(String pattern, int index) {
+        int backslashes = 0;
+        for (int i = index - 1; i >= 0 && pattern.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+        return (backslashes & 1) != 0;
+    }
+
+    /**
+     * Returns the text matched by a pattern without metacharacters, resolving escaped
+     * punctuation and {@code \Q...\E} quotes.
+     *
+     * @return the literal text, or {@code null} if the pattern is regular
+     */
+    private static String unescape(String pattern) {
+        StringBuilder sb = new StringBuilder(pattern.length());
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (++i == pattern.length()) {
+                    return null;
+                }
+                char next = pattern.charAt(i);
+                if (next == 'Q') {
+                    int close = pattern.indexOf("\\E", i + 1);
+                    int stop = close < 0 ? pattern.length() : close;
+                    sb.append(pattern, i + 1, stop);
+                    i = close < 0 ? stop : close + 1;
+                } else if (next < 0x80 && !Character.isLetterOrDigit(next)) {
+                    sb.append(next);
+                } else {
+                    return null;
+                }
+            } else if ("[](){}.*+?^$|".indexOf(c) >= 0 || Character.isSurrogate(c)) {
+                return null;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Encodes {@code text} as MUTF-8: {@code U+0000} and chars above {@code U+007F} take two or
+     * three bytes, surrogates are encoded one by one.
+     */
+    private static byte[] encode(String text) {
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            char c = text.charAt(i);
+            ascii = c != 0 && c < 0x80;
+        }
+        if (ascii) {
+            return text.getBytes(StandardCharsets.US_ASCII);
+        }
+        byte[] out = new byte[text.length() * 3];
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != 0 && c < 0x80) {
+                out[n++] = (byte) c;
+            } else if (c < 0x800) {
+                out[n++] = (byte) (0xc0 | c >>> 6);
+                out[n++] = (byte) (0x80 | c & 0x3f);
+            } else {
+                out[n++] = (byte) (0xe0 | c >>> 12);
+                out[n++] = (byte) (0x80 | c >>> 6 & 0x3f);
+                out[n++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Open addressing map from MUTF-8 keys to pattern indices, queried with a buffer region and
+     * a hash computed while scanning it.
+     */
+    private static final class ByteTable {
+        private final byte[][] keys;
+        private final int[] hashes;
+        private final int[] values;
+        private final int mask;
+
+        ByteTable(byte[][] keys, int[] values) {
+            int capacity = Integer.highestOneBit(Math.max(4, keys.length * 2) - 1) << 1;
+            this.keys = new byte[capacity][];
+            this.hashes = new int[capacity];
+            this.values = new int[capacity];
+            this.mask = capacity - 1;
+            for (int i = 0; i < keys.length; i++) {
+                int hash = Arrays.hashCode(keys[i]);
+                int slot = hash & mask;
+                while (this.keys[slot] != null && !Arrays.equals(this.keys[slot], keys[i])) {
+                    slot = (slot + 1) & mask;
+                }
+                if (this.keys[slot] == null) {
+                    this.keys[slot] = keys[i];
+                    this.hashes[slot] = hash;
+                    this.values[slot] = values[i];
+                }
+            }
+        }
+
+        /**
+         * @param hash {@link Arrays#hashCode(byte[])} of the region
+         * @return the value, or {@code -1} if absent
+         */
+        int get(ByteBuffer buf, int offset, int end, int hash) {
+            int slot = hash & mask;
+            byte[] key;
+            while ((key = keys[slot]) != null) {
+                if (hashes[slot] == hash && key.length == end - offset && regionEquals(buf, offset, key)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+    }
+}
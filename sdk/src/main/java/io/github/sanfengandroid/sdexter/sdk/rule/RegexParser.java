@@ -0,0 +1,437 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.rule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parser for the regular subset of {@link java.util.regex.Pattern} syntax that can be compiled
+ * into a finite automaton.
+ * <p>
+ * Supported: literals, escapes, {@code .}, character classes with ranges and negation,
+ * {@code \d \D \w \W \s \S}, capturing and {@code (?:)} groups, alternation, greedy or lazy
+ * {@code * + ? {n} {n,} {n,m}} quantifiers, a leading {@code ^} and a trailing {@code $}.
+ * Anything else, such as back references, lookaround, inline flags, possessive quantifiers,
+ * class intersections or Unicode properties, raises {@link UnsupportedRegexException} and the
+ * caller falls back to {@code java.util.regex}.
+ * </p>
+ * Patterns are interpreted with {@link java.util.regex.Matcher#matches()} semantics.
+ */
+final class RegexParser {
+
+    private static final int MAX_REPEAT = 64;
+
+    static final int[] ANY = {0, '\n' - 1, '\n' + 1, '\r' - 1, '\r' + 1, 0x84, 0x86, 0x2027, 0x202a, 0xffff};
+    private static final int[] DIGIT = {'0', '9'};
+    private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+    private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+
+    private final String pattern;
+    private int pos;
+
+    private RegexParser(String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Parses a pattern into a syntax tree.
+     *
+     * @param pattern the regular expression
+     * @return the root node
+     * @throws UnsupportedRegexException if the pattern uses a non-regular construct
+     */
+    static Node parse(String pattern) {
+        RegexParser parser = new RegexParser(pattern);
+        if (parser.peek('^')) {
+            parser.pos++;
+        }
+        Node node = parser.parseAlternation();
+        if (parser.pos < pattern.length()) {
+            if (parser.peek('$') && parser.pos == pattern.length() - 1) {
+                parser.pos++;
+            } else {
+                throw parser.unsupported();
+            }
+        }
+        return node;
+    }
+
+    private Node parseAlternation() {
+        List<Node> choices = new ArrayList<>();
+        choices.add(parseConcat());
+        while (peek('|')) {
+            pos++;
+            choices.add(parseConcat());
+        }
+        return choices.size() == 1 ? choices.get(0) : new Alt(choices);
+    }
+
+    private Node parseConcat() {
+        List<Node> items = new ArrayList<>();
+        while (pos < pattern.length()) {
+            char c = pattern.charAt(pos);
+            if (c == '|' || c == ')') {
+                break;
+            }
+            if (c == '$' && pos == pattern.length() - 1) {
+                break;
+            }
+            items.add(parseRepeat());
+        }
+        if (items.isEmpty()) {
+            return Empty.INSTANCE;
+        }
+        return items.size() == 1 ? items.get(0) : new Concat(items);
+    }
+
+    private Node parseRepeat() {
+        Node atom = parseAtom();
+        while (pos < pattern.length()) {
+            char c = pattern.charAt(pos);
+            int min;
+            int max;
+            if (c == '*') {
+                min = 0;
+                max = -1;
+                pos++;
+            } else if (c == '+') {
+                min = 1;
+                max = -1;
+                pos++;
+            } else if (c == '?') {
+                min = 0;
+                max = 1;
+                pos++;
+            } else if (c == '{') {
+                pos++;
+                min = parseNumber();
+                max = min;
+                if (peek(',')) {
+                    pos++;
+                    max = peek('}') ? -1 : parseNumber();
+                }
+                expect('}');
+                if (min > MAX_REPEAT || max > MAX_REPEAT || (max >= 0 && max < min)) {
+                    throw unsupported();
+                }
+            } else {
+                break;
+            }
+            if (peek('?')) {
+                // Lazy quantifiers accept the same language under matches()
+                pos++;
+            } else if (peek('+')) {
+                throw unsupported();
+            }
+            atom = new Repeat(atom, min, max);
+        }
+        return atom;
+    }
+
+    private Node parseAtom() {
+        char c = pattern.charAt(pos++);
+        switch (c) {
+            case '(':
+                if (peek('?')) {
+                    if (pos + 1 < pattern.length() && pattern.charAt(pos + 1) == ':') {
+                        pos += 2;
+                    } else {
+                        throw unsupported();
+                    }
+                }
+                Node inner = parseAlternation();
+                expect(')');
+                return inner;
+            case '[':
+                return parseClass();
+            case '.':
+                return new CharSet(ANY);
+            case '\\':
+                return new CharSet(parseEscape());
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+            case '^':
+            case '$':
+            case ')':
+                throw unsupported();
+            default:
+                if (Character.isSurrogate(c)) {
+                    throw unsupported();
+                }
+                return new CharSet(new int[]{c, c});
+        }
+    }
+
+    private Node parseClass() {
+        boolean negate = false;
+        if (peek('^')) {
+            negate = true;
+            pos++;
+        }
+        List<int[]> parts = new ArrayList<>();
+        boolean first = true;
+        while (true) {
+            if (pos >= pattern.length()) {
+                throw unsupported();
+            }
+            char c = pattern.charAt(pos);
+            if (c == ']') {
+                if (first) {
+                    throw unsupported();
+                }
+                pos++;
+                break;
+            }
+            first = false;
+            if (c == '[' || (c == '&' && pos + 1 < pattern.length() && pattern.charAt(pos + 1) == '&')) {
+                throw unsupported();
+            }
+            int[] lo;
+            pos++;
+            if (c == '\\') {
+                lo = parseEscape();
+            } else {
+                if (Character.isSurrogate(c)) {
+                    throw unsupported();
+                }
+                lo = new int[]{c, c};
+            }
+            if (lo.length == 2 && lo[0] == lo[1] && peek('-') && pos + 1 < pattern.length()
+                    && pattern.charAt(pos + 1) != ']') {
+                pos++;
+                char h = pattern.charAt(pos++);
+                int hi;
+                if (h == '\\') {
+                    int[] esc = parseEscape();
+                    if (esc.length != 2 || esc[0] != esc[1]) {
+                        throw unsupported();
+                    }
+                    hi = esc[0];
+                } else {
+                    hi = h;
+                }
+                if (hi < lo[0] || Character.isSurrogate((char) hi)) {
+                    throw unsupported();
+                }
+                parts.add(new int[]{lo[0], hi});
+            } else {
+                parts.add(lo);
+            }
+        }
+        int[] ranges = union(parts);
+        return new CharSet(negate ? complement(ranges) : ranges);
+    }
+
+    private int[] parseEscape() {
+        if (pos >= pattern.length()) {
+            throw unsupported();
+        }
+        char c = pattern.charAt(pos++);
+        switch (c) {
+            case 'd':
+                return DIGIT;
+            case 'D':
+                return complement(DIGIT);
+            case 'w':
+                return WORD;
+            case 'W':
+                return complement(WORD);
+            case 's':
+                return SPACE;
+            case 'S':
+                return complement(SPACE);
+            case 't':
+                return single('\t');
+            case 'n':
+                return single('\n');
+            case 'r':
+                return single('\r');
+            case 'f':
+                return single('\f');
+            case 'a':
+                return single('\u0007');
+            case 'e':
+                return single('\u001b');
+            case 'x':
+                return single(parseHex(2));
+            case 'u':
+                return single(parseHex(4));
+            default:
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                    // \b \B \p \Q \k \1 ... are not regular or not supported here
+                    throw unsupported();
+                }
+                return single(c);
+        }
+    }
+
+    private int parseHex(int digits) {
+        if (pos + digits > pattern.length()) {
+            throw unsupported();
+        }
+        int value = 0;
+        for (int i = 0; i < digits; i++) {
+            int d = Character.digit(pattern.charAt(pos++), 16);
+            if (d < 0) {
+                throw unsupported();
+            }
+            value = value * 16 + d;
+        }
+        if (Character.isSurrogate((char) value)) {
+            throw unsupported();
+        }
+        return value;
+    }
+
+    private int parseNumber() {
+        int start = pos;
+        while (pos < pattern.length() && Character.isDigit(pattern.charAt(pos))) {
+            pos++;
+        }
+        if (start == pos || pos - start > 4) {
+            throw unsupported();
+        }
+        return Integer.parseInt(pattern.substring(start, pos));
+    }
+
+    private boolean peek(char c) {
+        return pos < pattern.length() && pattern.charAt(pos) == c;
+    }
+
+    private void expect(char c) {
+        if (!peek(c)) {
+            throw unsupported();
+        }
+        pos++;
+    }
+
+    private UnsupportedRegexException unsupported() {
+        return new UnsupportedRegexException(pattern, pos);
+    }
+
+    private static int[] single(int c) {
+        return new int[]{c, c};
+    }
+
+    /**
+     * Merges a list of sorted range arrays into one sorted, non-overlapping range array.
+     */
+    static int[] union(List<int[]> parts) {
+        int total = 0;
+        for (int[] part : parts) {
+            total += part.length / 2;
+        }
+        long[] packed = new long[total];
+        int n = 0;
+        for (int[] part : parts) {
+            for (int i = 0; i < part.length; i += 2) {
+                packed[n++] = ((long) part[i] << 32) | part[i + 1];
+            }
+        }
+        Arrays.sort(packed);
+        int[] out = new int[total * 2];
+        int size = 0;
+        for (long range : packed) {
+            int lo = (int) (range >>> 32);
+            int hi = (int) range;
+            if (size > 0 && lo <= out[size - 1] + 1) {
+                out[size - 1] = Math.max(out[size - 1], hi);
+            } else {
+                out[size++] = lo;
+                out[size++] = hi;
+            }
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    static int[] complement(int[] ranges) {
+        int[] out = new int[ranges.length + 2];
+        int size = 0;
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                out[size++] = next;
+                out[size++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= 0xffff) {
+            out[size++] = next;
+            out[size++] = 0xffff;
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    abstract static class Node {
+    }
+
+    static final class Empty extends Node {
+        static final Empty INSTANCE = new Empty();
+    }
+
+    static final class CharSet extends Node {
+        /** Sorted inclusive {@code [lo, hi]} pairs of UTF-16 code units. */
+        final int[] ranges;
+
+        CharSet(int[] ranges) {
+            this.ranges = ranges;
+        }
+    }
+
+    static final class Concat extends Node {
+        final List<Node> items;
+
+        Concat(List<Node> items) {
+            this.items = items;
+        }
+    }
+
+    static final class Alt extends Node {
+        final List<Node> choices;
+
+        Alt(List<Node> choices) {
+            this.choices = choices;
+        }
+    }
+
+    static final class Repeat extends Node {
+        final Node node;
+        final int min;
+        /** Maximum count, {@code -1} for unbounded. */
+        final int max;
+
+        Repeat(Node node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    /**
+     * Thrown when a pattern cannot be represented as a finite automaton.
+     */
+    static final class UnsupportedRegexException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedRegexException(String pattern, int pos) {
+            super("Unsupported construct at index " + pos + " in " + pattern, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.rule;
+
+import io.github.sanfengandroid.sdexter.sdk.GlobalConfig;
+
+/**
+ * Compiled form of the class and package removal rules of {@link GlobalConfig}.
+ * <p>
+ * Literal {@link GlobalConfig#removeClasses()} and {@link GlobalConfig#removePackages()} entries
+ * are looked up in hash tables while walking the descriptor once; all
+ * {@link GlobalConfig#removeClassPatterns()} and {@link GlobalConfig#removePackagePatterns()}
+ * entries are combined into {@link MultiPatternMatcher}s per list, sharded by the literal top-level
+ * package of each pattern. A descriptor is therefore tested with a constant number of scans over
+ * the patterns of its own package root, whatever the number of rules or of merged
+ * {@link GlobalRules configurations}.
+ * </p>
+ * <ul>
+ *     <li>Class patterns are matched against the internal class name, e.g. {@code com/example/MyClass}.</li>
+ *     <li>Package patterns are matched against the internal package name, e.g. {@code com/example}.</li>
+ *     <li>A literal package also removes its sub packages.</li>
+ * </ul>
+ * Instances are immutable and safe for concurrent use.
+ */
+public final class RemovalRules {
+
+    /**
+     * Returned by {@link #match(CharSequence)} when no rule removes the class.
+     */
+    public static final int NO_MATCH = -1;
+
+    /**
+     * The {@link GlobalConfig} attribute a rule comes from.
+     */
+    public enum Kind {
+        CLASS, CLASS_PATTERN, PACKAGE, PACKAGE_PATTERN
+    }
+
+    private static final int KIND_SHIFT = 28;
+    private static final int INDEX_MASK = (1 << KIND_SHIFT) - 1;
+
+    private final String[][] sources;
+    private final LiteralTable classes;
+    private final LiteralTable packages;
+    private final ShardedMatcher classPatterns;
+    private final ShardedMatcher packagePatterns;
+
+    private RemovalRules(String[] removeClasses, String[] removeClassPatterns,
+                         String[] removePackages, String[] removePackagePatterns) {
+        this.sources = new String[][]{removeClasses, removeClassPatterns, removePackages, removePackagePatterns};
+        this.classes = literals(removeClasses);
+        this.packages = literals(removePackages);
+        this.classPatterns = ShardedMatcher.compile(removeClassPatterns);
+        this.packagePatterns = ShardedMatcher.compile(removePackagePatterns);
+    }
+
+    /**
+     * Compiles the removal rules of a global configuration.
+     *
+     * @param config the global configuration
+     * @return the compiled rules
+     */
+    public static RemovalRules of(GlobalConfig config) {
+        return of(config.removeClasses(), config.removeClassPatterns(),
+                config.removePackages(), config.removePackagePatterns());
+    }
+
+    /**
+     * Compiles removal rules from raw attribute values.
+     *
+     * @param removeClasses         dotted class names
+     * @param removeClassPatterns   regular expressions over internal class names
+     * @param removePackages        dotted package names
+     * @param removePackagePatterns regular expressions over internal package names
+     * @return the compiled rules
+     */
+    public static RemovalRules of(String[] removeClasses, String[] removeClassPatterns,
+                                  String[] removePackages, String[] removePackagePatterns) {
+        return new RemovalRules(removeClasses.clone(), removeClassPatterns.clone(),
+                removePackages.clone(), removePackagePatterns.clone());
+    }
+
+    /**
+     * Tests whether a class is removed.
+     *
+     * @param descriptor a class type descriptor such as {@code Lcom/example/MyClass;}
+     * @return the id of the first matching rule, or {@link #NO_MATCH}; other descriptors never match
+     */
+    public int match(CharSequence descriptor) {
+        int length = descriptor.length();
+        if (length < 3 || descriptor.charAt(0) != 'L' || descriptor.charAt(length - 1) != ';') {
+            return NO_MATCH;
+        }
+        int start = 1;
+        int end = length - 1;
+        int packageEnd = start;
+        int literalPackage = -1;
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            char c = descriptor.charAt(i);
+            if (c == '/') {
+                packageEnd = i;
+                if (literalPackage < 0 && packages.size() > 0) {
+                    literalPackage = packages.get(descriptor, start, i, h);
+                }
+            }
+            h = 31 * h + c;
+        }
+        int index = classes.get(descriptor, start, end, h);
+        if (index >= 0) {
+            return ruleId(Kind.CLASS, index);
+        }
+        index = classPatterns.match(descriptor, start, end);
+        if (index >= 0) {
+            return ruleId(Kind.CLASS_PATTERN, index);
+        }
+        if (literalPackage >= 0) {
+            return ruleId(Kind.PACKAGE, literalPackage);
+        }
+        index = packagePatterns.match(descriptor, start, packageEnd);
+        if (index >= 0) {
+            return ruleId(Kind.PACKAGE_PATTERN, index);
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * @param kind an attribute
+     * @return the number of rules declared in it
+     */
+    public int size(Kind kind) {
+        return sources[kind.ordinal()].length;
+    }
+
+    /**
+     * @param kind  an attribute
+     * @param index the index of the rule within its attribute array
+     * @return the rule id, as {@link #match(CharSequence)} returns it
+     */
+    public static int ruleId(Kind kind, int index) {
+        return (kind.ordinal() << KIND_SHIFT) | index;
+    }
+
+    /**
+     * @param rule a rule id returned by {@link #match(CharSequence)}
+     * @return the attribute the rule comes from
+     */
+    public static Kind kindOf(int rule) {
+        return Kind.values()[rule >>> KIND_SHIFT];
+    }
+
+    /**
+     * @param rule a rule id returned by {@link #match(CharSequence)}
+     * @return the index of the rule within its attribute array
+     */
+    public static int indexOf(int rule) {
+        return rule & INDEX_MASK;
+    }
+
+    /**
+     * @param rule a rule id returned by {@link #match(CharSequence)}
+     * @return the rule as written in the configuration
+     */
+    public String source(int rule) {
+        return sources[rule >>> KIND_SHIFT][rule & INDEX_MASK];
+    }
+
+    /**
+     * @param rule a rule id returned by {@link #match(CharSequence)}
+     * @return a readable description such as {@code removeClassPatterns[2]: com/foo/.*}
+     */
+    public String describe(int rule) {
+        String attribute;
+        switch (kindOf(rule)) {
+            case CLASS:
+                attribute = "removeClasses";
+                break;
+            case CLASS_PATTERN:
+                attribute = "removeClassPatterns";
+                break;
+            case PACKAGE:
+                attribute = "removePackages";
+                break;
+            default:
+                attribute = "removePackagePatterns";
+                break;
+        }
+        return attribute + "[" + indexOf(rule) + "]: " + source(rule);
+    }
+
+    private static LiteralTable literals(String[] dottedNames) {
+        String[] keys = new String[dottedNames.length];
+        int[] values = new int[dottedNames.length];
+        for (int i = 0; i < dottedNames.length; i++) {
+            keys[i] = dottedNames[i].replace('.', '/');
+            values[i] = i;
+        }
+        return new LiteralTable(keys, values);
+    }
+}
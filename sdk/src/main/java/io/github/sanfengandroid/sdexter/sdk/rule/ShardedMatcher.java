@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.rule;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Patterns over internal names, split into one {@link MultiPatternMatcher} per top-level package.
+ * <p>
+ * A pattern starting with a literal first segment, such as {@code com/example/.*} or {@code org},
+ * can only match names under that segment and goes to its shard. Patterns whose first segment is
+ * not literal go to a shared matcher that every query consults. A query therefore runs at most
+ * two automata, each over the patterns of one package root, however many configurations
+ * contributed patterns.
+ * </p>
+ * Queries return the lowest matching index, like {@link MultiPatternMatcher}. Immutable and safe
+ * for concurrent use.
+ */
+final class ShardedMatcher {
+
+    private final String[] patterns;
+    private final LiteralTable roots;
+    private final MultiPatternMatcher[] shards;
+    private final int[][] shardIndex;
+    private final MultiPatternMatcher shared;
+    private final int[] sharedIndex;
+
+    private ShardedMatcher(String[] patterns) {
+        this.patterns = patterns;
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        List<Integer> others = new ArrayList<>();
+        for (int i = 0; i < patterns.length; i++) {
+            String root = literalRoot(patterns[i]);
+            if (root == null) {
+                others.add(i);
+            } else {
+                groups.computeIfAbsent(root, key -> new ArrayList<>()).add(i);
+            }
+        }
+        String[] keys = groups.keySet().toArray(new String[0]);
+        int[] values = new int[keys.length];
+        this.shards = new MultiPatternMatcher[keys.length];
+        this.shardIndex = new int[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = i;
+            shardIndex[i] = groups.get(keys[i]).stream().mapToInt(Integer::intValue).toArray();
+            shards[i] = MultiPatternMatcher.compile(select(patterns, shardIndex[i]));
+        }
+        this.roots = new LiteralTable(keys, values);
+        this.sharedIndex = others.stream().mapToInt(Integer::intValue).toArray();
+        this.shared = sharedIndex.length == 0 ? null : MultiPatternMatcher.compile(select(patterns, sharedIndex));
+    }
+
+    /**
+     * Compiles the given patterns.
+     *
+     * @param patterns regular expressions over internal names, in priority order
+     * @return the compiled matcher
+     * @throws java.util.regex.PatternSyntaxException if a pattern is invalid
+     */
+    static ShardedMatcher compile(String... patterns) {
+        return new ShardedMatcher(patterns.clone());
+    }
+
+    private static String[] select(String[] patterns, int[] indices) {
+        String[] selected = new String[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            selected[i] = patterns[indices[i]];
+        }
+        return selected;
+    }
+
+    /**
+     * @return the literal first segment of {@code pattern}, or {@code null} if the pattern may
+     * match names under different roots
+     */
+    static String literalRoot(String pattern) {
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '/') {
+                break;
+            }
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-') {
+                return null;
+            }
+            i++;
+        }
+        if (i == 0 || pattern.indexOf('|') >= 0) {
+            return null;
+        }
+        return pattern.substring(0, i);
+    }
+
+    int size() {
+        return patterns.length;
+    }
+
+    String pattern(int index) {
+        return patterns[index];
+    }
+
+    /**
+     * @return the number of package roots with their own shard
+     */
+    int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Matches {@code input[start, end)} as a whole.
+     *
+     * @return the lowest index of a pattern matching the region, or {@code -1}
+     */
+    int match(CharSequence input, int start, int end) {
+        int best = -1;
+        if (shards.length > 0) {
+            int rootEnd = start;
+            int h = 0;
+            while (rootEnd < end && input.charAt(rootEnd) != '/') {
+                h = 31 * h + input.charAt(rootEnd++);
+            }
+            int shard = roots.get(input, start, rootEnd, h);
+            if (shard >= 0) {
+                int match = shards[shard].match(input, start, end);
+                best = match < 0 ? -1 : shardIndex[shard][match];
+            }
+        }
+        if (shared != null && (best < 0 || sharedIndex[0] < best)) {
+            int match = shared.match(input, start, end);
+            if (match >= 0 && (best < 0 || sharedIndex[match] < best)) {
+                best = sharedIndex[match];
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Plans {@code dex/refs.dex}, assembled from {@code src/test/smali/refs}, into output files.
+ */
+public class DexPartitionerTest {
+
+    @Test
+    public void countsEveryIdOnce() throws IOException {
+        DexFile dex = ReferenceIndexTest.fixture();
+        DexPartitioner.Plan plan = DexPartitioner.plan(Collections.singletonList(dex), Collections.emptyList());
+
+        assertEquals(1, plan.size());
+        assertEquals(dex.classDefCount(), plan.classCount(0));
+        assertEquals(dex.typeCount(), plan.typeCount(0));
+        assertEquals(dex.protoCount(), plan.protoCount(0));
+        assertEquals(dex.fieldCount(), plan.fieldCount(0));
+        assertEquals(dex.methodCount(), plan.methodCount(0));
+    }
+
+    @Test
+    public void sharesIdsAcrossInputs() throws IOException {
+        DexFile first = ReferenceIndexTest.fixture();
+        DexFile second = ReferenceIndexTest.fixture();
+        DexPartitioner.Plan plan = DexPartitioner.plan(Arrays.asList(first, second), Collections.emptyList());
+
+        assertEquals(1, plan.size());
+        assertEquals(first.classDefCount(), plan.classCount(0));
+        assertEquals(first.classDefCount(), plan.getShadowed().size());
+        assertEquals(first.typeCount(), plan.typeCount(0));
+        assertEquals(first.protoCount(), plan.protoCount(0));
+        assertEquals(first.fieldCount(), plan.fieldCount(0));
+        assertEquals(first.methodCount(), plan.methodCount(0));
+    }
+
+    @Test
+    public void splitsAtTheLimit() throws IOException {
+        DexFile dex = ReferenceIndexTest.fixture();
+        // Lfix/User; alone needs six types, the whole file seven
+        int limit = 6;
+        DexPartitioner.Plan plan = DexPartitioner.plan(Collections.singletonList(dex),
+                Collections.singletonList("Lfix/User;"), limit, ForkJoinPool.commonPool());
+
+        assertTrue(plan.toString(), plan.size() > 1);
+        int classes = 0;
+        for (int p = 0; p < plan.size(); p++) {
+            classes += plan.classCount(p);
+            assertTrue(plan.toString(), plan.typeCount(p) <= limit);
+            assertTrue(plan.toString(), plan.protoCount(p) <= limit);
+            assertTrue(plan.toString(), plan.fieldCount(p) <= limit);
+            assertTrue(plan.toString(), plan.methodCount(p) <= limit);
+        }
+        assertEquals(dex.classDefCount(), classes);
+        assertTrue(Arrays.stream(plan.classDefs(0)).anyMatch(c -> c == dex.findClassDef("Lfix/User;")));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Builds a {@link ReferenceIndex} over {@code dex/refs.dex}, assembled from
+ * {@code src/test/smali/refs}, and round-trips it through its file form.
+ */
+public class ReferenceIndexTest {
+
+    @Test
+    public void indexesClassAndCodeReferences() throws IOException {
+        DexFile dex = fixture();
+        ReferenceIndex index = ReferenceIndex.build(dex);
+        int user = dex.findClassDef("Lfix/User;");
+        int run = method(dex, "Lfix/User;", "run");
+        int get = method(dex, "Lfix/Base;", "get");
+
+        assertArrayEquals(new int[]{run}, index.referrers(Opcodes.INDEX_METHOD, get));
+        assertArrayEquals(new int[]{get}, index.referrers(Opcodes.INDEX_FIELD, field(dex, "Lfix/Base;", "value")));
+        int[] base = index.referrers(Opcodes.INDEX_TYPE, dex.findType("Lfix/Base;"));
+        assertTrue(Arrays.toString(base), contains(base, ~user) && contains(base, run));
+        assertArrayEquals(new int[]{~user}, index.referrers(Opcodes.INDEX_TYPE, dex.findType("Lfix/Iface;")));
+        assertTrue(index.isUnreferenced(Opcodes.INDEX_TYPE, dex.findType("Lfix/Unused;")));
+        assertTrue(index.isUnreferenced(Opcodes.INDEX_FIELD, field(dex, "Lfix/Unused;", "count")));
+
+        int[] classReferrers = index.classReferrers("Lfix/Base;");
+        assertTrue(Arrays.toString(classReferrers), contains(classReferrers, get) && contains(classReferrers, run));
+        assertEquals(0, index.classReferrers("Lfix/Missing;").length);
+    }
+
+    @Test
+    public void roundTripsThroughFile() throws IOException {
+        DexFile dex = fixture();
+        ReferenceIndex built = ReferenceIndex.build(dex);
+        Path file = Files.createTempFile("refs", ".sdxi");
+        try {
+            built.write(file);
+            ReferenceIndex read = ReferenceIndex.read(file, dex);
+            assertNotNull(read);
+            int[] counts = {dex.typeCount(), dex.fieldCount(), dex.methodCount()};
+            int[] kinds = {Opcodes.INDEX_TYPE, Opcodes.INDEX_FIELD, Opcodes.INDEX_METHOD};
+            for (int k = 0; k < kinds.length; k++) {
+                for (int i = 0; i < counts[k]; i++) {
+                    assertArrayEquals(built.referrers(kinds[k], i), read.referrers(kinds[k], i));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void rejectsForeignOrDamagedFiles() throws IOException {
+        DexFile dex = fixture();
+        Path file = Files.createTempFile("refs", ".sdxi");
+        try {
+            ReferenceIndex.build(dex).write(file);
+            byte[] bytes = Files.readAllBytes(file);
+
+            byte[] other = fixtureBytes();
+            other[12]++;
+            assertNull(ReferenceIndex.read(file, DexFile.wrap(ByteBuffer.wrap(other))));
+
+            for (int length : new int[]{0, 7, 8 + 20, 8 + 20 + 6, bytes.length / 2, bytes.length - 4}) {
+                Files.write(file, Arrays.copyOf(bytes, length));
+                assertNull("length " + length, ReferenceIndex.read(file, dex));
+            }
+
+            byte[] corrupt = bytes.clone();
+            // First referrer count of the type table
+            corrupt[8 + 20 + 4] = (byte) 0xff;
+            Files.write(file, corrupt);
+            assertNull(ReferenceIndex.read(file, dex));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    static DexFile fixture() throws IOException {
+        return DexFile.wrap(ByteBuffer.wrap(fixtureBytes()));
+    }
+
+    static byte[] fixtureBytes() throws IOException {
+        try (InputStream in = ReferenceIndexTest.class.getResourceAsStream("/dex/refs.dex")) {
+            return in.readAllBytes();
+        }
+    }
+
+    static int method(DexFile dex, String owner, String name) {
+        for (int i = 0; i < dex.methodCount(); i++) {
+            if (dex.typeDescriptor(dex.methodClass(i)).equals(owner) && dex.string(dex.methodName(i)).equals(name)) {
+                return i;
+            }
+        }
+        throw new AssertionError(owner + "." + name);
+    }
+
+    static int field(DexFile dex, String owner, String name) {
+        for (int i = 0; i < dex.fieldCount(); i++) {
+            if (dex.typeDescriptor(dex.fieldClass(i)).equals(owner) && dex.string(dex.fieldName(i)).equals(name)) {
+                return i;
+            }
+        }
+        throw new AssertionError(owner + "." + name);
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.dex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Adds the strings of {@code dex/refs.dex}, assembled from {@code src/test/smali/refs}.
+ */
+public class StringPoolTest {
+
+    @Test
+    public void addsEachStringOnce() throws IOException {
+        DexFile dex = ReferenceIndexTest.fixture();
+        StringPool pool = new StringPool();
+        int[] ids = pool.addAll(dex);
+        assertEquals(dex.stringCount(), pool.size());
+        assertArrayEquals(ids, pool.addAll(ReferenceIndexTest.fixture()));
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], pool.add(dex, i));
+            assertEquals(ids[i], pool.add(dex.string(i)));
+        }
+        assertEquals(dex.stringCount(), pool.size());
+    }
+}
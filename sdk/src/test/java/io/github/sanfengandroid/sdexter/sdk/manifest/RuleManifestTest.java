@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.manifest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Writes manifests with {@link RuleManifestWriter} and reads them back with {@link RuleManifest}.
+ */
+public class RuleManifestTest {
+
+    @Test
+    public void roundTripsEveryAttribute() throws Exception {
+        RuleManifestWriter writer = new RuleManifestWriter();
+        writer.classEntry("Lcom/example/Foo;")
+                .setFlags(RuleFlags.CLASS_REMOVE_SOURCE_FILE | RuleFlags.CLASS_REPLACE)
+                .setRename("Lcom/renamed/Bar;")
+                .setSourceFile("Bär.java")
+                .addRemoveFields(new String[]{"a", "b"}, new String[]{"tmp.*"})
+                .addRemoveMethods(new String[]{"run()V"}, new String[]{"debug.*", "trace.*"})
+                .addField("count", "I", RuleFlags.FIELD_REMOVE_INITIAL_VALUE, "size")
+                .addMethod("call", "(ILjava/lang/String;)V", RuleFlags.METHOD_REMOVE_DBG_INFO, "invoke")
+                .addParam(1, RuleFlags.PARAM_REMOVE_ANNOTATIONS, "text");
+        writer.classEntry("Lcom/example/Empty;");
+
+        RuleManifest manifest = RuleManifest.wrap(ByteBuffer.wrap(writer.toByteArray()));
+        assertEquals(2, manifest.size());
+        RuleManifest.ClassRule foo = manifest.find("Lcom/example/Foo;");
+        assertEquals("Lcom/example/Foo;", foo.getDescriptor());
+        assertEquals(RuleFlags.CLASS_REMOVE_SOURCE_FILE | RuleFlags.CLASS_REPLACE, foo.getFlags());
+        assertEquals("Lcom/renamed/Bar;", foo.getRename());
+        assertEquals("Bär.java", foo.getSourceFile());
+        assertArrayEquals(new String[]{"a", "b"}, foo.getRemoveFieldNames());
+        assertArrayEquals(new String[]{"tmp.*"}, foo.getRemoveFieldPatterns());
+        assertArrayEquals(new String[]{"run()V"}, foo.getRemoveMethods());
+        assertArrayEquals(new String[]{"debug.*", "trace.*"}, foo.getRemoveMethodPatterns());
+
+        List<RuleManifest.MemberRule> fields = foo.getFields();
+        assertEquals(1, fields.size());
+        assertEquals("count", fields.get(0).getName());
+        assertEquals("I", fields.get(0).getType());
+        assertEquals(RuleFlags.FIELD_REMOVE_INITIAL_VALUE, fields.get(0).getFlags());
+        assertEquals("size", fields.get(0).getRename());
+
+        List<RuleManifest.MemberRule> methods = foo.getMethods();
+        assertEquals(1, methods.size());
+        RuleManifest.MemberRule call = methods.get(0);
+        assertEquals("call", call.getName());
+        assertEquals("(ILjava/lang/String;)V", call.getType());
+        assertEquals(RuleFlags.METHOD_REMOVE_DBG_INFO, call.getFlags());
+        assertEquals("invoke", call.getRename());
+        assertEquals(1, call.getParams().size());
+        assertEquals(1, call.getParams().get(0).getIndex());
+        assertEquals(RuleFlags.PARAM_REMOVE_ANNOTATIONS, call.getParams().get(0).getFlags());
+        assertEquals("text", call.getParams().get(0).getRename());
+
+        RuleManifest.ClassRule empty = manifest.find("Lcom/example/Empty;");
+        assertEquals(0, empty.getFlags());
+        assertNull(empty.getRename());
+        assertNull(empty.getSourceFile());
+        assertEquals(0, empty.getRemoveFieldNames().length);
+        assertEquals(0, empty.getFields().size());
+        assertEquals(0, empty.getMethods().size());
+    }
+
+    @Test
+    public void findsEveryClassAmongMany() {
+        RuleManifestWriter writer = new RuleManifestWriter();
+        for (int i = 0; i < 1000; i++) {
+            writer.classEntry("Lp" + i % 7 + "/C" + i + ";").setFlags(i);
+        }
+        RuleManifest manifest = RuleManifest.wrap(ByteBuffer.wrap(writer.toByteArray()));
+        assertEquals(1000, manifest.size());
+        for (int i = 0; i < 1000; i++) {
+            String descriptor = "Lp" + i % 7 + "/C" + i + ";";
+            assertEquals(i, manifest.find(descriptor).getFlags());
+            assertEquals(descriptor, manifest.get(i).getDescriptor());
+        }
+        assertNull(manifest.find("Lp0/C1000;"));
+        assertNull(manifest.find(""));
+        assertThrows(IndexOutOfBoundsException.class, () -> manifest.get(1000));
+    }
+
+    @Test
+    public void opensWrittenFile() throws Exception {
+        RuleManifestWriter writer = new RuleManifestWriter();
+        writer.classEntry("Lcom/example/Foo;").setRename("Lx;");
+        Path file = Files.createTempFile("rules", ".sdxr");
+        try {
+            Files.write(file, writer.toByteArray());
+            assertEquals("Lx;", RuleManifest.open(file).find("Lcom/example/Foo;").getRename());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void rejectsDamagedInput() {
+        byte[] bytes = new RuleManifestWriter().toByteArray();
+        assertThrows(IllegalArgumentException.class,
+                () -> RuleManifest.wrap(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1))));
+        assertThrows(IllegalArgumentException.class, () -> RuleManifest.wrap(ByteBuffer.wrap(new byte[8])));
+        byte[] version = bytes.clone();
+        version[4]++;
+        assertThrows(IllegalArgumentException.class, () -> RuleManifest.wrap(ByteBuffer.wrap(version)));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes R8 style mappings with {@link MappingIndexWriter} and reads them back through
+ * {@link MappingIndex} and {@link Retracer}.
+ */
+public class MappingIndexTest {
+
+    private static final String MAPPING = String.join("\n",
+            "# compiler: R8",
+            "# {\"id\":\"com.android.tools.r8.mapping\",\"version\":\"2.2\"}",
+            "com.example.Foo -> a.a:",
+            "    # {\"id\":\"sourceFile\",\"fileName\":\"Foo.java\"}",
+            "    int count -> a",
+            "    1:3:void run():10:12 -> b",
+            "    4:4:void stop(int):20:20 -> b",
+            "      # {\"id\":\"com.android.tools.r8.synthesized\"}",
+            "    java.lang.String name() -> c",
+            "",
+            "com.example.Kept -> com.example.Kept:",
+            "    void keep() -> a",
+            "");
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("mapping");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void roundTripsThroughFile() throws IOException {
+        Path file = directory.resolve("mapping.sdxm");
+        assertEquals(6, MappingIndexWriter.write(new StringReader(MAPPING), file));
+        MappingIndex index = MappingIndex.open(file);
+
+        assertEquals(6, index.size());
+        assertEquals("com.example.Foo", index.originalClass("a.a"));
+        assertNull(index.originalClass("com.example.Kept"));
+        assertNull(index.originalClass("a.b"));
+        StringBuilder sb = new StringBuilder();
+        assertEquals(1, index.appendField("a.a", 0, 3, "a", 0, 1, sb));
+        assertEquals("count", sb.toString());
+        sb.setLength(0);
+        assertEquals(2, index.appendMethod("a.a", 0, 3, "b", 0, 1, sb));
+        assertEquals("run|stop", sb.toString());
+        sb.setLength(0);
+        assertEquals(1, index.appendMethod("com.example.Kept", 0, 16, "a", 0, 1, sb));
+        assertEquals("keep", sb.toString());
+        assertEquals(0, index.appendMethod("a.a", 0, 3, "d", 0, 1, sb));
+    }
+
+    @Test
+    public void retracesStackTraces() throws IOException {
+        Path file = directory.resolve("mapping.sdxm");
+        MappingIndexWriter.write(new StringReader(MAPPING), file);
+        Retracer retracer = new Retracer(MappingIndex.open(file));
+
+        StringWriter out = new StringWriter();
+        long changed = retracer.retrace(new StringReader(String.join("\n",
+                "Exception in thread \"main\" a.a: failed",
+                "\tat a.a.c(SourceFile:5)",
+                "\tat java.lang.Thread.run(Thread.java:1)")), out);
+        assertEquals(2, changed);
+        assertEquals(String.join("\n",
+                "Exception in thread \"main\" com.example.Foo: failed",
+                "\tat com.example.Foo.name(SourceFile:5)",
+                "\tat java.lang.Thread.run(Thread.java:1)",
+                ""), out.toString());
+    }
+
+    @Test
+    public void failedWriteLeavesNoTemporaryFile() throws IOException {
+        // Replacing a non-empty directory fails after the temporary file was written
+        Path file = directory.resolve("mapping.sdxm");
+        Files.createDirectory(file);
+        Files.createFile(file.resolve("keep"));
+
+        assertThrows(IOException.class,
+                () -> MappingIndexWriter.write(new StringReader("com.example.Foo -> a.a:\n"), file));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+}
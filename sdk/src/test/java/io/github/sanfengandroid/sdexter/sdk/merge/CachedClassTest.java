@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.merge;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import io.github.sanfengandroid.sdexter.sdk.dex.DexFile;
+import io.github.sanfengandroid.sdexter.sdk.dex.Opcodes;
+import io.github.sanfengandroid.sdexter.sdk.dex.ReferenceSet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CachedClassTest {
+
+    private static final ClassPlan PLAN = new ClassPlan(2, 3, 0x5L, new int[]{0, 1}, new int[0], new int[]{1},
+            new int[]{2}, 1, 2, new int[]{0}, new int[]{7}, new int[0], new int[0]);
+
+    @Test
+    public void roundTripsPlanAndReferences() throws IOException {
+        DexFile dex = fixture();
+        CachedClass entry = new CachedClass();
+        entry.visit(Opcodes.INDEX_TYPE, 1);
+        entry.visit(Opcodes.INDEX_METHOD, 0);
+        entry.visit(Opcodes.INDEX_TYPE, 1);
+        entry.visit(Opcodes.INDEX_STRING, 3);
+
+        ReferenceSet references = new ReferenceSet(dex);
+        ClassPlan plan = CachedClass.decode(entry.encode(PLAN), 2, references);
+        assertEquals(2, plan.getClassDef());
+        assertEquals(3, plan.getRemovalRule());
+        assertEquals(0x5L, plan.getFlags());
+        assertArrayEquals(new int[]{0, 1}, plan.getStaticFields());
+        assertArrayEquals(new int[0], plan.getInstanceFields());
+        assertArrayEquals(new int[]{1}, plan.getDirectMethods());
+        assertArrayEquals(new int[]{2}, plan.getVirtualMethods());
+        assertEquals(1, plan.getRemovedFieldCount());
+        assertEquals(2, plan.getRemovedMethodCount());
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(PLAN.memberRules()[i], plan.memberRules()[i]);
+        }
+        assertEquals(1, references.count(Opcodes.INDEX_TYPE));
+        assertEquals(1, references.count(Opcodes.INDEX_METHOD));
+        assertEquals(1, references.count(Opcodes.INDEX_STRING));
+    }
+
+    @Test
+    public void damagedPayloadIsMissWithoutReferences() throws IOException {
+        DexFile dex = fixture();
+        CachedClass entry = new CachedClass();
+        entry.visit(Opcodes.INDEX_TYPE, 1);
+        byte[] data = entry.encode(PLAN);
+        for (int length = 0; length < data.length; length++) {
+            ReferenceSet references = new ReferenceSet(dex);
+            assertNull("length " + length, CachedClass.decode(Arrays.copyOf(data, length), 2, references));
+            assertEquals(0, references.count(Opcodes.INDEX_TYPE));
+        }
+        assertNull(CachedClass.decode(Arrays.copyOf(data, data.length + 8), 2, new ReferenceSet(dex)));
+
+        byte[] badReference = data.clone();
+        // The last reference, an index past the type table
+        badReference[data.length - 4] = 0x7f;
+        ReferenceSet references = new ReferenceSet(dex);
+        assertNull(CachedClass.decode(badReference, 2, references));
+        assertEquals(0, references.count(Opcodes.INDEX_TYPE));
+    }
+
+    private static DexFile fixture() throws IOException {
+        try (InputStream in = CachedClassTest.class.getResourceAsStream("/dex/refs.dex")) {
+            return DexFile.wrap(ByteBuffer.wrap(in.readAllBytes()));
+        }
+    }
+}
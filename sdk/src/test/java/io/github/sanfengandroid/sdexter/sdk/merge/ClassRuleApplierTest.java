@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.merge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import io.github.sanfengandroid.sdexter.sdk.rule.PatternSet;
+
+import org.junit.Test;
+
+public class ClassRuleApplierTest {
+
+    @Test
+    public void compilesEachPatternListOnce() {
+        ClassRuleApplier.Patterns patterns = new ClassRuleApplier.Patterns();
+        PatternSet first = patterns.compile(new String[]{"mField.*", ".*Cache"});
+        assertSame(first, patterns.compile(new String[]{"mField.*", ".*Cache"}));
+        assertNotSame(first, patterns.compile(new String[]{".*Cache", "mField.*"}));
+        assertNull(patterns.compile(new String[0]));
+        assertEquals(2, patterns.size());
+    }
+}
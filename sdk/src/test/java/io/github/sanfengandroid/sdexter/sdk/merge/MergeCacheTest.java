@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.merge;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MergeCacheTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("merge-cache");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void storesAndReopens() throws IOException {
+        MergeCache cache = MergeCache.open(directory, 1 << 20);
+        cache.put("a", new byte[]{1, 2, 3});
+        cache.put("b", new byte[0]);
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get("a"));
+        assertArrayEquals(new byte[0], cache.get("b"));
+        assertNull(cache.get("c"));
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+
+        MergeCache reopened = MergeCache.open(directory, 1 << 20);
+        assertEquals(2, reopened.entryCount());
+        assertEquals(3, reopened.size());
+        assertArrayEquals(new byte[]{1, 2, 3}, reopened.get("a"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        MergeCache cache = MergeCache.open(directory, 10);
+        cache.put("a", new byte[4]);
+        cache.put("b", new byte[4]);
+        cache.get("a");
+        cache.put("c", new byte[4]);
+        assertNull(cache.get("b"));
+        assertEquals(4, cache.get("a").length);
+        assertEquals(4, cache.get("c").length);
+        assertEquals(8, cache.size());
+
+        cache.put("big", new byte[11]);
+        assertNull(cache.get("big"));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    public void deletedEntryIsMiss() throws IOException {
+        MergeCache cache = MergeCache.open(directory, 1 << 20);
+        cache.put("a", new byte[5]);
+        Files.delete(directory.resolve("a.bin"));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.entryCount());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.merge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.github.sanfengandroid.sdexter.sdk.GlobalConfig;
+import io.github.sanfengandroid.sdexter.sdk.rule.RemovalRules;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MergeDaemonTest {
+
+    @Test
+    public void keepsRecentRuleSetsOnly() throws IOException {
+        Path base = Files.createTempFile("base", ".dex");
+        try {
+            try (InputStream in = MergeDaemonTest.class.getResourceAsStream("/dex/refs.dex")) {
+                Files.copy(in, base, StandardCopyOption.REPLACE_EXISTING);
+            }
+            List<RemovalRules> compiled = new ArrayList<>();
+            GlobalConfig[] config = new GlobalConfig[1];
+            MergeDaemon daemon = new MergeDaemon(request -> compiled.add(request.removalRules(config[0])), 1 << 30);
+            String merge = "merge\t" + base + "\tmirror.dex\tout.dex";
+            for (int i = 0; i < MergeDaemon.MAX_RULE_SETS + 4; i++) {
+                config[0] = config("v" + i);
+                assertTrue(daemon.handle(merge).startsWith("ok\t"));
+            }
+            assertEquals(MergeDaemon.MAX_RULE_SETS, daemon.ruleSetCount());
+
+            // The most recent configuration is still compiled, the first one was dropped
+            int last = compiled.size() - 1;
+            daemon.handle(merge);
+            assertSame(compiled.get(last), compiled.get(last + 1));
+            config[0] = config("v0");
+            daemon.handle(merge);
+            assertTrue(compiled.get(0) != compiled.get(last + 2));
+            assertEquals(MergeDaemon.MAX_RULE_SETS, daemon.ruleSetCount());
+        } finally {
+            Files.delete(base);
+        }
+    }
+
+    @Test
+    public void servesMoreConnectionsThanWorkers() throws Exception {
+        MergeDaemon daemon = new MergeDaemon(request -> {
+        }, 1 << 30);
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread serving = new Thread(() -> {
+            try {
+                daemon.serve(server, "secret");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        serving.start();
+        int clients = Runtime.getRuntime().availableProcessors() * 2 + 1;
+        for (int i = 0; i < clients; i++) {
+            // Each client leaves before the next one connects, so its worker is free again
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort())) {
+                assertEquals("ok\t0\t0\t0\t0", request(socket, "secret\nstats\n"));
+            }
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort())) {
+            assertEquals("error\tunauthorized", request(socket, "wrong\nstats\n"));
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort())) {
+            assertEquals("ok", request(socket, "secret\nquit\n"));
+        }
+        serving.join(10_000);
+        assertTrue(server.isClosed());
+    }
+
+    private static String request(Socket socket, String lines) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(lines.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        return reader.readLine();
+    }
+
+    /**
+     * A configuration with default attributes and the given version.
+     */
+    private static GlobalConfig config(String version) {
+        return (GlobalConfig) Proxy.newProxyInstance(GlobalConfig.class.getClassLoader(),
+                new Class<?>[]{GlobalConfig.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "version":
+                            return version;
+                        case "annotationType":
+                            return GlobalConfig.class;
+                        default:
+                            return method.getDefaultValue();
+                    }
+                });
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.rule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.github.sanfengandroid.sdexter.sdk.GlobalConfig;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class GlobalRulesTest {
+
+    @GlobalConfig(removeSourceFile = true, removeClasses = {"a.b.C", "a.b.D"}, renamePackages = {"a.b:x.y"},
+            skipTypes = {String.class}, version = "1", priority = 2)
+    private static final class First {
+    }
+
+    @GlobalConfig(removePackages = "c.d", version = "1")
+    private static final class Second {
+    }
+
+    @Test
+    public void mergedConfigFollowsAnnotationContract() {
+        GlobalConfig first = First.class.getAnnotation(GlobalConfig.class);
+        GlobalConfig merged = GlobalRules.merge(Collections.singletonMap("First", first)).getConfig();
+
+        assertTrue(merged.equals(first));
+        assertTrue(first.equals(merged));
+        assertEquals(first.hashCode(), merged.hashCode());
+        assertTrue(merged.toString(), merged.toString().contains("removeClasses={\"a.b.C\", \"a.b.D\"}"));
+        assertTrue(merged.toString(), merged.toString().contains("skipTypes={java.lang.String.class}"));
+    }
+
+    @Test
+    public void mergedConfigDiffersFromItsParts() {
+        GlobalConfig first = First.class.getAnnotation(GlobalConfig.class);
+        GlobalConfig second = Second.class.getAnnotation(GlobalConfig.class);
+        Map<String, GlobalConfig> configs = new HashMap<>();
+        configs.put("First", first);
+        configs.put("Second", second);
+        GlobalConfig merged = GlobalRules.merge(configs).getConfig();
+
+        assertFalse(merged.equals(first));
+        assertFalse(second.equals(merged));
+        assertTrue(merged.equals(GlobalRules.merge(configs).getConfig()));
+        assertEquals(merged.hashCode(), GlobalRules.merge(configs).getConfig().hashCode());
+    }
+}
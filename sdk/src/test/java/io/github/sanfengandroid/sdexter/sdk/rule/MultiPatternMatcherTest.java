@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.rule;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Compares {@link MultiPatternMatcher} and {@link PatternSet} with {@link Pattern} over pattern
+ * sets large enough to grow the NFA tables several times.
+ */
+public class MultiPatternMatcherTest {
+
+    private static final String[] INPUTS = {
+            "", "a", "aa", "aaaa", "b", "ab", "com/t0/Foo", "com/t24/Foo", "com/t299/a/B", "com/t1",
+            "com/t12/", "com/x/Foo", "org/t3/Foo", "abcabc", "abcab", "x1y2", "été", "a\nb",
+    };
+
+    @Test
+    public void packagePatternsAtEverySize() {
+        for (int n = 1; n <= 300; n++) {
+            String[] patterns = new String[n];
+            for (int i = 0; i < n; i++) {
+                patterns[i] = "com/t" + i + "/.*";
+            }
+            assertAgrees(patterns, INPUTS);
+        }
+    }
+
+    @Test
+    public void manyStars() {
+        String[] patterns = new String[64];
+        Arrays.fill(patterns, "a*");
+        assertAgrees(patterns, INPUTS);
+    }
+
+    @Test
+    public void repeatedLongLiteral() {
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < 78; i++) {
+            literal.append((char) ('a' + i % 26));
+        }
+        String pattern = "(" + literal + ")*";
+        assertAgrees(new String[]{pattern}, new String[]{"", literal.toString(), literal + literal.toString(),
+                literal.substring(1), literal + "a"});
+    }
+
+    @Test
+    public void nestedBoundedRepeatsFallBack() {
+        String[] patterns = {"com/t0/.*", "((a{1,64}){1,64}){1,64}", "a*b"};
+        assertEquals(1, MultiPatternMatcher.compile(patterns).fallbackCount());
+        assertAgrees(patterns, new String[]{"", "a", "aaaa", "b", "ab", "com/t0/Foo"});
+    }
+
+    @Test
+    public void randomPatterns() {
+        Random random = new Random(0x5dec);
+        for (int round = 0; round < 200; round++) {
+            String[] patterns = new String[1 + random.nextInt(40)];
+            for (int i = 0; i < patterns.length; i++) {
+                patterns[i] = randomPattern(random, 3);
+            }
+            List<String> inputs = new ArrayList<>(Arrays.asList(INPUTS));
+            for (int i = 0; i < 30; i++) {
+                inputs.add(randomInput(random));
+            }
+            assertAgrees(patterns, inputs.toArray(new String[0]));
+        }
+    }
+
+    @Test
+    public void removalRulesWithManyPackagePatterns() {
+        String[] patterns = new String[30];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = "com/t" + i + "/.*";
+        }
+        RemovalRules rules = RemovalRules.of(new String[0], patterns, new String[0], new String[0]);
+        assertEquals(RemovalRules.ruleId(RemovalRules.Kind.CLASS_PATTERN, 24), rules.match("Lcom/t24/Foo;"));
+        assertEquals(RemovalRules.NO_MATCH, rules.match("Lcom/t30/Foo;"));
+    }
+
+    private static void assertAgrees(String[] patterns, String[] inputs) {
+        MultiPatternMatcher matcher = MultiPatternMatcher.compile(patterns);
+        PatternSet set = PatternSet.compile(patterns);
+        for (String input : inputs) {
+            int expected = expected(patterns, input);
+            String message = Arrays.toString(patterns) + " on \"" + input + "\"";
+            assertEquals(message, expected, matcher.match(input));
+            assertEquals(message, expected, set.match(input));
+        }
+    }
+
+    private static int expected(String[] patterns, String input) {
+        for (int i = 0; i < patterns.length; i++) {
+            if (Pattern.matches(patterns[i], input)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String randomPattern(Random random, int depth) {
+        int choice = depth == 0 ? random.nextInt(3) : random.nextInt(8);
+        switch (choice) {
+            case 0:
+                return String.valueOf("abc/t1".charAt(random.nextInt(6)));
+            case 1:
+                return random.nextBoolean() ? "." : "[a-c]";
+            case 2:
+                return "\\d";
+            case 3:
+            case 4:
+                return randomPattern(random, depth - 1) + randomPattern(random, depth - 1);
+            case 5:
+                return "(" + randomPattern(random, depth - 1) + "|" + randomPattern(random, depth - 1) + ")";
+            case 6:
+                return "(" + randomPattern(random, depth - 1) + ")" + "*+?".charAt(random.nextInt(3));
+            default:
+                return "(" + randomPattern(random, depth - 1) + "){" + random.nextInt(3) + "," + (2 + random.nextInt(2)) + "}";
+        }
+    }
+
+    private static String randomInput(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            sb.append("abc/t123".charAt(random.nextInt(8)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2025 sanfengAndroid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.sanfengandroid.sdexter.sdk.rule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import io.github.sanfengandroid.sdexter.sdk.MergeMetrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PackageRenamerTest {
+
+    private static final String[] PACKAGES = {"com.old", "com.renamed"};
+
+    @Test
+    public void unchangedTypeIsSameInstanceOnCacheHit() {
+        PackageRenamer renamer = PackageRenamer.of(PACKAGES, new String[0]);
+        String first = new String("Lcom/other/Foo;");
+        String second = new String("Lcom/other/Foo;");
+        assertSame(first, renamer.renameType(first));
+        assertSame(second, renamer.renameType(second));
+    }
+
+    @Test
+    public void renamedTypeIsServedFromCache() {
+        PackageRenamer renamer = PackageRenamer.of(PACKAGES, new String[0]);
+        assertEquals("Lcom/renamed/sub/Foo;", renamer.renameType("Lcom/old/sub/Foo;"));
+        assertEquals("Lcom/renamed/sub/Foo;", renamer.renameType(new String("Lcom/old/sub/Foo;")));
+    }
+
+    @Test
+    public void hitsDoNotDependOnCacheSize() {
+        String[] patterns = {"org/(.*)", "net/$1"};
+        String[] inputs = {"Lcom/old/A;", "(Lcom/old/A;Lorg/x/B;)V", "Lcom/other/C;", "[Lorg/y/D;"};
+        Map<String, Long> expected = null;
+        for (int cacheSize : new int[]{16, 1 << 14}) {
+            PackageRenamer renamer = PackageRenamer.of(PACKAGES, patterns, cacheSize);
+            for (int round = 0; round < 50; round++) {
+                for (String input : inputs) {
+                    renamer.renameType(input);
+                }
+                // Misses on the small table as the input set grows, hits on the large one
+                renamer.renameType("Lcom/old/E" + round + ";");
+            }
+            Map<String, Long> hits = hits(renamer);
+            assertEquals(Long.valueOf(150), hits.get("com.old -> com.renamed"));
+            assertEquals(Long.valueOf(100), hits.get("org/(.*) -> net/$1"));
+            if (expected != null) {
+                assertEquals(expected, hits);
+            }
+            expected = hits;
+        }
+    }
+
+    private static Map<String, Long> hits(PackageRenamer renamer) {
+        Map<String, Long> hits = new HashMap<>();
+        renamer.reportHits(new MergeMetrics() {
+            @Override
+            public void ruleHit(Rule kind, String scope, String rule, long count) {
+                hits.merge(rule, count, Long::sum);
+            }
+        });
+        return hits;
+    }
+}
@@ -22,3 +22,5 @@ dependencyResolutionManagement {
 rootProject.name = "SuperDexterSdk"
 include(":app")
 include(":sdk")
+include(":sdk-processor")
+include(":sdk-bench")